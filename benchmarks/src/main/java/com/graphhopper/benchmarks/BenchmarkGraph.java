@@ -0,0 +1,163 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmarks;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.shapes.BBox;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Imports and prepares the benchmark graph once per forked JVM. The OSM file can be specified via
+ * -Dgraphhopper.benchmark.osm and defaults to the bundled andorra.osm.pbf. The resulting graph folder
+ * is reused on the next fork so that only the first fork pays the import and preparation costs.
+ * <p>
+ * The graph is imported for car with CH and LM prepared for the fastest weighting.
+ */
+public class BenchmarkGraph {
+    public static final String VEHICLE = "car";
+    public static final String WEIGHTING = "fastest";
+    private static BenchmarkGraph instance;
+    private final GraphHopper hopper;
+    private final Weighting weighting;
+
+    private BenchmarkGraph(String osmFile, String graphLocation) {
+        hopper = new GraphHopperOSM().
+                setDataReaderFile(osmFile).
+                setGraphHopperLocation(graphLocation).
+                setEncodingManager(new EncodingManager(VEHICLE)).
+                setCHEnabled(true);
+        hopper.getCHFactoryDecorator().setWeightingsAsStrings(Arrays.asList(WEIGHTING)).
+                setDisablingAllowed(true);
+        hopper.getLMFactoryDecorator().setEnabled(true).
+                setWeightingsAsStrings(Arrays.asList(WEIGHTING)).
+                setDisablingAllowed(true);
+        hopper.importOrLoad();
+
+        weighting = hopper.getCHFactoryDecorator().getWeightings().get(0);
+    }
+
+    public static synchronized BenchmarkGraph get() {
+        if (instance == null) {
+            String osmFile = System.getProperty("graphhopper.benchmark.osm", "");
+            if (osmFile.isEmpty())
+                osmFile = findBundledFile();
+
+            String graphLocation = System.getProperty("graphhopper.benchmark.graph_location",
+                    new File(System.getProperty("java.io.tmpdir"), "graphhopper-benchmark-"
+                            + new File(osmFile).getName().replaceAll("\\W", "_") + "-gh").getAbsolutePath());
+            instance = new BenchmarkGraph(osmFile, graphLocation);
+        }
+        return instance;
+    }
+
+    private static String findBundledFile() {
+        // JMH is usually started from the root or the benchmarks folder
+        for (String candidate : new String[]{"core/files/andorra.osm.pbf", "../core/files/andorra.osm.pbf"}) {
+            if (new File(candidate).exists())
+                return candidate;
+        }
+        throw new IllegalStateException("Cannot find andorra.osm.pbf, specify the OSM file via -Dgraphhopper.benchmark.osm");
+    }
+
+    public GraphHopper getHopper() {
+        return hopper;
+    }
+
+    public GraphHopperStorage getGraph() {
+        return hopper.getGraphHopperStorage();
+    }
+
+    public FlagEncoder getEncoder() {
+        return hopper.getEncodingManager().getEncoder(VEHICLE);
+    }
+
+    /**
+     * @return the weighting for which CH and LM were prepared
+     */
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    public HintsMap createHints() {
+        return new HintsMap().setVehicle(VEHICLE).setWeighting(WEIGHTING);
+    }
+
+    /**
+     * Creates count pairs of random nodes, stored as from0, to0, from1, to1, ... All nodes are
+     * snapped via the location index of a random coordinate so that isolated nodes are not picked.
+     */
+    public int[] createRandomNodePairs(int count, long seed) {
+        QueryResult[] results = createRandomQueryResults(2 * count, seed);
+        int[] pairs = new int[results.length];
+        for (int i = 0; i < results.length; i++) {
+            pairs[i] = results[i].getClosestNode();
+        }
+        return pairs;
+    }
+
+    /**
+     * Creates count valid query results for random coordinates within the bounds of the graph.
+     */
+    public QueryResult[] createRandomQueryResults(int count, long seed) {
+        double[] points = createRandomPoints(count, seed);
+        QueryResult[] results = new QueryResult[count];
+        int resultIndex = 0;
+        Random rand = new Random(seed);
+        for (int i = 0; resultIndex < count; i++) {
+            double lat, lon;
+            if (i < count) {
+                lat = points[2 * i];
+                lon = points[2 * i + 1];
+            } else {
+                // for some coordinates nothing is found, try more until we have enough results
+                lat = points[2 * rand.nextInt(count)] + (rand.nextDouble() - 0.5) * 1e-3;
+                lon = points[2 * rand.nextInt(count) + 1] + (rand.nextDouble() - 0.5) * 1e-3;
+            }
+
+            QueryResult qr = hopper.getLocationIndex().findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+            if (qr.isValid())
+                results[resultIndex++] = qr;
+        }
+        return results;
+    }
+
+    /**
+     * Creates count random coordinates within the bounds of the graph stored as lat0, lon0, lat1, lon1, ...
+     */
+    public double[] createRandomPoints(int count, long seed) {
+        BBox bbox = getGraph().getBounds();
+        Random rand = new Random(seed);
+        double[] points = new double[2 * count];
+        for (int i = 0; i < count; i++) {
+            points[2 * i] = bbox.minLat + rand.nextDouble() * (bbox.maxLat - bbox.minLat);
+            points[2 * i + 1] = bbox.minLon + rand.nextDouble() * (bbox.maxLon - bbox.minLon);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmarks;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.Helper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sequential and random int access of the different DataAccess implementations. One
+ * invocation reads or writes ACCESSES integers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataAccessBenchmark {
+    private static final int ACCESSES = 10_000;
+    // 64MB to make sure random access does not fit into the CPU caches
+    private static final int INTS = 16 * 1024 * 1024;
+    @Param({"RAM", "RAM_INT", "MMAP", "UNSAFE"})
+    private String type;
+    private File location;
+    private GHDirectory dir;
+    private DataAccess da;
+    private long[] randomPointers;
+    private long sequentialPointer;
+
+    @Setup
+    public void setup() {
+        location = new File(System.getProperty("java.io.tmpdir"), "graphhopper-benchmark-dataaccess-" + type);
+        Helper.removeDir(location);
+        dir = new GHDirectory(location.getAbsolutePath(), toDAType(type));
+        dir.create();
+        da = dir.find("benchmark");
+        da.create(1024);
+        da.ensureCapacity(4L * INTS);
+        Random rand = new Random(123);
+        for (long pointer = 0; pointer < 4L * INTS; pointer += 4) {
+            da.setInt(pointer, rand.nextInt());
+        }
+
+        randomPointers = new long[ACCESSES];
+        for (int i = 0; i < ACCESSES; i++) {
+            randomPointers[i] = 4L * rand.nextInt(INTS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dir.clear();
+        Helper.removeDir(location);
+    }
+
+    static DAType toDAType(String type) {
+        switch (type) {
+            case "RAM":
+                return DAType.RAM;
+            case "RAM_INT":
+                return DAType.RAM_INT;
+            case "MMAP":
+                return DAType.MMAP;
+            case "UNSAFE":
+                return DAType.UNSAFE_STORE;
+            default:
+                throw new IllegalArgumentException("Unknown DataAccess type " + type);
+        }
+    }
+
+    @Benchmark
+    public long getIntRandom() {
+        long sum = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += da.getInt(randomPointers[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long getIntSequential() {
+        long sum = 0;
+        long pointer = sequentialPointer;
+        for (int i = 0; i < ACCESSES; i++) {
+            sum += da.getInt(pointer);
+            pointer += 4;
+        }
+        sequentialPointer = pointer >= 4L * (INTS - ACCESSES) ? 0 : pointer;
+        return sum;
+    }
+
+    @Benchmark
+    public void setIntRandom() {
+        for (int i = 0; i < ACCESSES; i++) {
+            da.setInt(randomPointers[i], i);
+        }
+    }
+
+    @Benchmark
+    public void setIntSequential() {
+        long pointer = sequentialPointer;
+        for (int i = 0; i < ACCESSES; i++) {
+            da.setInt(pointer, i);
+            pointer += 4;
+        }
+        sequentialPointer = pointer >= 4L * (INTS - ACCESSES) ? 0 : pointer;
+    }
+}
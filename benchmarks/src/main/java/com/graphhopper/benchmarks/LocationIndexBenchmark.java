@@ -0,0 +1,56 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmarks;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures LocationIndexTree.findClosest for random coordinates within the bounds of the graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocationIndexBenchmark {
+    private static final int POINTS = 10_000;
+    private LocationIndex index;
+    private double[] points;
+    private int pointIndex;
+
+    @Setup
+    public void setup() {
+        BenchmarkGraph bg = BenchmarkGraph.get();
+        index = bg.getHopper().getLocationIndex();
+        points = bg.createRandomPoints(POINTS, 123);
+    }
+
+    @Benchmark
+    public QueryResult findClosest() {
+        double lat = points[pointIndex];
+        double lon = points[pointIndex + 1];
+        pointIndex = (pointIndex + 2) % points.length;
+        return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmarks;
+
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.QueryResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation of a QueryGraph including the virtual nodes and edges for two snapped points.
+ * QueryGraph.lookup modifies the QueryResult objects so fresh copies are created before every
+ * invocation, outside of the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryGraphBenchmark {
+    private static final int POINTS = 1000;
+    private BenchmarkGraph bg;
+    private double[] points;
+    private final Random rand = new Random(123);
+    private QueryResult fromRes;
+    private QueryResult toRes;
+
+    @Setup
+    public void setup() {
+        bg = BenchmarkGraph.get();
+        QueryResult[] results = bg.createRandomQueryResults(POINTS, 123);
+        points = new double[2 * results.length];
+        for (int i = 0; i < results.length; i++) {
+            points[2 * i] = results[i].getQueryPoint().lat;
+            points[2 * i + 1] = results[i].getQueryPoint().lon;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareQueryResults() {
+        // the lookup is in the microsecond range so the overhead of Level.Invocation is acceptable
+        fromRes = findClosest(rand.nextInt(POINTS));
+        toRes = findClosest(rand.nextInt(POINTS));
+    }
+
+    private QueryResult findClosest(int pointIndex) {
+        return bg.getHopper().getLocationIndex().findClosest(points[2 * pointIndex], points[2 * pointIndex + 1],
+                EdgeFilter.ALL_EDGES);
+    }
+
+    @Benchmark
+    public QueryGraph lookup() {
+        return new QueryGraph(bg.getGraph()).lookup(fromRes, toRes);
+    }
+}
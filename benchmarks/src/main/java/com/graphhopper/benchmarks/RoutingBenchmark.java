@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmarks;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.BidirSearchStatePool;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+
+/**
+ * Measures point to point queries of the bidirectional algorithms on the base graph, the CH graph and
+ * with landmarks. Every invocation calculates the route for the next pair of a fixed set of random
+ * node pairs, i.e. the QueryGraph creation and the location lookup are not included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+    private static final int PAIRS = 1000;
+    private Graph graph;
+    private CHGraph chGraph;
+    private PrepareContractionHierarchies prepareCH;
+    private PrepareLandmarks prepareLM;
+    private AlgorithmOptions dijkstraBiOpts;
+    private AlgorithmOptions pooledDijkstraBiOpts;
+    private AlgorithmOptions astarBiOpts;
+    private RoutingAlgorithmFactorySimple simpleFactory;
+    private int[] pairs;
+    private int pairIndex;
+
+    @Setup
+    public void setup() {
+        BenchmarkGraph bg = BenchmarkGraph.get();
+        graph = bg.getGraph();
+        chGraph = bg.getGraph().getGraph(CHGraph.class, bg.getWeighting());
+        prepareCH = bg.getHopper().getCHFactoryDecorator().getPreparations().get(0);
+        prepareLM = bg.getHopper().getLMFactoryDecorator().getPreparations().get(0);
+        simpleFactory = new RoutingAlgorithmFactorySimple();
+        dijkstraBiOpts = AlgorithmOptions.start().algorithm(DIJKSTRA_BI).
+                traversalMode(TraversalMode.NODE_BASED).weighting(bg.getWeighting()).build();
+        astarBiOpts = AlgorithmOptions.start(dijkstraBiOpts).algorithm(ASTAR_BI).build();
+        pooledDijkstraBiOpts = AlgorithmOptions.start(dijkstraBiOpts).statePool(new BidirSearchStatePool()).build();
+        pairs = bg.createRandomNodePairs(PAIRS, 123);
+    }
+
+    private double calcWeight(RoutingAlgorithm algo) {
+        int from = pairs[pairIndex];
+        int to = pairs[pairIndex + 1];
+        pairIndex = (pairIndex + 2) % pairs.length;
+        Path path = algo.calcPath(from, to);
+        return path.getWeight();
+    }
+
+    @Benchmark
+    public double dijkstraBidirectionRef() {
+        return calcWeight(simpleFactory.createAlgo(graph, dijkstraBiOpts));
+    }
+
+    @Benchmark
+    public double dijkstraBidirectionPooled() {
+        return calcWeight(simpleFactory.createAlgo(graph, pooledDijkstraBiOpts));
+    }
+
+    @Benchmark
+    public double aStarBidirection() {
+        return calcWeight(simpleFactory.createAlgo(graph, astarBiOpts));
+    }
+
+    @Benchmark
+    public double aStarBidirectionLM() {
+        RoutingAlgorithm algo = simpleFactory.createAlgo(graph, astarBiOpts);
+        return calcWeight(prepareLM.getDecoratedAlgorithm(graph, algo, astarBiOpts));
+    }
+
+    @Benchmark
+    public double dijkstraBidirectionCH() {
+        return calcWeight(prepareCH.createAlgo(chGraph, dijkstraBiOpts));
+    }
+
+    @Benchmark
+    public double dijkstraBidirectionCHPooled() {
+        return calcWeight(prepareCH.createAlgo(chGraph, pooledDijkstraBiOpts));
+    }
+
+    @Benchmark
+    public double aStarBidirectionCH() {
+        return calcWeight(prepareCH.createAlgo(chGraph, astarBiOpts));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request for the areas reachable from one or more points within a time or distance limit.
+ *
+ * @see GraphHopper#calcIsochrone(GHIsochroneRequest)
+ */
+public class GHIsochroneRequest {
+    private final List<GHPoint> points = new ArrayList<>();
+    private final HintsMap hints = new HintsMap();
+    private long timeLimit = -1;
+    private double distanceLimit = -1;
+    private int buckets = 1;
+
+    public GHIsochroneRequest addPoint(GHPoint point) {
+        if (point == null)
+            throw new IllegalArgumentException("point cannot be null");
+        points.add(point);
+        return this;
+    }
+
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Limits the reachable area to the specified seconds. Either this or the distance limit has
+     * to be specified.
+     */
+    public GHIsochroneRequest setTimeLimit(long seconds) {
+        this.timeLimit = seconds;
+        return this;
+    }
+
+    public double getDistanceLimit() {
+        return distanceLimit;
+    }
+
+    /**
+     * Limits the reachable area to the specified meters.
+     */
+    public GHIsochroneRequest setDistanceLimit(double meters) {
+        this.distanceLimit = meters;
+        return this;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Splits the limit into the specified number of equally sized intervals and returns one
+     * polygon per interval, e.g. 3 buckets for a limit of 15 minutes result in the 5, 10 and 15
+     * minutes isochrones.
+     */
+    public GHIsochroneRequest setBuckets(int buckets) {
+        this.buckets = buckets;
+        return this;
+    }
+
+    public String getWeighting() {
+        return hints.getWeighting();
+    }
+
+    /**
+     * By default it supports fastest and shortest. Or specify empty to use default.
+     */
+    public GHIsochroneRequest setWeighting(String w) {
+        hints.setWeighting(w);
+        return this;
+    }
+
+    public String getVehicle() {
+        return hints.getVehicle();
+    }
+
+    /**
+     * Specify car, bike or foot. Or specify empty to use default.
+     */
+    public GHIsochroneRequest setVehicle(String vehicle) {
+        hints.setVehicle(vehicle);
+        return this;
+    }
+
+    public HintsMap getHints() {
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return points + ", time limit: " + timeLimit + ", distance limit: " + distanceLimit + ", buckets: " + buckets + ", " + hints;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.util.PointList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper containing the polygons and error output of an isochrone calculation.
+ *
+ * @see GraphHopper#calcIsochrone(GHIsochroneRequest)
+ */
+public class GHIsochroneResponse {
+    private final List<Throwable> errors = new ArrayList<>(4);
+    private final List<Bucket> buckets = new ArrayList<>();
+    private String debugInfo = "";
+
+    /**
+     * @return the isochrones for all points, ordered by point and then by bucket
+     */
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public GHIsochroneResponse addBucket(Bucket bucket) {
+        buckets.add(bucket);
+        return this;
+    }
+
+    public void addDebugInfo(String debugInfo) {
+        if (debugInfo == null)
+            throw new IllegalStateException("Debug information has to be none null");
+
+        if (!this.debugInfo.isEmpty())
+            this.debugInfo += "; ";
+
+        this.debugInfo += debugInfo;
+    }
+
+    public String getDebugInfo() {
+        return debugInfo;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors() {
+        return errors;
+    }
+
+    public GHIsochroneResponse addError(Throwable error) {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        String str = buckets.size() + " buckets";
+        if (!errors.isEmpty())
+            str += ", errors: " + errors;
+        return str;
+    }
+
+    /**
+     * The area reachable from one point within the limit of a bucket. The areas of the buckets of
+     * one point are nested.
+     */
+    public static class Bucket {
+        private final int pointIndex;
+        private final int bucket;
+        private final double limit;
+        private final int reachedNodes;
+        private final List<PointList> polygons;
+
+        public Bucket(int pointIndex, int bucket, double limit, int reachedNodes, List<PointList> polygons) {
+            this.pointIndex = pointIndex;
+            this.bucket = bucket;
+            this.limit = limit;
+            this.reachedNodes = reachedNodes;
+            this.polygons = polygons;
+        }
+
+        public int getPointIndex() {
+            return pointIndex;
+        }
+
+        public int getBucket() {
+            return bucket;
+        }
+
+        /**
+         * @return the upper limit of this bucket in seconds or meters
+         */
+        public double getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return the number of nodes reachable within the limit
+         */
+        public int getReachedNodes() {
+            return reachedNodes;
+        }
+
+        /**
+         * @return the closed outer rings of the reachable areas
+         */
+        public List<PointList> getPolygons() {
+            return polygons;
+        }
+
+        @Override
+        public String toString() {
+            return pointIndex + "/" + bucket + ", limit: " + limit + ", nodes: " + reachedNodes + ", polygons: " + polygons.size();
+        }
+    }
+}
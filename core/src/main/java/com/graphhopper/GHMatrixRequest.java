@@ -0,0 +1,99 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request for a many-to-many calculation of the weights, distances and times from every origin to
+ * every destination.
+ *
+ * @see GraphHopper#calcMatrix(GHMatrixRequest)
+ */
+public class GHMatrixRequest {
+    private final List<GHPoint> fromPoints = new ArrayList<>();
+    private final List<GHPoint> toPoints = new ArrayList<>();
+    private final HintsMap hints = new HintsMap();
+
+    public GHMatrixRequest addFromPoint(GHPoint point) {
+        if (point == null)
+            throw new IllegalArgumentException("point cannot be null");
+        fromPoints.add(point);
+        return this;
+    }
+
+    public GHMatrixRequest addToPoint(GHPoint point) {
+        if (point == null)
+            throw new IllegalArgumentException("point cannot be null");
+        toPoints.add(point);
+        return this;
+    }
+
+    /**
+     * Uses the specified points as origins and as destinations, i.e. for a symmetric matrix.
+     */
+    public GHMatrixRequest addPoint(GHPoint point) {
+        addFromPoint(point);
+        return addToPoint(point);
+    }
+
+    public List<GHPoint> getFromPoints() {
+        return fromPoints;
+    }
+
+    public List<GHPoint> getToPoints() {
+        return toPoints;
+    }
+
+    public String getWeighting() {
+        return hints.getWeighting();
+    }
+
+    /**
+     * By default it supports fastest and shortest. Or specify empty to use default.
+     */
+    public GHMatrixRequest setWeighting(String w) {
+        hints.setWeighting(w);
+        return this;
+    }
+
+    public String getVehicle() {
+        return hints.getVehicle();
+    }
+
+    /**
+     * Specify car, bike or foot. Or specify empty to use default.
+     */
+    public GHMatrixRequest setVehicle(String vehicle) {
+        hints.setVehicle(vehicle);
+        return this;
+    }
+
+    public HintsMap getHints() {
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return fromPoints.size() + "x" + toPoints.size() + ", " + hints;
+    }
+}
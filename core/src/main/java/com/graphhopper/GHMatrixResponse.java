@@ -0,0 +1,80 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.DistanceMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper containing the matrix and error output of a many-to-many calculation.
+ *
+ * @see GraphHopper#calcMatrix(GHMatrixRequest)
+ */
+public class GHMatrixResponse {
+    private final List<Throwable> errors = new ArrayList<>(4);
+    private DistanceMatrix matrix;
+    private String debugInfo = "";
+
+    public DistanceMatrix getMatrix() {
+        if (matrix == null)
+            throw new IllegalStateException("Cannot fetch matrix if it was not calculated. Errors: " + errors);
+        return matrix;
+    }
+
+    public GHMatrixResponse setMatrix(DistanceMatrix matrix) {
+        this.matrix = matrix;
+        return this;
+    }
+
+    public void addDebugInfo(String debugInfo) {
+        if (debugInfo == null)
+            throw new IllegalStateException("Debug information has to be none null");
+
+        if (!this.debugInfo.isEmpty())
+            this.debugInfo += "; ";
+
+        this.debugInfo += debugInfo;
+    }
+
+    public String getDebugInfo() {
+        return debugInfo;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors() {
+        return errors;
+    }
+
+    public GHMatrixResponse addError(Throwable error) {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        String str = matrix == null ? "no matrix" : matrix.toString();
+        if (!errors.isEmpty())
+            str += ", errors: " + errors;
+        return str;
+    }
+}
@@ -17,13 +17,20 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntLongMap;
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.reader.dem.*;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHAlgoFactoryDecorator;
+import com.graphhopper.routing.ch.CustomizableContractionHierarchy;
+import com.graphhopper.routing.ch.HubLabelMatrix;
+import com.graphhopper.routing.ch.HubLabels;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
 import com.graphhopper.routing.template.AlternativeRoutingTemplate;
 import com.graphhopper.routing.template.RoundTripRoutingTemplate;
@@ -34,6 +41,7 @@ import com.graphhopper.routing.weighting.*;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.change.ChangeGraphHelper;
 import com.graphhopper.storage.change.ChangeGraphResponse;
+import com.graphhopper.storage.index.CachingLocationIndex;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
@@ -42,6 +50,7 @@ import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
@@ -52,8 +61,10 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.graphhopper.util.Parameters.Algorithms.*;
@@ -79,6 +90,10 @@ public class GraphHopper implements GraphHopperAPI {
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
     private boolean sortGraph = false;
+    private String sortOrder = "dfs";
+    private boolean compactAdjacency = false;
+    private boolean compressedGeometry = false;
+    private boolean compactTurnCosts = false;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -91,10 +106,23 @@ public class GraphHopper implements GraphHopperAPI {
     private int maxVisitedNodes = Integer.MAX_VALUE;
 
     private int nonChMaxWaypointDistance = Integer.MAX_VALUE;
+    private int maxMatrixLocations = Integer.MAX_VALUE;
+    private int maxIsochroneBuckets = 10;
+    private int maxIsochronePoints = Integer.MAX_VALUE;
+    private BidirSearchStatePool statePool;
+    private RouteCache routeCache;
+    private ForkJoinPool legPool;
+    // incremented for every change of the graph to make cached route responses stale
+    private volatile long graphVersion;
+    private double isochroneResolution = 200;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int indexThreads = 1;
+    private int indexCacheSize = 0;
+    private CachingLocationIndex.Eviction indexCacheEviction = CachingLocationIndex.Eviction.LRU;
+    private CachingLocationIndex indexCache;
     // for prepare
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
@@ -109,10 +137,15 @@ public class GraphHopper implements GraphHopperAPI {
     private String dataReaderFile;
     private double dataReaderWayPointMaxDistance = 1;
     private int dataReaderWorkerThreads = 2;
+    private int dataReaderWayThreads = 1;
+    private String dataReaderNodeMapType = "btree";
+    private boolean dataReaderIncremental = false;
     private boolean calcPoints = true;
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private FlagEncoderFactory flagEncoderFactory = FlagEncoderFactory.DEFAULT;
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    // serializes graph changes, which can take longer than the write lock is held
+    private final Lock changeLock = new ReentrantLock();
 
     private CmdArgs userDetails;
 
@@ -182,6 +215,51 @@ public class GraphHopper implements GraphHopperAPI {
         return dataReaderWorkerThreads;
     }
 
+    /**
+     * Threads to encode the ways and simplify their geometry while reading the data.
+     */
+    protected int getWayThreads() {
+        return dataReaderWayThreads;
+    }
+
+    /**
+     * Sets the number of threads to encode the tags of the ways and to simplify their geometry
+     * while the edges are still created in the order of the data. Default is 1.
+     */
+    public GraphHopper setWayThreads(int wayThreads) {
+        this.dataReaderWayThreads = wayThreads;
+        return this;
+    }
+
+    /**
+     * The map from the node IDs of the data to internal node IDs used while reading the data.
+     */
+    protected String getNodeMapType() {
+        return dataReaderNodeMapType;
+    }
+
+    /**
+     * Sets the type of the node ID map used while reading the data. Use "paged" to store the map
+     * outside of the Java heap for big imports, default is "btree".
+     */
+    public GraphHopper setNodeMapType(String nodeMapType) {
+        this.dataReaderNodeMapType = nodeMapType;
+        return this;
+    }
+
+    protected boolean isIncremental() {
+        return dataReaderIncremental;
+    }
+
+    /**
+     * Keeps the data necessary to apply change files via applyChanges after the import. Then the
+     * subnetworks are only disabled but not removed from the graph and sorting is not possible.
+     */
+    public GraphHopper setIncremental(boolean incremental) {
+        this.dataReaderIncremental = incremental;
+        return this;
+    }
+
     /**
      * Return maximum distance (in meter) to reduce points via douglas peucker while OSM import.
      */
@@ -248,6 +326,36 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to create the location index.
+     */
+    public GraphHopper setIndexThreads(int indexThreads) {
+        ensureNotLoaded();
+        this.indexThreads = indexThreads;
+        return this;
+    }
+
+    /**
+     * Enables a cache for the snapping of the query points with the specified number of entries.
+     * Repeated requests for the same coordinates are then answered without searching the location
+     * index. The cache is invalidated for the edges changed via changeGraph or applyChanges.
+     *
+     * @param eviction LRU or TINY_LFU which keeps frequently requested points more reliably
+     */
+    public GraphHopper setIndexCache(int size, CachingLocationIndex.Eviction eviction) {
+        ensureNotLoaded();
+        this.indexCacheSize = size;
+        this.indexCacheEviction = eviction;
+        return this;
+    }
+
+    /**
+     * @return the cache in front of the location index or null if not enabled, see setIndexCache
+     */
+    public CachingLocationIndex getIndexCache() {
+        return indexCache;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize, int minOneWayNetworkSize) {
         this.minNetworkSize = minNetworkSize;
         this.minOneWayNetworkSize = minOneWayNetworkSize;
@@ -331,6 +439,110 @@ public class GraphHopper implements GraphHopperAPI {
         this.maxVisitedNodes = maxVisitedNodes;
     }
 
+    public int getMaxMatrixLocations() {
+        return maxMatrixLocations;
+    }
+
+    /**
+     * This method limits the number of origins plus destinations of a matrix request.
+     */
+    public GraphHopper setMaxMatrixLocations(int maxMatrixLocations) {
+        this.maxMatrixLocations = maxMatrixLocations;
+        return this;
+    }
+
+    public boolean isStatePoolEnabled() {
+        return statePool != null;
+    }
+
+    /**
+     * Enables the reuse of the search data structures per request thread for the bidirectional
+     * Dijkstra (the default algorithm for CH) and for the shortest path tree of isochrones, which
+     * avoids most of the allocations per query. This needs memory proportional to the number of
+     * nodes for every request thread and weighting, see BidirSearchStatePool. Default is false.
+     */
+    public GraphHopper setStatePoolEnabled(boolean enabled) {
+        statePool = enabled ? new BidirSearchStatePool() : null;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads shared by all requests to calculate the legs between the points
+     * of a route with via points concurrently. Legs with a heading or pass through constraint are
+     * still calculated one after the other. Default is 1 which calculates all legs in the request
+     * thread.
+     */
+    public GraphHopper setLegThreads(int threads) {
+        if (legPool != null)
+            legPool.shutdown();
+        legPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        return this;
+    }
+
+    /**
+     * Enables a cache for the responses of route(GHRequest) with the specified number of entries.
+     * A response is returned from the cache for requests with the same rounded points and hints
+     * until it expires or the graph is changed via changeGraph or applyChanges.
+     *
+     * @param ttlSeconds the time after which a response expires, 0 for no expiration
+     */
+    public GraphHopper setRouteCache(int size, long ttlSeconds) {
+        routeCache = size > 0 ? new RouteCache(size, ttlSeconds * 1000) : null;
+        return this;
+    }
+
+    /**
+     * @return the cache of the route responses or null if not enabled, see setRouteCache
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * @return a counter which is incremented for every change of the graph via changeGraph or
+     * applyChanges
+     */
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    public int getMaxIsochroneBuckets() {
+        return maxIsochroneBuckets;
+    }
+
+    /**
+     * This method limits the number of buckets of an isochrone request.
+     */
+    public GraphHopper setMaxIsochroneBuckets(int maxIsochroneBuckets) {
+        this.maxIsochroneBuckets = maxIsochroneBuckets;
+        return this;
+    }
+
+    public int getMaxIsochronePoints() {
+        return maxIsochronePoints;
+    }
+
+    /**
+     * This method limits the number of start points of an isochrone request.
+     */
+    public GraphHopper setMaxIsochronePoints(int maxIsochronePoints) {
+        this.maxIsochronePoints = maxIsochronePoints;
+        return this;
+    }
+
+    public double getIsochroneResolution() {
+        return isochroneResolution;
+    }
+
+    /**
+     * This method sets the size of the raster cells in meters that is used to create the isochrone
+     * polygons. Default is 200.
+     */
+    public GraphHopper setIsochroneResolution(double isochroneResolution) {
+        this.isochroneResolution = isochroneResolution;
+        return this;
+    }
+
     /**
      * @return true if storing and fetching elevation data is enabled. Default is false
      */
@@ -476,6 +688,48 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Specifies how the graph is sorted if sorting is enabled: 'dfs' numbers the nodes in the order
+     * of a depth first search, 'hilbert' numbers the nodes along a Hilbert curve and the edges by
+     * their nodes, which improves the memory locality for big graphs.
+     */
+    public GraphHopper setSortOrder(String sortOrder) {
+        ensureNotLoaded();
+        this.sortOrder = sortOrder;
+        return this;
+    }
+
+    /**
+     * Copies the adjacency lists into a compact read-only layout after the import and the
+     * preparations, which makes the graph traversal faster. Afterwards the graph cannot be changed
+     * via applyChanges. See GraphHopperStorage.compactAdjacency
+     */
+    public GraphHopper setCompactAdjacency(boolean compactAdjacency) {
+        ensureNotLoaded();
+        this.compactAdjacency = compactAdjacency;
+        return this;
+    }
+
+    /**
+     * Stores the pillar nodes delta encoded which reduces the size of the geometry but makes fetching
+     * it slightly slower. The setting is stored in the graph and applies only to a new import.
+     */
+    public GraphHopper setCompressedGeometry(boolean compressedGeometry) {
+        ensureNotLoaded();
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
+    /**
+     * Stores the turn cost entries of every node contiguously and sorted after the import, which
+     * makes the lookup for edge based routing faster. See TurnCostExtension.compact
+     */
+    public GraphHopper setCompactTurnCosts(boolean compactTurnCosts) {
+        ensureNotLoaded();
+        this.compactTurnCosts = compactTurnCosts;
+        return this;
+    }
+
     public boolean isAllowWrites() {
         return allowWrites;
     }
@@ -533,6 +787,10 @@ public class GraphHopper implements GraphHopperAPI {
         dataAccessType = DAType.fromString(graphDATypeStr);
 
         sortGraph = args.getBool("graph.do_sort", sortGraph);
+        sortOrder = args.get("graph.sort_order", sortOrder);
+        compactAdjacency = args.getBool("graph.compact_adjacency", compactAdjacency);
+        compressedGeometry = args.getBool("graph.geometry.compressed", compressedGeometry);
+        compactTurnCosts = args.getBool("graph.compact_turn_costs", compactTurnCosts);
         removeZipped = args.getBool("graph.remove_zipped", removeZipped);
         int bytesForFlags = args.getInt("graph.bytes_for_flags", 4);
         String flagEncodersStr = args.get("graph.flag_encoders", "");
@@ -590,17 +848,32 @@ public class GraphHopper implements GraphHopperAPI {
         dataReaderWayPointMaxDistance = args.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, dataReaderWayPointMaxDistance);
 
         dataReaderWorkerThreads = args.getInt("datareader.worker_threads", dataReaderWorkerThreads);
+        dataReaderWayThreads = args.getInt("datareader.way_threads", dataReaderWayThreads);
+        dataReaderNodeMapType = args.get("datareader.node_map", dataReaderNodeMapType);
+        dataReaderIncremental = args.getBool("datareader.incremental", dataReaderIncremental);
         enableInstructions = args.getBool("datareader.instructions", enableInstructions);
         preferredLanguage = args.get("datareader.preferred_language", preferredLanguage);
 
         // index
         preciseIndexResolution = args.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = args.getInt("index.max_region_search", maxRegionSearch);
+        indexThreads = args.getInt("index.threads", indexThreads);
+        indexCacheSize = args.getInt("index.cache.size", indexCacheSize);
+        String evictionStr = args.get("index.cache.eviction", "");
+        if (!evictionStr.isEmpty())
+            indexCacheEviction = CachingLocationIndex.Eviction.valueOf(evictionStr.toUpperCase());
 
         // routing
         maxVisitedNodes = args.getInt(Routing.INIT_MAX_VISITED_NODES, Integer.MAX_VALUE);
         maxRoundTripRetries = args.getInt(RoundTrip.INIT_MAX_RETRIES, maxRoundTripRetries);
         nonChMaxWaypointDistance = args.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, Integer.MAX_VALUE);
+        maxMatrixLocations = args.getInt(Parameters.Matrix.INIT_MAX_LOCATIONS, maxMatrixLocations);
+        maxIsochroneBuckets = args.getInt(Parameters.Isochrone.INIT_MAX_BUCKETS, maxIsochroneBuckets);
+        maxIsochronePoints = args.getInt(Parameters.Isochrone.INIT_MAX_POINTS, maxIsochronePoints);
+        setStatePoolEnabled(args.getBool(Routing.INIT_STATE_POOL, isStatePoolEnabled()));
+        setRouteCache(args.getInt(Routing.INIT_CACHE_SIZE, 0), args.getLong(Routing.INIT_CACHE_TTL, 300));
+        setLegThreads(args.getInt(Routing.INIT_LEG_THREADS, 1));
+        isochroneResolution = args.getDouble(Parameters.Isochrone.INIT_RESOLUTION, isochroneResolution);
 
         return this;
     }
@@ -686,8 +959,14 @@ public class GraphHopper implements GraphHopperAPI {
             throw new IllegalArgumentException("No file for DataReader specified");
 
         logger.info("start creating graph from " + dataReaderFile);
-        return reader.setFile(new File(dataReaderFile)).
-                setElevationProvider(eleProvider).
+        return initDataReaderOptions(reader.setFile(new File(dataReaderFile)));
+    }
+
+    /**
+     * Configures the specified DataReader like for the import but without a file.
+     */
+    protected DataReader initDataReaderOptions(DataReader reader) {
+        return reader.setElevationProvider(eleProvider).
                 setWorkerThreads(dataReaderWorkerThreads).
                 setWayPointMaxDistance(dataReaderWayPointMaxDistance);
     }
@@ -738,13 +1017,14 @@ public class GraphHopper implements GraphHopperAPI {
             initLMAlgoFactoryDecorator();
 
         if (chFactoryDecorator.isEnabled()) {
-            initCHAlgoFactoryDecorator();
+            initCHAlgoFactoryDecorator(ext);
             ghStorage = new GraphHopperStorage(chFactoryDecorator.getWeightings(), dir, encodingManager, hasElevation(), ext);
         } else {
             ghStorage = new GraphHopperStorage(dir, encodingManager, hasElevation(), ext);
         }
 
         ghStorage.setSegmentSize(defaultSegmentSize);
+        ghStorage.setCompressedGeometry(compressedGeometry);
 
         if (!new File(graphHopperFolder).exists())
             return false;
@@ -793,13 +1073,18 @@ public class GraphHopper implements GraphHopperAPI {
         return chFactoryDecorator;
     }
 
-    private void initCHAlgoFactoryDecorator() {
+    private void initCHAlgoFactoryDecorator(GraphExtension ext) {
         if (!chFactoryDecorator.hasWeightings()) {
             for (FlagEncoder encoder : encodingManager.fetchEdgeEncoders()) {
                 for (String chWeightingStr : chFactoryDecorator.getWeightingsAsStrings()) {
                     // ghStorage is null at this point
                     Weighting weighting = createWeighting(new HintsMap(chWeightingStr), encoder, null);
                     chFactoryDecorator.addWeighting(weighting);
+                    if (chFactoryDecorator.isEdgeBased() && encoder.supports(TurnWeighting.class)) {
+                        if (!(ext instanceof TurnCostExtension))
+                            throw new IllegalArgumentException("Edge based CH requires turn cost support, see " + encoder);
+                        chFactoryDecorator.addWeighting(new TurnWeighting(weighting, (TurnCostExtension) ext));
+                    }
                 }
             }
         }
@@ -829,12 +1114,19 @@ public class GraphHopper implements GraphHopperAPI {
         // Or: Doing it after preparation to optimize shortcuts too. But not possible yet #12
 
         if (sortGraph) {
+            if (dataReaderIncremental)
+                throw new IllegalArgumentException("Sorting the graph is not possible if incremental updates are enabled");
             if (ghStorage.isCHPossible() && isCHPrepared())
                 throw new IllegalArgumentException("Sorting a prepared CHGraph is not possible yet. See #12");
 
             GraphHopperStorage newGraph = GHUtility.newStorage(ghStorage);
-            GHUtility.sortDFS(ghStorage, newGraph);
-            logger.info("graph sorted (" + Helper.getMemInfo() + ")");
+            if ("hilbert".equalsIgnoreCase(sortOrder))
+                GHUtility.sortHilbert(ghStorage, newGraph);
+            else if ("dfs".equalsIgnoreCase(sortOrder))
+                GHUtility.sortDFS(ghStorage, newGraph);
+            else
+                throw new IllegalArgumentException("Unknown graph.sort_order " + sortOrder + ", use dfs or hilbert");
+            logger.info("graph sorted via " + sortOrder + " (" + Helper.getMemInfo() + ")");
             ghStorage = newGraph;
         }
 
@@ -842,16 +1134,40 @@ public class GraphHopper implements GraphHopperAPI {
             interpolateBridgesAndOrTunnels();
         }
 
+        compactTurnCosts();
         initLocationIndex();
 
         if (chFactoryDecorator.isEnabled())
             chFactoryDecorator.createPreparations(ghStorage, traversalMode);
-        if (!isCHPrepared())
+        boolean prepareCHNow = !isCHPrepared();
+        if (prepareCHNow)
             prepareCH();
+        chFactoryDecorator.loadOrCreateHubLabels(ghStorage, prepareCHNow);
 
         if (lmFactoryDecorator.isEnabled())
             lmFactoryDecorator.createPreparations(ghStorage, locationIndex);
         loadOrPrepareLM();
+
+        if (compactAdjacency) {
+            StopWatch sw = new StopWatch().start();
+            ghStorage.compactAdjacency();
+            logger.info("compacted adjacency in " + sw.stop().getSeconds() + "s (" + Helper.getMemInfo() + ")");
+        }
+    }
+
+    private void compactTurnCosts() {
+        if (!compactTurnCosts || !(ghStorage.getExtension() instanceof TurnCostExtension))
+            return;
+
+        TurnCostExtension turnCostExt = (TurnCostExtension) ghStorage.getExtension();
+        if (!turnCostExt.isCompacted() && !allowWrites) {
+            logger.warn("Cannot compact the turn costs of a read-only graph");
+            return;
+        }
+
+        StopWatch sw = new StopWatch().start();
+        turnCostExt.compact();
+        logger.info("compacted turn costs in " + sw.stop().getSeconds() + "s (" + Helper.getMemInfo() + ")");
     }
 
     private void interpolateBridgesAndOrTunnels() {
@@ -924,6 +1240,11 @@ public class GraphHopper implements GraphHopperAPI {
      * Potentially wraps the specified weighting into a TurnWeighting instance.
      */
     public Weighting createTurnWeighting(Graph graph, Weighting weighting, TraversalMode tMode) {
+        // the weighting of an edge based CH preparation is already a TurnWeighting but it has to use the
+        // turn costs of the specified graph to take virtual edges into account
+        if (weighting instanceof TurnWeighting)
+            weighting = ((TurnWeighting) weighting).getSuperWeighting();
+
         FlagEncoder encoder = weighting.getFlagEncoder();
         if (encoder.supports(TurnWeighting.class) && !tMode.equals(TraversalMode.NODE_BASED))
             return new TurnWeighting(weighting, (TurnCostExtension) graph.getExtension());
@@ -932,8 +1253,21 @@ public class GraphHopper implements GraphHopperAPI {
 
     @Override
     public GHResponse route(GHRequest request) {
+        RouteCache cache = routeCache;
+        // read the version before routing, so that a response calculated during a change is stale
+        long version = graphVersion;
+        String key = null;
+        if (cache != null) {
+            key = cache.createKey(request);
+            GHResponse cached = cache.get(key, version);
+            if (cached != null)
+                return cached;
+        }
+
         GHResponse response = new GHResponse();
         calcPaths(request, response);
+        if (cache != null)
+            cache.put(key, response, version);
         return response;
     }
 
@@ -989,11 +1323,11 @@ public class GraphHopper implements GraphHopperAPI {
 
             RoutingTemplate routingTemplate;
             if (ROUND_TRIP.equalsIgnoreCase(algoStr))
-                routingTemplate = new RoundTripRoutingTemplate(request, ghRsp, locationIndex, maxRoundTripRetries);
+                routingTemplate = new RoundTripRoutingTemplate(request, ghRsp, getSnapIndex(), maxRoundTripRetries);
             else if (ALT_ROUTE.equalsIgnoreCase(algoStr))
-                routingTemplate = new AlternativeRoutingTemplate(request, ghRsp, locationIndex);
+                routingTemplate = new AlternativeRoutingTemplate(request, ghRsp, getSnapIndex());
             else
-                routingTemplate = new ViaRoutingTemplate(request, ghRsp, locationIndex);
+                routingTemplate = new ViaRoutingTemplate(request, ghRsp, getSnapIndex()).setLegPool(legPool);
 
             List<Path> altPaths = null;
             int maxRetries = routingTemplate.getMaxRetries();
@@ -1006,6 +1340,9 @@ public class GraphHopper implements GraphHopperAPI {
                 if (ghRsp.hasErrors())
                     return Collections.emptyList();
 
+                if (chFactoryDecorator.isEdgeBased() && !hints.has(Routing.EDGE_BASED))
+                    hints.put(Routing.EDGE_BASED, tMode.isEdgeBased());
+
                 RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(hints);
                 Weighting weighting;
                 QueryGraph queryGraph;
@@ -1020,12 +1357,11 @@ public class GraphHopper implements GraphHopperAPI {
                     if (tmpAlgoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory)
                         chAlgoFactory = ((LMAlgoFactoryDecorator.LMRAFactory) tmpAlgoFactory).getDefaultAlgoFactory();
 
-                    if (chAlgoFactory instanceof PrepareContractionHierarchies)
-                        weighting = ((PrepareContractionHierarchies) chAlgoFactory).getWeighting();
-                    else
+                    if (!(chAlgoFactory instanceof PrepareContractionHierarchies))
                         throw new IllegalStateException("Although CH was enabled a non-CH algorithm factory was returned " + tmpAlgoFactory);
 
-                    tMode = getCHFactoryDecorator().getNodeBase();
+                    weighting = ((PrepareContractionHierarchies) chAlgoFactory).getWeighting();
+                    tMode = ((PrepareContractionHierarchies) chAlgoFactory).getTraversalMode();
                     queryGraph = new QueryGraph(ghStorage.getGraph(CHGraph.class, weighting));
                     queryGraph.lookup(qResults);
                 } else {
@@ -1046,6 +1382,7 @@ public class GraphHopper implements GraphHopperAPI {
                         algorithm(algoStr).traversalMode(tMode).weighting(weighting).
                         maxVisitedNodes(maxVisitedNodesForRequest).
                         hints(hints).
+                        statePool(statePool).
                         build();
 
                 altPaths = routingTemplate.calcPaths(queryGraph, tmpAlgoFactory, algoOpts);
@@ -1074,31 +1411,398 @@ public class GraphHopper implements GraphHopperAPI {
         }
     }
 
+    /**
+     * This method calculates the weight, distance and time from every origin to every destination of
+     * the specified request. If CH is enabled a bucket based many-to-many search is used, which needs
+     * only one search per origin and one per destination, or the hub labels of the weighting if they
+     * are enabled. Otherwise every cell is calculated with the algorithm that would be used for a
+     * point-to-point request, e.g. A* with landmarks.
+     */
+    public GHMatrixResponse calcMatrix(GHMatrixRequest request) {
+        if (ghStorage == null || !fullyLoaded)
+            throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
+
+        if (ghStorage.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        GHMatrixResponse matrixRsp = new GHMatrixResponse();
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty()) {
+            vehicle = getDefaultVehicle().toString();
+            request.setVehicle(vehicle);
+        }
+
+        Lock readLock = readWriteLock.readLock();
+        readLock.lock();
+        try {
+            if (!encodingManager.supports(vehicle))
+                throw new IllegalArgumentException("Vehicle " + vehicle + " unsupported. "
+                        + "Supported are: " + getEncodingManager());
+
+            List<GHPoint> points = new ArrayList<>(request.getFromPoints());
+            points.addAll(request.getToPoints());
+            if (request.getFromPoints().isEmpty() || request.getToPoints().isEmpty())
+                throw new IllegalArgumentException("At least one origin and one destination have to be specified");
+            if (points.size() > maxMatrixLocations)
+                throw new IllegalArgumentException("Too many locations: " + points.size() + ", the maximum is " + maxMatrixLocations);
+
+            HintsMap hints = request.getHints();
+            boolean disableCH = hints.getBool(CH.DISABLE, false);
+            if (!chFactoryDecorator.isDisablingAllowed() && disableCH)
+                throw new IllegalArgumentException("Disabling CH not allowed on the server-side");
+
+            boolean disableLM = hints.getBool(Landmark.DISABLE, false);
+            if (!lmFactoryDecorator.isDisablingAllowed() && disableLM)
+                throw new IllegalArgumentException("Disabling LM not allowed on the server-side");
+
+            checkIfPointsAreInBounds(points);
+
+            StopWatch sw = new StopWatch().start();
+            FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+            EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
+            List<QueryResult> qResults = new ArrayList<>(points.size());
+            for (int pointIndex = 0; pointIndex < points.size(); pointIndex++) {
+                GHPoint point = points.get(pointIndex);
+                QueryResult qr = getSnapIndex().findClosest(point.lat, point.lon, edgeFilter);
+                if (!qr.isValid())
+                    matrixRsp.addError(new PointNotFoundException("Cannot find point " + pointIndex + ": " + point, pointIndex));
+
+                qResults.add(qr);
+            }
+            matrixRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+            if (matrixRsp.hasErrors())
+                return matrixRsp;
+
+            int maxVisitedNodesForRequest = hints.getInt(Routing.MAX_VISITED_NODES, maxVisitedNodes);
+            if (maxVisitedNodesForRequest > maxVisitedNodes)
+                throw new IllegalArgumentException("The max_visited_nodes parameter has to be below or equal to:" + maxVisitedNodes);
+
+            RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(hints);
+            QueryGraph queryGraph;
+            MatrixAlgorithm algo;
+            if (chFactoryDecorator.isEnabled() && !disableCH) {
+                RoutingAlgorithmFactory chAlgoFactory = tmpAlgoFactory;
+                if (tmpAlgoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory)
+                    chAlgoFactory = ((LMAlgoFactoryDecorator.LMRAFactory) tmpAlgoFactory).getDefaultAlgoFactory();
+
+                if (!(chAlgoFactory instanceof PrepareContractionHierarchies))
+                    throw new IllegalStateException("Although CH was enabled a non-CH algorithm factory was returned " + tmpAlgoFactory);
+
+                PrepareContractionHierarchies pch = (PrepareContractionHierarchies) chAlgoFactory;
+                queryGraph = new QueryGraph(ghStorage.getGraph(CHGraph.class, pch.getWeighting()));
+                queryGraph.lookup(qResults);
+                HubLabels hubLabels = chFactoryDecorator.getHubLabels(pch.getWeighting());
+                AlgorithmOptions algoOpts = AlgorithmOptions.start().
+                        algorithm(DIJKSTRA_BI).traversalMode(chFactoryDecorator.getNodeBase()).weighting(pch.getWeighting()).
+                        maxVisitedNodes(maxVisitedNodesForRequest).
+                        hints(hints).
+                        build();
+                algo = hubLabels == null ? pch.createMatrixAlgo(queryGraph, algoOpts) : new HubLabelMatrix(queryGraph, hubLabels);
+            } else {
+                queryGraph = new QueryGraph(ghStorage);
+                queryGraph.lookup(qResults);
+                Weighting weighting = createWeighting(hints, encoder, queryGraph);
+                AlgorithmOptions algoOpts = AlgorithmOptions.start().
+                        algorithm(ASTAR_BI).traversalMode(traversalMode).
+                        weighting(createTurnWeighting(queryGraph, weighting, traversalMode)).
+                        maxVisitedNodes(maxVisitedNodesForRequest).
+                        hints(hints).
+                        build();
+                algo = new PairwiseMatrixAlgorithm(queryGraph, tmpAlgoFactory, algoOpts);
+            }
+
+            int fromCount = request.getFromPoints().size();
+            int[] fromNodes = new int[fromCount];
+            int[] toNodes = new int[points.size() - fromCount];
+            for (int i = 0; i < qResults.size(); i++) {
+                if (i < fromCount)
+                    fromNodes[i] = qResults.get(i).getClosestNode();
+                else
+                    toNodes[i - fromCount] = qResults.get(i).getClosestNode();
+            }
+
+            sw = new StopWatch().start();
+            matrixRsp.setMatrix(algo.calcMatrix(fromNodes, toNodes));
+            matrixRsp.addDebugInfo(algo.getName() + "-routing:" + sw.stop().getSeconds() + "s, visited nodes sum: " + algo.getVisitedNodes());
+            return matrixRsp;
+
+        } catch (IllegalArgumentException ex) {
+            matrixRsp.addError(ex);
+            return matrixRsp;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Calculates the areas reachable from the specified points within the time or distance limit.
+     * One shortest path tree is explored per point on the graph without shortcuts, i.e. CH and LM
+     * are not used, and the reached nodes are converted into polygons per bucket. Turn costs are
+     * ignored.
+     */
+    public GHIsochroneResponse calcIsochrone(GHIsochroneRequest request) {
+        if (ghStorage == null || !fullyLoaded)
+            throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
+
+        if (ghStorage.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        GHIsochroneResponse isoRsp = new GHIsochroneResponse();
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty()) {
+            vehicle = getDefaultVehicle().toString();
+            request.setVehicle(vehicle);
+        }
+
+        Lock readLock = readWriteLock.readLock();
+        readLock.lock();
+        try {
+            if (!encodingManager.supports(vehicle))
+                throw new IllegalArgumentException("Vehicle " + vehicle + " unsupported. "
+                        + "Supported are: " + getEncodingManager());
+
+            List<GHPoint> points = request.getPoints();
+            if (points.isEmpty())
+                throw new IllegalArgumentException("At least one point has to be specified");
+            if (points.size() > maxIsochronePoints)
+                throw new IllegalArgumentException("Too many points: " + points.size() + ", the maximum is " + maxIsochronePoints);
+            int bucketCount = request.getBuckets();
+            if (bucketCount < 1 || bucketCount > maxIsochroneBuckets)
+                throw new IllegalArgumentException("Number of buckets has to be in [1, " + maxIsochroneBuckets + "] but was " + bucketCount);
+            boolean timeBased = request.getTimeLimit() > 0;
+            if (timeBased == request.getDistanceLimit() > 0)
+                throw new IllegalArgumentException("Specify either a positive time limit or a positive distance limit");
+
+            checkIfPointsAreInBounds(points);
+
+            StopWatch sw = new StopWatch().start();
+            FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+            EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
+            List<QueryResult> qResults = new ArrayList<>(points.size());
+            for (int pointIndex = 0; pointIndex < points.size(); pointIndex++) {
+                GHPoint point = points.get(pointIndex);
+                QueryResult qr = getSnapIndex().findClosest(point.lat, point.lon, edgeFilter);
+                if (!qr.isValid())
+                    isoRsp.addError(new PointNotFoundException("Cannot find point " + pointIndex + ": " + point, pointIndex));
+
+                qResults.add(qr);
+            }
+            isoRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+            if (isoRsp.hasErrors())
+                return isoRsp;
+
+            HintsMap hints = request.getHints();
+            int maxVisitedNodesForRequest = hints.getInt(Routing.MAX_VISITED_NODES, maxVisitedNodes);
+            if (maxVisitedNodesForRequest > maxVisitedNodes)
+                throw new IllegalArgumentException("The max_visited_nodes parameter has to be below or equal to:" + maxVisitedNodes);
+
+            sw = new StopWatch().start();
+            QueryGraph queryGraph = new QueryGraph(ghStorage);
+            queryGraph.lookup(qResults);
+            Weighting weighting = createWeighting(hints, encoder, queryGraph);
+            // all points share one tree to reuse its arrays, with the pool also subsequent requests
+            ShortestPathTree spt = statePool == null
+                    ? new ShortestPathTree(queryGraph, weighting, TraversalMode.NODE_BASED)
+                    : new ShortestPathTree(queryGraph, weighting, TraversalMode.NODE_BASED, statePool.getTreeState(queryGraph));
+            spt.setMaxVisitedNodes(maxVisitedNodesForRequest);
+            double limit = timeBased ? request.getTimeLimit() : request.getDistanceLimit();
+            if (timeBased)
+                spt.setTimeLimit(request.getTimeLimit() * 1000);
+            else
+                spt.setDistanceLimit(request.getDistanceLimit());
+
+            NodeAccess na = queryGraph.getNodeAccess();
+            RasterHullBuilder hullBuilder = new RasterHullBuilder(isochroneResolution);
+            int visitedNodesSum = 0;
+            for (int pointIndex = 0; pointIndex < qResults.size(); pointIndex++) {
+                spt.search(qResults.get(pointIndex).getClosestNode());
+                visitedNodesSum += spt.getVisitedNodes();
+                hullBuilder.clear();
+                int reachedNodes = 0;
+                List<IntArrayList> buckets = spt.createBuckets(bucketCount);
+                for (int bucket = 0; bucket < bucketCount; bucket++) {
+                    IntArrayList nodes = buckets.get(bucket);
+                    for (int i = 0; i < nodes.size(); i++) {
+                        int node = nodes.get(i);
+                        int parent = spt.getParent(node);
+                        if (parent < 0)
+                            hullBuilder.addPoint(na.getLatitude(node), na.getLongitude(node));
+                        else
+                            hullBuilder.addLine(na.getLatitude(parent), na.getLongitude(parent),
+                                    na.getLatitude(node), na.getLongitude(node));
+                    }
+                    reachedNodes += nodes.size();
+                    isoRsp.addBucket(new GHIsochroneResponse.Bucket(pointIndex, bucket,
+                            limit * (bucket + 1) / bucketCount, reachedNodes, hullBuilder.build()));
+                }
+            }
+            isoRsp.addDebugInfo(spt.getName() + "-routing:" + sw.stop().getSeconds() + "s, visited nodes sum: " + visitedNodesSum);
+            return isoRsp;
+
+        } catch (IllegalArgumentException ex) {
+            isoRsp.addError(ex);
+            return isoRsp;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     /**
      * This method applies the changes to the graph specified as feature collection. It does so by locking the routing
      * to avoid concurrent changes which could result in incorrect routing (like when done while a Dijkstra search) or
-     * also while just reading one edge row (inconsistent edge properties).
+     * also while just reading one edge row (inconsistent edge properties). If landmarks are enabled the weights of
+     * the landmarks affected by the changes are recalculated afterwards. CH is only supported if all preparations are
+     * customizable, then the shortcut weights are customized again afterwards. Until the customization is applied
+     * CH routes are still calculated with the old shortcuts.
      */
     public ChangeGraphResponse changeGraph(Collection<JsonFeature> collection) {
         // TODO allow calling this method if called before CH preparation
-        if (getCHFactoryDecorator().isEnabled())
-            throw new IllegalArgumentException("To use the changeGraph API you need to turn off CH");
+        if (getCHFactoryDecorator().isEnabled()) {
+            for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+                if (pch.getCustomizableCH() == null)
+                    throw new IllegalArgumentException("To use the changeGraph API you need to turn off CH or enable "
+                            + CH.PREPARE + "customizable without edge based CH");
+            }
+            if (!chFactoryDecorator.getHubLabels().isEmpty())
+                throw new IllegalArgumentException("To use the changeGraph API you need to turn off the hub labels");
+        }
 
-        Lock writeLock = readWriteLock.writeLock();
-        writeLock.lock();
+        changeLock.lock();
         try {
             ChangeGraphHelper overlay = createChangeGraphHelper(ghStorage, locationIndex);
-            long updateCount = overlay.applyChanges(encodingManager, collection);
+            long updateCount;
+            Lock writeLock = readWriteLock.writeLock();
+            writeLock.lock();
+            try {
+                updateCount = overlay.applyChanges(encodingManager, collection);
+                if (indexCache != null)
+                    indexCache.invalidate(overlay.getChangedEdges().keys());
+                graphVersion++;
+            } finally {
+                writeLock.unlock();
+            }
+
+            if (chFactoryDecorator.isEnabled() && !overlay.getChangedEdges().isEmpty())
+                customizeCH();
+            if (lmFactoryDecorator.isEnabled() && fullyLoaded && !overlay.getChangedEdges().isEmpty())
+                updateLandmarks(overlay.getChangedEdges());
             return new ChangeGraphResponse(updateCount);
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * This method customizes the shortcut weights of all CH preparations for the changed edges. Like for the
+     * landmarks the routing is not locked while the new weights are calculated, only while the shortcuts are
+     * written. Meanwhile the old shortcuts can still lead over closed edges.
+     */
+    private void customizeCH() {
+        StopWatch sw = new StopWatch().start();
+        List<CustomizableContractionHierarchy.Customization> customizations = new ArrayList<>();
+        for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+            customizations.add(pch.prepareCustomization());
+        }
+
+        Lock writeLock = readWriteLock.writeLock();
+        writeLock.lock();
+        try {
+            for (CustomizableContractionHierarchy.Customization customization : customizations) {
+                customization.apply();
+            }
+            // routes cached since the graph change used the old shortcuts
+            graphVersion++;
         } finally {
             writeLock.unlock();
         }
+        logger.info("Customized " + customizations.size() + " CH preparations in " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * This method recalculates the landmark weights that are affected by the specified edge changes. The routing is
+     * not locked while the new weights are calculated, only while they are copied into the landmark storages.
+     */
+    private void updateLandmarks(IntLongMap changedEdges) {
+        StopWatch sw = new StopWatch().start();
+        List<LandmarkStorage.WeightUpdate> updates = new ArrayList<>();
+        int updatedLandmarks = 0;
+        for (PrepareLandmarks plm : lmFactoryDecorator.getPreparations()) {
+            LandmarkStorage.WeightUpdate update = plm.prepareUpdate(changedEdges, lmFactoryDecorator.getUpdateThreads());
+            updatedLandmarks += update.getUpdatedLandmarks();
+            updates.add(update);
+        }
+
+        Lock writeLock = readWriteLock.writeLock();
+        writeLock.lock();
+        try {
+            for (LandmarkStorage.WeightUpdate update : updates) {
+                update.apply();
+            }
+            // routes cached since the graph change used the old landmark weights
+            graphVersion++;
+        } finally {
+            writeLock.unlock();
+        }
+        logger.info("Recalculated weights of " + updatedLandmarks + " landmarks for " + changedEdges.size()
+                + " changed edges in " + sw.stop().getSeconds() + "s");
     }
 
     protected ChangeGraphHelper createChangeGraphHelper(Graph graph, LocationIndex locationIndex) {
         return new ChangeGraphHelper(graph, locationIndex);
     }
 
+    /**
+     * This method applies the specified change file, e.g. an OSM change file, to the graph without a
+     * new import. Like changeGraph it locks the routing while doing so. The graph has to be imported
+     * with incremental updates enabled and without CH or LM preparation. Afterwards the CH and LM
+     * preparations are marked as not done and the changed area is accumulated in the property
+     * 'datareader.changes.bbox', so that a copy of the graph can be prepared again.
+     *
+     * @return the bounds of the changed area
+     */
+    public BBox applyChanges(String changeFile) {
+        ensureWriteAccess();
+        if (ghStorage.isAdjacencyCompacted())
+            throw new IllegalStateException("Cannot apply changes if the adjacency is compacted, see graph.compact_adjacency");
+
+        changeLock.lock();
+        Lock writeLock = readWriteLock.writeLock();
+        writeLock.lock();
+        try {
+            BBox changedBounds = applyChanges(ghStorage, locationIndex, new File(changeFile));
+            StorableProperties properties = ghStorage.getProperties();
+            if (changedBounds.isValid()) {
+                String oldBounds = properties.get("datareader.changes.bbox");
+                if (!oldBounds.isEmpty()) {
+                    BBox bounds = BBox.parseBBoxString(oldBounds);
+                    changedBounds.update(bounds.minLat, bounds.minLon);
+                    changedBounds.update(bounds.maxLat, bounds.maxLon);
+                }
+                properties.put("datareader.changes.bbox", changedBounds.toString());
+            }
+            properties.put("datareader.changes.date", Helper.createFormatter().format(new Date()));
+            compactTurnCosts();
+            // the change file can also move nodes and add edges, so invalidating single edges is not enough
+            if (indexCache != null)
+                indexCache.clear();
+            graphVersion++;
+            properties.put(CH.PREPARE + "done", false);
+            properties.put(Landmark.PREPARE + "done", false);
+            locationIndex.flush();
+            flush();
+            return changedBounds;
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot apply change file " + changeFile, ex);
+        } finally {
+            writeLock.unlock();
+            changeLock.unlock();
+        }
+    }
+
+    protected BBox applyChanges(GraphHopperStorage ghStorage, LocationIndex locationIndex, File changeFile) throws IOException {
+        throw new UnsupportedOperationException("Cannot apply changes. Use e.g. GraphHopperOSM");
+    }
+
     private void checkIfPointsAreInBounds(List<GHPoint> points) {
         BBox bounds = getGraphHopperStorage().getBounds();
         for (int i = 0; i < points.size(); i++) {
@@ -1134,6 +1838,7 @@ public class GraphHopper implements GraphHopperAPI {
         LocationIndexTree tmpIndex = new LocationIndexTree(ghStorage, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
+        tmpIndex.setPrepareThreads(indexThreads);
         if (!tmpIndex.loadExisting()) {
             ensureWriteAccess();
             tmpIndex.prepareIndex();
@@ -1150,6 +1855,15 @@ public class GraphHopper implements GraphHopperAPI {
             throw new IllegalStateException("Cannot initialize locationIndex twice!");
 
         locationIndex = createLocationIndex(ghStorage.getDirectory());
+        if (indexCacheSize > 0)
+            indexCache = new CachingLocationIndex(ghStorage, locationIndex, indexCacheSize, indexCacheEviction);
+    }
+
+    /**
+     * @return the location index used to snap the query points, which is the cache if enabled
+     */
+    private LocationIndex getSnapIndex() {
+        return indexCache == null ? locationIndex : indexCache;
     }
 
     private boolean isCHPrepared() {
@@ -1192,6 +1906,8 @@ public class GraphHopper implements GraphHopperAPI {
     protected void cleanUp() {
         int prevNodeCount = ghStorage.getNodes();
         PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(ghStorage, encodingManager.fetchEdgeEncoders());
+        // the stored data for incremental updates relies on the node IDs of the import
+        preparation.setRemoveNodes(!dataReaderIncremental);
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.setMinOneWayNetworkSize(minOneWayNetworkSize);
         preparation.doWork();
@@ -1221,6 +1937,13 @@ public class GraphHopper implements GraphHopperAPI {
         if (locationIndex != null)
             locationIndex.close();
 
+        for (HubLabels hubLabels : chFactoryDecorator.getHubLabels()) {
+            hubLabels.close();
+        }
+
+        if (legPool != null)
+            legPool.shutdown();
+
         try {
             lockFactory.forceRemove(fileLockName, true);
         } catch (Exception ex) {
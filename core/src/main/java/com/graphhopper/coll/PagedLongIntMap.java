@@ -0,0 +1,275 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.BitUtil;
+import com.graphhopper.util.Helper;
+
+/**
+ * A map from long to int for big and mostly dense keys like OSM node IDs. The key range is split
+ * into pages of 256 keys and only pages with at least one entry have a block in a DataAccess. A
+ * block stores a bit set of the used keys and the values in key order, so a sparsely used page
+ * needs only a few bytes. The blocks grow in steps and released blocks are reused.
+ * <p>
+ * Every operation is O(1) and there are no objects per entry, so the memory is outside of the Java
+ * heap if an MMAP directory is used. Negative and very large keys are stored in a GHLongIntBTree.
+ * <p>
+ * A map created with a name can be flushed and loaded again. The keys of the GHLongIntBTree are
+ * not stored then and released blocks are not reused after loading.
+ */
+public class PagedLongIntMap implements LongIntMap {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final long MAX_KEY = (long) Integer.MAX_VALUE << PAGE_BITS;
+    // grow the blocks by roughly 1.5 to waste less memory than with doubling
+    private static final int[] CAPACITIES = {4, 8, 12, 16, 24, 32, 48, 64, 96, 128, 192, PAGE_SIZE};
+    // the block header is the index into CAPACITIES and the number of entries followed by the bit set
+    private static final int SIZE_CLASS = 0, COUNT = 4, BITS = 8;
+    private static final int HEADER_BYTES = BITS + PAGE_SIZE / 8;
+    // block positions are stored in units of 8 bytes which is the alignment of all blocks
+    private static final int ALIGN_BITS = 3;
+    private final int noEntryValue;
+    private final Directory dir;
+    private final DataAccess pages;
+    private final DataAccess blocks;
+    private final IntArrayList[] freeBlocks;
+    private final byte[] buffer = new byte[HEADER_BYTES + PAGE_SIZE * 4];
+    private long blocksEnd;
+    private long size;
+    private GHLongIntBTree otherKeys;
+
+    public PagedLongIntMap(Directory dir) {
+        this(dir, -1);
+    }
+
+    public PagedLongIntMap(Directory dir, int noEntryValue) {
+        this(dir, "tmp_node_map", noEntryValue);
+        create();
+    }
+
+    /**
+     * Creates a map stored in the DataAccess objects 'name'_pages and 'name'_blocks of the
+     * specified directory. Call create or loadExisting before using it.
+     */
+    public PagedLongIntMap(Directory dir, String name, int noEntryValue) {
+        this.dir = dir;
+        this.noEntryValue = noEntryValue;
+        pages = dir.find(name + "_pages");
+        blocks = dir.find(name + "_blocks");
+        freeBlocks = new IntArrayList[CAPACITIES.length];
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = new IntArrayList();
+        }
+    }
+
+    public PagedLongIntMap create() {
+        pages.create(1000);
+        blocks.create(1000);
+        // position 0 marks a page without block
+        blocksEnd = 1 << ALIGN_BITS;
+        return this;
+    }
+
+    public boolean loadExisting() {
+        if (!pages.loadExisting() || !blocks.loadExisting())
+            return false;
+
+        blocksEnd = BitUtil.LITTLE.combineIntsToLong(blocks.getHeader(0), blocks.getHeader(4));
+        size = BitUtil.LITTLE.combineIntsToLong(blocks.getHeader(8), blocks.getHeader(12));
+        return true;
+    }
+
+    public void flush() {
+        blocks.setHeader(0, BitUtil.LITTLE.getIntLow(blocksEnd));
+        blocks.setHeader(4, BitUtil.LITTLE.getIntHigh(blocksEnd));
+        blocks.setHeader(8, BitUtil.LITTLE.getIntLow(size));
+        blocks.setHeader(12, BitUtil.LITTLE.getIntHigh(size));
+        pages.flush();
+        blocks.flush();
+    }
+
+    public void close() {
+        pages.close();
+        blocks.close();
+        otherKeys = null;
+    }
+
+    @Override
+    public int put(long key, int value) {
+        if (key < 0 || key >= MAX_KEY)
+            return getOtherKeys().put(key, value);
+
+        long page = key >>> PAGE_BITS;
+        long block = getBlock(page);
+        if (block == 0) {
+            block = allocate(0);
+            pages.ensureCapacity((page + 1) * 4);
+            setBlock(page, block);
+        }
+
+        int bit = (int) (key & (PAGE_SIZE - 1));
+        long bitsPos = block + BITS + (bit >>> 5) * 4;
+        int bits = blocks.getInt(bitsPos);
+        int mask = 1 << (bit & 31);
+        int index = rank(block, bit);
+        if ((bits & mask) != 0) {
+            long valuePos = block + HEADER_BYTES + index * 4;
+            int oldValue = blocks.getInt(valuePos);
+            blocks.setInt(valuePos, value);
+            return oldValue;
+        }
+
+        int count = blocks.getInt(block + COUNT);
+        if (count == CAPACITIES[blocks.getInt(block + SIZE_CLASS)]) {
+            block = grow(block, count);
+            setBlock(page, block);
+            bitsPos = block + BITS + (bit >>> 5) * 4;
+        }
+
+        long valuePos = block + HEADER_BYTES + index * 4;
+        int moveBytes = (count - index) * 4;
+        if (moveBytes > 0) {
+            blocks.getBytes(valuePos, buffer, moveBytes);
+            blocks.setBytes(valuePos + 4, buffer, moveBytes);
+        }
+        blocks.setInt(valuePos, value);
+        blocks.setInt(bitsPos, bits | mask);
+        blocks.setInt(block + COUNT, count + 1);
+        size++;
+        return noEntryValue;
+    }
+
+    @Override
+    public int get(long key) {
+        if (key < 0 || key >= MAX_KEY)
+            return otherKeys == null ? noEntryValue : otherKeys.get(key);
+
+        long page = key >>> PAGE_BITS;
+        if ((page + 1) * 4 > pages.getCapacity())
+            return noEntryValue;
+
+        long block = getBlock(page);
+        if (block == 0)
+            return noEntryValue;
+
+        int bit = (int) (key & (PAGE_SIZE - 1));
+        int bits = blocks.getInt(block + BITS + (bit >>> 5) * 4);
+        if ((bits & (1 << (bit & 31))) == 0)
+            return noEntryValue;
+
+        return blocks.getInt(block + HEADER_BYTES + rank(block, bit) * 4);
+    }
+
+    /**
+     * @return the number of used keys in the page before the specified bit
+     */
+    private int rank(long block, int bit) {
+        int word = bit >>> 5;
+        int rank = 0;
+        for (int i = 0; i < word; i++) {
+            rank += Integer.bitCount(blocks.getInt(block + BITS + i * 4));
+        }
+        int lowerBits = (1 << (bit & 31)) - 1;
+        return rank + Integer.bitCount(blocks.getInt(block + BITS + word * 4) & lowerBits);
+    }
+
+    private long getBlock(long page) {
+        if ((page + 1) * 4 > pages.getCapacity())
+            return 0;
+
+        return (pages.getInt(page * 4) & 0xFFFFFFFFL) << ALIGN_BITS;
+    }
+
+    private void setBlock(long page, long block) {
+        pages.setInt(page * 4, (int) (block >>> ALIGN_BITS));
+    }
+
+    private long grow(long block, int count) {
+        int sizeClass = blocks.getInt(block + SIZE_CLASS);
+        long newBlock = allocate(sizeClass + 1);
+        int bytes = HEADER_BYTES - BITS + count * 4;
+        blocks.getBytes(block + BITS, buffer, bytes);
+        blocks.setBytes(newBlock + BITS, buffer, bytes);
+        blocks.setInt(newBlock + COUNT, count);
+        freeBlocks[sizeClass].add((int) (block >>> ALIGN_BITS));
+        return newBlock;
+    }
+
+    private long allocate(int sizeClass) {
+        IntArrayList free = freeBlocks[sizeClass];
+        long block;
+        if (free.isEmpty()) {
+            block = blocksEnd;
+            blocksEnd += HEADER_BYTES + CAPACITIES[sizeClass] * 4;
+            if (blocksEnd >>> ALIGN_BITS > 0xFFFFFFFFL)
+                throw new IllegalStateException("Too many entries for node map " + size);
+
+            blocks.ensureCapacity(blocksEnd);
+        } else {
+            block = (free.remove(free.size() - 1) & 0xFFFFFFFFL) << ALIGN_BITS;
+        }
+
+        blocks.setInt(block + SIZE_CLASS, sizeClass);
+        blocks.setInt(block + COUNT, 0);
+        for (int i = BITS; i < HEADER_BYTES; i += 4) {
+            blocks.setInt(block + i, 0);
+        }
+        return block;
+    }
+
+    private GHLongIntBTree getOtherKeys() {
+        if (otherKeys == null)
+            otherKeys = new GHLongIntBTree(200);
+
+        return otherKeys;
+    }
+
+    @Override
+    public long getSize() {
+        return otherKeys == null ? size : size + otherKeys.getSize();
+    }
+
+    @Override
+    public void optimize() {
+        if (otherKeys != null)
+            otherKeys.optimize();
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        int otherMemory = otherKeys == null ? 0 : otherKeys.getMemoryUsage();
+        return Math.round((pages.getCapacity() + blocks.getCapacity()) / Helper.MB) + otherMemory;
+    }
+
+    /**
+     * Releases the underlying DataAccess objects and removes their files.
+     */
+    public void remove() {
+        dir.remove(pages);
+        dir.remove(blocks);
+        otherKeys = null;
+    }
+
+    @Override
+    public String toString() {
+        return "pages:" + pages.getCapacity() / 4 + ", blocks:" + blocksEnd + ", size:" + getSize();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.geohash;
+
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+/**
+ * This class maps a point to its position on a Hilbert curve through the cells of the spatial key.
+ * The cells are the same as for the SpatialKeyAlgo with the same bits, only the order differs: the
+ * spatial key (Z-order) jumps between distant cells at every quadrant border, whereas two
+ * consecutive cells on the Hilbert curve always share a side. This makes the key suitable as sort
+ * order for data which is accessed by proximity like the nodes of a road network.
+ * <p>
+ * The number of bits has to be even and is limited to 62.
+ *
+ * @see SpatialKeyAlgo
+ */
+public class HilbertKeyAlgo implements KeyAlgo {
+    private final SpatialKeyAlgo spatialKeyAlgo;
+    private final int bitsPerAxis;
+
+    public HilbertKeyAlgo(int allBits) {
+        if ((allBits & 0x1) == 1)
+            throw new IllegalArgumentException("allBits needs to be even to use the same amount for lat and lon but was " + allBits);
+        if (allBits > 62)
+            throw new IllegalArgumentException("allBits is too big, maximum is 62 but was " + allBits);
+
+        this.spatialKeyAlgo = new SpatialKeyAlgo(allBits);
+        this.bitsPerAxis = allBits / 2;
+    }
+
+    public HilbertKeyAlgo bounds(BBox box) {
+        spatialKeyAlgo.bounds(box);
+        return this;
+    }
+
+    @Override
+    public HilbertKeyAlgo setBounds(double minLonInit, double maxLonInit, double minLatInit, double maxLatInit) {
+        spatialKeyAlgo.setBounds(minLonInit, maxLonInit, minLatInit, maxLatInit);
+        return this;
+    }
+
+    @Override
+    public long encode(GHPoint coord) {
+        return encode(coord.lat, coord.lon);
+    }
+
+    @Override
+    public final long encode(double lat, double lon) {
+        long spatialKey = spatialKeyAlgo.encode(lat, lon);
+        // the latitude is the higher bit of every bit pair
+        long x = compact(spatialKey);
+        long y = compact(spatialKey >>> 1);
+        long side = 1L << bitsPerAxis;
+        long key = 0;
+        for (long s = side >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            key += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so that the curve of the next level starts and ends at the right corners
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public final void decode(long hilbertKey, GHPoint latLon) {
+        long x = 0, y = 0;
+        long t = hilbertKey;
+        long side = 1L << bitsPerAxis;
+        for (long s = 1; s < side; s <<= 1) {
+            long rx = 1 & (t >>> 1);
+            long ry = 1 & (t ^ rx);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long tmp = x;
+                x = y;
+                y = tmp;
+            }
+            x += s * rx;
+            y += s * ry;
+            t >>>= 2;
+        }
+        spatialKeyAlgo.decode(spread(x) | (spread(y) << 1), latLon);
+    }
+
+    /**
+     * Takes every second bit starting with the lowest.
+     */
+    private long compact(long bits) {
+        long res = 0;
+        for (int i = 0; i < bitsPerAxis; i++) {
+            res |= ((bits >>> (2 * i)) & 1L) << i;
+        }
+        return res;
+    }
+
+    /**
+     * The reverse of compact: moves bit i to bit 2 * i.
+     */
+    private long spread(long bits) {
+        long res = 0;
+        for (int i = 0; i < bitsPerAxis; i++) {
+            res |= ((bits >>> i) & 1L) << (2 * i);
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "hilbert, " + spatialKeyAlgo;
+    }
+}
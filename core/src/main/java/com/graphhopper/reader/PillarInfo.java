@@ -36,12 +36,38 @@ public class PillarInfo implements PointAccess {
     private final Directory dir;
 
     public PillarInfo(boolean enabled3D, Directory dir) {
+        this(enabled3D, dir, "tmp_pillar_info");
+        da.create(100);
+    }
+
+    /**
+     * Creates the pillar info stored in the DataAccess with the specified name. Call create or
+     * loadExisting before using it.
+     */
+    public PillarInfo(boolean enabled3D, Directory dir, String name) {
         this.enabled3D = enabled3D;
         this.dir = dir;
-        this.da = dir.find("tmp_pillar_info").create(100);
+        this.da = dir.find(name);
         this.rowSizeInBytes = getDimension() * 4;
     }
 
+    public PillarInfo create() {
+        da.create(100);
+        return this;
+    }
+
+    public boolean loadExisting() {
+        return da.loadExisting();
+    }
+
+    public void flush() {
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
     @Override
     public boolean is3D() {
         return enabled3D;
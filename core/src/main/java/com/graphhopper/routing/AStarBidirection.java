@@ -195,29 +195,43 @@ public class AStarBidirection extends AbstractBidirAlgo implements Recalculation
     }
 
     @Override
-    boolean fillEdgesFrom() {
+    protected boolean fillEdgesFrom() {
         if (pqOpenSetFrom.isEmpty())
             return false;
 
         currFrom = pqOpenSetFrom.poll();
         bestWeightMapOther = bestWeightMapTo;
+        if (skipExploration(currFrom, false))
+            return true;
+
         fillEdges(currFrom, pqOpenSetFrom, bestWeightMapFrom, ignoreExplorationFrom, outEdgeExplorer, false);
         visitedCountFrom++;
         return true;
     }
 
     @Override
-    boolean fillEdgesTo() {
+    protected boolean fillEdgesTo() {
         if (pqOpenSetTo.isEmpty())
             return false;
 
         currTo = pqOpenSetTo.poll();
         bestWeightMapOther = bestWeightMapFrom;
+        if (skipExploration(currTo, true))
+            return true;
+
         fillEdges(currTo, pqOpenSetTo, bestWeightMapTo, ignoreExplorationTo, inEdgeExplorer, true);
         visitedCountTo++;
         return true;
     }
 
+    /**
+     * Returns true if the edges of the specified entry should not be explored, which is used e.g. for the
+     * stall-on-demand of the CH query. Skipped entries do not count as visited.
+     */
+    protected boolean skipExploration(AStarEntry entry, boolean reverse) {
+        return false;
+    }
+
     private void fillEdges(AStarEntry currEdge, PriorityQueue<AStarEntry> prioQueueOpenSet,
                            IntObjectMap<AStarEntry> bestWeightMap, IntHashSet ignoreExploration,
                            EdgeExplorer explorer, boolean reverse) {
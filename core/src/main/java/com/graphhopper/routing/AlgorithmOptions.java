@@ -40,6 +40,7 @@ public class AlgorithmOptions {
     private Weighting weighting;
     private TraversalMode traversalMode = TraversalMode.NODE_BASED;
     private int maxVisitedNodes = Integer.MAX_VALUE;
+    private BidirSearchStatePool statePool;
 
     private AlgorithmOptions() {
     }
@@ -81,6 +82,8 @@ public class AlgorithmOptions {
             b.maxVisitedNodes(opts.maxVisitedNodes);
         if (!opts.hints.isEmpty())
             b.hints(opts.hints);
+        if (opts.statePool != null)
+            b.statePool(opts.statePool);
 
         return b;
     }
@@ -114,6 +117,14 @@ public class AlgorithmOptions {
         return hints;
     }
 
+    /**
+     * @return the pool of search states or null if every algorithm should create its own data
+     * structures
+     */
+    public BidirSearchStatePool getStatePool() {
+        return statePool;
+    }
+
     private void assertNotNull(Object optionValue, String optionName) {
         if (optionValue == null)
             throw new NullPointerException("Option '" + optionName + "' must NOT be null");
@@ -159,6 +170,15 @@ public class AlgorithmOptions {
             return this;
         }
 
+        /**
+         * Lets the algorithm factories reuse the per-thread search state of this pool if the
+         * algorithm supports it.
+         */
+        public Builder statePool(BidirSearchStatePool statePool) {
+            this.opts.statePool = statePool;
+            return this;
+        }
+
         public AlgorithmOptions build() {
             if (buildCalled)
                 throw new IllegalStateException("Cannot call AlgorithmOptions.Builder.build() twice");
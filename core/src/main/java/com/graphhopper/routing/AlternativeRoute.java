@@ -109,7 +109,7 @@ public class AlternativeRoute implements RoutingAlgorithm {
         return Collections.singletonList(str);
     }
 
-    static double calcSortBy(double weightInfluence, double weight,
+    public static double calcSortBy(double weightInfluence, double weight,
                              double shareInfluence, double shareWeight,
                              double plateauInfluence, double plateauWeight) {
         return weightInfluence * weight + shareInfluence * shareWeight + plateauInfluence * plateauWeight;
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+
+import java.util.Arrays;
+
+/**
+ * The reusable data of a node based bidirectional search. Instead of clearing the arrays after
+ * every search all entries are stamped with the version of the search that wrote them, so starting
+ * a new search is constant time and the steady state allocates nothing per visited node.
+ * <p>
+ * An instance must not be used by multiple searches at the same time, see BidirSearchStatePool.
+ */
+public class BidirSearchState {
+    private static final int GROW_NODES = 256;
+    int version;
+    double[] weightsFrom, weightsTo;
+    int[] parentsFrom, parentsTo;
+    int[] edgesFrom, edgesTo;
+    // the version when the node was reached or settled
+    int[] reachedFrom, reachedTo;
+    int[] settledFrom, settledTo;
+    final IntDoubleBinaryHeap heapFrom;
+    final IntDoubleBinaryHeap heapTo;
+    private boolean inUse;
+
+    public BidirSearchState(int nodes) {
+        heapFrom = new IntDoubleBinaryHeap(1000);
+        heapTo = new IntDoubleBinaryHeap(1000);
+        weightsFrom = new double[0];
+        weightsTo = new double[0];
+        parentsFrom = new int[0];
+        parentsTo = new int[0];
+        edgesFrom = new int[0];
+        edgesTo = new int[0];
+        reachedFrom = new int[0];
+        reachedTo = new int[0];
+        settledFrom = new int[0];
+        settledTo = new int[0];
+        ensureCapacity(nodes);
+    }
+
+    /**
+     * Makes sure that the specified number of nodes fit into the arrays. Growing keeps some
+     * headroom as the node count of a QueryGraph varies with the number of virtual nodes.
+     */
+    void ensureCapacity(int nodes) {
+        if (nodes <= weightsFrom.length)
+            return;
+
+        int newSize = nodes + GROW_NODES;
+        weightsFrom = Arrays.copyOf(weightsFrom, newSize);
+        weightsTo = Arrays.copyOf(weightsTo, newSize);
+        parentsFrom = Arrays.copyOf(parentsFrom, newSize);
+        parentsTo = Arrays.copyOf(parentsTo, newSize);
+        edgesFrom = Arrays.copyOf(edgesFrom, newSize);
+        edgesTo = Arrays.copyOf(edgesTo, newSize);
+        reachedFrom = Arrays.copyOf(reachedFrom, newSize);
+        reachedTo = Arrays.copyOf(reachedTo, newSize);
+        settledFrom = Arrays.copyOf(settledFrom, newSize);
+        settledTo = Arrays.copyOf(settledTo, newSize);
+    }
+
+    /**
+     * Starts a new search for a graph with the specified number of nodes and invalidates all
+     * entries of the previous one.
+     */
+    void start(int nodes) {
+        ensureCapacity(nodes);
+        heapFrom.clear();
+        heapTo.clear();
+        version++;
+        if (version == Integer.MAX_VALUE) {
+            // the stamps of older searches could collide with new versions
+            Arrays.fill(reachedFrom, 0);
+            Arrays.fill(reachedTo, 0);
+            Arrays.fill(settledFrom, 0);
+            Arrays.fill(settledTo, 0);
+            version = 1;
+        }
+    }
+
+    /**
+     * Marks this state as used by an algorithm until finish is called.
+     */
+    boolean acquire() {
+        if (inUse)
+            return false;
+        inUse = true;
+        return true;
+    }
+
+    void finish() {
+        inUse = false;
+    }
+
+    public int getCapacity() {
+        return weightsFrom.length;
+    }
+
+    /**
+     * @return the approximate memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        return (long) weightsFrom.length * 2 * (8 + 4 + 4 + 4 + 4)
+                + (heapFrom.getCapacity() + heapTo.getCapacity()) * (4 + 4);
+    }
+}
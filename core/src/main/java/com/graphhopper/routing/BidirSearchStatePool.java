@@ -0,0 +1,90 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps one BidirSearchState per thread, weighting and graph type (with or without shortcuts), so
+ * that subsequent route queries reuse the arrays instead of allocating new maps and queues.
+ * <p>
+ * Every state needs around 50 bytes per node, so the memory usage is this number multiplied by
+ * the nodes, the number of request threads and the number of used weightings. Additionally one
+ * ShortestPathTreeState with around 40 bytes per node is kept for the isochrone requests of a thread.
+ */
+public class BidirSearchStatePool {
+    private final ThreadLocal<Map<String, BidirSearchState>> states = new ThreadLocal<Map<String, BidirSearchState>>() {
+        @Override
+        protected Map<String, BidirSearchState> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private final ThreadLocal<ShortestPathTreeState> treeStates = new ThreadLocal<>();
+
+    /**
+     * @param ch true if the state is used for a search on a graph with shortcuts
+     * @return the state of the current thread which is in use until the search finished. A new, not
+     * pooled state is returned if the pooled one is still in use, e.g. by a search that was started
+     * while another one of the same thread is still running.
+     */
+    public BidirSearchState get(Graph graph, Weighting weighting, boolean ch) {
+        String key = weighting.toString() + (ch ? "|ch" : "");
+        Map<String, BidirSearchState> map = states.get();
+        BidirSearchState state = map.get(key);
+        if (state == null) {
+            state = new BidirSearchState(graph.getNodes());
+            map.put(key, state);
+        }
+        if (!state.acquire()) {
+            state = new BidirSearchState(graph.getNodes());
+            state.acquire();
+        }
+        return state;
+    }
+
+    /**
+     * @return the tree state of the current thread. It is shared by all weightings as a tree
+     * initializes every entry it reads.
+     */
+    public ShortestPathTreeState getTreeState(Graph graph) {
+        ShortestPathTreeState state = treeStates.get();
+        if (state == null) {
+            state = new ShortestPathTreeState(graph.getNodes());
+            treeStates.set(state);
+        }
+        return state;
+    }
+
+    /**
+     * @return the memory usage in bytes of the states of the current thread
+     */
+    public long getMemoryUsage() {
+        long sum = 0;
+        for (BidirSearchState state : states.get().values()) {
+            sum += state.getMemoryUsage();
+        }
+        ShortestPathTreeState treeState = treeStates.get();
+        if (treeState != null)
+            sum += treeState.getMemoryUsage();
+        return sum;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Parameters;
+
+/**
+ * A bidirectional Dijkstra like DijkstraBidirectionRef but storing the shortest path trees in the
+ * primitive arrays of a BidirSearchState instead of SPTEntry objects, so that a pooled state can be
+ * reused for every query. The state is taken from the pool only while calcPath runs, so an algorithm
+ * that is created but never executed does not block it. Instead of updating heap entries a node is
+ * inserted again and outdated entries are skipped when polled. Only node based traversal is supported.
+ */
+public class DijkstraBidirectionPooled extends AbstractBidirAlgo {
+    private final BidirSearchStatePool pool;
+    private final boolean ch;
+    private BidirSearchState state;
+    protected Path bestPath;
+    protected double bestWeight = Double.MAX_VALUE;
+    protected double currFromWeight;
+    protected double currToWeight;
+    private int meetingNode = -1;
+    private int version;
+
+    /**
+     * @param ch true if the graph contains shortcuts, which uses a different state of the pool
+     */
+    public DijkstraBidirectionPooled(Graph graph, Weighting weighting, TraversalMode tMode, BidirSearchStatePool pool, boolean ch) {
+        super(graph, weighting, tMode);
+        if (tMode.isEdgeBased())
+            throw new IllegalArgumentException("Only node based traversal is supported for " + getName() + " but was " + tMode);
+        this.pool = pool;
+        this.ch = ch;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        state = pool.get(graph, weighting, ch);
+        state.start(graph.getNodes());
+        version = state.version;
+        try {
+            return super.calcPath(from, to);
+        } finally {
+            state.finish();
+        }
+    }
+
+    @Override
+    void initFrom(int from, double weight) {
+        state.weightsFrom[from] = weight;
+        state.parentsFrom[from] = -1;
+        state.edgesFrom[from] = EdgeIterator.NO_EDGE;
+        state.reachedFrom[from] = version;
+        state.heapFrom.insert_(weight, from);
+        currFromWeight = weight;
+        if (state.reachedTo[from] == version)
+            updateBestPath(from, weight + state.weightsTo[from]);
+    }
+
+    @Override
+    void initTo(int to, double weight) {
+        state.weightsTo[to] = weight;
+        state.parentsTo[to] = -1;
+        state.edgesTo[to] = EdgeIterator.NO_EDGE;
+        state.reachedTo[to] = version;
+        state.heapTo.insert_(weight, to);
+        currToWeight = weight;
+        if (state.reachedFrom[to] == version)
+            updateBestPath(to, weight + state.weightsFrom[to]);
+    }
+
+    @Override
+    protected Path createAndInitPath() {
+        bestPath = new Path(graph, weighting);
+        return bestPath;
+    }
+
+    @Override
+    protected double getCurrentFromWeight() {
+        return currFromWeight;
+    }
+
+    @Override
+    protected double getCurrentToWeight() {
+        return currToWeight;
+    }
+
+    @Override
+    protected boolean fillEdgesFrom() {
+        int node = pollUnsettled(state.heapFrom, state.settledFrom);
+        if (node < 0)
+            return false;
+
+        currFromWeight = state.weightsFrom[node];
+        if (skipExploration(node, false))
+            return true;
+
+        fillEdges(node, outEdgeExplorer, false, state.weightsFrom, state.parentsFrom, state.edgesFrom,
+                state.reachedFrom, state.settledFrom, state.heapFrom, state.weightsTo, state.reachedTo);
+        visitedCountFrom++;
+        return true;
+    }
+
+    @Override
+    protected boolean fillEdgesTo() {
+        int node = pollUnsettled(state.heapTo, state.settledTo);
+        if (node < 0)
+            return false;
+
+        currToWeight = state.weightsTo[node];
+        if (skipExploration(node, true))
+            return true;
+
+        fillEdges(node, inEdgeExplorer, true, state.weightsTo, state.parentsTo, state.edgesTo,
+                state.reachedTo, state.settledTo, state.heapTo, state.weightsFrom, state.reachedFrom);
+        visitedCountTo++;
+        return true;
+    }
+
+    /**
+     * Returns true if the edges of the specified node should not be explored, which is used e.g. for the
+     * stall-on-demand of the CH query. Skipped nodes do not count as visited.
+     */
+    protected boolean skipExploration(int node, boolean reverse) {
+        return false;
+    }
+
+    /**
+     * @return the current weight of the specified node in the forward or, if reverse, in the backward search or
+     * infinity if the node was not yet reached
+     */
+    protected final double getWeight(int node, boolean reverse) {
+        if (reverse)
+            return state.reachedTo[node] == version ? state.weightsTo[node] : Double.POSITIVE_INFINITY;
+        return state.reachedFrom[node] == version ? state.weightsFrom[node] : Double.POSITIVE_INFINITY;
+    }
+
+    private int pollUnsettled(IntDoubleBinaryHeap heap, int[] settled) {
+        while (!heap.isEmpty()) {
+            int node = heap.poll_element();
+            // skip outdated heap entries
+            if (settled[node] != version) {
+                settled[node] = version;
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    private void fillEdges(int node, EdgeExplorer explorer, boolean reverse, double[] weights, int[] parents,
+                           int[] edges, int[] reached, int[] settled, IntDoubleBinaryHeap heap,
+                           double[] otherWeights, int[] otherReached) {
+        int prevEdge = edges[node];
+        double currWeight = weights[node];
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (!accept(iter, prevEdge))
+                continue;
+
+            int adjNode = iter.getAdjNode();
+            if (settled[adjNode] == version)
+                continue;
+
+            double tmpWeight = weighting.calcWeight(iter, reverse, prevEdge) + currWeight;
+            if (Double.isInfinite(tmpWeight))
+                continue;
+
+            if (reached[adjNode] == version && weights[adjNode] <= tmpWeight)
+                continue;
+
+            weights[adjNode] = tmpWeight;
+            parents[adjNode] = node;
+            edges[adjNode] = iter.getEdge();
+            reached[adjNode] = version;
+            heap.insert_(tmpWeight, adjNode);
+
+            if (otherReached[adjNode] == version)
+                updateBestPath(adjNode, tmpWeight + otherWeights[adjNode]);
+        }
+    }
+
+    private void updateBestPath(int node, double weight) {
+        if (weight < bestWeight) {
+            bestWeight = weight;
+            meetingNode = node;
+        }
+    }
+
+    @Override
+    protected boolean finished() {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        return currFromWeight + currToWeight >= bestWeight;
+    }
+
+    @Override
+    protected Path extractPath() {
+        if (meetingNode < 0 || !finished())
+            return bestPath;
+
+        // the same order of processEdge calls as in PathBidirRef.extract
+        int node = meetingNode;
+        int edge = state.edgesFrom[node];
+        while (EdgeIterator.Edge.isValid(edge)) {
+            int parent = state.parentsFrom[node];
+            bestPath.processEdge(edge, node, state.edgesFrom[parent]);
+            node = parent;
+            edge = state.edgesFrom[node];
+        }
+        bestPath.setFromNode(node);
+        bestPath.reverseOrder();
+
+        node = meetingNode;
+        int prevEdge = state.edgesFrom[node];
+        edge = state.edgesTo[node];
+        while (EdgeIterator.Edge.isValid(edge)) {
+            int parent = state.parentsTo[node];
+            bestPath.processEdge(edge, parent, prevEdge);
+            prevEdge = edge;
+            node = parent;
+            edge = state.edgesTo[node];
+        }
+        bestPath.setEndNode(node);
+        bestPath.setWeight(bestWeight);
+        return bestPath.setFound(true);
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.DIJKSTRA_BI + "|pooled";
+    }
+}
@@ -129,6 +129,10 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo {
 
         currFrom = pqOpenSetFrom.poll();
         bestWeightMapOther = bestWeightMapTo;
+        if (skipExploration(currFrom, false))
+            return true;
+
+        beforeExploration(currFrom, false);
         fillEdges(currFrom, pqOpenSetFrom, bestWeightMapFrom, outEdgeExplorer, false);
         visitedCountFrom++;
         return true;
@@ -140,11 +144,30 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo {
             return false;
         currTo = pqOpenSetTo.poll();
         bestWeightMapOther = bestWeightMapFrom;
+        if (skipExploration(currTo, true))
+            return true;
+
+        beforeExploration(currTo, true);
         fillEdges(currTo, pqOpenSetTo, bestWeightMapTo, inEdgeExplorer, true);
         visitedCountTo++;
         return true;
     }
 
+    /**
+     * Returns true if the edges of the specified entry should not be explored, which is used e.g. for the
+     * stall-on-demand of the CH query. Skipped entries do not count as visited.
+     */
+    protected boolean skipExploration(SPTEntry entry, boolean reverse) {
+        return false;
+    }
+
+    /**
+     * Called with the polled entry right before its edges are explored, e.g. to adapt the edge
+     * filter to the entry.
+     */
+    protected void beforeExploration(SPTEntry entry, boolean reverse) {
+    }
+
     // http://www.cs.princeton.edu/courses/archive/spr06/cos423/Handouts/EPP%20shortest%20path%20algorithms.pdf
     // a node from overlap may not be on the best path!
     // => when scanning an arc (v, w) in the forward search and w is scanned in the reverseOrder 
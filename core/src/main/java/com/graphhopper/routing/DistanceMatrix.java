@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.Arrays;
+
+/**
+ * Stores the weight, distance and time for every from/to pair of a many-to-many calculation. The
+ * values are kept in flat arrays in row-major order. Pairs without a connection have an infinite
+ * weight and distance and a time of Long.MAX_VALUE.
+ *
+ * @see MatrixAlgorithm
+ */
+public class DistanceMatrix {
+    private final int fromCount;
+    private final int toCount;
+    private final double[] weights;
+    private final double[] distances;
+    private final long[] times;
+
+    public DistanceMatrix(int fromCount, int toCount) {
+        if (fromCount < 0 || toCount < 0)
+            throw new IllegalArgumentException("Matrix size must not be negative: " + fromCount + "x" + toCount);
+
+        this.fromCount = fromCount;
+        this.toCount = toCount;
+        int size = fromCount * toCount;
+        weights = new double[size];
+        distances = new double[size];
+        times = new long[size];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(times, Long.MAX_VALUE);
+    }
+
+    public int getFromCount() {
+        return fromCount;
+    }
+
+    public int getToCount() {
+        return toCount;
+    }
+
+    public void set(int fromIndex, int toIndex, double weight, double distance, long time) {
+        int index = index(fromIndex, toIndex);
+        weights[index] = weight;
+        distances[index] = distance;
+        times[index] = time;
+    }
+
+    /**
+     * @return true if a path from the specified origin to the specified destination was found
+     */
+    public boolean isConnected(int fromIndex, int toIndex) {
+        return !Double.isInfinite(weights[index(fromIndex, toIndex)]);
+    }
+
+    public double getWeight(int fromIndex, int toIndex) {
+        return weights[index(fromIndex, toIndex)];
+    }
+
+    /**
+     * @return the distance in meter
+     */
+    public double getDistance(int fromIndex, int toIndex) {
+        return distances[index(fromIndex, toIndex)];
+    }
+
+    /**
+     * @return the time in milliseconds
+     */
+    public long getTime(int fromIndex, int toIndex) {
+        return times[index(fromIndex, toIndex)];
+    }
+
+    private int index(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex >= fromCount || toIndex < 0 || toIndex >= toCount)
+            throw new IndexOutOfBoundsException("Cell " + fromIndex + "," + toIndex + " is outside of matrix " + fromCount + "x" + toCount);
+
+        return fromIndex * toCount + toIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "matrix " + fromCount + "x" + toCount;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.util.NotThreadSafe;
+
+/**
+ * Calculates the weights, distances and times between all pairs of the specified origins and
+ * destinations. Can be used only once.
+ *
+ * @see DistanceMatrix
+ */
+@NotThreadSafe
+public interface MatrixAlgorithm {
+    /**
+     * @return a matrix with one row per node in fromNodes and one column per node in toNodes
+     */
+    DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes);
+
+    /**
+     * Limit every single search to numberOfNodes.
+     */
+    void setMaxVisitedNodes(int numberOfNodes);
+
+    /**
+     * @return name of this algorithm
+     */
+    String getName();
+
+    /**
+     * Returns the visited nodes of all searches. Useful for debugging.
+     */
+    int getVisitedNodes();
+}
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.Graph;
+
+/**
+ * Fills a DistanceMatrix with one point-to-point search per pair. This is the fallback if no
+ * contraction hierarchy is available, e.g. for flexible or landmark routing where the algorithm
+ * factory decides which algorithm is used for every cell.
+ *
+ * @see com.graphhopper.routing.ch.ManyToManyCH
+ */
+public class PairwiseMatrixAlgorithm implements MatrixAlgorithm {
+    private final Graph graph;
+    private final RoutingAlgorithmFactory algoFactory;
+    private final AlgorithmOptions algoOpts;
+    private int maxVisitedNodes;
+    private int visitedNodes;
+    private boolean alreadyRun;
+
+    public PairwiseMatrixAlgorithm(Graph graph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts) {
+        this.graph = graph;
+        this.algoFactory = algoFactory;
+        this.algoOpts = algoOpts;
+        this.maxVisitedNodes = algoOpts.getMaxVisitedNodes();
+    }
+
+    @Override
+    public DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes) {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+
+        DistanceMatrix matrix = new DistanceMatrix(fromNodes.length, toNodes.length);
+        for (int fromIndex = 0; fromIndex < fromNodes.length; fromIndex++) {
+            for (int toIndex = 0; toIndex < toNodes.length; toIndex++) {
+                RoutingAlgorithm algo = algoFactory.createAlgo(graph, algoOpts);
+                algo.setMaxVisitedNodes(maxVisitedNodes);
+                Path path = algo.calcPath(fromNodes[fromIndex], toNodes[toIndex]);
+                visitedNodes += algo.getVisitedNodes();
+                if (algo.getVisitedNodes() >= maxVisitedNodes)
+                    throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + maxVisitedNodes);
+
+                if (path.isFound())
+                    matrix.set(fromIndex, toIndex, path.getWeight(), path.getDistance(), path.getTime());
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "pairwise|" + algoOpts.getAlgorithm();
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+}
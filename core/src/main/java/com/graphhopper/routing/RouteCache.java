@@ -0,0 +1,181 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A bounded cache of route responses for repeated requests. The key is built from the points
+ * rounded to the configured number of decimal places, the favored headings, the point hints, the
+ * algorithm, the locale and all hints including vehicle and weighting. Every entry stores the
+ * version of the graph it was calculated for and is only returned for the same version, so a
+ * change of the graph makes all entries stale without iterating them. Entries are evicted in LRU
+ * order and expire after the time to live.
+ * <p>
+ * Only responses without errors are cached. The returned responses are copies, but the
+ * PathWrappers are shared and must not be modified.
+ */
+public class RouteCache {
+    private final LinkedHashMap<String, Entry> map;
+    private final long ttlMillis;
+    private volatile double factor = 1e6;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param ttlMillis the time after which an entry expires, 0 or negative for no expiration
+     */
+    public RouteCache(final int capacity, long ttlMillis) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Cache capacity has to be positive but was " + capacity);
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Requests with points which are equal after rounding to the specified number of decimal
+     * places share the same entry. The default is 6 decimal places which is roughly 0.1m.
+     */
+    public synchronized RouteCache setPrecision(int decimalPlaces) {
+        if (decimalPlaces < 0 || decimalPlaces > 9)
+            throw new IllegalArgumentException("Decimal places have to be in [0, 9] but was " + decimalPlaces);
+        factor = Math.pow(10, decimalPlaces);
+        map.clear();
+        return this;
+    }
+
+    /**
+     * @param key the key of the request, see createKey
+     * @return a copy of the cached response for the specified key and graph version or null
+     */
+    public GHResponse get(String key, long graphVersion) {
+        Entry entry;
+        synchronized (this) {
+            entry = map.get(key);
+            if (entry != null && (entry.graphVersion != graphVersion
+                    || ttlMillis > 0 && System.currentTimeMillis() - entry.created > ttlMillis)) {
+                map.remove(key);
+                evictions++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return copy(entry.response);
+    }
+
+    public void put(String key, GHResponse response, long graphVersion) {
+        if (response.hasErrors())
+            return;
+
+        Entry entry = new Entry(copy(response), graphVersion, System.currentTimeMillis());
+        synchronized (this) {
+            map.put(key, entry);
+        }
+    }
+
+    /**
+     * Creates the key before routing, as the routing can add defaults to the hints of the request.
+     */
+    public String createKey(GHRequest request) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < request.getPoints().size(); i++) {
+            GHPoint point = request.getPoints().get(i);
+            sb.append(Math.round(point.lat * factor)).append(',').append(Math.round(point.lon * factor));
+            if (request.hasFavoredHeading(i))
+                sb.append(',').append(request.getFavoredHeading(i));
+            sb.append(';');
+        }
+        sb.append('|').append(request.getPointHints());
+        sb.append('|').append(request.getAlgorithm().toLowerCase());
+        sb.append('|').append(request.getLocale());
+        // sort the hints to make the key independent of their order
+        sb.append('|').append(new TreeMap<>(request.getHints().toMap()));
+        return sb.toString();
+    }
+
+    private static GHResponse copy(GHResponse response) {
+        GHResponse res = new GHResponse();
+        for (PathWrapper pathWrapper : response.getAll()) {
+            res.add(pathWrapper);
+        }
+        res.getHints().put(response.getHints());
+        res.addDebugInfo(response.getDebugInfo());
+        return res;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int getSize() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries removed because of the capacity, the time to live or a changed
+     * graph version
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "route cache(" + getSize() + ", hits:" + getHits() + ", misses:" + getMisses() + ")";
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        final long graphVersion;
+        final long created;
+
+        Entry(GHResponse response, long graphVersion, long created) {
+            this.response = response;
+            this.graphVersion = graphVersion;
+            this.created = created;
+        }
+    }
+}
@@ -38,7 +38,11 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
         RoutingAlgorithm ra;
         String algoStr = opts.getAlgorithm();
         if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
-            ra = new DijkstraBidirectionRef(g, opts.getWeighting(), opts.getTraversalMode());
+            if (opts.getStatePool() != null && !opts.getTraversalMode().isEdgeBased())
+                ra = new DijkstraBidirectionPooled(g, opts.getWeighting(), opts.getTraversalMode(),
+                        opts.getStatePool(), false);
+            else
+                ra = new DijkstraBidirectionRef(g, opts.getWeighting(), opts.getTraversalMode());
         } else if (DIJKSTRA.equalsIgnoreCase(algoStr)) {
             ra = new Dijkstra(g, opts.getWeighting(), opts.getTraversalMode());
 
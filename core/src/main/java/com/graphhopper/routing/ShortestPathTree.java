@@ -0,0 +1,264 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Explores the shortest path tree from one node to all nodes until a time, distance or weight
+ * limit is reached, e.g. to calculate isochrones. Similar to DijkstraOneToMany all data is stored
+ * in primitive arrays which are reused for subsequent searches, so no objects are created per
+ * visited node. The arrays are kept in a ShortestPathTreeState which can be shared by trees of
+ * later requests.
+ * <p>
+ * Only node based traversal is supported. The tree is ordered by weight and the limit is checked
+ * for the time or distance of this tree, i.e. for the fastest weighting the time limit results in
+ * the reachable area.
+ */
+public class ShortestPathTree extends AbstractRoutingAlgorithm {
+    private static final int EMPTY_PARENT = -1;
+
+    private enum Limit {
+        WEIGHT, TIME, DISTANCE
+    }
+
+    private final IntArrayList reachedNodes = new IntArrayList();
+    private final ShortestPathTreeState state;
+    private Limit limitType = Limit.WEIGHT;
+    private double limit = Double.MAX_VALUE;
+    private int fromNode = EMPTY_PARENT;
+    private int visitedNodes;
+
+    public ShortestPathTree(Graph graph, Weighting weighting, TraversalMode tMode) {
+        this(graph, weighting, tMode, new ShortestPathTreeState(graph.getNodes()));
+    }
+
+    /**
+     * @param state the arrays to use for the searches, e.g. from BidirSearchStatePool.getTreeState
+     */
+    public ShortestPathTree(Graph graph, Weighting weighting, TraversalMode tMode, ShortestPathTreeState state) {
+        super(graph, weighting, tMode);
+        if (tMode.isEdgeBased())
+            throw new IllegalArgumentException("Only node based traversal is supported for the shortest path tree but was " + tMode);
+
+        this.state = state;
+    }
+
+    /**
+     * Stops the exploration for nodes that are more than the specified milliseconds away.
+     */
+    public ShortestPathTree setTimeLimit(long millis) {
+        return setLimit(Limit.TIME, millis);
+    }
+
+    /**
+     * Stops the exploration for nodes that are more than the specified meters away.
+     */
+    public ShortestPathTree setDistanceLimit(double meters) {
+        return setLimit(Limit.DISTANCE, meters);
+    }
+
+    public ShortestPathTree setWeightLimit(double weight) {
+        return setLimit(Limit.WEIGHT, weight);
+    }
+
+    private ShortestPathTree setLimit(Limit limitType, double limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("The " + limitType.name().toLowerCase() + " limit has to be positive but was " + limit);
+        this.limitType = limitType;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Explores all nodes reachable from the specified node within the limit. The data of a previous
+     * search is cleared, but the arrays are reused.
+     */
+    public void search(int from) {
+        state.start(graph.getNodes());
+        reachedNodes.elementsCount = 0;
+        visitedNodes = 0;
+        double[] weights = state.weights;
+        double[] distances = state.distances;
+        long[] times = state.times;
+        int[] parents = state.parents;
+        int[] edgeIds = state.edgeIds;
+        int[] reached = state.reached;
+        int version = state.version;
+        IntDoubleBinaryHeap heap = state.heap;
+
+        fromNode = from;
+        weights[from] = 0;
+        distances[from] = 0;
+        times[from] = 0;
+        parents[from] = EMPTY_PARENT;
+        edgeIds[from] = EdgeIterator.NO_EDGE;
+        reached[from] = version;
+        heap.insert_(0, from);
+
+        while (!heap.isEmpty()) {
+            int currNode = heap.poll_element();
+            reachedNodes.add(currNode);
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded())
+                break;
+
+            int currEdge = edgeIds[currNode];
+            EdgeIterator iter = outEdgeExplorer.setBaseNode(currNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge))
+                    continue;
+
+                double tmpWeight = weighting.calcWeight(iter, false, currEdge) + weights[currNode];
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                int adjNode = iter.getAdjNode();
+                boolean adjReached = reached[adjNode] == version;
+                if (adjReached && weights[adjNode] <= tmpWeight)
+                    continue;
+
+                double tmpDistance = iter.getDistance() + distances[currNode];
+                long tmpTime = weighting.calcMillis(iter, false, currEdge) + times[currNode];
+                if (getValue(tmpWeight, tmpDistance, tmpTime) > limit)
+                    continue;
+
+                if (adjReached) {
+                    heap.update_(tmpWeight, adjNode);
+                } else {
+                    heap.insert_(tmpWeight, adjNode);
+                    reached[adjNode] = version;
+                }
+                weights[adjNode] = tmpWeight;
+                distances[adjNode] = tmpDistance;
+                times[adjNode] = tmpTime;
+                parents[adjNode] = currNode;
+                edgeIds[adjNode] = iter.getEdge();
+            }
+        }
+    }
+
+    private double getValue(double weight, double distance, long time) {
+        switch (limitType) {
+            case TIME:
+                return time;
+            case DISTANCE:
+                return distance;
+            default:
+                return weight;
+        }
+    }
+
+    /**
+     * @return the nodes of the last search in the order they were reached
+     */
+    public IntArrayList getReachedNodes() {
+        return reachedNodes;
+    }
+
+    public boolean isReached(int node) {
+        return state.isReached(node);
+    }
+
+    public double getWeight(int node) {
+        return isReached(node) ? state.weights[node] : Double.MAX_VALUE;
+    }
+
+    public double getDistance(int node) {
+        return isReached(node) ? state.distances[node] : 0;
+    }
+
+    public long getTime(int node) {
+        return isReached(node) ? state.times[node] : 0;
+    }
+
+    /**
+     * @return the previous node on the shortest path to the specified node or -1 if there is none
+     */
+    public int getParent(int node) {
+        return isReached(node) ? state.parents[node] : EMPTY_PARENT;
+    }
+
+    /**
+     * Splits the reached nodes of the last search into the specified number of buckets of equal
+     * size regarding the limit, e.g. a time limit of 15 minutes and 3 buckets results in the nodes
+     * reached in up to 5, 10 and 15 minutes. A node is only contained in the first bucket it
+     * belongs to.
+     */
+    public List<IntArrayList> createBuckets(int bucketCount) {
+        if (bucketCount < 1)
+            throw new IllegalArgumentException("At least one bucket is necessary but was " + bucketCount);
+        if (limit == Double.MAX_VALUE)
+            throw new IllegalStateException("Buckets need a limit");
+
+        List<IntArrayList> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new IntArrayList());
+        }
+        int size = reachedNodes.size();
+        for (int i = 0; i < size; i++) {
+            int node = reachedNodes.get(i);
+            double value = getValue(state.weights[node], state.distances[node], state.times[node]);
+            // the upper limit of a bucket is inclusive
+            int bucket = (int) Math.ceil(value * bucketCount / limit) - 1;
+            buckets.get(Math.max(0, Math.min(bucket, bucketCount - 1))).add(node);
+        }
+        return buckets;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        search(from);
+        Path path = new PathNative(graph, weighting, state.parents, state.edgeIds);
+        path.setFromNode(fromNode);
+        if (!isReached(to))
+            return path;
+
+        path.setWeight(state.weights[to]);
+        return path.setEndNode(to).extract();
+    }
+
+    @Override
+    protected boolean finished() {
+        return state.heap.isEmpty();
+    }
+
+    @Override
+    protected Path extractPath() {
+        throw new UnsupportedOperationException("Use calcPath or search instead");
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.SPT;
+    }
+}
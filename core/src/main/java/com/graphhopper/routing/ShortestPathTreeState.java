@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+
+import java.util.Arrays;
+
+/**
+ * The reusable data of a ShortestPathTree. Like BidirSearchState every entry is stamped with the
+ * version of the search that wrote it, so a new search starts in constant time and subsequent
+ * isochrone requests do not allocate node sized arrays.
+ * <p>
+ * An instance must not be used by multiple searches at the same time, see BidirSearchStatePool.
+ */
+public class ShortestPathTreeState {
+    private static final int GROW_NODES = 256;
+    // starts above the initial stamps so that nothing is reached before the first search
+    int version = 1;
+    double[] weights;
+    double[] distances;
+    long[] times;
+    int[] parents;
+    int[] edgeIds;
+    // the version when the node was reached
+    int[] reached;
+    final IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap(1000);
+
+    public ShortestPathTreeState(int nodes) {
+        weights = new double[0];
+        distances = new double[0];
+        times = new long[0];
+        parents = new int[0];
+        edgeIds = new int[0];
+        reached = new int[0];
+        ensureCapacity(nodes);
+    }
+
+    /**
+     * Makes sure that the specified number of nodes fit into the arrays. Growing keeps some
+     * headroom as the node count of a QueryGraph varies with the number of virtual nodes.
+     */
+    void ensureCapacity(int nodes) {
+        if (nodes <= weights.length)
+            return;
+
+        int newSize = nodes + GROW_NODES;
+        weights = Arrays.copyOf(weights, newSize);
+        distances = Arrays.copyOf(distances, newSize);
+        times = Arrays.copyOf(times, newSize);
+        parents = Arrays.copyOf(parents, newSize);
+        edgeIds = Arrays.copyOf(edgeIds, newSize);
+        reached = Arrays.copyOf(reached, newSize);
+    }
+
+    /**
+     * Starts a new search for a graph with the specified number of nodes and invalidates all
+     * entries of the previous one.
+     */
+    void start(int nodes) {
+        ensureCapacity(nodes);
+        heap.clear();
+        version++;
+        if (version == Integer.MAX_VALUE) {
+            // the stamps of older searches could collide with new versions
+            Arrays.fill(reached, 0);
+            version = 1;
+        }
+    }
+
+    boolean isReached(int node) {
+        return reached[node] == version;
+    }
+
+    public int getCapacity() {
+        return weights.length;
+    }
+
+    /**
+     * @return the approximate memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        return (long) weights.length * (8 + 8 + 8 + 4 + 4 + 4) + heap.getCapacity() * (4 + 4);
+    }
+}
@@ -190,4 +190,21 @@ class VirtualEdgeIterator implements EdgeIterator, CHEdgeIteratorState {
     public int getMergeStatus(long flags) {
         throw new UnsupportedOperationException("Not supported.");
     }
+
+    @Override
+    public int getOrigEdgeFirst() {
+        EdgeIteratorState edge = edges.get(current);
+        return edge instanceof CHEdgeIteratorState ? ((CHEdgeIteratorState) edge).getOrigEdgeFirst() : edge.getEdge();
+    }
+
+    @Override
+    public int getOrigEdgeLast() {
+        EdgeIteratorState edge = edges.get(current);
+        return edge instanceof CHEdgeIteratorState ? ((CHEdgeIteratorState) edge).getOrigEdgeLast() : edge.getEdge();
+    }
+
+    @Override
+    public CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge) {
+        throw new UnsupportedOperationException("Not supported.");
+    }
 }
@@ -226,6 +226,21 @@ public class VirtualEdgeIteratorState implements EdgeIteratorState, CHEdgeIterat
         throw new UnsupportedOperationException("Not supported.");
     }
 
+    @Override
+    public int getOrigEdgeFirst() {
+        return edgeId;
+    }
+
+    @Override
+    public int getOrigEdgeLast() {
+        return edgeId;
+    }
+
+    @Override
+    public CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge) {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+
     void setReverseEdge(EdgeIteratorState reverseEdge) {
         this.reverseEdge = reverseEdge;
     }
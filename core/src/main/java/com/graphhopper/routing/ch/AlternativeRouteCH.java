@@ -0,0 +1,427 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.routing.AlternativeRoute;
+import com.graphhopper.routing.AlternativeRoute.AlternativeInfo;
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Parameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calculates alternative routes on a contraction hierarchy with the via node approach described in
+ * 'Alternative Routes in Road Networks' from Abraham, Delling, Goldberg and Werneck, 2010. After
+ * the normal CH query both CH searches explore their search space until the weight exceeds
+ * maxWeightFactor times the best weight. Every node reached by both searches is a via node
+ * candidate and defines the path from the start to the via node and from there to the end. The candidates are checked in the order
+ * of their weight with the criteria of AlternativeRoute:
+ * <ul>
+ * <li>stretch: the weight is at most maxWeightFactor times the best weight</li>
+ * <li>sharing: the weight of the edges shared with the best path or an already accepted
+ * alternative is below maxShareFactor times the weight of that path</li>
+ * <li>plateau: the sub path around the via node with minPlateauFactor times the weight of the
+ * alternative is a shortest path. This is verified with an additional CH query (the 'T-test'),
+ * as the CH search spaces do not contain the shortest path trees of the plateau method.</li>
+ * </ul>
+ * Only node based traversal is supported.
+ *
+ * @see AlternativeRoute
+ */
+public class AlternativeRouteCH implements RoutingAlgorithm {
+    private static final Comparator<AlternativeInfo> ALT_COMPARATOR = new Comparator<AlternativeInfo>() {
+        @Override
+        public int compare(AlternativeInfo o1, AlternativeInfo o2) {
+            return Double.compare(o1.getSortBy(), o2.getSortBy());
+        }
+    };
+    private final Graph graph;
+    private final Weighting weighting;
+    // the weighting of the unpacked edges
+    private final Weighting baseWeighting;
+    private final TraversalMode traversalMode;
+    private final EdgeFilter levelFilter;
+    private int visitedNodes;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private double maxWeightFactor = 1.4;
+    private double maxShareFactor = 0.6;
+    private double minPlateauFactor = 0.2;
+    private int maxPaths = 2;
+    private int maxCandidates = 50;
+    private double relaxationFactor = 0.25;
+
+    public AlternativeRouteCH(Graph graph, Weighting weighting, TraversalMode traversalMode, EdgeFilter levelFilter) {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Alternative routes with Contraction Hierarchies are not supported for edge based traversal");
+        this.graph = graph;
+        this.weighting = weighting;
+        this.baseWeighting = weighting instanceof PreparationWeighting
+                ? ((PreparationWeighting) weighting).getUserWeighting() : weighting;
+        this.traversalMode = traversalMode;
+        this.levelFilter = levelFilter;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    /**
+     * @see AlternativeRoute#setMaxWeightFactor(double)
+     */
+    public void setMaxWeightFactor(double maxWeightFactor) {
+        this.maxWeightFactor = maxWeightFactor;
+    }
+
+    /**
+     * @see AlternativeRoute#setMaxShareFactor(double)
+     */
+    public void setMaxShareFactor(double maxShareFactor) {
+        this.maxShareFactor = maxShareFactor;
+    }
+
+    /**
+     * @see AlternativeRoute#setMinPlateauFactor(double)
+     */
+    public void setMinPlateauFactor(double minPlateauFactor) {
+        this.minPlateauFactor = minPlateauFactor;
+    }
+
+    /**
+     * @see AlternativeRoute#setMaxPaths(int)
+     */
+    public void setMaxPaths(int maxPaths) {
+        this.maxPaths = maxPaths;
+        if (this.maxPaths < 2)
+            throw new IllegalStateException("Use normal algorithm with less overhead instead if no alternatives are required");
+    }
+
+    /**
+     * Every via node candidate needs an unpacked path and a CH query for the plateau, so the
+     * number of checked candidates is limited. Default is 50.
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * The search spaces of the CH are relaxed around the start and the end: entries with a weight
+     * below this factor times the best weight also follow the edges to lower levels. This finds
+     * considerably more via node candidates at the cost of a larger search. Default is 0.25.
+     */
+    public void setRelaxationFactor(double relaxationFactor) {
+        this.relaxationFactor = relaxationFactor;
+    }
+
+    public List<AlternativeInfo> calcAlternatives(int from, int to) {
+        PrepareContractionHierarchies.DijkstraBidirectionCH bestSearch
+                = new PrepareContractionHierarchies.DijkstraBidirectionCH(graph, weighting, traversalMode);
+        bestSearch.setEdgeFilter(levelFilter);
+        bestSearch.setMaxVisitedNodes(maxVisitedNodes);
+        Path bestPath = bestSearch.calcPath(from, to);
+        visitedNodes = bestSearch.getVisitedNodes();
+
+        double bestWeight = bestPath.getWeight();
+        List<AlternativeInfo> alternatives = new ArrayList<>(maxPaths);
+        alternatives.add(new AlternativeInfo(calcSortBy(bestWeight, 0, bestWeight), bestPath, null, null, 0,
+                Collections.<String>emptyList()));
+        if (!bestPath.isFound())
+            return alternatives;
+
+        final double maxWeight = maxWeightFactor * bestWeight;
+        AlternativeCHSearch search = new AlternativeCHSearch(graph, weighting, traversalMode, levelFilter,
+                maxWeight, relaxationFactor * bestWeight);
+        search.setMaxVisitedNodes(maxVisitedNodes);
+        search.calcPath(from, to);
+        visitedNodes += search.getVisitedNodes();
+
+        // the via node candidates ordered by the weight of their path
+        List<SPTEntry[]> candidates = new ArrayList<>();
+        IntObjectMap<SPTEntry> bestWeightMapTo = search.getBestWeightMapTo();
+        for (IntObjectCursor<SPTEntry> cursor : search.getBestWeightMapFrom()) {
+            SPTEntry toEntry = bestWeightMapTo.get(cursor.key);
+            if (toEntry != null && cursor.value.weight + toEntry.weight <= maxWeight)
+                candidates.add(new SPTEntry[]{cursor.value, toEntry});
+        }
+        Collections.sort(candidates, new Comparator<SPTEntry[]>() {
+            @Override
+            public int compare(SPTEntry[] o1, SPTEntry[] o2) {
+                return Double.compare(o1[0].weight + o1[1].weight, o2[0].weight + o2[1].weight);
+            }
+        });
+
+        List<IntHashSet> acceptedNodes = new ArrayList<>(maxPaths);
+        List<IntHashSet> acceptedEdges = new ArrayList<>(maxPaths);
+        List<Double> acceptedWeights = new ArrayList<>(maxPaths);
+        addAccepted(bestPath, acceptedNodes, acceptedEdges, acceptedWeights);
+
+        int checkedCandidates = 0;
+        for (SPTEntry[] candidate : candidates) {
+            if (alternatives.size() >= maxPaths || checkedCandidates >= maxCandidates)
+                break;
+
+            // a via node on an accepted path leads to the same path again
+            int viaNode = candidate[0].adjNode;
+            if (containsNode(acceptedNodes, viaNode))
+                continue;
+
+            checkedCandidates++;
+            double weight = candidate[0].weight + candidate[1].weight;
+            Path path = new Path4CH(graph, graph.getBaseGraph(), weighting).
+                    setSPTEntryTo(candidate[1]).setSPTEntry(candidate[0]).
+                    setWeight(weight);
+            path.extract();
+
+            IntIndexedContainer nodes = path.calcNodes();
+            List<EdgeIteratorState> edges = path.calcEdges();
+            if (hasLoop(nodes))
+                continue;
+
+            // the weights of the path up to every node
+            double[] prefix = new double[nodes.size()];
+            int viaIndex = -1;
+            for (int i = 0; i < edges.size(); i++) {
+                prefix[i + 1] = prefix[i] + baseWeighting.calcWeight(edges.get(i), false, EdgeIterator.NO_EDGE);
+                if (nodes.get(i) == viaNode)
+                    viaIndex = i;
+            }
+            if (viaIndex < 0)
+                continue;
+
+            double shareWeight = 0;
+            boolean smallShare = true;
+            for (int i = 0; i < acceptedEdges.size() && smallShare; i++) {
+                double tmpShare = calcShareWeight(edges, prefix, acceptedEdges.get(i));
+                if (i == 0)
+                    shareWeight = tmpShare;
+                smallShare = tmpShare / acceptedWeights.get(i) < maxShareFactor;
+            }
+            if (!smallShare)
+                continue;
+
+            double plateauWeight = calcPlateauWeight(nodes, prefix, viaIndex, minPlateauFactor * weight);
+            if (plateauWeight <= 0 || plateauWeight / weight < minPlateauFactor)
+                continue;
+
+            alternatives.add(new AlternativeInfo(calcSortBy(weight, shareWeight, plateauWeight), path, null, null,
+                    shareWeight, getName(edges, viaIndex)));
+            addAccepted(path, acceptedNodes, acceptedEdges, acceptedWeights);
+        }
+
+        Collections.sort(alternatives, ALT_COMPARATOR);
+        return alternatives;
+    }
+
+    private static double calcSortBy(double weight, double shareWeight, double plateauWeight) {
+        // the same influences as used for the AlternativeRoute
+        return AlternativeRoute.calcSortBy(7, weight, 0.8, shareWeight, -0.2, plateauWeight);
+    }
+
+    private static void addAccepted(Path path, List<IntHashSet> acceptedNodes, List<IntHashSet> acceptedEdges,
+                                    List<Double> acceptedWeights) {
+        IntHashSet nodes = new IntHashSet();
+        nodes.addAll(path.calcNodes());
+        acceptedNodes.add(nodes);
+        IntHashSet edges = new IntHashSet();
+        for (EdgeIteratorState edge : path.calcEdges()) {
+            edges.add(edge.getEdge());
+        }
+        acceptedEdges.add(edges);
+        acceptedWeights.add(path.getWeight());
+    }
+
+    private static boolean containsNode(List<IntHashSet> acceptedNodes, int node) {
+        for (IntHashSet nodes : acceptedNodes) {
+            if (nodes.contains(node))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean hasLoop(IntIndexedContainer nodes) {
+        IntHashSet set = new IntHashSet(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!set.add(nodes.get(i)))
+                return true;
+        }
+        return false;
+    }
+
+    private static double calcShareWeight(List<EdgeIteratorState> edges, double[] prefix, IntHashSet otherEdges) {
+        double shareWeight = 0;
+        for (int i = 0; i < edges.size(); i++) {
+            if (otherEdges.contains(edges.get(i).getEdge()))
+                shareWeight += prefix[i + 1] - prefix[i];
+        }
+        return shareWeight;
+    }
+
+    /**
+     * Checks if the sub path with roughly the specified weight around the via node is a shortest
+     * path.
+     *
+     * @return the weight of the sub path or 0 if it is not a shortest path
+     */
+    private double calcPlateauWeight(IntIndexedContainer nodes, double[] prefix, int viaIndex, double plateauWeight) {
+        int start = viaIndex;
+        while (start > 0 && prefix[viaIndex] - prefix[start] < plateauWeight / 2) {
+            start--;
+        }
+        int end = viaIndex;
+        while (end < nodes.size() - 1 && prefix[end] - prefix[viaIndex] < plateauWeight / 2) {
+            end++;
+        }
+        if (start == end)
+            return 0;
+
+        double subPathWeight = prefix[end] - prefix[start];
+        PrepareContractionHierarchies.DijkstraBidirectionCH algo
+                = new PrepareContractionHierarchies.DijkstraBidirectionCH(graph, weighting, traversalMode);
+        algo.setEdgeFilter(levelFilter);
+        Path shortest = algo.calcPath(nodes.get(start), nodes.get(end));
+        visitedNodes += algo.getVisitedNodes();
+        // the weights of the shortcuts are rounded
+        if (!shortest.isFound() || shortest.getWeight() < subPathWeight - 1e-3 * subPathWeight)
+            return 0;
+        return subPathWeight;
+    }
+
+    private static List<String> getName(List<EdgeIteratorState> edges, int viaIndex) {
+        EdgeIteratorState edge = edges.get(Math.min(viaIndex, edges.size() - 1));
+        String name = edge.getName();
+        return name.isEmpty() ? Collections.<String>emptyList() : Collections.singletonList(name);
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, to).get(0);
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to) {
+        List<AlternativeInfo> alts = calcAlternatives(from, to);
+        List<Path> paths = new ArrayList<>(alts.size());
+        for (AlternativeInfo a : alts) {
+            paths.add(a.getPath());
+        }
+        return paths;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.ALT_ROUTE + "|ch";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * A bidirectional CH search which does not stop at the best path but explores both search
+     * spaces until the maximum weight. Stall-on-demand is not used as the stalled nodes are still
+     * valid via node candidates. The upward search spaces of a CH are small and only meet at a few
+     * nodes, so the search is relaxed: entries below relaxWeight follow the downward edges too.
+     */
+    private static class AlternativeCHSearch extends DijkstraBidirectionRef {
+        private final double maxWeight;
+        private final double relaxWeight;
+        // true while the edges of an entry below relaxWeight are explored
+        private boolean relaxed;
+
+        AlternativeCHSearch(Graph graph, Weighting weighting, TraversalMode traversalMode,
+                            final EdgeFilter levelFilter, double maxWeight, double relaxWeight) {
+            super(graph, weighting, traversalMode);
+            this.maxWeight = maxWeight;
+            this.relaxWeight = relaxWeight;
+            setEdgeFilter(new EdgeFilter() {
+                @Override
+                public boolean accept(EdgeIteratorState edgeState) {
+                    return relaxed || levelFilter.accept(edgeState);
+                }
+            });
+        }
+
+        IntObjectMap<SPTEntry> getBestWeightMapFrom() {
+            return bestWeightMapFrom;
+        }
+
+        IntObjectMap<SPTEntry> getBestWeightMapTo() {
+            return bestWeightMapTo;
+        }
+
+        @Override
+        protected void initCollections(int size) {
+            super.initCollections(Math.min(size, 2000));
+        }
+
+        @Override
+        public boolean finished() {
+            if (finishedFrom && finishedTo)
+                return true;
+
+            return currFrom.weight > maxWeight && currTo.weight > maxWeight;
+        }
+
+        @Override
+        public boolean fillEdgesFrom() {
+            if (currFrom.weight > maxWeight)
+                return false;
+            return super.fillEdgesFrom();
+        }
+
+        @Override
+        public boolean fillEdgesTo() {
+            if (currTo.weight > maxWeight)
+                return false;
+            return super.fillEdgesTo();
+        }
+
+        @Override
+        protected void beforeExploration(SPTEntry entry, boolean reverse) {
+            relaxed = entry.weight <= relaxWeight;
+        }
+
+        @Override
+        protected Path createAndInitPath() {
+            bestPath = new Path4CH(graph, graph.getBaseGraph(), weighting);
+            return bestPath;
+        }
+
+        @Override
+        public String getName() {
+            return Parameters.Algorithms.ALT_ROUTE + "|ch|search";
+        }
+    }
+}
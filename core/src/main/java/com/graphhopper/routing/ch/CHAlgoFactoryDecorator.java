@@ -24,11 +24,13 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.AbstractWeighting;
 import com.graphhopper.routing.weighting.BlockAreaWeighting;
 import com.graphhopper.routing.weighting.GenericWeighting;
+import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.Parameters.CH;
+import com.graphhopper.util.Parameters.Routing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,10 +52,15 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     // as we need the strings to create the GraphHopperStorage and the GraphHopperStorage to create the preparations from the Weighting objects currently requiring the encoders
     private final List<Weighting> weightings = new ArrayList<>();
     private final Set<String> weightingsAsStrings = new LinkedHashSet<>();
+    private final Set<String> hubLabelWeightings = new LinkedHashSet<>();
+    private final List<HubLabels> hubLabels = new ArrayList<>();
     private boolean disablingAllowed = false;
     // for backward compatibility enable CH by default.
     private boolean enabled = true;
     private int preparationThreads;
+    private int preparationContractionThreads = 1;
+    private boolean edgeBased = false;
+    private boolean customizable = false;
     private ExecutorService threadPool;
     private int preparationPeriodicUpdates = -1;
     private int preparationLazyUpdates = -1;
@@ -97,6 +104,43 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         setPreparationNeighborUpdates(args.getInt(CH.PREPARE + "updates.neighbor", getPreparationNeighborUpdates()));
         setPreparationContractedNodes(args.getInt(CH.PREPARE + "contracted_nodes", getPreparationContractedNodes()));
         setPreparationLogMessages(args.getDouble(CH.PREPARE + "log_messages", getPreparationLogMessages()));
+        setPreparationContractionThreads(args.getInt(CH.PREPARE + "contraction_threads", getPreparationContractionThreads()));
+        setEdgeBased(args.getBool(CH.PREPARE + "edge_based", isEdgeBased()));
+        setCustomizable(args.getBool(CH.PREPARE + "customizable", isCustomizable()));
+        String hubLabelsStr = args.get(CH.PREPARE + "hub_labels.weightings", "");
+        if (!hubLabelsStr.isEmpty())
+            setHubLabelWeightings(Arrays.asList(hubLabelsStr.split(",")));
+    }
+
+    public boolean isEdgeBased() {
+        return edgeBased;
+    }
+
+    /**
+     * Enables an additional, edge based preparation with turn costs for every flag encoder that
+     * supports them. Queries that request edge based traversal will use this preparation. Default
+     * is false as the preparation takes considerably longer and needs more memory.
+     */
+    public CHAlgoFactoryDecorator setEdgeBased(boolean edgeBased) {
+        this.edgeBased = edgeBased;
+        return this;
+    }
+
+    public boolean isCustomizable() {
+        return customizable;
+    }
+
+    /**
+     * Prepares the node based weightings as customizable contraction hierarchies, which share one
+     * nested dissection order. The preparation and the queries are slower than with the usual
+     * contraction, but changes of the edges via GraphHopper.changeGraph only need a customization
+     * of the shortcut weights instead of a new preparation. Default is false.
+     *
+     * @see CustomizableContractionHierarchy
+     */
+    public CHAlgoFactoryDecorator setCustomizable(boolean customizable) {
+        this.customizable = customizable;
+        return this;
     }
 
     public int getPreparationPeriodicUpdates() {
@@ -254,14 +298,24 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         if (map.getWeighting().isEmpty())
             map.setWeighting(getDefaultWeighting());
 
+        // prefer the preparation with the requested traversal mode but fall back to node based
+        boolean edgeBasedRequested = map.getBool(Routing.EDGE_BASED, false);
+        PrepareContractionHierarchies fallback = null;
         String entriesStr = "";
         for (PrepareContractionHierarchies p : preparations) {
-            if (p.getWeighting().matches(map))
-                return p;
+            if (p.getWeighting().matches(map)) {
+                if (p.getTraversalMode().isEdgeBased() == edgeBasedRequested)
+                    return p;
+                if (!p.getTraversalMode().isEdgeBased() && fallback == null)
+                    fallback = p;
+            }
 
             entriesStr += p.getWeighting() + ", ";
         }
 
+        if (fallback != null)
+            return fallback;
+
         throw new IllegalArgumentException("Cannot find CH RoutingAlgorithmFactory for weighting map " + map + " in entries " + entriesStr);
     }
 
@@ -278,6 +332,83 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         this.threadPool = java.util.concurrent.Executors.newFixedThreadPool(preparationThreads);
     }
 
+    public int getPreparationContractionThreads() {
+        return preparationContractionThreads;
+    }
+
+    /**
+     * This method changes the number of threads used to contract the nodes of one weighting, i.e.
+     * the total number of threads is this number multiplied by the preparation threads. Default is
+     * 1 which contracts one node after the other. Every thread needs its own witness search data.
+     */
+    public CHAlgoFactoryDecorator setPreparationContractionThreads(int preparationContractionThreads) {
+        this.preparationContractionThreads = preparationContractionThreads;
+        return this;
+    }
+
+    /**
+     * Hub labels are created for the node based preparations of the specified weightings, e.g.
+     * fastest. They allow fast matrix and distance queries but need much more memory than the
+     * hierarchy, so they are disabled by default.
+     *
+     * @see HubLabels
+     */
+    public CHAlgoFactoryDecorator setHubLabelWeightings(List<String> weightingList) {
+        hubLabelWeightings.clear();
+        for (String strWeighting : weightingList) {
+            strWeighting = strWeighting.toLowerCase().trim();
+            if (!strWeighting.isEmpty())
+                hubLabelWeightings.add(strWeighting);
+        }
+        return this;
+    }
+
+    public List<String> getHubLabelWeightings() {
+        return new ArrayList<>(hubLabelWeightings);
+    }
+
+    public List<HubLabels> getHubLabels() {
+        return hubLabels;
+    }
+
+    /**
+     * @return the hub labels for the specified weighting or null if they were not created for it
+     */
+    public HubLabels getHubLabels(Weighting weighting) {
+        for (HubLabels labels : hubLabels) {
+            if (labels.getWeighting() == weighting)
+                return labels;
+        }
+        return null;
+    }
+
+    /**
+     * Loads the hub labels of the configured weightings or creates them from the prepared
+     * hierarchies. This has to be called after the preparation.
+     *
+     * @param recreate true if the hierarchies were prepared again and existing labels are outdated
+     */
+    public void loadOrCreateHubLabels(GraphHopperStorage ghStorage, boolean recreate) {
+        if (!isEnabled() || hubLabelWeightings.isEmpty() || !hubLabels.isEmpty())
+            return;
+
+        for (PrepareContractionHierarchies prepare : getPreparations()) {
+            Weighting weighting = prepare.getWeighting();
+            if (prepare.getTraversalMode().isEdgeBased() || !hubLabelWeightings.contains(weighting.getName()))
+                continue;
+
+            HubLabels labels = new HubLabels(ghStorage.getDirectory(), ghStorage.getGraph(CHGraph.class, weighting), weighting);
+            if (recreate || !labels.loadExisting()) {
+                LOGGER.info("creating hub labels for " + weighting + " ... (" + Helper.getMemInfo() + ")");
+                labels.createLabels();
+                labels.flush();
+                ghStorage.getProperties().put(CH.PREPARE + "hub_labels.date." + AbstractWeighting.weightingToFileName(weighting),
+                        Helper.createFormatter().format(new Date()));
+            }
+            hubLabels.add(labels);
+        }
+    }
+
     public void prepare(final StorableProperties properties) {
         ExecutorCompletionService completionService = new ExecutorCompletionService<>(threadPool);
         int counter = 0;
@@ -291,6 +422,8 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
                     Thread.currentThread().setName(name);
                     prepare.doWork();
                     properties.put(CH.PREPARE + "date." + name, Helper.createFormatter().format(new Date()));
+                    if (prepare.getCustomizableCH() != null)
+                        properties.put(CH.PREPARE + "customizable." + name, true);
                 }
             }, name);
 
@@ -314,24 +447,45 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         if (weightings.isEmpty())
             throw new IllegalStateException("No CH weightings found");
 
-        traversalMode = getNodeBase();
-
+        CustomizableContractionHierarchy customizableCH = null;
         for (Weighting weighting : getWeightings()) {
+            traversalMode = weighting instanceof TurnWeighting ? TraversalMode.EDGE_BASED_2DIR : getNodeBase();
             PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies(
                     new GHDirectory("", DAType.RAM_INT), ghStorage, ghStorage.getGraph(CHGraph.class, weighting),
                     weighting, traversalMode);
             tmpPrepareCH.setPeriodicUpdates(preparationPeriodicUpdates).
                     setLazyUpdates(preparationLazyUpdates).
                     setNeighborUpdates(preparationNeighborUpdates).
-                    setLogMessages(preparationLogMessages);
+                    setLogMessages(preparationLogMessages).
+                    setContractionThreads(preparationContractionThreads);
+            if (customizable && !traversalMode.isEdgeBased()) {
+                if (customizableCH == null)
+                    customizableCH = createCustomizableCH(ghStorage, weighting);
+                tmpPrepareCH.setCustomizableCH(customizableCH);
+            }
 
             addPreparation(tmpPrepareCH);
         }
     }
 
     /**
-     * For now only node based will work, later on we can easily find usage of this method to remove
-     * it.
+     * Calculates the nested dissection order or, if the graph is already prepared, restores it from
+     * the levels of the CHGraph, which is much faster.
+     */
+    private CustomizableContractionHierarchy createCustomizableCH(GraphHopperStorage ghStorage, Weighting weighting) {
+        StorableProperties properties = ghStorage.getProperties();
+        if (!"true".equals(properties.get(CH.PREPARE + "done")))
+            return CustomizableContractionHierarchy.create(ghStorage);
+
+        if (!"true".equals(properties.get(CH.PREPARE + "customizable." + AbstractWeighting.weightingToFileName(weighting))))
+            throw new IllegalStateException("The CH of " + weighting + " was prepared without " + CH.PREPARE
+                    + "customizable. Disable it or remove the graph folder to prepare it again");
+
+        return CustomizableContractionHierarchy.fromLevels(ghStorage.getGraph(CHGraph.class, weighting));
+    }
+
+    /**
+     * The traversal mode of all preparations except the edge based ones, see {@link #setEdgeBased(boolean)}.
      */
     public TraversalMode getNodeBase() {
         return TraversalMode.NODE_BASED;
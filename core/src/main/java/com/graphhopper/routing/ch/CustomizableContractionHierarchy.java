@@ -0,0 +1,466 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHGraphImpl;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A customizable contraction hierarchy, see 'Customizable Contraction Hierarchies' from Dibbelt,
+ * Strasser and Wagner, 2014. The nodes are contracted in a fixed order without witness searches,
+ * so the shortcuts only depend on the topology and are the same for every weighting. The
+ * customization then calculates the weights of all shortcuts for a weighting from the lower
+ * triangles of every shortcut, which is much faster than a contraction with witness searches.
+ * <p>
+ * The customization writes the hierarchy into a CHGraph: the rank becomes the level of the node
+ * and every arc of the hierarchy gets one shortcut per direction. If the original edge is already
+ * the best path of an arc the shortcut gets no access, so the CH algorithms can be used unchanged.
+ * A CHGraph customized once can be customized again, e.g. after the speeds changed, as the
+ * shortcuts are only updated in place.
+ * <p>
+ * Arcs with the same elimination tree level of their lower node do not depend on each other, so
+ * the customization runs level after level and the arcs of one level in parallel. Only node based
+ * traversal is supported.
+ *
+ * @see NestedDissection
+ * @see PrepareContractionHierarchies#setCustomizableCH(CustomizableContractionHierarchy)
+ */
+public class CustomizableContractionHierarchy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableContractionHierarchy.class);
+    private final Graph graph;
+    private final int nodes;
+    private final int[] ranks;
+    private final int[] rankNodes;
+    // the arcs to higher ranks per rank, sorted by the rank of the head, the arc id is the index
+    private final int[] upFirst;
+    private final int[] upHead;
+    // the arcs from lower ranks per rank, sorted by the rank of the tail
+    private final int[] downFirst;
+    private final int[] downTail;
+    private final int[] downArc;
+    // the ranks grouped by their level in the elimination tree
+    private final int[] levelFirst;
+    private final int[] levelRanks;
+
+    /**
+     * @param graph the base graph
+     * @param ranks the contraction order, e.g. from NestedDissection
+     */
+    public CustomizableContractionHierarchy(Graph graph, int[] ranks) {
+        this.graph = graph;
+        this.nodes = graph.getNodes();
+        if (ranks.length != nodes)
+            throw new IllegalArgumentException("The order has " + ranks.length + " entries but the graph " + nodes + " nodes");
+        this.ranks = ranks;
+        rankNodes = new int[nodes];
+        Arrays.fill(rankNodes, -1);
+        for (int node = 0; node < nodes; node++) {
+            if (ranks[node] < 0 || ranks[node] >= nodes || rankNodes[ranks[node]] >= 0)
+                throw new IllegalArgumentException("The order is not a permutation, rank " + ranks[node] + " of node " + node);
+            rankNodes[ranks[node]] = node;
+        }
+
+        StopWatch sw = new StopWatch().start();
+        IntHashSet[] upper = new IntHashSet[nodes];
+        for (int rank = 0; rank < nodes; rank++) {
+            upper[rank] = new IntHashSet(4);
+        }
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseRank = ranks[iter.getBaseNode()], adjRank = ranks[iter.getAdjNode()];
+            if (baseRank < adjRank)
+                upper[baseRank].add(adjRank);
+            else if (adjRank < baseRank)
+                upper[adjRank].add(baseRank);
+        }
+
+        // the higher neighbors of a contracted node form a clique, which is added to the lowest of them,
+        // i.e. to the parent in the elimination tree, and from there to the further ancestors
+        IntArrayList heads = new IntArrayList();
+        upFirst = new int[nodes + 1];
+        int[] levels = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++) {
+            int[] sorted = upper[rank].toArray();
+            upper[rank] = null;
+            Arrays.sort(sorted);
+            if (sorted.length > 0) {
+                IntHashSet parent = upper[sorted[0]];
+                for (int i = 1; i < sorted.length; i++) {
+                    parent.add(sorted[i]);
+                }
+            }
+            for (int head : sorted) {
+                levels[head] = Math.max(levels[head], levels[rank] + 1);
+            }
+            heads.add(sorted);
+            upFirst[rank + 1] = heads.size();
+        }
+        upHead = heads.toArray();
+
+        downFirst = new int[nodes + 1];
+        for (int head : upHead) {
+            downFirst[head + 1]++;
+        }
+        for (int rank = 0; rank < nodes; rank++) {
+            downFirst[rank + 1] += downFirst[rank];
+        }
+        downTail = new int[upHead.length];
+        downArc = new int[upHead.length];
+        int[] next = Arrays.copyOf(downFirst, nodes);
+        for (int rank = 0; rank < nodes; rank++) {
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++) {
+                int pos = next[upHead[arc]]++;
+                downTail[pos] = rank;
+                downArc[pos] = arc;
+            }
+        }
+
+        int maxLevel = 0;
+        for (int level : levels) {
+            maxLevel = Math.max(maxLevel, level);
+        }
+        levelFirst = new int[maxLevel + 2];
+        for (int level : levels) {
+            levelFirst[level + 1]++;
+        }
+        for (int level = 0; level <= maxLevel; level++) {
+            levelFirst[level + 1] += levelFirst[level];
+        }
+        levelRanks = new int[nodes];
+        next = Arrays.copyOf(levelFirst, maxLevel + 1);
+        for (int rank = 0; rank < nodes; rank++) {
+            levelRanks[next[levels[rank]]++] = rank;
+        }
+        LOGGER.info("created customizable contraction hierarchy with " + Helper.nf(getArcs()) + " arcs and "
+                + getLevels() + " levels in " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Creates the hierarchy with a nested dissection order of the specified graph.
+     */
+    public static CustomizableContractionHierarchy create(Graph graph) {
+        return new CustomizableContractionHierarchy(graph, new NestedDissection(graph).calcRanks());
+    }
+
+    /**
+     * Creates the hierarchy with the order of an already customized CHGraph, e.g. after loading it.
+     */
+    public static CustomizableContractionHierarchy fromLevels(CHGraph chGraph) {
+        int[] ranks = new int[chGraph.getNodes()];
+        for (int node = 0; node < ranks.length; node++) {
+            ranks[node] = chGraph.getLevel(node);
+        }
+        return new CustomizableContractionHierarchy(chGraph.getBaseGraph(), ranks);
+    }
+
+    public int getRank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * @return the number of arcs, i.e. the number of original edges and shortcuts between distinct
+     * pairs of nodes
+     */
+    public int getArcs() {
+        return upHead.length;
+    }
+
+    /**
+     * @return the height of the elimination tree, i.e. the number of sequential customization steps
+     */
+    public int getLevels() {
+        return levelFirst.length - 1;
+    }
+
+    /**
+     * Calculates the weights of all arcs for the specified weighting. The CHGraph is not changed
+     * until {@link Customization#apply()} is called, so routing can continue meanwhile.
+     *
+     * @param chGraph   the CHGraph to write the shortcuts into, which has to be empty or customized
+     *                  before with this hierarchy
+     * @param weighting the weighting of the CHGraph without the PreparationWeighting
+     * @param threads   the number of threads calculating the arcs of one level
+     */
+    public Customization customize(CHGraph chGraph, Weighting weighting, int threads) {
+        if (chGraph.getNodes() != nodes)
+            throw new IllegalArgumentException("The CHGraph has " + chGraph.getNodes() + " nodes but the hierarchy " + nodes);
+
+        StopWatch sw = new StopWatch().start();
+        final Customization customization = new Customization(chGraph, upHead.length);
+        initFromEdges(customization, weighting);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int level = 0; level < getLevels(); level++) {
+                final int from = levelFirst[level], to = levelFirst[level + 1];
+                if (pool == null || to - from < 16 * threads) {
+                    customizeRanks(customization, from, to, 1);
+                    continue;
+                }
+
+                List<Callable<Object>> tasks = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    final int offset = t, step = threads;
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            customizeRanks(customization, from + offset, to, step);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool, tasks);
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        LOGGER.info("customized " + weighting + " in " + sw.stop().getSeconds() + "s, threads:" + threads
+                + ", " + Helper.getMemInfo());
+        return customization;
+    }
+
+    private void initFromEdges(Customization customization, Weighting weighting) {
+        FlagEncoder encoder = weighting.getFlagEncoder();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseRank = ranks[iter.getBaseNode()], adjRank = ranks[iter.getAdjNode()];
+            if (baseRank == adjRank)
+                continue;
+
+            int arc = findArc(Math.min(baseRank, adjRank), Math.max(baseRank, adjRank));
+            // fwd is the direction from the lower to the higher rank
+            boolean baseIsLower = baseRank < adjRank;
+            if (iter.isForward(encoder))
+                customization.updateEdge(arc, baseIsLower, iter, weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE));
+            if (iter.isBackward(encoder))
+                customization.updateEdge(arc, !baseIsLower, iter, weighting.calcWeight(iter, true, EdgeIterator.NO_EDGE));
+        }
+    }
+
+    /**
+     * Calculates the arcs to higher ranks of every step-th rank of the level from the lower
+     * triangles, i.e. the paths u-v-w over a lower rank v for the arc u-w.
+     */
+    private void customizeRanks(Customization customization, int from, int to, int step) {
+        for (int i = from; i < to; i += step) {
+            int u = levelRanks[i];
+            for (int arc = upFirst[u]; arc < upFirst[u + 1]; arc++) {
+                int w = upHead[arc];
+                int j = downFirst[u], k = downFirst[w];
+                // both lists are sorted by the lower rank, the common entries are the triangles
+                while (j < downFirst[u + 1] && k < downFirst[w + 1] && downTail[k] < u) {
+                    if (downTail[j] < downTail[k]) {
+                        j++;
+                    } else if (downTail[j] > downTail[k]) {
+                        k++;
+                    } else {
+                        int lowerU = downArc[j], lowerW = downArc[k];
+                        // u->w is u->v->w and w->u is w->v->u
+                        customization.updateTriangle(arc, true, downTail[j],
+                                customization.bwdWeight[lowerU] + customization.fwdWeight[lowerW],
+                                customization.bwdDistance[lowerU] + customization.fwdDistance[lowerW]);
+                        customization.updateTriangle(arc, false, downTail[j],
+                                customization.bwdWeight[lowerW] + customization.fwdWeight[lowerU],
+                                customization.bwdDistance[lowerW] + customization.fwdDistance[lowerU]);
+                        j++;
+                        k++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeShortcuts(CHGraph chGraph, Customization customization) {
+        int baseEdges = graph.getAllEdges().getMaxId();
+        int shortcuts = chGraph.getAllEdges().getMaxId() - baseEdges;
+        boolean create = shortcuts == 0;
+        if (!create && shortcuts != 2 * upHead.length)
+            throw new IllegalStateException("The CHGraph has " + shortcuts + " shortcuts, but a customized hierarchy needs "
+                    + 2 * upHead.length + ". Was it prepared without customizable contraction?");
+
+        for (int rank = 0; rank < nodes; rank++) {
+            if (create)
+                chGraph.setLevel(rankNodes[rank], rank);
+            else if (chGraph.getLevel(rankNodes[rank]) != rank)
+                throw new IllegalStateException("The CHGraph was customized with a different order, node " + rankNodes[rank]);
+        }
+
+        CHEdgeExplorer explorer = chGraph.createEdgeExplorer();
+        for (int u = 0; u < nodes; u++) {
+            for (int arc = upFirst[u]; arc < upFirst[u + 1]; arc++) {
+                int w = upHead[arc];
+                for (int dir = 0; dir < 2; dir++) {
+                    boolean fwd = dir == 0;
+                    int shortcutId = baseEdges + 2 * arc + dir;
+                    CHEdgeIteratorState sc = create
+                            ? chGraph.shortcut(rankNodes[u], rankNodes[w])
+                            : (CHEdgeIteratorState) chGraph.getEdgeIteratorState(shortcutId, rankNodes[w]);
+                    if (sc.getEdge() != shortcutId)
+                        throw new IllegalStateException("Unexpected shortcut " + sc.getEdge() + ", expected " + shortcutId);
+                    // like after a contraction the shortcut is only reachable from the lower node
+                    if (create)
+                        ((CHGraphImpl) chGraph).disconnect(explorer, sc);
+
+                    int via = fwd ? customization.fwdVia[arc] : customization.bwdVia[arc];
+                    double weight = fwd ? customization.fwdWeight[arc] : customization.bwdWeight[arc];
+                    // note: flags overwrite weight => call first
+                    if (via < 0 || Double.isInfinite(weight)) {
+                        // the original edge is better or there is no path at all
+                        sc.setFlags(0);
+                        sc.setWeight(Double.POSITIVE_INFINITY);
+                        sc.setDistance(0);
+                        sc.setSkippedEdges(EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
+                        continue;
+                    }
+
+                    // the shortcut is stored from the lower to the higher node, so the fwd shortcut is forward
+                    sc.setFlags(fwd ? PrepareEncoder.getScFwdDir() : PrepareEncoder.getScBwdDir());
+                    sc.setWeight(weight);
+                    sc.setDistance(fwd ? customization.fwdDistance[arc] : customization.bwdDistance[arc]);
+                    int lowerU = findArc(via, u), lowerW = findArc(via, w);
+                    // u->w skips v->u in bwd direction and v->w in fwd direction, w->u the other way round
+                    sc.setSkippedEdges(edgeOf(customization, lowerU, !fwd, baseEdges), edgeOf(customization, lowerW, fwd, baseEdges));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the original edge if it is the best path of the arc in the specified direction,
+     * otherwise the shortcut
+     */
+    private static int edgeOf(Customization customization, int arc, boolean fwd, int baseEdges) {
+        int via = fwd ? customization.fwdVia[arc] : customization.bwdVia[arc];
+        if (via < 0)
+            return fwd ? customization.fwdEdge[arc] : customization.bwdEdge[arc];
+        return baseEdges + 2 * arc + (fwd ? 0 : 1);
+    }
+
+    private int findArc(int lowerRank, int higherRank) {
+        int arc = Arrays.binarySearch(upHead, upFirst[lowerRank], upFirst[lowerRank + 1], higherRank);
+        if (arc < 0)
+            throw new IllegalStateException("No arc between ranks " + lowerRank + " and " + higherRank);
+        return arc;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cch|nodes:" + nodes + "|arcs:" + getArcs() + "|levels:" + getLevels();
+    }
+
+    /**
+     * The weights of all arcs for one weighting. The fwd direction is from the lower to the higher
+     * rank. The via rank is the middle of the best triangle or -1 if the original edge is best.
+     */
+    public class Customization {
+        private final CHGraph chGraph;
+        final double[] fwdWeight;
+        final double[] bwdWeight;
+        final double[] fwdDistance;
+        final double[] bwdDistance;
+        final int[] fwdVia;
+        final int[] bwdVia;
+        final int[] fwdEdge;
+        final int[] bwdEdge;
+
+        Customization(CHGraph chGraph, int arcs) {
+            this.chGraph = chGraph;
+            fwdWeight = new double[arcs];
+            bwdWeight = new double[arcs];
+            fwdDistance = new double[arcs];
+            bwdDistance = new double[arcs];
+            fwdVia = new int[arcs];
+            bwdVia = new int[arcs];
+            fwdEdge = new int[arcs];
+            bwdEdge = new int[arcs];
+            Arrays.fill(fwdWeight, Double.POSITIVE_INFINITY);
+            Arrays.fill(bwdWeight, Double.POSITIVE_INFINITY);
+            Arrays.fill(fwdVia, -1);
+            Arrays.fill(bwdVia, -1);
+            Arrays.fill(fwdEdge, EdgeIterator.NO_EDGE);
+            Arrays.fill(bwdEdge, EdgeIterator.NO_EDGE);
+        }
+
+        /**
+         * Writes the shortcuts into the CHGraph. Routing on the CHGraph has to be blocked meanwhile.
+         */
+        public void apply() {
+            StopWatch sw = new StopWatch().start();
+            writeShortcuts(chGraph, this);
+            LOGGER.info("applied customization with " + Helper.nf(2 * getArcs()) + " shortcuts in " + sw.stop().getSeconds() + "s");
+        }
+
+        void updateEdge(int arc, boolean fwd, EdgeIterator edge, double weight) {
+            if (fwd && weight < fwdWeight[arc]) {
+                fwdWeight[arc] = weight;
+                fwdDistance[arc] = edge.getDistance();
+                fwdEdge[arc] = edge.getEdge();
+            } else if (!fwd && weight < bwdWeight[arc]) {
+                bwdWeight[arc] = weight;
+                bwdDistance[arc] = edge.getDistance();
+                bwdEdge[arc] = edge.getEdge();
+            }
+        }
+
+        void updateTriangle(int arc, boolean fwd, int via, double weight, double distance) {
+            if (fwd && weight < fwdWeight[arc]) {
+                fwdWeight[arc] = weight;
+                fwdDistance[arc] = distance;
+                fwdVia[arc] = via;
+            } else if (!fwd && weight < bwdWeight[arc]) {
+                bwdWeight[arc] = weight;
+                bwdDistance[arc] = distance;
+                bwdVia[arc] = via;
+            }
+        }
+    }
+}
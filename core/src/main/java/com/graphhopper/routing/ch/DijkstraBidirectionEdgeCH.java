@@ -0,0 +1,228 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The bidirectional Dijkstra for an edge-based contraction hierarchy. The entries are edge states
+ * and know the original edge at their node, so that the turn costs can be added when expanding an
+ * entry and when both searches meet. Because of the turn costs the searches can meet at a node
+ * with several entries, the best combination is checked when an entry is settled.
+ * <p>
+ * Both searches run in the upward graph until their smallest weight is not better than the best
+ * found path.
+ *
+ * @see PrepareContractionHierarchies#createAlgo
+ */
+public class DijkstraBidirectionEdgeCH extends AbstractRoutingAlgorithm {
+    private final TurnWeighting turnWeighting;
+    private final IntObjectMap<CHEntry> bestWeightMapFrom;
+    private final IntObjectMap<CHEntry> bestWeightMapTo;
+    private final IntObjectMap<List<CHEntry>> settledFrom;
+    private final IntObjectMap<List<CHEntry>> settledTo;
+    private final PriorityQueue<CHEntry> pqOpenSetFrom;
+    private final PriorityQueue<CHEntry> pqOpenSetTo;
+    private CHEntry bestFrom;
+    private CHEntry bestTo;
+    private double bestWeight = Double.POSITIVE_INFINITY;
+    private boolean finishedFrom;
+    private boolean finishedTo;
+    private int visitedCountFrom;
+    private int visitedCountTo;
+
+    /**
+     * @param weighting     the weighting of the preparation, which knows the weight of shortcuts
+     * @param turnWeighting the turn costs of the query, e.g. created for the QueryGraph
+     */
+    public DijkstraBidirectionEdgeCH(Graph graph, Weighting weighting, TurnWeighting turnWeighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED_2DIR);
+        this.turnWeighting = turnWeighting;
+        int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+        bestWeightMapFrom = new GHIntObjectHashMap<>(size);
+        bestWeightMapTo = new GHIntObjectHashMap<>(size);
+        settledFrom = new GHIntObjectHashMap<>(size);
+        settledTo = new GHIntObjectHashMap<>(size);
+        pqOpenSetFrom = new PriorityQueue<>(size);
+        pqOpenSetTo = new PriorityQueue<>(size);
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        checkAlreadyRun();
+        pqOpenSetFrom.add(new CHEntry(EdgeIterator.NO_EDGE, from, 0, EdgeIterator.NO_EDGE));
+        pqOpenSetTo.add(new CHEntry(EdgeIterator.NO_EDGE, to, 0, EdgeIterator.NO_EDGE));
+        while (!finished() && !isMaxVisitedNodesExceeded()) {
+            if (!finishedFrom)
+                finishedFrom = !fillEdges(false);
+
+            if (!finishedTo)
+                finishedTo = !fillEdges(true);
+        }
+        return extractPath();
+    }
+
+    /**
+     * Settles the next entry of one search.
+     *
+     * @return false if the search is finished
+     */
+    private boolean fillEdges(boolean reverse) {
+        PriorityQueue<CHEntry> pqOpenSet = reverse ? pqOpenSetTo : pqOpenSetFrom;
+        IntObjectMap<CHEntry> bestWeightMap = reverse ? bestWeightMapTo : bestWeightMapFrom;
+        CHEntry currEntry;
+        do {
+            if (pqOpenSet.isEmpty())
+                return false;
+
+            currEntry = pqOpenSet.poll();
+            // skip entries which were replaced by a better one
+        } while (currEntry.edge != EdgeIterator.NO_EDGE && bestWeightMap.get(currEntry.traversalId) != currEntry);
+
+        if (currEntry.weight >= bestWeight)
+            return false;
+
+        if (reverse)
+            visitedCountTo++;
+        else
+            visitedCountFrom++;
+
+        int node = currEntry.adjNode;
+        updateBestPath(currEntry, reverse);
+        IntObjectMap<List<CHEntry>> settled = reverse ? settledTo : settledFrom;
+        List<CHEntry> settledAtNode = settled.get(node);
+        if (settledAtNode == null) {
+            settledAtNode = new ArrayList<>(2);
+            settled.put(node, settledAtNode);
+        }
+        settledAtNode.add(currEntry);
+
+        EdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (!accept(iter, currEntry.edge))
+                continue;
+
+            CHEdgeIteratorState chIter = (CHEdgeIteratorState) iter;
+            double turnWeight;
+            int origEdge;
+            if (reverse) {
+                turnWeight = PrepareContractionHierarchies.calcTurnWeight(turnWeighting,
+                        PrepareContractionHierarchies.getOrigEdge(chIter, node, true), node, currEntry.origEdge);
+                origEdge = PrepareContractionHierarchies.getOrigEdge(chIter, iter.getAdjNode(), false);
+            } else {
+                turnWeight = PrepareContractionHierarchies.calcTurnWeight(turnWeighting,
+                        currEntry.origEdge, node, PrepareContractionHierarchies.getOrigEdge(chIter, node, false));
+                origEdge = PrepareContractionHierarchies.getOrigEdge(chIter, iter.getAdjNode(), true);
+            }
+            if (Double.isInfinite(turnWeight))
+                continue;
+
+            double weight = currEntry.weight + turnWeight + weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE);
+            if (Double.isInfinite(weight))
+                continue;
+
+            int traversalId = traversalMode.createTraversalId(iter, reverse);
+            CHEntry entry = bestWeightMap.get(traversalId);
+            if (entry == null || entry.weight > weight) {
+                entry = new CHEntry(iter.getEdge(), iter.getAdjNode(), weight, origEdge);
+                entry.traversalId = traversalId;
+                entry.parent = currEntry;
+                bestWeightMap.put(traversalId, entry);
+                pqOpenSet.add(entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the path through the node of the settled entry with all settled entries of the other
+     * search at this node.
+     */
+    private void updateBestPath(CHEntry entry, boolean reverse) {
+        List<CHEntry> otherEntries = (reverse ? settledFrom : settledTo).get(entry.adjNode);
+        if (otherEntries == null)
+            return;
+
+        for (CHEntry otherEntry : otherEntries) {
+            CHEntry fromEntry = reverse ? otherEntry : entry;
+            CHEntry toEntry = reverse ? entry : otherEntry;
+            double weight = fromEntry.weight + toEntry.weight + PrepareContractionHierarchies.calcTurnWeight(turnWeighting,
+                    fromEntry.origEdge, entry.adjNode, toEntry.origEdge);
+            if (weight < bestWeight) {
+                bestWeight = weight;
+                bestFrom = fromEntry;
+                bestTo = toEntry;
+            }
+        }
+    }
+
+    @Override
+    protected boolean finished() {
+        return finishedFrom && finishedTo;
+    }
+
+    @Override
+    protected Path extractPath() {
+        Path4EdgeCH path = new Path4EdgeCH(graph, graph.getBaseGraph(), turnWeighting);
+        if (bestFrom == null)
+            return path;
+
+        path.setSPTEntry(bestFrom);
+        path.setSPTEntryTo(bestTo);
+        path.setWeight(bestWeight);
+        return path.extract();
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedCountFrom + visitedCountTo;
+    }
+
+    @Override
+    public String getName() {
+        return "dijkstrabi|edge|ch";
+    }
+
+    private static class CHEntry extends SPTEntry {
+        // for the turn costs: the original edge arriving at adjNode in the forward search and
+        // leaving adjNode in the backward search
+        final int origEdge;
+        int traversalId;
+
+        CHEntry(int edge, int adjNode, double weight, int origEdge) {
+            super(edge, adjNode, weight);
+            this.origEdge = origEdge;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIterator;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The witness search of the edge-based contraction. It is a Dijkstra over edge states which avoids
+ * the node to be contracted and uses only not yet contracted nodes. Instead of one start node it
+ * has several initial edges, each with its own start weight, so that the weight of turning into
+ * the first edge of a witness can be included.
+ * <p>
+ * Every found entry belongs to an existing path, so the caller can use not yet settled entries as
+ * witnesses too.
+ *
+ * @see PrepareContractionHierarchies#getOrigEdge
+ */
+class EdgeBasedWitnessSearch {
+    private final CHGraph graph;
+    private final Weighting prepareWeighting;
+    private final TurnWeighting turnWeighting;
+    private final CHEdgeExplorer outExplorer;
+    private final int maxLevel;
+    private final IntObjectMap<WitnessEntry> bestWeightMap = new GHIntObjectHashMap<>(64);
+    private final PriorityQueue<WitnessEntry> prioQueue = new PriorityQueue<>(64);
+    private int avoidNode;
+    private double weightLimit;
+    private int maxSettledEdges;
+    private int settledEdges;
+
+    EdgeBasedWitnessSearch(CHGraph graph, Weighting prepareWeighting, TurnWeighting turnWeighting,
+                           CHEdgeExplorer outExplorer, int maxLevel) {
+        this.graph = graph;
+        this.prepareWeighting = prepareWeighting;
+        this.turnWeighting = turnWeighting;
+        this.outExplorer = outExplorer;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Clears the previous search.
+     */
+    EdgeBasedWitnessSearch init(int avoidNode, double weightLimit, int maxSettledEdges) {
+        bestWeightMap.clear();
+        prioQueue.clear();
+        this.avoidNode = avoidNode;
+        this.weightLimit = weightLimit;
+        this.maxSettledEdges = maxSettledEdges;
+        settledEdges = 0;
+        return this;
+    }
+
+    /**
+     * Starts the search with the specified edge which leaves its base node.
+     *
+     * @param weight the weight of the edge including the weight to get into it
+     */
+    void addInitialEdge(CHEdgeIteratorState edge, double weight) {
+        if (!accept(edge))
+            return;
+
+        relax(edge, weight, null);
+    }
+
+    void search() {
+        while (!prioQueue.isEmpty() && settledEdges <= maxSettledEdges) {
+            WitnessEntry currEntry = prioQueue.poll();
+            if (currEntry.weight > weightLimit)
+                break;
+
+            settledEdges++;
+            CHEdgeIterator iter = outExplorer.setBaseNode(currEntry.adjNode);
+            while (iter.next()) {
+                if (iter.getEdge() == currEntry.edge || !accept(iter))
+                    continue;
+
+                double turnWeight = PrepareContractionHierarchies.calcTurnWeight(turnWeighting, currEntry.origEdge,
+                        currEntry.adjNode, PrepareContractionHierarchies.getOrigEdge(iter, currEntry.adjNode, false));
+                if (Double.isInfinite(turnWeight))
+                    continue;
+
+                relax(iter, currEntry.weight + turnWeight + prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE), currEntry);
+            }
+        }
+    }
+
+    /**
+     * @return all entries found at the specified node, settled or not
+     */
+    List<WitnessEntry> getEntries(int node) {
+        List<WitnessEntry> list = new ArrayList<>();
+        for (ObjectCursor<WitnessEntry> cursor : bestWeightMap.values()) {
+            if (cursor.value.adjNode == node)
+                list.add(cursor.value);
+        }
+        return list;
+    }
+
+    int getSettledEdges() {
+        return settledEdges;
+    }
+
+    private boolean accept(CHEdgeIteratorState edge) {
+        int adjNode = edge.getAdjNode();
+        return adjNode != avoidNode && graph.getLevel(adjNode) == maxLevel;
+    }
+
+    private void relax(CHEdgeIteratorState edge, double weight, WitnessEntry parent) {
+        if (Double.isInfinite(weight) || weight > weightLimit)
+            return;
+
+        int traversalKey = GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), false);
+        WitnessEntry entry = bestWeightMap.get(traversalKey);
+        if (entry == null) {
+            entry = new WitnessEntry(edge.getEdge(), edge.getAdjNode(), weight,
+                    PrepareContractionHierarchies.getOrigEdge(edge, edge.getAdjNode(), true));
+            bestWeightMap.put(traversalKey, entry);
+        } else if (entry.weight > weight) {
+            prioQueue.remove(entry);
+            entry.weight = weight;
+        } else {
+            return;
+        }
+
+        entry.parent = parent;
+        prioQueue.add(entry);
+    }
+
+    static class WitnessEntry extends SPTEntry {
+        // the original edge arriving at adjNode
+        final int origEdge;
+
+        WitnessEntry(int edge, int adjNode, double weight, int origEdge) {
+            super(edge, adjNode, weight);
+            this.origEdge = origEdge;
+        }
+    }
+}
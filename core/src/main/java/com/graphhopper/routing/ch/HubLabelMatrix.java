@@ -0,0 +1,214 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.routing.MatrixAlgorithm;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.ch.HubLabels.Label;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Fills a DistanceMatrix from hub labels. One label per origin and one per destination is read
+ * and every cell is the intersection of two labels. Virtual nodes of the QueryGraph have no label,
+ * so a small Dijkstra over the virtual edges finds the real nodes next to them and the label of a
+ * virtual node is combined from their labels. Paths which only use virtual edges, e.g. between two
+ * points on the same edge, are taken from this Dijkstra.
+ *
+ * @see HubLabels
+ */
+public class HubLabelMatrix implements MatrixAlgorithm {
+    private final QueryGraph queryGraph;
+    private final HubLabels hubLabels;
+    private final Weighting weighting;
+    private final EdgeExplorer outEdgeExplorer;
+    private final EdgeExplorer inEdgeExplorer;
+    private int visitedNodes;
+    private boolean alreadyRun;
+
+    /**
+     * @param queryGraph the QueryGraph around the CHGraph for which the hub labels were created
+     */
+    public HubLabelMatrix(QueryGraph queryGraph, HubLabels hubLabels) {
+        this.queryGraph = queryGraph;
+        this.hubLabels = hubLabels;
+        this.weighting = hubLabels.getWeighting();
+        outEdgeExplorer = queryGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+        inEdgeExplorer = queryGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), true, false));
+    }
+
+    @Override
+    public DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes) {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+
+        DistanceMatrix matrix = new DistanceMatrix(fromNodes.length, toNodes.length);
+        List<IntObjectMap<AccessEntry>> fromVirtuals = new ArrayList<>(fromNodes.length);
+        Label[] fromLabels = new Label[fromNodes.length];
+        for (int fromIndex = 0; fromIndex < fromNodes.length; fromIndex++) {
+            IntObjectMap<AccessEntry> virtuals = new GHIntObjectHashMap<>();
+            fromLabels[fromIndex] = createLabel(fromNodes[fromIndex], false, virtuals);
+            fromVirtuals.add(virtuals);
+        }
+
+        for (int toIndex = 0; toIndex < toNodes.length; toIndex++) {
+            Label toLabel = createLabel(toNodes[toIndex], true, new GHIntObjectHashMap<AccessEntry>());
+            for (int fromIndex = 0; fromIndex < fromNodes.length; fromIndex++) {
+                Label fromLabel = fromLabels[fromIndex];
+                long hub = HubLabels.intersect(fromLabel, toLabel);
+                double weight = Double.POSITIVE_INFINITY;
+                if (hub >= 0) {
+                    int i = (int) (hub >>> 32), j = (int) hub;
+                    weight = (double) fromLabel.weights[i] + toLabel.weights[j];
+                    matrix.set(fromIndex, toIndex, weight, (double) fromLabel.distances[i] + toLabel.distances[j],
+                            (long) fromLabel.millis[i] + toLabel.millis[j]);
+                }
+
+                AccessEntry direct = fromVirtuals.get(fromIndex).get(toNodes[toIndex]);
+                if (direct != null && direct.weight < weight)
+                    matrix.set(fromIndex, toIndex, direct.weight, direct.distance, direct.millis);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @param virtuals is filled with the virtual nodes which were reached without a real node
+     */
+    private Label createLabel(int node, boolean reverse, IntObjectMap<AccessEntry> virtuals) {
+        if (!queryGraph.isVirtualNode(node))
+            return hubLabels.getLabel(node, reverse);
+
+        EdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        PriorityQueue<AccessEntry> queue = new PriorityQueue<>();
+        queue.add(new AccessEntry(node, 0, 0, 0));
+        IntObjectMap<AccessEntry> settled = new GHIntObjectHashMap<>();
+        Label label = new Label(0);
+        while (!queue.isEmpty()) {
+            AccessEntry entry = queue.poll();
+            if (settled.containsKey(entry.node))
+                continue;
+
+            settled.put(entry.node, entry);
+            visitedNodes++;
+            if (!queryGraph.isVirtualNode(entry.node)) {
+                label = merge(label, hubLabels.getLabel(entry.node, reverse), entry);
+                continue;
+            }
+
+            virtuals.put(entry.node, entry);
+            EdgeIterator iter = explorer.setBaseNode(entry.node);
+            while (iter.next()) {
+                double weight = weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE);
+                if (Double.isInfinite(weight) || settled.containsKey(iter.getAdjNode()))
+                    continue;
+
+                queue.add(new AccessEntry(iter.getAdjNode(), entry.weight + weight, entry.distance + iter.getDistance(),
+                        entry.millis + weighting.calcMillis(iter, reverse, EdgeIterator.NO_EDGE)));
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Merges two labels sorted by hub and takes the minimum weight for common hubs. The values of
+     * the second label are shifted by the specified access entry.
+     */
+    private static Label merge(Label label, Label other, AccessEntry shift) {
+        Label res = new Label(label.size + other.size);
+        int i = 0, j = 0, k = 0;
+        while (i < label.size || j < other.size) {
+            boolean takeOther = i >= label.size || j < other.size && other.hubs[j] < label.hubs[i];
+            boolean same = !takeOther && j < other.size && other.hubs[j] == label.hubs[i];
+            if (same && shift.weight + other.weights[j] < label.weights[i])
+                takeOther = true;
+
+            if (takeOther) {
+                res.hubs[k] = other.hubs[j];
+                res.weights[k] = (float) (shift.weight + other.weights[j]);
+                res.distances[k] = (float) (shift.distance + other.distances[j]);
+                res.millis[k] = (int) (shift.millis + other.millis[j]);
+            } else {
+                res.hubs[k] = label.hubs[i];
+                res.weights[k] = label.weights[i];
+                res.distances[k] = label.distances[i];
+                res.millis[k] = label.millis[i];
+            }
+            k++;
+            if (same) {
+                i++;
+                j++;
+            } else if (takeOther) {
+                j++;
+            } else {
+                i++;
+            }
+        }
+
+        Label trimmed = new Label(k);
+        System.arraycopy(res.hubs, 0, trimmed.hubs, 0, k);
+        System.arraycopy(res.weights, 0, trimmed.weights, 0, k);
+        System.arraycopy(res.distances, 0, trimmed.distances, 0, k);
+        System.arraycopy(res.millis, 0, trimmed.millis, 0, k);
+        return trimmed;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        // only the few virtual nodes of the QueryGraph are explored
+    }
+
+    @Override
+    public String getName() {
+        return "hub_labels";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class AccessEntry implements Comparable<AccessEntry> {
+        final int node;
+        final double weight;
+        final double distance;
+        final long millis;
+
+        AccessEntry(int node, double weight, double distance, long millis) {
+            this.node = node;
+            this.weight = weight;
+            this.distance = distance;
+            this.millis = millis;
+        }
+
+        @Override
+        public int compareTo(AccessEntry o) {
+            return Double.compare(weight, o.weight);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * A hub labelling derived from a fully contracted hierarchy, see 'A Hub-Based Labeling Algorithm
+ * for Shortest Paths on Road Networks' from Abraham, Delling, Goldberg and Werneck, 2011. The
+ * forward label of a node contains the weight to all nodes of its upward search space and the
+ * backward label the weight from them. The weight between two nodes is then the minimum over the
+ * hubs which are in the forward label of the origin and in the backward label of the destination.
+ * No graph is explored for a query, only two labels are read and intersected.
+ * <p>
+ * The labels are created in descending level order from the labels of the higher neighbors and
+ * entries are pruned if the other labels already know a shorter path to the hub. Every entry
+ * stores the hub, the weight, the distance and the time. The hubs are stored as their rank in the
+ * level order, so the labels are sorted by rank and the frequent hubs of the top levels get the
+ * small ids. Every label is stored compressed as varint deltas of the ranks, which needs roughly
+ * 8 bytes per entry.
+ * <p>
+ * The labels need much more memory than the hierarchy and the creation keeps all labels
+ * uncompressed in memory, so they are only created for the configured weightings. Only node based
+ * traversal is supported and the nodes have to be nodes of the CHGraph, see HubLabelMatrix for
+ * queries between virtual nodes.
+ *
+ * @see CHAlgoFactoryDecorator#setHubLabelWeightings(java.util.List)
+ */
+public class HubLabels implements Storable<HubLabels> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubLabels.class);
+    // 8 bytes for the label offset, 4 bytes for the length of the forward and 4 for the backward label
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private final CHGraph chGraph;
+    private final Weighting weighting;
+    private final DataAccess index;
+    private final DataAccess labels;
+    private long entries;
+    private boolean initialized;
+
+    /**
+     * @param weighting the weighting of the contraction hierarchy without the PreparationWeighting
+     */
+    public HubLabels(Directory dir, CHGraph chGraph, Weighting weighting) {
+        this.chGraph = chGraph;
+        this.weighting = weighting;
+        String name = AbstractWeighting.weightingToFileName(weighting);
+        index = dir.find("hub_labels_index_" + name);
+        labels = dir.find("hub_labels_" + name);
+    }
+
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    /**
+     * Creates the labels from the prepared contraction hierarchy.
+     */
+    public void createLabels() {
+        if (initialized)
+            throw new IllegalStateException("Hub labels are already created or loaded");
+
+        int nodes = chGraph.getNodes();
+        long[] sortKeys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            // higher levels first
+            sortKeys[node] = ((long) (Integer.MAX_VALUE - chGraph.getLevel(node)) << 32) | node;
+        }
+        Arrays.sort(sortKeys);
+        int[] rankNodes = new int[nodes];
+        int[] ranks = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++) {
+            rankNodes[rank] = (int) sortKeys[rank];
+            ranks[rankNodes[rank]] = rank;
+            if (rank > 0 && (sortKeys[rank] >>> 32) == (sortKeys[rank - 1] >>> 32))
+                throw new IllegalStateException("Hub labels need a fully contracted hierarchy, but nodes "
+                        + rankNodes[rank - 1] + " and " + rankNodes[rank] + " have the same level");
+        }
+
+        Label[] fwdLabels = new Label[nodes];
+        Label[] bwdLabels = new Label[nodes];
+        Weighting prepareWeighting = new PreparationWeighting(weighting);
+        ShortcutMillisCalculator millisCalculator = new ShortcutMillisCalculator(chGraph, weighting);
+        EdgeExplorer outExplorer = chGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+        EdgeExplorer inExplorer = chGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), true, false));
+        LabelBuilder builder = new LabelBuilder(nodes);
+        index.create((long) nodes * INDEX_ENTRY_BYTES);
+        labels.create(Math.max(1000, nodes * 100L));
+        ByteBuffer buffer = new ByteBuffer();
+        long offset = 0;
+        entries = 0;
+        for (int rank = 0; rank < nodes; rank++) {
+            int node = rankNodes[rank];
+            fwdLabels[rank] = builder.build(rank, outExplorer.setBaseNode(node), false, ranks, fwdLabels, bwdLabels,
+                    prepareWeighting, millisCalculator);
+            bwdLabels[rank] = builder.build(rank, inExplorer.setBaseNode(node), true, ranks, bwdLabels, fwdLabels,
+                    prepareWeighting, millisCalculator);
+            entries += fwdLabels[rank].size + bwdLabels[rank].size;
+
+            buffer.reset();
+            fwdLabels[rank].write(buffer);
+            int fwdBytes = buffer.size;
+            bwdLabels[rank].write(buffer);
+            labels.ensureCapacity(offset + buffer.size);
+            labels.setBytes(offset, buffer.bytes, buffer.size);
+
+            long pointer = (long) node * INDEX_ENTRY_BYTES;
+            index.setInt(pointer, (int) offset);
+            index.setInt(pointer + 4, (int) (offset >>> 32));
+            index.setInt(pointer + 8, fwdBytes);
+            index.setInt(pointer + 12, buffer.size - fwdBytes);
+            offset += buffer.size;
+        }
+        labels.trimTo(Math.max(offset, 1));
+        index.setHeader(0, nodes);
+        index.setHeader(4, (int) entries);
+        index.setHeader(8, (int) (entries >>> 32));
+        initialized = true;
+        LOGGER.info("created hub labels for " + weighting + ", average label size: " + getAverageLabelSize()
+                + ", " + Helper.nf(getCapacity() / Helper.MB) + "MB, " + Helper.getMemInfo());
+    }
+
+    /**
+     * @return the forward label of the specified node if reverse is false, otherwise the backward
+     * label
+     */
+    Label getLabel(int node, boolean reverse) {
+        if (node < 0 || node >= getNodes())
+            throw new IllegalArgumentException("Node " + node + " is not part of the hub labels with " + getNodes() + " nodes");
+
+        long pointer = (long) node * INDEX_ENTRY_BYTES;
+        long offset = (index.getInt(pointer) & 0xFFFFFFFFL) | ((long) index.getInt(pointer + 4) << 32);
+        int fwdBytes = index.getInt(pointer + 8);
+        int length = reverse ? index.getInt(pointer + 12) : fwdBytes;
+        byte[] bytes = new byte[length];
+        labels.getBytes(reverse ? offset + fwdBytes : offset, bytes, length);
+        return Label.read(bytes);
+    }
+
+    /**
+     * @return the weight of the shortest path from one node to another or infinity if they are not
+     * connected
+     */
+    public double calcWeight(int from, int to) {
+        Label fwd = getLabel(from, false);
+        Label bwd = getLabel(to, true);
+        long hub = intersect(fwd, bwd);
+        return hub < 0 ? Double.POSITIVE_INFINITY : (double) fwd.weights[(int) (hub >>> 32)] + bwd.weights[(int) hub];
+    }
+
+    /**
+     * @return the distance in meter of the shortest path from one node to another or infinity if
+     * they are not connected
+     */
+    public double calcDistance(int from, int to) {
+        Label fwd = getLabel(from, false);
+        Label bwd = getLabel(to, true);
+        long hub = intersect(fwd, bwd);
+        return hub < 0 ? Double.POSITIVE_INFINITY : (double) fwd.distances[(int) (hub >>> 32)] + bwd.distances[(int) hub];
+    }
+
+    /**
+     * @return the time in milliseconds of the shortest path from one node to another or
+     * Long.MAX_VALUE if they are not connected
+     */
+    public long calcTime(int from, int to) {
+        Label fwd = getLabel(from, false);
+        Label bwd = getLabel(to, true);
+        long hub = intersect(fwd, bwd);
+        return hub < 0 ? Long.MAX_VALUE : (long) fwd.millis[(int) (hub >>> 32)] + bwd.millis[(int) hub];
+    }
+
+    /**
+     * @return the indices of the common hub with the minimum weight, the index in the forward label
+     * in the upper and the index in the backward label in the lower 32 bits, or -1 if the labels
+     * have no common hub
+     */
+    static long intersect(Label fwd, Label bwd) {
+        long best = -1;
+        double bestWeight = Double.POSITIVE_INFINITY;
+        int i = 0, j = 0;
+        while (i < fwd.size && j < bwd.size) {
+            if (fwd.hubs[i] < bwd.hubs[j]) {
+                i++;
+            } else if (fwd.hubs[i] > bwd.hubs[j]) {
+                j++;
+            } else {
+                double weight = (double) fwd.weights[i] + bwd.weights[j];
+                if (weight < bestWeight) {
+                    bestWeight = weight;
+                    best = ((long) i << 32) | j;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    public int getNodes() {
+        return index.getHeader(0);
+    }
+
+    /**
+     * @return the number of entries of all forward and backward labels
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    public double getAverageLabelSize() {
+        int nodes = getNodes();
+        return nodes == 0 ? 0 : entries / (2.0 * nodes);
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (initialized)
+            throw new IllegalStateException("Cannot call HubLabels.loadExisting if already initialized");
+        if (!index.loadExisting())
+            return false;
+        if (!labels.loadExisting())
+            throw new IllegalStateException("Hub label index loaded but not the labels!?");
+
+        int nodes = index.getHeader(0);
+        if (nodes != chGraph.getNodes())
+            throw new IllegalArgumentException("Cannot load hub labels as written for different graph storage with " + nodes + " nodes, not " + chGraph.getNodes());
+        entries = (index.getHeader(4) & 0xFFFFFFFFL) | ((long) index.getHeader(8) << 32);
+        initialized = true;
+        return true;
+    }
+
+    @Override
+    public HubLabels create(long byteCount) {
+        throw new IllegalStateException("Do not call HubLabels.create directly, use createLabels");
+    }
+
+    @Override
+    public void flush() {
+        index.flush();
+        labels.flush();
+    }
+
+    @Override
+    public void close() {
+        index.close();
+        labels.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return index.isClosed();
+    }
+
+    /**
+     * @return the bytes of the labels and the index
+     */
+    @Override
+    public long getCapacity() {
+        return index.getCapacity() + labels.getCapacity();
+    }
+
+    @Override
+    public String toString() {
+        return "hub_labels|" + weighting + "|entries:" + entries;
+    }
+
+    /**
+     * An uncompressed label sorted by hub rank. The weights, distances and times are the values to
+     * the hub for a forward label and from the hub for a backward label.
+     */
+    static class Label {
+        final int size;
+        final int[] hubs;
+        final float[] weights;
+        final float[] distances;
+        final int[] millis;
+
+        Label(int size) {
+            this.size = size;
+            hubs = new int[size];
+            weights = new float[size];
+            distances = new float[size];
+            millis = new int[size];
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.writeVarInt(size);
+            int prevHub = 0;
+            for (int i = 0; i < size; i++) {
+                buffer.writeVarInt(hubs[i] - prevHub);
+                prevHub = hubs[i];
+                buffer.writeInt(Float.floatToRawIntBits(weights[i]));
+                // decimeter precision is enough and makes the distances small integers
+                buffer.writeVarInt(Math.round(distances[i] * 10));
+                buffer.writeVarInt(millis[i]);
+            }
+        }
+
+        static Label read(byte[] bytes) {
+            ByteBuffer buffer = new ByteBuffer(bytes);
+            Label label = new Label(buffer.readVarInt());
+            int hub = 0;
+            for (int i = 0; i < label.size; i++) {
+                hub += buffer.readVarInt();
+                label.hubs[i] = hub;
+                label.weights[i] = Float.intBitsToFloat(buffer.readInt());
+                label.distances[i] = buffer.readVarInt() / 10f;
+                label.millis[i] = buffer.readVarInt();
+            }
+            return label;
+        }
+    }
+
+    /**
+     * Creates the labels of one node from the labels of its higher neighbors. The arrays are
+     * indexed by hub rank and reused for all nodes.
+     */
+    private static class LabelBuilder {
+        private final float[] weights;
+        private final float[] distances;
+        private final int[] millis;
+        private final IntArrayList hubs = new IntArrayList();
+
+        LabelBuilder(int nodes) {
+            weights = new float[nodes];
+            distances = new float[nodes];
+            millis = new int[nodes];
+            Arrays.fill(weights, Float.POSITIVE_INFINITY);
+        }
+
+        /**
+         * @param labels      the labels of the same direction as the created label
+         * @param otherLabels the labels of the other direction, which are used to prune entries
+         */
+        Label build(int rank, EdgeIterator iter, boolean reverse, int[] ranks, Label[] labels, Label[] otherLabels,
+                    Weighting prepareWeighting, ShortcutMillisCalculator millisCalculator) {
+            update(rank, 0, 0, 0);
+            while (iter.next()) {
+                int adjRank = ranks[iter.getAdjNode()];
+                if (adjRank >= rank)
+                    continue;
+
+                double weight = prepareWeighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE);
+                if (Double.isInfinite(weight))
+                    continue;
+
+                double distance = iter.getDistance();
+                int edgeMillis = millisCalculator.calcMillis((CHEdgeIteratorState) iter, reverse);
+                Label adjLabel = labels[adjRank];
+                for (int i = 0; i < adjLabel.size; i++) {
+                    update(adjLabel.hubs[i], weight + adjLabel.weights[i], distance + adjLabel.distances[i],
+                            edgeMillis + adjLabel.millis[i]);
+                }
+            }
+
+            Arrays.sort(hubs.buffer, 0, hubs.size());
+            IntArrayList kept = new IntArrayList(hubs.size());
+            for (int i = 0; i < hubs.size(); i++) {
+                int hub = hubs.get(i);
+                if (hub == rank || !isPruned(hub, otherLabels[hub]))
+                    kept.add(hub);
+            }
+
+            Label label = new Label(kept.size());
+            for (int i = 0; i < kept.size(); i++) {
+                int hub = kept.get(i);
+                label.hubs[i] = hub;
+                label.weights[i] = weights[hub];
+                label.distances[i] = distances[hub];
+                label.millis[i] = millis[hub];
+            }
+            for (int i = 0; i < hubs.size(); i++) {
+                weights[hubs.get(i)] = Float.POSITIVE_INFINITY;
+            }
+            hubs.clear();
+            return label;
+        }
+
+        private void update(int hub, double weight, double distance, int time) {
+            if (weight >= weights[hub])
+                return;
+
+            if (Float.isInfinite(weights[hub]))
+                hubs.add(hub);
+            weights[hub] = (float) weight;
+            distances[hub] = (float) distance;
+            millis[hub] = time;
+        }
+
+        /**
+         * An entry is not needed if a path over another hub of the current label is shorter. The
+         * tolerance avoids that the rounded weights of the shortcuts prune a shortest path.
+         */
+        private boolean isPruned(int hub, Label otherLabel) {
+            double weight = weights[hub];
+            double limit = weight - 1e-3 * Math.max(1, weight);
+            for (int i = 0; i < otherLabel.size; i++) {
+                int otherHub = otherLabel.hubs[i];
+                if (otherHub != hub && (double) weights[otherHub] + otherLabel.weights[i] < limit)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A growable byte array for the varint encoding of the labels.
+     */
+    static class ByteBuffer {
+        byte[] bytes;
+        int size;
+
+        ByteBuffer() {
+            this(new byte[256]);
+            size = 0;
+        }
+
+        ByteBuffer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeVarInt(int value) {
+            if (value < 0)
+                throw new IllegalArgumentException("Only positive values can be stored in hub labels but was " + value);
+
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            bytes[size++] = (byte) value;
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 24);
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[size++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+        }
+
+        int readInt() {
+            int value = (bytes[size] & 0xFF) | (bytes[size + 1] & 0xFF) << 8 | (bytes[size + 2] & 0xFF) << 16
+                    | (bytes[size + 3] & 0xFF) << 24;
+            size += 4;
+            return value;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + additional));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.coll.GHLongLongHashMap;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.routing.MatrixAlgorithm;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Bucket based many-to-many search on a contraction hierarchy. For every destination one backward
+ * search in the upward graph is done and every settled node stores the destination together with
+ * the weight, distance and time in its bucket. Then one forward search in the upward graph is done
+ * for every origin and the buckets of all settled nodes are scanned. So a matrix with N origins and
+ * M destinations costs N+M searches instead of N*M.
+ * <p>
+ * See 'Computing Many-to-Many Shortest Paths Using Highway Hierarchies' from Knopp et al. and the
+ * follow-up work on contraction hierarchies.
+ *
+ * @see PrepareContractionHierarchies#createMatrixAlgo
+ */
+public class ManyToManyCH implements MatrixAlgorithm {
+    private static final int NO_ENTRY = -1;
+    private final Graph graph;
+    private final Weighting weighting;
+    private final EdgeFilter levelFilter;
+    private final EdgeExplorer outEdgeExplorer;
+    private final EdgeExplorer inEdgeExplorer;
+    // the time of a shortcut is not stored, so cache it after unpacking
+    private final GHLongLongHashMap shortcutMillis = new GHLongLongHashMap(1000);
+    // the buckets are single linked lists, the head per node is stored in bucketHeads
+    private final IntIntHashMap bucketHeads = new IntIntHashMap(1000);
+    private int[] bucketNext = new int[0];
+    private int[] bucketTarget = new int[0];
+    private double[] bucketWeight = new double[0];
+    private double[] bucketDistance = new double[0];
+    private long[] bucketTime = new long[0];
+    private int bucketSize;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private int visitedNodes;
+    private boolean alreadyRun;
+
+    /**
+     * @param graph       the graph to route on, usually a QueryGraph around the CHGraph
+     * @param weighting   the weighting of the preparation, which knows the weight of shortcuts
+     * @param levelFilter the filter that accepts only edges to higher level nodes
+     */
+    public ManyToManyCH(Graph graph, Weighting weighting, EdgeFilter levelFilter) {
+        this.graph = graph;
+        this.weighting = weighting;
+        this.levelFilter = levelFilter;
+        outEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+        inEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), true, false));
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int numberOfNodes) {
+        this.maxVisitedNodes = numberOfNodes;
+    }
+
+    @Override
+    public DistanceMatrix calcMatrix(int[] fromNodes, int[] toNodes) {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+        alreadyRun = true;
+
+        DistanceMatrix matrix = new DistanceMatrix(fromNodes.length, toNodes.length);
+        ensureBucketCapacity(toNodes.length * 16);
+        for (int toIndex = 0; toIndex < toNodes.length; toIndex++) {
+            search(toNodes[toIndex], toIndex, true, matrix);
+        }
+        for (int fromIndex = 0; fromIndex < fromNodes.length; fromIndex++) {
+            search(fromNodes[fromIndex], fromIndex, false, matrix);
+        }
+        return matrix;
+    }
+
+    /**
+     * Runs a Dijkstra in the upward graph. The backward search fills the buckets, the forward search
+     * scans them and updates the matrix row of the origin.
+     */
+    private void search(int startNode, int index, boolean reverse, DistanceMatrix matrix) {
+        EdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        IntObjectMap<MatrixEntry> bestWeightMap = new GHIntObjectHashMap<>(64);
+        PriorityQueue<MatrixEntry> prioQueue = new PriorityQueue<>(64);
+        MatrixEntry currEntry = new MatrixEntry(EdgeIterator.NO_EDGE, startNode, 0);
+        bestWeightMap.put(startNode, currEntry);
+        prioQueue.add(currEntry);
+        int visited = 0;
+        while (!prioQueue.isEmpty()) {
+            currEntry = prioQueue.poll();
+            if (reverse)
+                addToBucket(currEntry, index);
+            else
+                scanBucket(currEntry, index, matrix);
+
+            if (++visited > maxVisitedNodes)
+                throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + maxVisitedNodes);
+
+            EdgeIterator iter = explorer.setBaseNode(currEntry.adjNode);
+            while (iter.next()) {
+                if (iter.getEdge() == currEntry.edge || !levelFilter.accept(iter))
+                    continue;
+
+                double tmpWeight = weighting.calcWeight(iter, reverse, currEntry.edge) + currEntry.weight;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                MatrixEntry entry = bestWeightMap.get(iter.getAdjNode());
+                if (entry == null) {
+                    entry = new MatrixEntry(iter.getEdge(), iter.getAdjNode(), tmpWeight);
+                    bestWeightMap.put(iter.getAdjNode(), entry);
+                } else if (entry.weight > tmpWeight) {
+                    prioQueue.remove(entry);
+                    entry.edge = iter.getEdge();
+                    entry.weight = tmpWeight;
+                } else
+                    continue;
+
+                entry.parent = currEntry;
+                entry.distance = currEntry.distance + iter.getDistance();
+                entry.time = currEntry.time + calcMillis((CHEdgeIteratorState) iter, reverse);
+                prioQueue.add(entry);
+            }
+        }
+        visitedNodes += visited;
+    }
+
+    private void addToBucket(MatrixEntry entry, int toIndex) {
+        if (bucketSize >= bucketNext.length)
+            ensureBucketCapacity(bucketSize * 2);
+
+        bucketNext[bucketSize] = bucketHeads.getOrDefault(entry.adjNode, NO_ENTRY);
+        bucketTarget[bucketSize] = toIndex;
+        bucketWeight[bucketSize] = entry.weight;
+        bucketDistance[bucketSize] = entry.distance;
+        bucketTime[bucketSize] = entry.time;
+        bucketHeads.put(entry.adjNode, bucketSize);
+        bucketSize++;
+    }
+
+    private void scanBucket(MatrixEntry entry, int fromIndex, DistanceMatrix matrix) {
+        int bucketEntry = bucketHeads.getOrDefault(entry.adjNode, NO_ENTRY);
+        while (bucketEntry != NO_ENTRY) {
+            int toIndex = bucketTarget[bucketEntry];
+            double weight = entry.weight + bucketWeight[bucketEntry];
+            if (weight < matrix.getWeight(fromIndex, toIndex))
+                matrix.set(fromIndex, toIndex, weight, entry.distance + bucketDistance[bucketEntry],
+                        entry.time + bucketTime[bucketEntry]);
+
+            bucketEntry = bucketNext[bucketEntry];
+        }
+    }
+
+    private void ensureBucketCapacity(int capacity) {
+        if (capacity <= bucketNext.length)
+            return;
+
+        bucketNext = Arrays.copyOf(bucketNext, capacity);
+        bucketTarget = Arrays.copyOf(bucketTarget, capacity);
+        bucketWeight = Arrays.copyOf(bucketWeight, capacity);
+        bucketDistance = Arrays.copyOf(bucketDistance, capacity);
+        bucketTime = Arrays.copyOf(bucketTime, capacity);
+    }
+
+    /**
+     * Calculates the time to travel the specified edge. Shortcuts are unpacked recursively like in
+     * Path4CH and the result is cached per shortcut and direction.
+     */
+    private long calcMillis(CHEdgeIteratorState edgeState, boolean reverse) {
+        if (!edgeState.isShortcut())
+            return weighting.calcMillis(edgeState, reverse, EdgeIterator.NO_EDGE);
+
+        int from = edgeState.getBaseNode(), to = edgeState.getAdjNode();
+        if (reverse) {
+            int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        long key = ((long) edgeState.getEdge() << 1) | (from < to ? 0 : 1);
+        long millis = shortcutMillis.getOrDefault(key, -1);
+        if (millis >= 0)
+            return millis;
+
+        // the iterator of a QueryGraph does not necessarily know the skipped edges, so fetch the shortcut itself
+        CHEdgeIteratorState shortcut = (CHEdgeIteratorState) graph.getEdgeIteratorState(edgeState.getEdge(), to);
+        int skippedEdge1 = shortcut.getSkippedEdge1();
+        int skippedEdge2 = shortcut.getSkippedEdge2();
+        // the skipped edge adjacent to 'from' could be either of the two
+        CHEdgeIteratorState iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(skippedEdge1, from);
+        boolean empty = iter == null;
+        if (empty)
+            iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(skippedEdge2, from);
+
+        millis = calcMillis(iter, true);
+        iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(empty ? skippedEdge1 : skippedEdge2, to);
+        millis += calcMillis(iter, false);
+        shortcutMillis.put(key, millis);
+        return millis;
+    }
+
+    @Override
+    public String getName() {
+        return "many_to_many_ch";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "|" + weighting;
+    }
+
+    private static class MatrixEntry extends SPTEntry {
+        double distance;
+        long time;
+
+        MatrixEntry(int edge, int adjNode, double weight) {
+            super(edge, adjNode, weight);
+        }
+    }
+}
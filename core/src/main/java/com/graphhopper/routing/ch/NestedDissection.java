@@ -0,0 +1,176 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+
+import java.util.Arrays;
+
+/**
+ * Calculates a contraction order which depends only on the topology and the coordinates of the
+ * graph and not on a weighting. The nodes are split recursively into two halves at the median of
+ * the latitude or the longitude, whichever has the larger extent. The nodes of the smaller side
+ * which have an edge to the other side form the separator. Both halves are ordered first and the
+ * separator gets the highest ranks of its part, so separators of large parts end at the top of
+ * the hierarchy.
+ * <p>
+ * The geometric cut is much cheaper than a flow based partitioning and good enough for road
+ * networks, where few edges cross a straight line.
+ *
+ * @see CustomizableContractionHierarchy
+ */
+public class NestedDissection {
+    private final Graph graph;
+    private final int nodes;
+    // undirected adjacency without loops
+    private final int[] adjFirst;
+    private final int[] adjNodes;
+    // the side of the last bisection which contained the node, 2*stamp for the first and 2*stamp+1 for the second
+    private final int[] side;
+    private int stamp;
+    private int[] ranks;
+    private int nextRank;
+    private int leafSize = 8;
+
+    public NestedDissection(Graph graph) {
+        this.graph = graph;
+        nodes = graph.getNodes();
+        adjFirst = new int[nodes + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjFirst[iter.getBaseNode() + 1]++;
+                adjFirst[iter.getAdjNode() + 1]++;
+            }
+        }
+        for (int node = 0; node < nodes; node++) {
+            adjFirst[node + 1] += adjFirst[node];
+        }
+        adjNodes = new int[adjFirst[nodes]];
+        int[] next = Arrays.copyOf(adjFirst, nodes);
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjNodes[next[iter.getBaseNode()]++] = iter.getAdjNode();
+                adjNodes[next[iter.getAdjNode()]++] = iter.getBaseNode();
+            }
+        }
+        side = new int[nodes];
+    }
+
+    /**
+     * Parts with at most this number of nodes are not split further. Default is 8.
+     */
+    public NestedDissection setLeafSize(int leafSize) {
+        if (leafSize < 1)
+            throw new IllegalArgumentException("Leaf size has to be positive but was " + leafSize);
+        this.leafSize = leafSize;
+        return this;
+    }
+
+    /**
+     * @return the rank of every node, i.e. the position in the contraction order
+     */
+    public int[] calcRanks() {
+        ranks = new int[nodes];
+        nextRank = 0;
+        stamp = 0;
+        int[] all = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            all[node] = node;
+        }
+        dissect(all);
+        return ranks;
+    }
+
+    private void dissect(int[] part) {
+        if (part.length <= leafSize) {
+            for (int node : part) {
+                ranks[node] = nextRank++;
+            }
+            return;
+        }
+
+        NodeAccess na = graph.getNodeAccess();
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int node : part) {
+            minLat = Math.min(minLat, na.getLat(node));
+            maxLat = Math.max(maxLat, na.getLat(node));
+            minLon = Math.min(minLon, na.getLon(node));
+            maxLon = Math.max(maxLon, na.getLon(node));
+        }
+        boolean byLat = maxLat - minLat >= maxLon - minLon;
+        long[] sortKeys = new long[part.length];
+        for (int i = 0; i < part.length; i++) {
+            int node = part[i];
+            // microdegrees are positive after the shift, so the keys sort like the coordinates
+            long coord = byLat ? Math.round((na.getLat(node) + 90) * 1e6) : Math.round((na.getLon(node) + 180) * 1e6);
+            sortKeys[i] = coord << 32 | node;
+        }
+        Arrays.sort(sortKeys);
+
+        int half = part.length / 2;
+        stamp++;
+        for (int i = 0; i < part.length; i++) {
+            side[(int) sortKeys[i]] = i < half ? 2 * stamp : 2 * stamp + 1;
+        }
+        // the separator are the boundary nodes of the side with the fewer boundary nodes
+        int firstBoundary = 0, secondBoundary = 0;
+        boolean[] boundary = new boolean[part.length];
+        for (int i = 0; i < part.length; i++) {
+            int node = (int) sortKeys[i];
+            boolean second = i >= half;
+            int otherSide = second ? 2 * stamp : 2 * stamp + 1;
+            for (int j = adjFirst[node]; j < adjFirst[node + 1]; j++) {
+                if (side[adjNodes[j]] == otherSide) {
+                    boundary[i] = true;
+                    if (second)
+                        secondBoundary++;
+                    else
+                        firstBoundary++;
+                    break;
+                }
+            }
+        }
+
+        boolean separatorOnFirst = firstBoundary <= secondBoundary;
+        int separatorSize = separatorOnFirst ? firstBoundary : secondBoundary;
+        int[] first = new int[half - (separatorOnFirst ? separatorSize : 0)];
+        int[] second = new int[part.length - half - (separatorOnFirst ? 0 : separatorSize)];
+        int[] separator = new int[separatorSize];
+        int firstIndex = 0, secondIndex = 0, separatorIndex = 0;
+        for (int i = 0; i < part.length; i++) {
+            int node = (int) sortKeys[i];
+            boolean onFirst = i < half;
+            if (boundary[i] && onFirst == separatorOnFirst)
+                separator[separatorIndex++] = node;
+            else if (onFirst)
+                first[firstIndex++] = node;
+            else
+                second[secondIndex++] = node;
+        }
+
+        dissect(first);
+        dissect(second);
+        for (int node : separator) {
+            ranks[node] = nextRank++;
+        }
+    }
+}
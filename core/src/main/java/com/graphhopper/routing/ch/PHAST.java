@@ -0,0 +1,283 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.LevelEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the weights and times from a source to all nodes of a contraction hierarchy with PHAST
+ * from 'PHAST: Hardware-Accelerated Shortest Path Trees' from Delling, Goldberg, Nowatzyk and
+ * Werneck, 2011. An upward search from the source is followed by one linear sweep over all nodes in
+ * descending level order, where every node takes the minimum over its edges from higher level
+ * nodes. Both steps work on arrays sorted by the sweep order which are created once in the
+ * constructor, so the sweep reads memory mostly sequentially and does not touch the graph.
+ * <p>
+ * The batched variant handles several sources in one sweep with interleaved weight arrays, which
+ * amortizes the memory access of the edges. The results are primitive arrays indexed by node.
+ * <p>
+ * An instance is immutable after its creation and can be used from several threads. Only node
+ * based traversal is supported and the sources have to be nodes of the CHGraph, i.e. no virtual
+ * nodes of a QueryGraph.
+ *
+ * @see PrepareContractionHierarchies#createPHAST()
+ */
+public class PHAST {
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+    private final int nodes;
+    // the node ids in the order of the sweep, i.e. in descending level order
+    private final int[] sweepNodes;
+    // the sweep position of every node id
+    private final int[] positions;
+    // the edges to higher level nodes per sweep position, the adjacent node is stored as sweep position
+    private final int[] upFirst;
+    private final int[] upTarget;
+    private final float[] upWeight;
+    private final int[] upMillis;
+    // the edges from higher level nodes per sweep position, the adjacent node is stored as sweep position
+    private final int[] downFirst;
+    private final int[] downSource;
+    private final float[] downWeight;
+    private final int[] downMillis;
+    private int batchSize = 16;
+
+    /**
+     * @param chGraph   the prepared contraction hierarchy
+     * @param weighting the weighting of the preparation, which knows the weight of shortcuts
+     */
+    public PHAST(CHGraph chGraph, Weighting weighting) {
+        nodes = chGraph.getNodes();
+        sweepNodes = new int[nodes];
+        positions = new int[nodes];
+        long[] sortKeys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            // higher levels first, the node id makes the order deterministic for equal levels
+            sortKeys[node] = ((long) (Integer.MAX_VALUE - chGraph.getLevel(node)) << 32) | node;
+        }
+        Arrays.sort(sortKeys);
+        for (int pos = 0; pos < nodes; pos++) {
+            int node = (int) sortKeys[pos];
+            sweepNodes[pos] = node;
+            positions[node] = pos;
+        }
+
+        ShortcutMillisCalculator millisCalculator = new ShortcutMillisCalculator(chGraph, weighting);
+        LevelEdgeFilter levelFilter = new LevelEdgeFilter(chGraph);
+        EdgeExplorer outExplorer = chGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+        EdgeExplorer inExplorer = chGraph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), true, false));
+        IntArrayList upTargetList = new IntArrayList(nodes * 2);
+        FloatArrayList upWeightList = new FloatArrayList(nodes * 2);
+        IntArrayList upMillisList = new IntArrayList(nodes * 2);
+        IntArrayList downSourceList = new IntArrayList(nodes * 2);
+        FloatArrayList downWeightList = new FloatArrayList(nodes * 2);
+        IntArrayList downMillisList = new IntArrayList(nodes * 2);
+        upFirst = new int[nodes + 1];
+        downFirst = new int[nodes + 1];
+        for (int pos = 0; pos < nodes; pos++) {
+            int node = sweepNodes[pos];
+            EdgeIterator iter = outExplorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.getAdjNode() == node || !levelFilter.accept(iter))
+                    continue;
+
+                double weight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+                if (Double.isInfinite(weight))
+                    continue;
+
+                upTargetList.add(positions[iter.getAdjNode()]);
+                upWeightList.add((float) weight);
+                upMillisList.add(millisCalculator.calcMillis((CHEdgeIteratorState) iter, false));
+            }
+            upFirst[pos + 1] = upTargetList.size();
+
+            iter = inExplorer.setBaseNode(node);
+            while (iter.next()) {
+                // edges between nodes of the same level, i.e. between uncontracted nodes, are already
+                // handled in the upward search
+                if (positions[iter.getAdjNode()] >= pos || !levelFilter.accept(iter))
+                    continue;
+
+                double weight = weighting.calcWeight(iter, true, EdgeIterator.NO_EDGE);
+                if (Double.isInfinite(weight))
+                    continue;
+
+                downSourceList.add(positions[iter.getAdjNode()]);
+                downWeightList.add((float) weight);
+                downMillisList.add(millisCalculator.calcMillis((CHEdgeIteratorState) iter, true));
+            }
+            downFirst[pos + 1] = downSourceList.size();
+        }
+        upTarget = upTargetList.toArray();
+        upWeight = upWeightList.toArray();
+        upMillis = upMillisList.toArray();
+        downSource = downSourceList.toArray();
+        downWeight = downWeightList.toArray();
+        downMillis = downMillisList.toArray();
+    }
+
+    /**
+     * Specifies how many sources are handled in one sweep. The interleaved arrays of a sweep need 8
+     * bytes per node and source. Default is 16.
+     */
+    public PHAST setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size has to be positive but was " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @return the weight from the source to every node or infinity if the node is not reachable
+     */
+    public float[] calcWeights(int source) {
+        return calcWeights(new int[]{source})[0];
+    }
+
+    /**
+     * @return the weights from every source to every node, indexed by the source and the node
+     */
+    public float[][] calcWeights(int[] sources) {
+        float[][] weights = new float[sources.length][nodes];
+        calc(sources, weights, null);
+        return weights;
+    }
+
+    /**
+     * @return the time in milliseconds along the path with the smallest weight from every source to
+     * every node or -1 if the node is not reachable, indexed by the source and the node
+     */
+    public int[][] calcTimes(int[] sources) {
+        int[][] times = new int[sources.length][nodes];
+        calc(sources, null, times);
+        return times;
+    }
+
+    /**
+     * Calculates the weights and/or times from every source to all nodes. The arrays are filled in
+     * place, so they can be reused for the next sources.
+     *
+     * @param weights the array for the weights per source and node or null
+     * @param times   the array for the times in milliseconds per source and node or null
+     */
+    public void calc(int[] sources, float[][] weights, int[][] times) {
+        for (int source : sources) {
+            if (source < 0 || source >= nodes)
+                throw new IllegalArgumentException("Source " + source + " is not a node of the graph with " + nodes + " nodes");
+        }
+        if (weights != null && weights.length < sources.length || times != null && times.length < sources.length)
+            throw new IllegalArgumentException("Result arrays are required for all " + sources.length + " sources");
+
+        for (int from = 0; from < sources.length; from += batchSize) {
+            int count = Math.min(batchSize, sources.length - from);
+            sweep(Arrays.copyOfRange(sources, from, from + count), from, weights, times);
+        }
+    }
+
+    private void sweep(int[] sources, int offset, float[][] weights, int[][] times) {
+        int k = sources.length;
+        float[] dist = new float[nodes * k];
+        Arrays.fill(dist, INFINITY);
+        int[] millis = times == null ? null : new int[nodes * k];
+        for (int s = 0; s < k; s++) {
+            searchUpward(positions[sources[s]], s, k, dist, millis);
+        }
+
+        for (int pos = 0; pos < nodes; pos++) {
+            int base = pos * k;
+            for (int edge = downFirst[pos]; edge < downFirst[pos + 1]; edge++) {
+                int sourceBase = downSource[edge] * k;
+                float edgeWeight = downWeight[edge];
+                for (int s = 0; s < k; s++) {
+                    float tmpWeight = dist[sourceBase + s] + edgeWeight;
+                    if (tmpWeight < dist[base + s]) {
+                        dist[base + s] = tmpWeight;
+                        if (millis != null)
+                            millis[base + s] = millis[sourceBase + s] + downMillis[edge];
+                    }
+                }
+            }
+        }
+
+        for (int pos = 0; pos < nodes; pos++) {
+            int node = sweepNodes[pos];
+            int base = pos * k;
+            for (int s = 0; s < k; s++) {
+                if (weights != null)
+                    weights[offset + s][node] = dist[base + s];
+                if (times != null)
+                    times[offset + s][node] = dist[base + s] == INFINITY ? -1 : millis[base + s];
+            }
+        }
+    }
+
+    /**
+     * A Dijkstra in the upward graph which writes the weights of the specified source into the
+     * interleaved arrays. Outdated heap entries are skipped instead of updated.
+     */
+    private void searchUpward(int start, int s, int k, float[] dist, int[] millis) {
+        IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap(64);
+        dist[start * k + s] = 0;
+        if (millis != null)
+            millis[start * k + s] = 0;
+        heap.insert_(0, start);
+        while (!heap.isEmpty()) {
+            float key = heap.peek_key();
+            int pos = heap.poll_element();
+            float currWeight = dist[pos * k + s];
+            if (key > currWeight)
+                continue;
+
+            for (int edge = upFirst[pos]; edge < upFirst[pos + 1]; edge++) {
+                int target = upTarget[edge] * k + s;
+                float tmpWeight = currWeight + upWeight[edge];
+                if (tmpWeight < dist[target]) {
+                    dist[target] = tmpWeight;
+                    if (millis != null)
+                        millis[target] = millis[pos * k + s] + upMillis[edge];
+                    heap.insert_(tmpWeight, upTarget[edge]);
+                }
+            }
+        }
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of edges in the upward and the downward arrays
+     */
+    public int getEdges() {
+        return upTarget.length + downSource.length;
+    }
+
+    @Override
+    public String toString() {
+        return "phast|nodes:" + nodes + "|edges:" + getEdges();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.PathBidirRef;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Recursively unpacks the shortcuts of an edge-based contraction hierarchy. The time includes the
+ * turn costs between the original edges.
+ *
+ * @see DijkstraBidirectionEdgeCH
+ */
+public class Path4EdgeCH extends PathBidirRef {
+    private final Graph routingGraph;
+    private final TurnWeighting turnWeighting;
+    // the original edges which are needed for the turn costs of the next unpacked edge
+    private int meetingOrigEdge = EdgeIterator.NO_EDGE;
+    private int nextOrigEdge = EdgeIterator.NO_EDGE;
+    private int prevOrigEdge = EdgeIterator.NO_EDGE;
+
+    public Path4EdgeCH(Graph routingGraph, Graph baseGraph, TurnWeighting turnWeighting) {
+        super(baseGraph, turnWeighting);
+        this.routingGraph = routingGraph;
+        this.turnWeighting = turnWeighting;
+    }
+
+    @Override
+    protected final void processEdge(int tmpEdge, int endNode, int prevEdgeId) {
+        expandEdge((CHEdgeIteratorState) routingGraph.getEdgeIteratorState(tmpEdge, endNode));
+    }
+
+    /**
+     * @param edgeState the edge in the direction of the path
+     */
+    private void expandEdge(CHEdgeIteratorState edgeState) {
+        if (!edgeState.isShortcut()) {
+            addOrigEdge(edgeState);
+            return;
+        }
+
+        // the first skipped edge starts at the start node of the shortcut, also for a loop
+        int from = edgeState.getBaseNode(), to = edgeState.getAdjNode();
+        int mid = routingGraph.getEdgeIteratorState(edgeState.getSkippedEdge1(), from).getBaseNode();
+        CHEdgeIteratorState first = (CHEdgeIteratorState) routingGraph.getEdgeIteratorState(edgeState.getSkippedEdge1(), mid);
+        CHEdgeIteratorState second = (CHEdgeIteratorState) routingGraph.getEdgeIteratorState(edgeState.getSkippedEdge2(), to);
+        if (reverseOrder) {
+            expandEdge(second);
+            expandEdge(first);
+        } else {
+            expandEdge(first);
+            expandEdge(second);
+        }
+    }
+
+    private void addOrigEdge(EdgeIteratorState edgeState) {
+        int edge = edgeState.getEdge();
+        distance += edgeState.getDistance();
+        if (reverseOrder) {
+            // the edges are added from the meeting node to the start, the turn is at the end of the edge
+            if (meetingOrigEdge == EdgeIterator.NO_EDGE)
+                meetingOrigEdge = edge;
+
+            EdgeIteratorState reverseState = routingGraph.getEdgeIteratorState(edge, edgeState.getBaseNode());
+            time += turnWeighting.calcMillis(reverseState, true, nextOrigEdge);
+            nextOrigEdge = edge;
+        } else {
+            if (prevOrigEdge == EdgeIterator.NO_EDGE)
+                prevOrigEdge = meetingOrigEdge;
+
+            time += turnWeighting.calcMillis(edgeState, false, prevOrigEdge);
+            prevOrigEdge = edge;
+        }
+        addEdge(edge);
+    }
+}
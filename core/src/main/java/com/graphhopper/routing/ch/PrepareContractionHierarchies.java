@@ -17,10 +17,17 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHIntArrayList;
 import com.graphhopper.coll.GHTreeMapComposed;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.AStar.AStarEntry;
 import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.ch.EdgeBasedWitnessSearch.WitnessEntry;
 import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.*;
@@ -28,8 +35,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 
+import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
 import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static com.graphhopper.util.Parameters.Algorithms.AltRoute.*;
 import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
 
 /**
@@ -42,54 +52,70 @@ import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
  * The only difference is that we use two skipped edges instead of one skipped node for faster
  * unpacking.
  * <p>
+ * With a TurnWeighting and an edge-based traversal mode the contraction is edge-based: every
+ * shortcut stores its first and last original edge, the witness searches run over edge states and
+ * include the turn costs at the contracted node. See 'Efficient Routing in Road Networks with Turn
+ * Costs' from Geisberger and Vetter.
+ * <p>
  *
  * @author Peter Karich
  */
 public class PrepareContractionHierarchies extends AbstractAlgoPreparation implements RoutingAlgorithmFactory {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final PreparationWeighting prepareWeighting;
+    // only for the edge-based contraction
+    private final TurnWeighting turnWeighting;
     private final TraversalMode traversalMode;
     private final LevelEdgeFilter levelFilter;
     private final GraphHopperStorage ghStorage;
     private final CHGraphImpl prepareGraph;
     private final DataAccess originalEdges;
-    private final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
     private final Random rand = new Random(123);
     private final StopWatch allSW = new StopWatch();
-    AddShortcutHandler addScHandler = new AddShortcutHandler();
-    CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
-    private CHEdgeExplorer vehicleInExplorer;
     private CHEdgeExplorer vehicleOutExplorer;
     private CHEdgeExplorer vehicleAllExplorer;
     private CHEdgeExplorer vehicleAllTmpExplorer;
-    private CHEdgeExplorer calcPrioAllExplorer;
     private int maxLevel;
     // the most important nodes comes last
     private GHTreeMapComposed sortedNodes;
     private int oldPriorities[];
-    private IgnoreNodeFilter ignoreNodeFilter;
-    private DijkstraOneToMany prepareAlgo;
+    // one finder per contraction thread, the first one is used for the sequential contraction
+    private ShortcutFinder[] shortcutFinders;
     private long counter;
     private int newShortcuts;
-    private long dijkstraCount;
     private double meanDegree;
-    private StopWatch dijkstraSW = new StopWatch();
+    private int contractionThreads = 1;
     private int periodicUpdatesPercentage = 20;
     private int lastNodesLazyUpdatePercentage = 10;
     private int neighborUpdatePercentage = 20;
     private double nodesContractedPercentage = 100;
     private double logMessagesPercentage = 20;
-    private double dijkstraTime;
     private double periodTime;
     private double lazyTime;
     private double neighborTime;
     private int maxEdgesCount;
+    private CustomizableContractionHierarchy customizableCH;
 
     public PrepareContractionHierarchies(Directory dir, GraphHopperStorage ghStorage, CHGraph chGraph,
                                          Weighting weighting, TraversalMode traversalMode) {
         this.ghStorage = ghStorage;
         this.prepareGraph = (CHGraphImpl) chGraph;
         this.traversalMode = traversalMode;
+        if (traversalMode.isEdgeBased()) {
+            if (traversalMode != TraversalMode.EDGE_BASED_2DIR)
+                throw new IllegalArgumentException("Edge-based contraction requires " + TraversalMode.EDGE_BASED_2DIR + " but was " + traversalMode);
+            if (!(weighting instanceof TurnWeighting))
+                throw new IllegalArgumentException("Edge-based contraction requires a TurnWeighting but was " + weighting);
+            if (!chGraph.isEdgeBased())
+                throw new IllegalArgumentException("Edge-based contraction requires an edge-based CHGraph, " + prepareGraph.getWeighting());
+
+            turnWeighting = (TurnWeighting) weighting;
+        } else {
+            if (chGraph.isEdgeBased())
+                throw new IllegalArgumentException("The edge-based CHGraph " + prepareGraph.getWeighting() + " requires an edge-based traversal mode but was " + traversalMode);
+
+            turnWeighting = null;
+        }
         levelFilter = new LevelEdgeFilter(prepareGraph);
 
         prepareWeighting = new PreparationWeighting(weighting);
@@ -117,7 +143,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
     /**
      * @param lazyUpdates specifies when lazy updates will happen, measured relative to all existing
-     *                    nodes. 100 means always.
+     *                    nodes. 100 means always. Ignored if more than one contraction thread is used.
      */
     public PrepareContractionHierarchies setLazyUpdates(int lazyUpdates) {
         if (lazyUpdates < 0)
@@ -169,6 +195,57 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return this;
     }
 
+    /**
+     * Specifies the number of threads used to contract one weighting. With more than one thread
+     * independent sets of nodes are contracted in rounds: the witness searches and the priority
+     * updates of one round run on a fork-join pool and the found shortcuts are added in one batch.
+     * Every thread needs its own witness search, i.e. more memory. Lazy updates are not done then.
+     */
+    public PrepareContractionHierarchies setContractionThreads(int contractionThreads) {
+        if (contractionThreads < 1)
+            throw new IllegalArgumentException("contractionThreads has to be positive but was " + contractionThreads);
+
+        this.contractionThreads = contractionThreads;
+        return this;
+    }
+
+    public int getContractionThreads() {
+        return contractionThreads;
+    }
+
+    /**
+     * Customizes the shortcuts of the specified hierarchy instead of contracting the nodes with
+     * witness searches. The customization runs on the contraction threads and can be repeated via
+     * {@link #prepareCustomization()} after the weights of the edges changed.
+     */
+    public PrepareContractionHierarchies setCustomizableCH(CustomizableContractionHierarchy customizableCH) {
+        if (customizableCH != null && traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Customizable contraction is not supported for edge based traversal " + traversalMode);
+
+        this.customizableCH = customizableCH;
+        return this;
+    }
+
+    public CustomizableContractionHierarchy getCustomizableCH() {
+        return customizableCH;
+    }
+
+    /**
+     * Calculates the shortcut weights of the customizable hierarchy for the current edges. They are
+     * written into the CHGraph when the returned customization is applied.
+     */
+    public CustomizableContractionHierarchy.Customization prepareCustomization() {
+        if (customizableCH == null)
+            throw new IllegalStateException("No customizable contraction hierarchy set");
+
+        ghStorage.freeze();
+        return customizableCH.customize(prepareGraph, prepareWeighting.getUserWeighting(), contractionThreads);
+    }
+
+    public TraversalMode getTraversalMode() {
+        return traversalMode;
+    }
+
     @Override
     public void doWork() {
         if (prepareWeighting == null)
@@ -177,11 +254,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         allSW.start();
         super.doWork();
 
+        if (customizableCH != null) {
+            prepareCustomization().apply();
+            originalEdges.close();
+            logger.info("took:" + (int) allSW.stop().getSeconds() + ", " + customizableCH + ", " + prepareWeighting
+                    + ", threads:" + contractionThreads + ", " + Helper.getMemInfo());
+            return;
+        }
+
         initFromGraph();
         if (!prepareNodes())
             return;
 
-        contractNodes();
+        if (contractionThreads > 1)
+            contractNodesInParallel();
+        else
+            contractNodes();
     }
 
     boolean prepareNodes() {
@@ -256,21 +344,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             }
 
             if (counter % logSize == 0) {
-                dijkstraTime += dijkstraSW.getSeconds();
                 periodTime += periodSW.getSeconds();
                 lazyTime += lazySW.getSeconds();
                 neighborTime += neighborSW.getSeconds();
+                logProgress(updateCounter);
 
-                logger.info(Helper.nf(counter) + ", updates:" + updateCounter
-                        + ", nodes: " + Helper.nf(sortedNodes.getSize())
-                        + ", shortcuts:" + Helper.nf(newShortcuts)
-                        + ", dijkstras:" + Helper.nf(dijkstraCount)
-                        + ", " + getTimesAsString()
-                        + ", meanDegree:" + (long) meanDegree
-                        + ", algo:" + prepareAlgo.getMemoryUsageAsString()
-                        + ", " + Helper.getMemInfo());
-
-                dijkstraSW = new StopWatch();
                 periodSW = new StopWatch();
                 lazySW = new StopWatch();
                 neighborSW = new StopWatch();
@@ -292,9 +370,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             }
 
             // contract node v!
-            shortcuts.clear();
-            findShortcuts(addScHandler.setNode(polledNode));
-            newShortcuts += addShortcuts(shortcuts.keySet());
+            ShortcutFinder finder = shortcutFinders[0];
+            long degree = finder.findShortcuts(finder.addScHandler.setNode(polledNode));
+            // sliding mean value when using "*2" => slower changes
+            meanDegree = (meanDegree * 2 + degree) / 3;
+            newShortcuts += addShortcuts(finder.shortcuts.keySet());
             prepareGraph.setLevel(polledNode, level);
             level++;
 
@@ -327,28 +407,278 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             }
         }
 
+        periodTime += periodSW.getSeconds();
+        lazyTime += lazySW.getSeconds();
+        neighborTime += neighborSW.getSeconds();
+        finishContraction(initSize);
+    }
+
+    /**
+     * Contracts independent sets of nodes in rounds. The nodes of one round do not share a neighbor,
+     * so their shortcuts can be searched concurrently. All nodes of a round get their level before
+     * the witness searches start, which makes the witness search of one node avoid the other nodes
+     * of the same round. The found shortcuts are therefor valid even if all nodes of the round are
+     * removed, which keeps the hierarchy valid for the bidirectional CH algorithms. The lazy updates
+     * are not done here, the priorities are only updated for the neighbors and periodically.
+     */
+    void contractNodesInParallel() {
+        meanDegree = prepareGraph.getAllEdges().getMaxId() / prepareGraph.getNodes();
+        int level = 1;
+        counter = 0;
+        int initSize = sortedNodes.getSize();
+        long logSize = Math.round(Math.max(10, sortedNodes.getSize() / 100 * logMessagesPercentage));
+        if (logMessagesPercentage == 0)
+            logSize = Integer.MAX_VALUE;
+
+        long periodicUpdatesCount = Math.round(Math.max(10, sortedNodes.getSize() / 100d * periodicUpdatesPercentage));
+        long nextPeriodicUpdate = periodicUpdatesPercentage == 0 ? Long.MAX_VALUE : periodicUpdatesCount;
+        long nextLog = logSize;
+        int updateCounter = 0;
+        long nodesToAvoidContract = Math.round((100 - nodesContractedPercentage) / 100 * sortedNodes.getSize());
+
+        ShortcutFinder[] finders = new ShortcutFinder[contractionThreads];
+        finders[0] = shortcutFinders[0];
+        for (int i = 1; i < finders.length; i++) {
+            finders[i] = new ShortcutFinder();
+        }
+        shortcutFinders = finders;
+
+        GHBitSet neighborhood = new GHBitSetImpl(prepareGraph.getNodes());
+        StopWatch periodSW = new StopWatch();
+        StopWatch neighborSW = new StopWatch();
+        ForkJoinPool pool = new ForkJoinPool(contractionThreads);
+        try {
+            while (sortedNodes.getSize() > nodesToAvoidContract) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new RuntimeException("Thread was interrupted");
+
+                // periodically update priorities of ALL nodes
+                if (counter >= nextPeriodicUpdate) {
+                    periodSW.start();
+                    GHIntArrayList nodes = new GHIntArrayList(sortedNodes.getSize());
+                    for (int node = 0; node < prepareGraph.getNodes(); node++) {
+                        if (prepareGraph.getLevel(node) == maxLevel)
+                            nodes.add(node);
+                    }
+                    int[] priorities = calculatePrioritiesInParallel(pool, nodes.toArray());
+                    sortedNodes.clear();
+                    for (int i = 0; i < nodes.size(); i++) {
+                        int node = nodes.get(i);
+                        oldPriorities[node] = priorities[i];
+                        sortedNodes.insert(node, priorities[i]);
+                    }
+                    periodSW.stop();
+                    updateCounter++;
+                    nextPeriodicUpdate += periodicUpdatesCount;
+                }
+
+                int maxRoundSize = (int) Math.min(sortedNodes.getSize() - nodesToAvoidContract,
+                        Math.max(100, sortedNodes.getSize() / 100));
+                int[] roundNodes = pollIndependentNodes(maxRoundSize, neighborhood);
+                for (int node : roundNodes) {
+                    prepareGraph.setLevel(node, level);
+                    level++;
+                }
+
+                List<Collection<Shortcut>> roundShortcuts = findShortcutsInParallel(pool, roundNodes);
+                for (Collection<Shortcut> nodeShortcuts : roundShortcuts) {
+                    newShortcuts += addShortcuts(nodeShortcuts);
+                }
+
+                // disconnect the contracted nodes and collect the neighbors for the priority update
+                GHIntArrayList neighbors = new GHIntArrayList();
+                for (int node : roundNodes) {
+                    CHEdgeIterator iter = vehicleAllExplorer.setBaseNode(node);
+                    while (iter.next()) {
+                        int nn = iter.getAdjNode();
+                        if (prepareGraph.getLevel(nn) != maxLevel)
+                            continue;
+
+                        if (neighborUpdatePercentage > 0 && !neighborhood.contains(nn)
+                                && rand.nextInt(100) < neighborUpdatePercentage) {
+                            neighborhood.add(nn);
+                            neighbors.add(nn);
+                        }
+
+                        prepareGraph.disconnect(vehicleAllTmpExplorer, iter);
+                    }
+                }
+                neighborhood.clear();
+
+                if (!neighbors.isEmpty()) {
+                    neighborSW.start();
+                    int[] priorities = calculatePrioritiesInParallel(pool, neighbors.toArray());
+                    for (int i = 0; i < neighbors.size(); i++) {
+                        int nn = neighbors.get(i);
+                        int oldPrio = oldPriorities[nn];
+                        oldPriorities[nn] = priorities[i];
+                        if (priorities[i] != oldPrio)
+                            sortedNodes.update(nn, oldPrio, priorities[i]);
+                    }
+                    neighborSW.stop();
+                }
+
+                counter += roundNodes.length;
+                if (counter >= nextLog) {
+                    periodTime += periodSW.getSeconds();
+                    neighborTime += neighborSW.getSeconds();
+                    logProgress(updateCounter);
+                    periodSW = new StopWatch();
+                    neighborSW = new StopWatch();
+                    nextLog += logSize;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        periodTime += periodSW.getSeconds();
+        neighborTime += neighborSW.getSeconds();
+        finishContraction(initSize);
+    }
+
+    /**
+     * Polls up to maxCandidates nodes with the lowest priority and returns the ones whose
+     * neighborhoods do not overlap. The first polled node is always returned. All other nodes are
+     * put back into the queue.
+     */
+    int[] pollIndependentNodes(int maxCandidates, GHBitSet neighborhood) {
+        GHIntArrayList selected = new GHIntArrayList();
+        GHIntArrayList rejected = new GHIntArrayList();
+        GHIntArrayList marked = new GHIntArrayList();
+        for (int i = 0; i < maxCandidates && !sortedNodes.isEmpty(); i++) {
+            int node = sortedNodes.pollKey();
+            boolean independent = !neighborhood.contains(node);
+            CHEdgeIterator iter = vehicleAllExplorer.setBaseNode(node);
+            while (independent && iter.next()) {
+                int nn = iter.getAdjNode();
+                if (prepareGraph.getLevel(nn) == maxLevel && neighborhood.contains(nn))
+                    independent = false;
+            }
+
+            if (!independent) {
+                rejected.add(node);
+                continue;
+            }
+
+            selected.add(node);
+            neighborhood.add(node);
+            marked.add(node);
+            iter = vehicleAllExplorer.setBaseNode(node);
+            while (iter.next()) {
+                int nn = iter.getAdjNode();
+                if (prepareGraph.getLevel(nn) == maxLevel && !neighborhood.contains(nn)) {
+                    neighborhood.add(nn);
+                    marked.add(nn);
+                }
+            }
+        }
+
+        for (int i = 0; i < rejected.size(); i++) {
+            int node = rejected.get(i);
+            sortedNodes.insert(node, oldPriorities[node]);
+        }
+        for (int i = 0; i < marked.size(); i++) {
+            neighborhood.remove(marked.get(i));
+        }
+        return selected.toArray();
+    }
+
+    private List<Collection<Shortcut>> findShortcutsInParallel(ForkJoinPool pool, final int[] nodes) {
+        final List<Collection<Shortcut>> result = new ArrayList<>(Collections.<Collection<Shortcut>>nCopies(nodes.length, null));
+        final long[] degrees = new long[nodes.length];
+        List<Callable<Object>> tasks = new ArrayList<>(shortcutFinders.length);
+        for (int t = 0; t < shortcutFinders.length; t++) {
+            final int offset = t;
+            final ShortcutFinder finder = shortcutFinders[t];
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int i = offset; i < nodes.length; i += shortcutFinders.length) {
+                        degrees[i] = finder.findShortcuts(finder.addScHandler.setNode(nodes[i]));
+                        result.set(i, new ArrayList<>(finder.shortcuts.keySet()));
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(pool, tasks);
+
+        for (long degree : degrees) {
+            meanDegree = (meanDegree * 2 + degree) / 3;
+        }
+        return result;
+    }
+
+    private int[] calculatePrioritiesInParallel(ForkJoinPool pool, final int[] nodes) {
+        final int[] priorities = new int[nodes.length];
+        List<Callable<Object>> tasks = new ArrayList<>(shortcutFinders.length);
+        for (int t = 0; t < shortcutFinders.length; t++) {
+            final int offset = t;
+            final ShortcutFinder finder = shortcutFinders[t];
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int i = offset; i < nodes.length; i += shortcutFinders.length) {
+                        priorities[i] = finder.calculatePriority(nodes[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(pool, tasks);
+        return priorities;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private void logProgress(int updateCounter) {
+        logger.info(Helper.nf(counter) + ", updates:" + updateCounter
+                + ", nodes: " + Helper.nf(sortedNodes.getSize())
+                + ", shortcuts:" + Helper.nf(newShortcuts)
+                + ", dijkstras:" + Helper.nf(getDijkstraCount())
+                + ", " + getTimesAsString()
+                + ", meanDegree:" + (long) meanDegree
+                + (shortcutFinders[0].prepareAlgo == null ? "" : ", algo:" + shortcutFinders[0].prepareAlgo.getMemoryUsageAsString())
+                + (contractionThreads > 1 ? ", threads:" + contractionThreads : "")
+                + ", " + Helper.getMemInfo());
+    }
+
+    private void finishContraction(int initSize) {
         // Preparation works only once so we can release temporary data.
         // The preparation object itself has to be intact to create the algorithm.
         close();
 
-        dijkstraTime += dijkstraSW.getSeconds();
-        periodTime += periodSW.getSeconds();
-        lazyTime += lazySW.getSeconds();
-        neighborTime += neighborSW.getSeconds();
         logger.info("took:" + (int) allSW.stop().getSeconds()
                 + ", new shortcuts: " + Helper.nf(newShortcuts)
                 + ", " + prepareWeighting
-                + ", dijkstras:" + dijkstraCount
+                + ", dijkstras:" + getDijkstraCount()
                 + ", " + getTimesAsString()
                 + ", meanDegree:" + (long) meanDegree
                 + ", initSize:" + initSize
                 + ", periodic:" + periodicUpdatesPercentage
                 + ", lazy:" + lastNodesLazyUpdatePercentage
                 + ", neighbor:" + neighborUpdatePercentage
+                + ", threads:" + contractionThreads
                 + ", " + Helper.getMemInfo());
     }
 
     public long getDijkstraCount() {
+        long dijkstraCount = 0;
+        for (ShortcutFinder finder : shortcutFinders) {
+            dijkstraCount += finder.dijkstraCount;
+        }
         return dijkstraCount;
     }
 
@@ -360,7 +690,15 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return periodTime;
     }
 
+    /**
+     * @return the time spent in witness searches. For parallel contraction this is the sum over all
+     * threads.
+     */
     public double getDijkstraTime() {
+        double dijkstraTime = 0;
+        for (ShortcutFinder finder : shortcutFinders) {
+            dijkstraTime += finder.dijkstraSW.getSeconds();
+        }
         return dijkstraTime;
     }
 
@@ -373,144 +711,41 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     }
 
     public void close() {
-        prepareAlgo.close();
+        if (shortcutFinders != null) {
+            for (ShortcutFinder finder : shortcutFinders) {
+                if (finder.prepareAlgo != null)
+                    finder.prepareAlgo.close();
+            }
+        }
         originalEdges.close();
         sortedNodes = null;
         oldPriorities = null;
     }
 
     private String getTimesAsString() {
-        return "t(dijk):" + Helper.round2(dijkstraTime)
+        return "t(dijk):" + Helper.round2(getDijkstraTime())
                 + ", t(period):" + Helper.round2(periodTime)
                 + ", t(lazy):" + Helper.round2(lazyTime)
                 + ", t(neighbor):" + Helper.round2(neighborTime);
     }
 
     Set<Shortcut> testFindShortcuts(int node) {
-        findShortcuts(addScHandler.setNode(node));
-        return shortcuts.keySet();
+        ShortcutFinder finder = shortcutFinders[0];
+        finder.findShortcuts(finder.addScHandler.setNode(node));
+        return finder.shortcuts.keySet();
     }
 
-    /**
-     * Calculates the priority of adjNode v without changing the graph. Warning: the calculated
-     * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend on
-     * the priority(v). Otherwise updating the priority before contracting in contractNodes() could
-     * lead to a slowish or even endless loop.
-     */
     int calculatePriority(int v) {
-        // set of shortcuts that would be added if adjNode v would be contracted next.
-        findShortcuts(calcScHandler.setNode(v));
-
-//        System.out.println(v + "\t " + tmpShortcuts);
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every adjNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        int originalEdgesCount = calcScHandler.originalEdgesCount;
-//        for (Shortcut sc : tmpShortcuts) {
-//            originalEdgesCount += sc.originalEdges;
-//        }
-
-        // # lowest influence on preparation speed or shortcut creation count
-        // (but according to paper should speed up queries)
-        //
-        // number of already contracted neighbors of v
-        int contractedNeighbors = 0;
-        int degree = 0;
-        CHEdgeIterator iter = calcPrioAllExplorer.setBaseNode(v);
-        while (iter.next()) {
-            degree++;
-            if (iter.isShortcut())
-                contractedNeighbors++;
-        }
-
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
-        // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = calcScHandler.shortcuts - degree;
-
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        // this is the current optimum for unterfranken:
-        return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
-    }
-
-    /**
-     * Finds shortcuts, does not change the underlying graph.
-     */
-    void findShortcuts(ShortcutHandler sch) {
-        long tmpDegreeCounter = 0;
-        EdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(sch.getNode());
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next()) {
-            int u_fromNode = incomingEdges.getAdjNode();
-            // accept only uncontracted nodes
-            if (prepareGraph.getLevel(u_fromNode) != maxLevel)
-                continue;
-
-            double v_u_dist = incomingEdges.getDistance();
-            double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
-            int skippedEdge1 = incomingEdges.getEdge();
-            int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
-            // collect outgoing nodes (goal-nodes) only once
-            EdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(sch.getNode());
-            // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
-            prepareAlgo.clear();
-            tmpDegreeCounter++;
-            while (outgoingEdges.next()) {
-                int w_toNode = outgoingEdges.getAdjNode();
-                // add only uncontracted nodes
-                if (prepareGraph.getLevel(w_toNode) != maxLevel || u_fromNode == w_toNode)
-                    continue;
-
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
-                if (Double.isNaN(existingDirectWeight))
-                    throw new IllegalStateException("Weighting should never return NaN values"
-                            + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
-                            + ", dist:" + outgoingEdges.getDistance());
-
-                if (Double.isInfinite(existingDirectWeight))
-                    continue;
-
-                double existingDistSum = v_u_dist + outgoingEdges.getDistance();
-                prepareAlgo.setWeightLimit(existingDirectWeight);
-                prepareAlgo.setMaxVisitedNodes((int) meanDegree * 100);
-                prepareAlgo.setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                int endNode = prepareAlgo.findEndNode(u_fromNode, w_toNode);
-                dijkstraSW.stop();
-
-                // compare end node as the limit could force dijkstra to finish earlier
-                if (endNode == w_toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut
-                    continue;
-
-                sch.foundShortcut(u_fromNode, w_toNode,
-                        existingDirectWeight, existingDistSum,
-                        outgoingEdges,
-                        skippedEdge1, incomingEdgeOrigCount);
-            }
-        }
-        if (sch instanceof AddShortcutHandler) {
-            // sliding mean value when using "*2" => slower changes
-            meanDegree = (meanDegree * 2 + tmpDegreeCounter) / 3;
-            // meanDegree = (meanDegree + tmpDegreeCounter) / 2;
-        }
+        return shortcutFinders[0].calculatePriority(v);
     }
 
     /**
      * Introduces the necessary shortcuts for adjNode v in the graph.
      */
     int addShortcuts(Collection<Shortcut> tmpShortcuts) {
+        if (traversalMode.isEdgeBased())
+            return addEdgeBasedShortcuts(tmpShortcuts);
+
         int tmpNewShortcuts = 0;
         NEXT_SC:
         for (Shortcut sc : tmpShortcuts) {
@@ -567,6 +802,92 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return tmpNewShortcuts;
     }
 
+    /**
+     * Edge-based shortcuts are one-way and two shortcuts between the same nodes are only replaceable
+     * if they start and end with the same original edges.
+     */
+    private int addEdgeBasedShortcuts(Collection<Shortcut> tmpShortcuts) {
+        int tmpNewShortcuts = 0;
+        NEXT_SC:
+        for (Shortcut sc : tmpShortcuts) {
+            CHEdgeIterator iter = vehicleOutExplorer.setBaseNode(sc.from);
+            while (iter.next()) {
+                if (!iter.isShortcut() || iter.getAdjNode() != sc.to
+                        || iter.getOrigEdgeFirst() != sc.origFirst || iter.getOrigEdgeLast() != sc.origLast)
+                    continue;
+
+                if (sc.weight >= prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE))
+                    continue NEXT_SC;
+
+                int skippedEdge1 = sc.helper == null ? sc.skippedEdge1 : addHelperShortcut(sc.helper);
+                iter.setWeight(sc.weight);
+                iter.setDistance(sc.dist);
+                iter.setSkippedEdges(skippedEdge1, sc.skippedEdge2);
+                setOrigEdgeCount(iter.getEdge(), sc.originalEdges);
+                continue NEXT_SC;
+            }
+
+            int skippedEdge1 = sc.helper == null ? sc.skippedEdge1 : addHelperShortcut(sc.helper);
+            CHEdgeIteratorState edgeState = prepareGraph.shortcut(sc.from, sc.to);
+            // note: flags overwrite weight => call first
+            edgeState.setFlags(sc.flags);
+            edgeState.setWeight(sc.weight);
+            edgeState.setDistance(sc.dist);
+            edgeState.setSkippedEdges(skippedEdge1, sc.skippedEdge2);
+            edgeState.setFirstAndLastOrigEdges(sc.origFirst, sc.origLast);
+            setOrigEdgeCount(edgeState.getEdge(), sc.originalEdges);
+            tmpNewShortcuts++;
+        }
+        return tmpNewShortcuts;
+    }
+
+    /**
+     * A shortcut which goes through loops at the contracted node skips the incoming edge plus the
+     * loops as its first edge. This is a helper shortcut without access flags, so it is never
+     * traversed and only used for the unpacking. Several loops lead to a chain of helpers.
+     */
+    private int addHelperShortcut(Shortcut helper) {
+        if (helper.helperEdge != EdgeIterator.NO_EDGE)
+            return helper.helperEdge;
+
+        int skippedEdge1 = helper.helper == null ? helper.skippedEdge1 : addHelperShortcut(helper.helper);
+        CHEdgeIteratorState edgeState = prepareGraph.shortcut(helper.from, helper.to);
+        edgeState.setFlags(0);
+        edgeState.setWeight(helper.weight);
+        edgeState.setDistance(helper.dist);
+        edgeState.setSkippedEdges(skippedEdge1, helper.skippedEdge2);
+        edgeState.setFirstAndLastOrigEdges(helper.origFirst, helper.origLast);
+        setOrigEdgeCount(edgeState.getEdge(), helper.originalEdges);
+        helper.helperEdge = edgeState.getEdge();
+        return helper.helperEdge;
+    }
+
+    /**
+     * Returns the original edge of the specified (shortcut) edge at the specified node. For a loop
+     * the direction decides: a loop arrives at the node with its last original edge and leaves it
+     * with its first one.
+     */
+    static int getOrigEdge(CHEdgeIteratorState edgeState, int node, boolean arriving) {
+        if (edgeState.getBaseNode() == edgeState.getAdjNode())
+            return arriving ? edgeState.getOrigEdgeLast() : edgeState.getOrigEdgeFirst();
+
+        return node == edgeState.getBaseNode() ? edgeState.getOrigEdgeFirst() : edgeState.getOrigEdgeLast();
+    }
+
+    /**
+     * Returns the weight of the turn from the original edge inEdge via the node to the original
+     * edge outEdge. There is no turn at the start or the end of a path and u-turns are forbidden.
+     */
+    static double calcTurnWeight(TurnWeighting turnWeighting, int inEdge, int node, int outEdge) {
+        if (inEdge == EdgeIterator.NO_EDGE || outEdge == EdgeIterator.NO_EDGE)
+            return 0;
+
+        if (inEdge == outEdge)
+            return Double.POSITIVE_INFINITY;
+
+        return turnWeighting.calcTurnWeight(inEdge, node, outEdge);
+    }
+
     String getCoords(EdgeIteratorState e, Graph g) {
         NodeAccess na = g.getNodeAccess();
         int base = e.getBaseNode();
@@ -579,26 +900,12 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         ghStorage.freeze();
         maxEdgesCount = ghStorage.getAllEdges().getMaxId();
         FlagEncoder prepareFlagEncoder = prepareWeighting.getFlagEncoder();
-        vehicleInExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
         vehicleOutExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
-        final EdgeFilter allFilter = new DefaultEdgeFilter(prepareFlagEncoder, true, true);
-
-        // filter by vehicle and level number
-        final EdgeFilter accessWithLevelFilter = new LevelEdgeFilter(prepareGraph) {
-            @Override
-            public final boolean accept(EdgeIteratorState edgeState) {
-                if (!super.accept(edgeState))
-                    return false;
-
-                return allFilter.accept(edgeState);
-            }
-        };
+        EdgeFilter allFilter = new DefaultEdgeFilter(prepareFlagEncoder, true, true);
 
         maxLevel = prepareGraph.getNodes() + 1;
-        ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph, maxLevel);
         vehicleAllExplorer = prepareGraph.createEdgeExplorer(allFilter);
         vehicleAllTmpExplorer = prepareGraph.createEdgeExplorer(allFilter);
-        calcPrioAllExplorer = prepareGraph.createEdgeExplorer(accessWithLevelFilter);
 
         // Use an alternative to PriorityQueue as it has some advantages:
         //   1. Gets automatically smaller if less entries are stored => less total RAM used.
@@ -607,7 +914,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         //   but we need the additional oldPriorities array to keep the old value which is necessary for the update method
         sortedNodes = new GHTreeMapComposed();
         oldPriorities = new int[prepareGraph.getNodes()];
-        prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareWeighting, traversalMode);
+        shortcutFinders = new ShortcutFinder[]{new ShortcutFinder()};
         return this;
     }
 
@@ -635,21 +942,41 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (edgeId < 0)
             return 1;
 
-        long tmp = (long) edgeId * 4;
-        originalEdges.ensureCapacity(tmp + 4);
-        return originalEdges.getInt(tmp);
+        // no ensureCapacity here: the count of every shortcut was already set and this method is
+        // called concurrently from the witness searches of a parallel contraction round
+        return originalEdges.getInt((long) edgeId * 4);
     }
 
     @Override
     public RoutingAlgorithm createAlgo(Graph graph, AlgorithmOptions opts) {
+        if (traversalMode.isEdgeBased())
+            return createEdgeBasedAlgo(graph, opts);
+
+        if (ALT_ROUTE.equalsIgnoreCase(opts.getAlgorithm())) {
+            AlternativeRouteCH altRouteAlgo = new AlternativeRouteCH(graph, prepareWeighting, traversalMode, levelFilter);
+            altRouteAlgo.setMaxPaths(opts.getHints().getInt(MAX_PATHS, 2));
+            altRouteAlgo.setMaxWeightFactor(opts.getHints().getDouble(MAX_WEIGHT, 1.4));
+            altRouteAlgo.setMaxShareFactor(opts.getHints().getDouble(MAX_SHARE, 0.6));
+            altRouteAlgo.setMinPlateauFactor(opts.getHints().getDouble("alternative_route.min_plateau_factor", 0.2));
+            altRouteAlgo.setRelaxationFactor(opts.getHints().getDouble("alternative_route.relaxation_factor", 0.25));
+            altRouteAlgo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            return altRouteAlgo;
+        }
+
         AbstractBidirAlgo algo;
+        boolean stallOnDemand = opts.getHints().getBool(Parameters.CH.STALL_ON_DEMAND, true);
         if (ASTAR_BI.equals(opts.getAlgorithm())) {
-            AStarBidirection tmpAlgo = new AStarBidirectionCH(graph, prepareWeighting, traversalMode);
+            AStarBidirectionCH tmpAlgo = new AStarBidirectionCH(graph, prepareWeighting, traversalMode);
             tmpAlgo.setApproximation(RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, graph.getNodeAccess()));
+            tmpAlgo.setStallOnDemand(stallOnDemand);
             algo = tmpAlgo;
 
         } else if (DIJKSTRA_BI.equals(opts.getAlgorithm())) {
-            algo = new DijkstraBidirectionCH(graph, prepareWeighting, traversalMode);
+            if (opts.getStatePool() != null)
+                algo = new DijkstraBidirectionCHPooled(graph, prepareWeighting, traversalMode,
+                        opts.getStatePool()).setStallOnDemand(stallOnDemand);
+            else
+                algo = new DijkstraBidirectionCH(graph, prepareWeighting, traversalMode).setStallOnDemand(stallOnDemand);
         } else {
             throw new IllegalArgumentException("Algorithm " + opts.getAlgorithm() + " not supported for Contraction Hierarchies. Try with ch.disable=true");
         }
@@ -659,11 +986,56 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return algo;
     }
 
+    private RoutingAlgorithm createEdgeBasedAlgo(Graph graph, AlgorithmOptions opts) {
+        if (!DIJKSTRA_BI.equals(opts.getAlgorithm()))
+            throw new IllegalArgumentException("Algorithm " + opts.getAlgorithm() + " not supported for edge-based Contraction Hierarchies, use " + DIJKSTRA_BI);
+        if (!(opts.getWeighting() instanceof TurnWeighting))
+            throw new IllegalArgumentException("Edge-based Contraction Hierarchies require a TurnWeighting but was " + opts.getWeighting());
+
+        DijkstraBidirectionEdgeCH algo = new DijkstraBidirectionEdgeCH(graph, prepareWeighting, (TurnWeighting) opts.getWeighting());
+        algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+        algo.setEdgeFilter(levelFilter);
+        return algo;
+    }
+
+    /**
+     * Creates the bucket based many-to-many algorithm working on this contraction hierarchy.
+     */
+    public MatrixAlgorithm createMatrixAlgo(Graph graph, AlgorithmOptions opts) {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Matrix calculation is not supported for edge based traversal " + traversalMode);
+
+        ManyToManyCH algo = new ManyToManyCH(graph, prepareWeighting, levelFilter);
+        algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+        return algo;
+    }
+
+    /**
+     * Creates the PHAST engine for one-to-all searches on this contraction hierarchy. The creation
+     * copies the hierarchy into level sorted arrays, so reuse the engine for all sources.
+     */
+    public PHAST createPHAST() {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("PHAST is not supported for edge based traversal " + traversalMode);
+
+        return new PHAST(prepareGraph, prepareWeighting);
+    }
+
     public static class AStarBidirectionCH extends AStarBidirection {
+        private boolean stallOnDemand = true;
+
         public AStarBidirectionCH(Graph graph, Weighting weighting, TraversalMode traversalMode) {
             super(graph, weighting, traversalMode);
         }
 
+        /**
+         * @see DijkstraBidirectionCH#setStallOnDemand(boolean)
+         */
+        public AStarBidirectionCH setStallOnDemand(boolean stallOnDemand) {
+            this.stallOnDemand = stallOnDemand;
+            return this;
+        }
+
         @Override
         protected void initCollections(int size) {
             super.initCollections(Math.min(size, 2000));
@@ -679,6 +1051,42 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             return currFrom.weight >= bestPath.getWeight() && currTo.weight >= bestPath.getWeight();
         }
 
+        @Override
+        protected boolean fillEdgesFrom() {
+            // early termination: every further entry of this direction is worse than the best path
+            if (currFrom.weight >= bestPath.getWeight())
+                return false;
+            return super.fillEdgesFrom();
+        }
+
+        @Override
+        protected boolean fillEdgesTo() {
+            if (currTo.weight >= bestPath.getWeight())
+                return false;
+            return super.fillEdgesTo();
+        }
+
+        @Override
+        protected boolean skipExploration(AStarEntry entry, boolean reverse) {
+            if (!stallOnDemand)
+                return false;
+
+            // stall-on-demand: the entry cannot be on a shortest path if its node can be reached with a smaller
+            // weight via an edge from a higher level node, so there is no need to explore the upward edges
+            IntObjectMap<AStarEntry> bestWeightMap = reverse ? bestWeightMapTo : bestWeightMapFrom;
+            EdgeIterator iter = (reverse ? outEdgeExplorer : inEdgeExplorer).setBaseNode(entry.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, EdgeIterator.NO_EDGE))
+                    continue;
+
+                AStarEntry higher = bestWeightMap.get(iter.getAdjNode());
+                if (higher != null && higher.getWeightOfVisitedPath() + weighting.calcWeight(iter, !reverse, EdgeIterator.NO_EDGE)
+                        < entry.getWeightOfVisitedPath())
+                    return true;
+            }
+            return false;
+        }
+
         @Override
         protected Path createAndInitPath() {
             bestPath = new Path4CH(graph, graph.getBaseGraph(), weighting);
@@ -697,10 +1105,21 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     }
 
     public static class DijkstraBidirectionCH extends DijkstraBidirectionRef {
+        private boolean stallOnDemand = true;
+
         public DijkstraBidirectionCH(Graph graph, Weighting weighting, TraversalMode traversalMode) {
             super(graph, weighting, traversalMode);
         }
 
+        /**
+         * Stall-on-demand avoids exploring the upward edges of nodes which can be reached with a smaller weight via
+         * a higher level neighbour. This reduces the visited nodes without changing the result. Enabled by default.
+         */
+        public DijkstraBidirectionCH setStallOnDemand(boolean stallOnDemand) {
+            this.stallOnDemand = stallOnDemand;
+            return this;
+        }
+
         @Override
         protected void initCollections(int size) {
             super.initCollections(Math.min(size, 2000));
@@ -716,6 +1135,41 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             return currFrom.weight >= bestPath.getWeight() && currTo.weight >= bestPath.getWeight();
         }
 
+        @Override
+        public boolean fillEdgesFrom() {
+            // early termination: every further entry of this direction is worse than the best path
+            if (currFrom.weight >= bestPath.getWeight())
+                return false;
+            return super.fillEdgesFrom();
+        }
+
+        @Override
+        public boolean fillEdgesTo() {
+            if (currTo.weight >= bestPath.getWeight())
+                return false;
+            return super.fillEdgesTo();
+        }
+
+        @Override
+        protected boolean skipExploration(SPTEntry entry, boolean reverse) {
+            if (!stallOnDemand)
+                return false;
+
+            // the entry cannot be on a shortest path if its node can be reached with a smaller weight via an edge
+            // from a higher level node. The 'in' edges of the forward search lead to higher level nodes.
+            IntObjectMap<SPTEntry> bestWeightMap = reverse ? bestWeightMapTo : bestWeightMapFrom;
+            EdgeIterator iter = (reverse ? outEdgeExplorer : inEdgeExplorer).setBaseNode(entry.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, EdgeIterator.NO_EDGE))
+                    continue;
+
+                SPTEntry higher = bestWeightMap.get(iter.getAdjNode());
+                if (higher != null && higher.weight + weighting.calcWeight(iter, !reverse, EdgeIterator.NO_EDGE) < entry.weight)
+                    return true;
+            }
+            return false;
+        }
+
         @Override
         protected Path createAndInitPath() {
             bestPath = new Path4CH(graph, graph.getBaseGraph(), weighting);
@@ -733,6 +1187,72 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         }
     }
 
+    public static class DijkstraBidirectionCHPooled extends DijkstraBidirectionPooled {
+        private boolean stallOnDemand = true;
+
+        public DijkstraBidirectionCHPooled(Graph graph, Weighting weighting, TraversalMode traversalMode, BidirSearchStatePool pool) {
+            super(graph, weighting, traversalMode, pool, true);
+        }
+
+        /**
+         * @see DijkstraBidirectionCH#setStallOnDemand(boolean)
+         */
+        public DijkstraBidirectionCHPooled setStallOnDemand(boolean stallOnDemand) {
+            this.stallOnDemand = stallOnDemand;
+            return this;
+        }
+
+        @Override
+        public boolean finished() {
+            // we need to finish BOTH searches for CH!
+            if (finishedFrom && finishedTo)
+                return true;
+
+            return currFromWeight >= bestWeight && currToWeight >= bestWeight;
+        }
+
+        @Override
+        protected boolean fillEdgesFrom() {
+            // early termination: every further node of this direction is worse than the best path
+            if (currFromWeight >= bestWeight)
+                return false;
+            return super.fillEdgesFrom();
+        }
+
+        @Override
+        protected boolean fillEdgesTo() {
+            if (currToWeight >= bestWeight)
+                return false;
+            return super.fillEdgesTo();
+        }
+
+        @Override
+        protected boolean skipExploration(int node, boolean reverse) {
+            if (!stallOnDemand)
+                return false;
+
+            double weight = getWeight(node, reverse);
+            EdgeIterator iter = (reverse ? outEdgeExplorer : inEdgeExplorer).setBaseNode(node);
+            while (iter.next()) {
+                if (accept(iter, EdgeIterator.NO_EDGE)
+                        && getWeight(iter.getAdjNode(), reverse) + weighting.calcWeight(iter, !reverse, EdgeIterator.NO_EDGE) < weight)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected Path createAndInitPath() {
+            bestPath = new Path4CH(graph, graph.getBaseGraph(), weighting);
+            return bestPath;
+        }
+
+        @Override
+        public String getName() {
+            return "dijkstrabi|ch|pooled";
+        }
+    }
+
     @Override
     public String toString() {
         return "prepare|dijkstrabi|ch";
@@ -744,6 +1264,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                            EdgeIterator outgoingEdges,
                            int skippedEdge1, int incomingEdgeOrigCount);
 
+        /**
+         * Called by the edge-based contraction with the complete shortcut.
+         */
+        void foundEdgeBasedShortcut(Shortcut shortcut);
+
         int getNode();
     }
 
@@ -779,6 +1304,14 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         double weight;
         int originalEdges;
         long flags = PrepareEncoder.getScFwdDir();
+        // only for edge-based shortcuts
+        int origFirst = EdgeIterator.NO_EDGE;
+        int origLast = EdgeIterator.NO_EDGE;
+        // if the shortcut goes through loops at the contracted node: the helper shortcut for the
+        // incoming edge plus the loops, it replaces skippedEdge1 when the shortcut is added
+        Shortcut helper;
+        // the id of a helper shortcut, once it is added to the graph
+        int helperEdge = EdgeIterator.NO_EDGE;
 
         public Shortcut(int from, int to, double weight, double dist) {
             this.from = from;
@@ -792,6 +1325,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             int hash = 5;
             hash = 23 * hash + from;
             hash = 23 * hash + to;
+            hash = 23 * hash + origFirst;
+            hash = 23 * hash + origLast;
             return 23 * hash
                     + (int) (Double.doubleToLongBits(this.weight) ^ (Double.doubleToLongBits(this.weight) >>> 32));
         }
@@ -802,7 +1337,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 return false;
 
             final Shortcut other = (Shortcut) obj;
-            if (this.from != other.from || this.to != other.to)
+            if (this.from != other.from || this.to != other.to
+                    || this.origFirst != other.origFirst || this.origLast != other.origLast)
                 return false;
 
             return Double.doubleToLongBits(this.weight) == Double.doubleToLongBits(other.weight);
@@ -816,7 +1352,10 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             else
                 str = from + "->";
 
-            return str + to + ", weight:" + weight + " (" + skippedEdge1 + "," + skippedEdge2 + ")";
+            str += to + ", weight:" + weight + " (" + skippedEdge1 + "," + skippedEdge2 + ")";
+            if (origFirst != EdgeIterator.NO_EDGE)
+                str += ", orig:" + origFirst + "->" + origLast;
+            return str;
         }
     }
 
@@ -845,12 +1384,20 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             shortcuts++;
             originalEdgesCount += incomingEdgeOrigCount + getOrigEdgeCount(outgoingEdges.getEdge());
         }
+
+        @Override
+        public void foundEdgeBasedShortcut(Shortcut shortcut) {
+            shortcuts++;
+            originalEdgesCount += shortcut.originalEdges;
+        }
     }
 
     class AddShortcutHandler implements ShortcutHandler {
+        private final Map<Shortcut, Shortcut> shortcuts;
         int node;
 
-        public AddShortcutHandler() {
+        public AddShortcutHandler(Map<Shortcut, Shortcut> shortcuts) {
+            this.shortcuts = shortcuts;
         }
 
         @Override
@@ -896,5 +1443,407 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             sc.skippedEdge2 = outgoingEdges.getEdge();
             sc.originalEdges = incomingEdgeOrigCount + getOrigEdgeCount(outgoingEdges.getEdge());
         }
+
+        @Override
+        public void foundEdgeBasedShortcut(Shortcut shortcut) {
+            // shortcuts with the same nodes and original edges but a different weight are both kept,
+            // the worse one is skipped in addShortcuts
+            if (!shortcuts.containsKey(shortcut))
+                shortcuts.put(shortcut, shortcut);
+        }
+    }
+
+    /**
+     * Holds everything a witness search needs, so that the shortcuts of independent nodes can be
+     * searched from several threads, each with its own finder.
+     */
+    class ShortcutFinder {
+        final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
+        final AddShortcutHandler addScHandler = new AddShortcutHandler(shortcuts);
+        final CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
+        final CHEdgeExplorer vehicleInExplorer;
+        final CHEdgeExplorer vehicleOutExplorer;
+        final CHEdgeExplorer calcPrioAllExplorer;
+        final IgnoreNodeFilter ignoreNodeFilter;
+        // only one of the witness searches is used, depending on the traversal mode
+        final DijkstraOneToMany prepareAlgo;
+        final EdgeBasedWitnessSearch witnessSearch;
+        // the original edges arriving at or leaving a node, for the turn costs of a witness
+        final EdgeExplorer origInExplorer;
+        final EdgeExplorer origOutExplorer;
+        final StopWatch dijkstraSW = new StopWatch();
+        long dijkstraCount;
+
+        ShortcutFinder() {
+            FlagEncoder prepareFlagEncoder = prepareWeighting.getFlagEncoder();
+            vehicleInExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
+            vehicleOutExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
+            final EdgeFilter allFilter = new DefaultEdgeFilter(prepareFlagEncoder, true, true);
+
+            // filter by vehicle and level number
+            final EdgeFilter accessWithLevelFilter = new LevelEdgeFilter(prepareGraph) {
+                @Override
+                public final boolean accept(EdgeIteratorState edgeState) {
+                    if (!super.accept(edgeState))
+                        return false;
+
+                    return allFilter.accept(edgeState);
+                }
+            };
+            calcPrioAllExplorer = prepareGraph.createEdgeExplorer(accessWithLevelFilter);
+            ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph, maxLevel);
+            if (traversalMode.isEdgeBased()) {
+                prepareAlgo = null;
+                witnessSearch = new EdgeBasedWitnessSearch(prepareGraph, prepareWeighting, turnWeighting,
+                        prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true)), maxLevel);
+                origInExplorer = ghStorage.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
+                origOutExplorer = ghStorage.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
+            } else {
+                prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareWeighting, traversalMode);
+                witnessSearch = null;
+                origInExplorer = null;
+                origOutExplorer = null;
+            }
+        }
+
+        /**
+         * Calculates the priority of adjNode v without changing the graph. Warning: the calculated
+         * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend on
+         * the priority(v). Otherwise updating the priority before contracting in contractNodes() could
+         * lead to a slowish or even endless loop.
+         */
+        int calculatePriority(int v) {
+            // set of shortcuts that would be added if adjNode v would be contracted next.
+            findShortcuts(calcScHandler.setNode(v));
+
+    //        System.out.println(v + "\t " + tmpShortcuts);
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every adjNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            int originalEdgesCount = calcScHandler.originalEdgesCount;
+    //        for (Shortcut sc : tmpShortcuts) {
+    //            originalEdgesCount += sc.originalEdges;
+    //        }
+
+            // # lowest influence on preparation speed or shortcut creation count
+            // (but according to paper should speed up queries)
+            //
+            // number of already contracted neighbors of v
+            int contractedNeighbors = 0;
+            int degree = 0;
+            CHEdgeIterator iter = calcPrioAllExplorer.setBaseNode(v);
+            while (iter.next()) {
+                degree++;
+                if (iter.isShortcut())
+                    contractedNeighbors++;
+            }
+
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
+            // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = calcScHandler.shortcuts - degree;
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            // this is the current optimum for unterfranken:
+            return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
+        }
+
+        /**
+         * Finds shortcuts, does not change the underlying graph.
+         *
+         * @return the number of incoming edges of the node which is used to update the mean degree
+         */
+        long findShortcuts(ShortcutHandler sch) {
+            if (traversalMode.isEdgeBased())
+                return findEdgeBasedShortcuts(sch);
+
+            long tmpDegreeCounter = 0;
+            EdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(sch.getNode());
+            // collect outgoing nodes (goal-nodes) only once
+            while (incomingEdges.next()) {
+                int u_fromNode = incomingEdges.getAdjNode();
+                // accept only uncontracted nodes
+                if (prepareGraph.getLevel(u_fromNode) != maxLevel)
+                    continue;
+
+                double v_u_dist = incomingEdges.getDistance();
+                double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
+                int skippedEdge1 = incomingEdges.getEdge();
+                int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+                // collect outgoing nodes (goal-nodes) only once
+                EdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(sch.getNode());
+                // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
+                prepareAlgo.clear();
+                tmpDegreeCounter++;
+                while (outgoingEdges.next()) {
+                    int w_toNode = outgoingEdges.getAdjNode();
+                    // add only uncontracted nodes
+                    if (prepareGraph.getLevel(w_toNode) != maxLevel || u_fromNode == w_toNode)
+                        continue;
+
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
+                    if (Double.isNaN(existingDirectWeight))
+                        throw new IllegalStateException("Weighting should never return NaN values"
+                                + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
+                                + ", dist:" + outgoingEdges.getDistance());
+
+                    if (Double.isInfinite(existingDirectWeight))
+                        continue;
+
+                    double existingDistSum = v_u_dist + outgoingEdges.getDistance();
+                    prepareAlgo.setWeightLimit(existingDirectWeight);
+                    prepareAlgo.setMaxVisitedNodes((int) meanDegree * 100);
+                    prepareAlgo.setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    int endNode = prepareAlgo.findEndNode(u_fromNode, w_toNode);
+                    dijkstraSW.stop();
+
+                    // compare end node as the limit could force dijkstra to finish earlier
+                    if (endNode == w_toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut
+                        continue;
+
+                    sch.foundShortcut(u_fromNode, w_toNode,
+                            existingDirectWeight, existingDistSum,
+                            outgoingEdges,
+                            skippedEdge1, incomingEdgeOrigCount);
+                }
+            }
+            return tmpDegreeCounter;
+        }
+
+        /**
+         * The edge-based version of findShortcuts. A shortcut u->w via the node v is needed for a
+         * pair of an incoming and an outgoing edge if no witness exists. Between both edges the path
+         * can also go through loops at v, then the shortcut skips a helper shortcut for the incoming
+         * edge plus the loops. One witness search is done per incoming edge, it starts with all edges
+         * leaving u. A witness is only valid if it is not worse for every original edge arriving at u
+         * and leaving w, which is considered via the maximum difference of the turn costs.
+         *
+         * @return the number of incoming edges of the node which is used to update the mean degree
+         */
+        long findEdgeBasedShortcuts(ShortcutHandler sch) {
+            int node = sch.getNode();
+            List<EdgeData> outgoing = new ArrayList<EdgeData>();
+            List<EdgeData> loops = new ArrayList<EdgeData>();
+            CHEdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(node);
+            while (outgoingEdges.next()) {
+                int w_toNode = outgoingEdges.getAdjNode();
+                if (w_toNode == node)
+                    loops.add(new EdgeData(outgoingEdges, node));
+                else if (prepareGraph.getLevel(w_toNode) == maxLevel)
+                    outgoing.add(new EdgeData(outgoingEdges, node));
+            }
+
+            long tmpDegreeCounter = 0;
+            CHEdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(node);
+            while (incomingEdges.next()) {
+                int u_fromNode = incomingEdges.getAdjNode();
+                // accept only uncontracted nodes, loops at v are handled together with the outgoing edges
+                if (u_fromNode == node || prepareGraph.getLevel(u_fromNode) != maxLevel)
+                    continue;
+
+                tmpDegreeCounter++;
+                int inOrigFirst = getOrigEdge(incomingEdges, u_fromNode, false);
+                int inOrigLast = getOrigEdge(incomingEdges, node, true);
+                double inWeight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
+                double inDist = incomingEdges.getDistance();
+                int inOrigCount = getOrigEdgeCount(incomingEdges.getEdge());
+
+                Shortcut[] loopPaths = loops.isEmpty() ? new Shortcut[0] : findLoopPaths(u_fromNode, node,
+                        incomingEdges.getEdge(), inOrigFirst, inOrigLast, inWeight, inDist, inOrigCount, loops);
+                List<Shortcut> candidates = new ArrayList<Shortcut>();
+                double maxWeight = 0;
+                for (EdgeData out : outgoing) {
+                    double weight = inWeight + calcTurnWeight(turnWeighting, inOrigLast, node, out.origFirst) + out.weight;
+                    Shortcut bestLoopPath = null;
+                    for (Shortcut loopPath : loopPaths) {
+                        if (loopPath == null)
+                            continue;
+
+                        double loopWeight = loopPath.weight + calcTurnWeight(turnWeighting, loopPath.origLast, node, out.origFirst) + out.weight;
+                        if (loopWeight < weight) {
+                            weight = loopWeight;
+                            bestLoopPath = loopPath;
+                        }
+                    }
+                    if (Double.isNaN(weight))
+                        throw new IllegalStateException("Weighting should never return NaN values"
+                                + ", in:" + getCoords(incomingEdges, prepareGraph) + ", node:" + node);
+
+                    if (Double.isInfinite(weight))
+                        continue;
+
+                    Shortcut sc = new Shortcut(u_fromNode, out.adjNode, weight, inDist + out.dist);
+                    sc.skippedEdge1 = incomingEdges.getEdge();
+                    sc.skippedEdge2 = out.edge;
+                    sc.origFirst = inOrigFirst;
+                    sc.origLast = out.origLast;
+                    sc.originalEdges = inOrigCount + out.origCount;
+                    // a loop is used in both directions, the backward search arrives at the end of the loop
+                    if (u_fromNode == out.adjNode)
+                        sc.flags = PrepareEncoder.getScDirMask();
+                    if (bestLoopPath != null) {
+                        sc.helper = bestLoopPath;
+                        sc.skippedEdge1 = EdgeIterator.NO_EDGE;
+                        sc.dist = bestLoopPath.dist + out.dist;
+                        sc.originalEdges = bestLoopPath.originalEdges + out.origCount;
+                    }
+                    candidates.add(sc);
+                    maxWeight = Math.max(maxWeight, weight);
+                }
+
+                if (candidates.isEmpty())
+                    continue;
+
+                dijkstraSW.start();
+                dijkstraCount++;
+                witnessSearch.init(node, maxWeight, (int) meanDegree * 100);
+                CHEdgeIterator iter = vehicleOutExplorer.setBaseNode(u_fromNode);
+                while (iter.next()) {
+                    double sourceDiff = calcSourceDiff(u_fromNode, inOrigFirst, getOrigEdge(iter, u_fromNode, false));
+                    if (Double.isInfinite(sourceDiff))
+                        continue;
+
+                    witnessSearch.addInitialEdge(iter, sourceDiff + prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE));
+                }
+                witnessSearch.search();
+                dijkstraSW.stop();
+
+                NEXT_CANDIDATE:
+                for (Shortcut sc : candidates) {
+                    for (WitnessEntry entry : witnessSearch.getEntries(sc.to)) {
+                        if (entry.weight + calcTargetDiff(sc.to, sc.origLast, entry.origEdge) <= sc.weight)
+                            // FOUND witness path, so do not add shortcut
+                            continue NEXT_CANDIDATE;
+                    }
+
+                    sch.foundEdgeBasedShortcut(sc);
+                }
+            }
+            return tmpDegreeCounter;
+        }
+
+        /**
+         * Finds the best paths from the incoming edge through one or more loops at the contracted
+         * node, via a Dijkstra over the loops.
+         *
+         * @return for every loop the helper shortcut of the best path which ends with this loop or
+         * null if there is no such path
+         */
+        Shortcut[] findLoopPaths(int u_fromNode, int node, int inEdge, int inOrigFirst, int inOrigLast,
+                                 double inWeight, double inDist, int inOrigCount, List<EdgeData> loops) {
+            Shortcut[] loopPaths = new Shortcut[loops.size()];
+            boolean[] settled = new boolean[loops.size()];
+            // null stands for the incoming edge
+            Shortcut curr = null;
+            while (true) {
+                for (int i = 0; i < loops.size(); i++) {
+                    if (settled[i])
+                        continue;
+
+                    EdgeData loop = loops.get(i);
+                    double weight = (curr == null ? inWeight : curr.weight) + loop.weight
+                            + calcTurnWeight(turnWeighting, curr == null ? inOrigLast : curr.origLast, node, loop.origFirst);
+                    if (Double.isInfinite(weight) || loopPaths[i] != null && loopPaths[i].weight <= weight)
+                        continue;
+
+                    Shortcut helper = new Shortcut(u_fromNode, node, weight, (curr == null ? inDist : curr.dist) + loop.dist);
+                    helper.helper = curr;
+                    helper.skippedEdge1 = curr == null ? inEdge : EdgeIterator.NO_EDGE;
+                    helper.skippedEdge2 = loop.edge;
+                    helper.origFirst = inOrigFirst;
+                    helper.origLast = loop.origLast;
+                    helper.originalEdges = (curr == null ? inOrigCount : curr.originalEdges) + loop.origCount;
+                    loopPaths[i] = helper;
+                }
+
+                int best = -1;
+                for (int i = 0; i < loops.size(); i++) {
+                    if (!settled[i] && loopPaths[i] != null && (best < 0 || loopPaths[i].weight < loopPaths[best].weight))
+                        best = i;
+                }
+                if (best < 0)
+                    return loopPaths;
+
+                settled[best] = true;
+                curr = loopPaths[best];
+            }
+        }
+
+        /**
+         * Returns the maximum additional turn weight at the node u if a path starts with the original
+         * edge witnessFirst instead of origFirst, over all ways to arrive at u including the start.
+         */
+        double calcSourceDiff(int u, int origFirst, int witnessFirst) {
+            if (origFirst == witnessFirst)
+                return 0;
+
+            double diff = 0;
+            EdgeIterator iter = origInExplorer.setBaseNode(u);
+            while (iter.next()) {
+                double weight = calcTurnWeight(turnWeighting, iter.getEdge(), u, origFirst);
+                if (Double.isInfinite(weight))
+                    continue;
+
+                diff = Math.max(diff, calcTurnWeight(turnWeighting, iter.getEdge(), u, witnessFirst) - weight);
+            }
+            return diff;
+        }
+
+        /**
+         * Returns the maximum additional turn weight at the node w if a path ends with the original
+         * edge witnessLast instead of origLast, over all ways to leave w including the end.
+         */
+        double calcTargetDiff(int w, int origLast, int witnessLast) {
+            if (origLast == witnessLast)
+                return 0;
+
+            double diff = 0;
+            EdgeIterator iter = origOutExplorer.setBaseNode(w);
+            while (iter.next()) {
+                double weight = calcTurnWeight(turnWeighting, origLast, w, iter.getEdge());
+                if (Double.isInfinite(weight))
+                    continue;
+
+                diff = Math.max(diff, calcTurnWeight(turnWeighting, witnessLast, w, iter.getEdge()) - weight);
+            }
+            return diff;
+        }
+    }
+
+    /**
+     * The properties of an edge leaving the contracted node, which are needed for every incoming
+     * edge of the edge-based contraction.
+     */
+    private class EdgeData {
+        final int edge;
+        final int adjNode;
+        final int origFirst;
+        final int origLast;
+        final double weight;
+        final double dist;
+        final int origCount;
+
+        EdgeData(CHEdgeIteratorState edgeState, int node) {
+            edge = edgeState.getEdge();
+            adjNode = edgeState.getAdjNode();
+            origFirst = getOrigEdge(edgeState, node, false);
+            origLast = getOrigEdge(edgeState, adjNode, true);
+            weight = prepareWeighting.calcWeight(edgeState, false, EdgeIterator.NO_EDGE);
+            dist = edgeState.getDistance();
+            origCount = getOrigEdgeCount(edge);
+        }
     }
 }
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the time of edges and unpacks shortcuts recursively like in Path4CH. The results
+ * are cached per shortcut and direction.
+ */
+class ShortcutMillisCalculator {
+    private final CHGraph graph;
+    private final Weighting weighting;
+    private final int baseEdges;
+    private final int[] shortcutMillis;
+
+    ShortcutMillisCalculator(CHGraph graph, Weighting weighting) {
+        this.graph = graph;
+        this.weighting = weighting;
+        baseEdges = graph.getBaseGraph().getAllEdges().getMaxId();
+        shortcutMillis = new int[2 * Math.max(0, graph.getAllEdges().getMaxId() - baseEdges)];
+        Arrays.fill(shortcutMillis, -1);
+    }
+
+    int calcMillis(CHEdgeIteratorState edgeState, boolean reverse) {
+        if (!edgeState.isShortcut())
+            return (int) weighting.calcMillis(edgeState, reverse, EdgeIterator.NO_EDGE);
+
+        int from = edgeState.getBaseNode(), to = edgeState.getAdjNode();
+        if (reverse) {
+            int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        int index = 2 * (edgeState.getEdge() - baseEdges) + (from < to ? 0 : 1);
+        if (shortcutMillis[index] >= 0)
+            return shortcutMillis[index];
+
+        int skippedEdge1 = edgeState.getSkippedEdge1();
+        int skippedEdge2 = edgeState.getSkippedEdge2();
+        // the skipped edge adjacent to 'from' could be either of the two
+        CHEdgeIteratorState iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(skippedEdge1, from);
+        boolean empty = iter == null;
+        if (empty)
+            iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(skippedEdge2, from);
+
+        int millis = calcMillis(iter, true);
+        iter = (CHEdgeIteratorState) graph.getEdgeIteratorState(empty ? skippedEdge1 : skippedEdge2, to);
+        millis += calcMillis(iter, false);
+        shortcutMillis[index] = millis;
+        return millis;
+    }
+}
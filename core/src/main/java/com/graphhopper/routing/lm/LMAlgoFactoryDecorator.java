@@ -66,6 +66,7 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
     private ExecutorService threadPool;
+    private int updateThreads = 2;
     private boolean logDetails = false;
 
     public LMAlgoFactoryDecorator() {
@@ -75,6 +76,7 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     @Override
     public void init(CmdArgs args) {
         setPreparationThreads(args.getInt(Parameters.Landmark.PREPARE + "threads", getPreparationThreads()));
+        setUpdateThreads(args.getInt(Landmark.PREPARE + "update_threads", getUpdateThreads()));
 
         landmarkCount = args.getInt(Parameters.Landmark.COUNT, landmarkCount);
         activeLandmarkCount = args.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, landmarkCount));
@@ -136,6 +138,22 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         this.threadPool = java.util.concurrent.Executors.newFixedThreadPool(preparationThreads);
     }
 
+    public int getUpdateThreads() {
+        return updateThreads;
+    }
+
+    /**
+     * This method changes the number of threads used to recalculate the landmark weights after the graph was changed
+     * via GraphHopper.changeGraph. Default is 2.
+     */
+    public LMAlgoFactoryDecorator setUpdateThreads(int updateThreads) {
+        if (updateThreads < 1)
+            throw new IllegalArgumentException("update threads must be at least 1 but was " + updateThreads);
+
+        this.updateThreads = updateThreads;
+        return this;
+    }
+
     /**
      * Enables the use of contraction hierarchies to reduce query times. Enabled by default.
      *
@@ -19,11 +19,16 @@ package com.graphhopper.routing.lm;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntLongMap;
 import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntLongCursor;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
 import com.carrotsearch.hppc.procedures.IntObjectProcedure;
+import com.graphhopper.coll.GHIntHashSet;
 import com.graphhopper.coll.MapEntry;
 import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.VirtualEdgeIteratorState;
 import com.graphhopper.routing.subnetwork.SubnetworkStorage;
 import com.graphhopper.routing.subnetwork.TarjansSCCAlgorithm;
 import com.graphhopper.routing.util.*;
@@ -41,6 +46,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -438,6 +447,160 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
         return true;
     }
 
+    /**
+     * This method recalculates the landmark weights that could be affected by the specified edge changes, e.g. done
+     * via GraphHopper.changeGraph. The weights of a landmark are only recalculated if a changed edge was part of its
+     * shortest path tree before the change or if it makes a shorter path possible. The landmarks and the subnetworks
+     * are not changed, i.e. edge changes that split or connect subnetworks are not considered.
+     * <p>
+     * The recalculation does not modify this storage, so routing can continue with the old weights in the meantime.
+     * Call WeightUpdate.apply to copy the new weights into this storage, while no routing happens.
+     *
+     * @param changedEdges maps the IDs of the changed edges to their flags before the change
+     * @param threads      the number of threads used to recalculate the weights of the affected landmarks
+     */
+    public WeightUpdate prepareUpdate(IntLongMap changedEdges, int threads) {
+        if (!isInitialized())
+            throw new IllegalStateException("Initialize the landmark storage before updating it");
+
+        // an affected landmark is identified via (subnetwork * landmarks + landmark index) * 2 + direction
+        GHIntHashSet affected = new GHIntHashSet();
+        for (IntLongCursor cursor : changedEdges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(cursor.key, Integer.MIN_VALUE);
+            int subnetwork = subnetworkStorage.getSubnetwork(edge.getBaseNode());
+            if (subnetwork <= UNCLEAR_SUBNETWORK || subnetwork != subnetworkStorage.getSubnetwork(edge.getAdjNode()))
+                continue;
+
+            EdgeIteratorState oldEdge = new VirtualEdgeIteratorState(
+                    GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), false),
+                    edge.getEdge(), edge.getBaseNode(), edge.getAdjNode(), edge.getDistance(), cursor.value,
+                    edge.getName(), edge.fetchWayGeometry(3));
+            for (int i = 0; i < 2; i++) {
+                boolean reverse = i == 1;
+                double oldWeight = calcWeightForUpdate(oldEdge, reverse);
+                double newWeight = calcWeightForUpdate(edge, reverse);
+                if (oldWeight == newWeight)
+                    continue;
+
+                // the edge is traversed from node a to node b
+                int a = reverse ? edge.getAdjNode() : edge.getBaseNode();
+                int b = reverse ? edge.getBaseNode() : edge.getAdjNode();
+                for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                    // the stored weights are rounded down, so a tolerance of 1 is necessary to detect the tree edges
+                    int fromA = getFromWeight(lmIdx, a), fromB = getFromWeight(lmIdx, b);
+                    if (fromA < SHORT_MAX && (newWeight < oldWeight
+                            ? fromA + newWeight < fromB
+                            : fromA + oldWeight <= fromB + 1))
+                        affected.add((subnetwork * landmarks + lmIdx) * 2);
+
+                    int toA = getToWeight(lmIdx, a), toB = getToWeight(lmIdx, b);
+                    if (toB < SHORT_MAX && (newWeight < oldWeight
+                            ? newWeight + toB < toA
+                            : oldWeight + toB <= toA + 1))
+                        affected.add((subnetwork * landmarks + lmIdx) * 2 + 1);
+                }
+            }
+        }
+
+        final IntHashSet blockedEdges = ruleLookup != null && ruleLookup.size() > 0
+                ? findBorderEdgeIds(ruleLookup) : new IntHashSet();
+        List<Callable<short[]>> tasks = new ArrayList<>(affected.size());
+        final IntArrayList keys = new IntArrayList(affected.size());
+        for (IntCursor cursor : affected) {
+            final int key = cursor.value;
+            keys.add(key);
+            tasks.add(new Callable<short[]>() {
+                @Override
+                public short[] call() {
+                    int lmIdx = (key >> 1) % landmarks;
+                    int lmNodeId = landmarkIDs.get((key >> 1) / landmarks)[lmIdx];
+                    return calcWeights(lmNodeId, (key & 1) == 0, blockedEdges);
+                }
+            });
+        }
+
+        List<short[]> weights = new ArrayList<>(tasks.size());
+        if (!tasks.isEmpty()) {
+            ExecutorService threadPool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+            try {
+                for (Future<short[]> future : threadPool.invokeAll(tasks)) {
+                    weights.add(future.get());
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException("Cannot update landmark weights for " + weighting, ex);
+            } finally {
+                threadPool.shutdownNow();
+            }
+        }
+        return new WeightUpdate(keys, weights);
+    }
+
+    private double calcWeightForUpdate(EdgeIteratorState edge, boolean reverse) {
+        double weight = weighting.calcWeight(edge, reverse, EdgeIterator.NO_EDGE);
+        if (weight >= Double.MAX_VALUE)
+            return Double.POSITIVE_INFINITY;
+        return weight / factor;
+    }
+
+    /**
+     * @return the weights from (or to) the specified landmark for all nodes, not reachable nodes get SHORT_INFINITY
+     */
+    private short[] calcWeights(int lmNodeId, boolean from, IntHashSet blockedEdges) {
+        LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode);
+        if (from) {
+            explorer.initFrom(lmNodeId, 0);
+            explorer.setFilter(blockedEdges, false, true);
+        } else {
+            explorer.initTo(lmNodeId, 0);
+            explorer.setFilter(blockedEdges, true, false);
+        }
+        explorer.runAlgo(from);
+
+        short[] weights = new short[graph.getNodes()];
+        Arrays.fill(weights, (short) SHORT_INFINITY);
+        explorer.fillWeights(weights);
+        return weights;
+    }
+
+    /**
+     * The recalculated weights of the landmarks affected by edge changes.
+     *
+     * @see #prepareUpdate(IntLongMap, int)
+     */
+    public class WeightUpdate {
+        private final IntArrayList keys;
+        private final List<short[]> weights;
+
+        WeightUpdate(IntArrayList keys, List<short[]> weights) {
+            this.keys = keys;
+            this.weights = weights;
+        }
+
+        /**
+         * @return the number of landmarks where the 'from' or 'to' weights were recalculated
+         */
+        public int getUpdatedLandmarks() {
+            return keys.size();
+        }
+
+        /**
+         * Copies the recalculated weights into the landmark storage. The weights of all nodes in the subnetwork of
+         * a landmark are overwritten, so nodes that are no longer reachable are properly marked.
+         */
+        public void apply() {
+            for (int i = 0; i < keys.size(); i++) {
+                int key = keys.get(i);
+                int subnetwork = (key >> 1) / landmarks;
+                long offset = ((key >> 1) % landmarks) * 4 + ((key & 1) == 0 ? FROM_OFFSET : TO_OFFSET);
+                short[] lmWeights = weights.get(i);
+                for (int node = 0; node < lmWeights.length; node++) {
+                    if (lmWeights[node] != (short) SHORT_INFINITY || subnetworkStorage.getSubnetwork(node) == subnetwork)
+                        landmarkWeightDA.setShort(node * LM_ROW_LENGTH + offset, lmWeights[node]);
+                }
+            }
+        }
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -516,17 +679,17 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
      * @return false if the value capacity was reached and instead of the real value the SHORT_MAX was stored.
      */
     final boolean setWeight(long pointer, double value) {
+        short weight = toShortWeight(value);
+        landmarkWeightDA.setShort(pointer, weight);
+        return weight != (short) SHORT_MAX;
+    }
+
+    private short toShortWeight(double value) {
         double tmpVal = value / factor;
         if (tmpVal > Integer.MAX_VALUE)
-            throw new UnsupportedOperationException("Cannot store infinity explicitely, pointer=" + pointer + ", value: " + value);
+            throw new UnsupportedOperationException("Cannot store infinity explicitely, value: " + value);
 
-        if (tmpVal >= SHORT_MAX) {
-            landmarkWeightDA.setShort(pointer, (short) SHORT_MAX);
-            return false;
-        } else {
-            landmarkWeightDA.setShort(pointer, (short) tmpVal);
-            return true;
-        }
+        return (short) Math.min(tmpVal, SHORT_MAX);
     }
 
     boolean isInfinity(long pointer) {
@@ -797,6 +960,16 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
             return failed.get();
         }
 
+        public void fillWeights(final short[] weights) {
+            IntObjectMap<SPTEntry> map = from ? bestWeightMapFrom : bestWeightMapTo;
+            map.forEach(new IntObjectProcedure<SPTEntry>() {
+                @Override
+                public void apply(int nodeId, SPTEntry b) {
+                    weights[nodeId] = lms.toShortWeight(b.weight);
+                }
+            });
+        }
+
         public void initLandmarkWeights(final int lmIdx, int lmNodeId, final long rowSize, final int offset) {
             IntObjectMap<SPTEntry> map = from ? bestWeightMapFrom : bestWeightMapTo;
             final AtomicInteger maxedout = new AtomicInteger(0);
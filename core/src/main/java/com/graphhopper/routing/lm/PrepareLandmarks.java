@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.lm;
 
+import com.carrotsearch.hppc.IntLongMap;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.AbstractAlgoPreparation;
 import com.graphhopper.routing.util.TraversalMode;
@@ -124,6 +125,13 @@ public class PrepareLandmarks extends AbstractAlgoPreparation {
         return lms.loadExisting();
     }
 
+    /**
+     * @see LandmarkStorage#prepareUpdate(IntLongMap, int)
+     */
+    public LandmarkStorage.WeightUpdate prepareUpdate(IntLongMap changedEdges, int threads) {
+        return lms.prepareUpdate(changedEdges, threads);
+    }
+
     @Override
     public void doWork() {
         super.doWork();
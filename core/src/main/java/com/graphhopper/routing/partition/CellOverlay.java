@@ -0,0 +1,390 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.partition;
+
+import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The overlay graph of a nested partition for one weighting, see 'Customizable Route Planning'
+ * from Delling, Goldberg, Pajor and Werneck, 2011. The boundary nodes of a cell are the nodes with
+ * an edge to another cell of the same level. Every cell has a clique with the weights between all
+ * its boundary nodes, which are calculated bottom-up: on level 0 with a Dijkstra on the edges of
+ * the cell and on the higher levels with a Dijkstra on the cliques of the subcells and the edges
+ * between them.
+ * <p>
+ * The boundary nodes only depend on the partition, so after the weights of the edges changed only
+ * the cliques have to be calculated again via {@link #customize(int)}. The cells of one level are
+ * independent and customized in parallel. The cliques are kept in memory.
+ * <p>
+ * The multi-level Dijkstra of {@link #calcWeight(int, int)} uses the original edges only in the
+ * cells of level 0 which contain the start or the end and the largest cliques which contain
+ * neither of them everywhere else.
+ *
+ * @see InertialFlowPartitioner
+ */
+public class CellOverlay {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CellOverlay.class);
+    private final Graph graph;
+    private final PartitionStorage partition;
+    private final Weighting weighting;
+    private final int levels;
+    // the boundary nodes per level grouped by cell
+    private final int[][] boundaryFirst;
+    private final int[][] boundaryNodes;
+    // the index of a node in the boundary nodes of its cell per level or -1
+    private final int[][] boundaryIndex;
+    // the cliques per level, the weight from boundary node i to j of a cell is at cliqueFirst[cell] + i * size + j
+    private final int[][] cliqueFirst;
+    private final float[][] cliqueWeights;
+    private boolean customized;
+
+    public CellOverlay(Graph graph, PartitionStorage partition, Weighting weighting) {
+        if (partition.getNodes() != graph.getNodes())
+            throw new IllegalArgumentException("The partition has " + partition.getNodes() + " nodes but the graph " + graph.getNodes());
+
+        this.graph = graph;
+        this.partition = partition;
+        this.weighting = weighting;
+        levels = partition.getLevels();
+        int nodes = graph.getNodes();
+        boundaryFirst = new int[levels][];
+        boundaryNodes = new int[levels][];
+        boundaryIndex = new int[levels][];
+        cliqueFirst = new int[levels][];
+        cliqueWeights = new float[levels][];
+        for (int level = 0; level < levels; level++) {
+            boolean[] boundary = new boolean[nodes];
+            AllEdgesIterator iter = graph.getAllEdges();
+            while (iter.next()) {
+                if (getCell(iter.getBaseNode(), level) != getCell(iter.getAdjNode(), level)) {
+                    boundary[iter.getBaseNode()] = true;
+                    boundary[iter.getAdjNode()] = true;
+                }
+            }
+
+            int cells = partition.getCells(level);
+            int[] first = boundaryFirst[level] = new int[cells + 1];
+            for (int node = 0; node < nodes; node++) {
+                if (boundary[node])
+                    first[getCell(node, level) + 1]++;
+            }
+            for (int cell = 0; cell < cells; cell++) {
+                first[cell + 1] += first[cell];
+            }
+            boundaryNodes[level] = new int[first[cells]];
+            int[] index = boundaryIndex[level] = new int[nodes];
+            Arrays.fill(index, -1);
+            int[] next = Arrays.copyOf(first, cells);
+            for (int node = 0; node < nodes; node++) {
+                if (boundary[node]) {
+                    int cell = getCell(node, level);
+                    index[node] = next[cell] - first[cell];
+                    boundaryNodes[level][next[cell]++] = node;
+                }
+            }
+
+            cliqueFirst[level] = new int[cells + 1];
+            long entries = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                long size = first[cell + 1] - first[cell];
+                entries += size * size;
+                if (entries > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Too many clique entries on level " + level + ", use smaller cells");
+                cliqueFirst[level][cell + 1] = (int) entries;
+            }
+            cliqueWeights[level] = new float[(int) entries];
+        }
+    }
+
+    private int getCell(int node, int level) {
+        return partition.getCell(node, level);
+    }
+
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    /**
+     * @return the number of boundary nodes of all cells of the specified level
+     */
+    public int getBoundaryNodes(int level) {
+        return boundaryNodes[level].length;
+    }
+
+    /**
+     * @return the number of weights in the cliques of all levels
+     */
+    public long getCliqueEntries() {
+        long entries = 0;
+        for (float[] weights : cliqueWeights) {
+            entries += weights.length;
+        }
+        return entries;
+    }
+
+    /**
+     * @return the weight of the best path from one boundary node to another inside their cell of
+     * the specified level
+     */
+    public double getCliqueWeight(int level, int fromNode, int toNode) {
+        int cell = getCell(fromNode, level);
+        if (cell != getCell(toNode, level) || boundaryIndex[level][fromNode] < 0 || boundaryIndex[level][toNode] < 0)
+            throw new IllegalArgumentException("Nodes " + fromNode + " and " + toNode + " are no boundary nodes of one cell on level " + level);
+
+        int size = boundaryFirst[level][cell + 1] - boundaryFirst[level][cell];
+        return cliqueWeights[level][cliqueFirst[level][cell] + boundaryIndex[level][fromNode] * size + boundaryIndex[level][toNode]];
+    }
+
+    /**
+     * Calculates the cliques of all cells for the current edges. The cells of one level are
+     * customized in parallel with the specified number of threads.
+     */
+    public void customize(int threads) {
+        StopWatch sw = new StopWatch().start();
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int level = 0; level < levels; level++) {
+                final int tmpLevel = level, cells = partition.getCells(level);
+                if (pool == null || cells < 2 * threads) {
+                    customizeCells(new Searcher(), tmpLevel, 0, 1);
+                    continue;
+                }
+
+                List<Callable<Object>> tasks = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    final int offset = t, step = threads;
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            customizeCells(new Searcher(), tmpLevel, offset, step);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool, tasks);
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        customized = true;
+        LOGGER.info("customized cell overlay for " + weighting + " with " + Helper.nf(getCliqueEntries())
+                + " clique entries in " + sw.stop().getSeconds() + "s, threads:" + threads);
+    }
+
+    /**
+     * Calculates the cliques of every step-th cell of the level beginning with the offset.
+     */
+    private void customizeCells(Searcher searcher, int level, int offset, int step) {
+        int[] first = boundaryFirst[level];
+        float[] weights = cliqueWeights[level];
+        for (int cell = offset; cell < first.length - 1; cell += step) {
+            int size = first[cell + 1] - first[cell];
+            Arrays.fill(weights, cliqueFirst[level][cell], cliqueFirst[level][cell + 1], Float.POSITIVE_INFINITY);
+            for (int i = 0; i < size; i++) {
+                int row = cliqueFirst[level][cell] + i * size;
+                searcher.init(boundaryNodes[level][first[cell] + i]);
+                int found = 0;
+                while (found < size && !searcher.isEmpty()) {
+                    int node = searcher.poll();
+                    if (node < 0)
+                        continue;
+
+                    if (boundaryIndex[level][node] >= 0) {
+                        weights[row + boundaryIndex[level][node]] = (float) searcher.getWeight(node);
+                        found++;
+                    }
+                    if (level == 0) {
+                        searcher.relaxEdges(node, 0, cell, -1);
+                    } else {
+                        // the node is a boundary node of its subcell, the edges to other subcells are relaxed too
+                        searcher.relaxClique(node, level - 1);
+                        searcher.relaxEdges(node, level, cell, level - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the weight of the best path with a multi-level Dijkstra. On every node the search
+     * uses the edges of the highest level where the cell of the node contains neither the start nor
+     * the end: the clique of this cell and the edges leaving it.
+     *
+     * @return the weight or infinity if the end is not reachable
+     */
+    public double calcWeight(int from, int to) {
+        if (!customized)
+            throw new IllegalStateException("Call customize before querying the overlay");
+
+        Searcher searcher = new Searcher();
+        searcher.init(from);
+        while (!searcher.isEmpty()) {
+            int node = searcher.poll();
+            if (node < 0)
+                continue;
+            if (node == to)
+                return searcher.getWeight(node);
+
+            int level = calcQueryLevel(node, from, to);
+            if (level < 0) {
+                searcher.relaxEdges(node, -1, -1, -1);
+            } else {
+                searcher.relaxClique(node, level);
+                searcher.relaxEdges(node, -1, -1, level);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the highest level on which the cell of the node contains neither from nor to or -1 if
+     * the node shares the cell of level 0 with one of them
+     */
+    private int calcQueryLevel(int node, int from, int to) {
+        for (int level = 0; level < levels; level++) {
+            int cell = getCell(node, level);
+            if (cell == getCell(from, level) || cell == getCell(to, level))
+                return level - 1;
+        }
+        return levels - 1;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * A Dijkstra on the nodes of the graph, one instance per thread.
+     */
+    private class Searcher {
+        private final EdgeExplorer outExplorer;
+        private final double[] weights;
+        private final int[] visitStamps;
+        private final int[] settledStamps;
+        private final IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap(1000);
+        private int stamp;
+
+        Searcher() {
+            outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+            weights = new double[graph.getNodes()];
+            visitStamps = new int[graph.getNodes()];
+            settledStamps = new int[graph.getNodes()];
+        }
+
+        void init(int node) {
+            stamp++;
+            heap.clear();
+            update(node, 0);
+        }
+
+        boolean isEmpty() {
+            return heap.isEmpty();
+        }
+
+        /**
+         * @return the next node to settle or -1 if the polled node is already settled
+         */
+        int poll() {
+            int node = heap.poll_element();
+            if (settledStamps[node] == stamp)
+                return -1;
+
+            settledStamps[node] = stamp;
+            return node;
+        }
+
+        double getWeight(int node) {
+            return weights[node];
+        }
+
+        private void update(int node, double weight) {
+            if (visitStamps[node] == stamp && weights[node] <= weight)
+                return;
+
+            visitStamps[node] = stamp;
+            weights[node] = weight;
+            // the old entry stays in the heap and is skipped when polled
+            heap.insert_(weight, node);
+        }
+
+        /**
+         * Relaxes the edges of the node to nodes which are in the specified cell of the cell level
+         * but not in the cell of the node on the crossing level. A level of -1 disables the check.
+         */
+        void relaxEdges(int node, int cellLevel, int cell, int crossingLevel) {
+            int crossingCell = crossingLevel < 0 ? -1 : getCell(node, crossingLevel);
+            EdgeIterator iter = outExplorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                if (cellLevel >= 0 && getCell(adj, cellLevel) != cell
+                        || crossingLevel >= 0 && getCell(adj, crossingLevel) == crossingCell)
+                    continue;
+
+                double weight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+                if (!Double.isInfinite(weight))
+                    update(adj, weights[node] + weight);
+            }
+        }
+
+        /**
+         * Relaxes the clique of the cell of the node on the specified level.
+         */
+        void relaxClique(int node, int level) {
+            int index = boundaryIndex[level][node];
+            if (index < 0)
+                throw new IllegalStateException("Node " + node + " is no boundary node on level " + level);
+
+            int cell = getCell(node, level);
+            int first = boundaryFirst[level][cell], size = boundaryFirst[level][cell + 1] - first;
+            int row = cliqueFirst[level][cell] + index * size;
+            for (int j = 0; j < size; j++) {
+                float weight = cliqueWeights[level][row + j];
+                if (j != index && !Float.isInfinite(weight))
+                    update(boundaryNodes[level][first + j], weights[node] + weight);
+            }
+        }
+    }
+}
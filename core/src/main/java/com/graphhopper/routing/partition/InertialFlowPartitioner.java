@@ -0,0 +1,324 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.partition;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Calculates a nested partition of the graph via recursive bisection with inertial flow, see
+ * 'On Balanced Separators in Road Networks' from Schild and Sommer, 2015. For a bisection the nodes
+ * are sorted along a line, e.g. by latitude, the first and the last nodes are the sources and the
+ * sinks and a minimum cut between them is calculated with a max flow. Every edge has the capacity
+ * one independent of its direction or access, so the partition only depends on the topology and
+ * can be used for every weighting. The best cut of four lines is used.
+ * <p>
+ * A part becomes a cell of a level as soon as it has at most the cell size of this level, so the
+ * cells of one level are nested in the cells of the next level.
+ *
+ * @see PartitionStorage
+ */
+public class InertialFlowPartitioner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InertialFlowPartitioner.class);
+    private final Graph graph;
+    private final int nodes;
+    // undirected adjacency without loops, twin is the arc in the opposite direction
+    private final int[] adjFirst;
+    private final int[] adjNodes;
+    private final int[] twin;
+    // the flow of an arc is 1, 0 or -1 if the flow goes over the twin
+    private final int[] flow;
+    // the nodes of the part which is currently bisected have the part stamp
+    private final int[] partStamps;
+    private final int[] sinkStamps;
+    private final int[] visitStamps;
+    private final int[] parentNodes;
+    private final int[] queue;
+    private int partStamp;
+    private int visitStamp;
+    private int[] cellSizes = {256, 4096, 65536};
+    private double sourceSinkFraction = 0.25;
+    private int[] cellCounts;
+
+    public InertialFlowPartitioner(Graph graph) {
+        this.graph = graph;
+        nodes = graph.getNodes();
+        adjFirst = new int[nodes + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjFirst[iter.getBaseNode() + 1]++;
+                adjFirst[iter.getAdjNode() + 1]++;
+            }
+        }
+        for (int node = 0; node < nodes; node++) {
+            adjFirst[node + 1] += adjFirst[node];
+        }
+        adjNodes = new int[adjFirst[nodes]];
+        twin = new int[adjFirst[nodes]];
+        int[] next = Arrays.copyOf(adjFirst, nodes);
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                int baseArc = next[iter.getBaseNode()]++, adjArc = next[iter.getAdjNode()]++;
+                adjNodes[baseArc] = iter.getAdjNode();
+                adjNodes[adjArc] = iter.getBaseNode();
+                twin[baseArc] = adjArc;
+                twin[adjArc] = baseArc;
+            }
+        }
+        flow = new int[adjNodes.length];
+        partStamps = new int[nodes];
+        sinkStamps = new int[nodes];
+        visitStamps = new int[nodes];
+        parentNodes = new int[nodes];
+        queue = new int[nodes];
+    }
+
+    /**
+     * Specifies the maximum number of nodes of a cell for every level, beginning with level 0,
+     * which has the smallest cells. Default is 256, 4096 and 65536.
+     */
+    public InertialFlowPartitioner setCellSizes(int... cellSizes) {
+        if (cellSizes.length < 1 || cellSizes.length > PartitionStorage.MAX_LEVELS)
+            throw new IllegalArgumentException("The number of levels has to be in [1, " + PartitionStorage.MAX_LEVELS + "] but was " + cellSizes.length);
+        for (int level = 0; level < cellSizes.length; level++) {
+            if (cellSizes[level] < 2 || level > 0 && cellSizes[level] <= cellSizes[level - 1])
+                throw new IllegalArgumentException("The cell sizes have to be increasing and at least 2 but were " + Arrays.toString(cellSizes));
+        }
+        this.cellSizes = cellSizes;
+        return this;
+    }
+
+    /**
+     * Specifies the fraction of the nodes of a part which are the sources and the same number of
+     * nodes which are the sinks of a bisection. The smaller side of a bisection has at least this
+     * fraction of the nodes. Default is 0.25.
+     */
+    public InertialFlowPartitioner setSourceSinkFraction(double sourceSinkFraction) {
+        if (sourceSinkFraction <= 0 || sourceSinkFraction > 0.5)
+            throw new IllegalArgumentException("The fraction of sources and sinks has to be in (0, 0.5] but was " + sourceSinkFraction);
+        this.sourceSinkFraction = sourceSinkFraction;
+        return this;
+    }
+
+    /**
+     * Calculates the partition and stores the cells into the specified storage.
+     */
+    public void partition(PartitionStorage storage) {
+        StopWatch sw = new StopWatch().start();
+        storage.init(nodes, cellSizes.length);
+        cellCounts = new int[cellSizes.length];
+        int[] all = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            all[node] = node;
+        }
+        dissect(storage, all, cellSizes.length - 1);
+        for (int level = 0; level < cellSizes.length; level++) {
+            storage.setCells(level, cellCounts[level]);
+        }
+        LOGGER.info("partitioned " + Helper.nf(nodes) + " nodes into " + Arrays.toString(cellCounts) + " cells in "
+                + sw.stop().getSeconds() + "s, " + Helper.getMemInfo());
+    }
+
+    /**
+     * @param level the highest level for which the nodes of the part have no cell yet
+     */
+    private void dissect(PartitionStorage storage, int[] part, int level) {
+        while (level >= 0 && part.length <= cellSizes[level]) {
+            int cell = cellCounts[level]++;
+            for (int node : part) {
+                storage.setCell(node, level, cell);
+            }
+            level--;
+        }
+        if (level < 0)
+            return;
+
+        boolean[] sourceSide = bisect(part);
+        int sourceCount = 0;
+        for (boolean source : sourceSide) {
+            if (source)
+                sourceCount++;
+        }
+        int[] first = new int[sourceCount];
+        int[] second = new int[part.length - sourceCount];
+        int firstIndex = 0, secondIndex = 0;
+        for (int i = 0; i < part.length; i++) {
+            if (sourceSide[i])
+                first[firstIndex++] = part[i];
+            else
+                second[secondIndex++] = part[i];
+        }
+        dissect(storage, first, level);
+        dissect(storage, second, level);
+    }
+
+    /**
+     * @return the side of every node of the part, true for the side of the sources
+     */
+    boolean[] bisect(int[] part) {
+        partStamp++;
+        for (int node : part) {
+            partStamps[node] = partStamp;
+        }
+
+        NodeAccess na = graph.getNodeAccess();
+        int terminals = Math.max(1, (int) (part.length * sourceSinkFraction));
+        long[] sortKeys = new long[part.length];
+        boolean[] bestSide = null;
+        int bestCut = Integer.MAX_VALUE, bestBalance = -1;
+        for (int line = 0; line < 4; line++) {
+            for (int i = 0; i < part.length; i++) {
+                int node = part[i];
+                double lat = na.getLat(node), lon = na.getLon(node);
+                double projection = line == 0 ? lat : line == 1 ? lon : line == 2 ? lat + lon : lat - lon;
+                // microdegrees are positive after the shift, so the keys sort like the projections
+                sortKeys[i] = Math.round((projection + 360) * 1e6) << 32 | node;
+            }
+            Arrays.sort(sortKeys);
+            // a new stamp per line, the part stamp is not used for the terminals
+            int terminalStamp = partStamp * 4 + line;
+            for (int i = 0; i < terminals; i++) {
+                sinkStamps[(int) sortKeys[part.length - 1 - i]] = terminalStamp;
+            }
+
+            int cut = calcMaxFlow(sortKeys, terminals, terminalStamp, bestCut);
+            if (cut <= bestCut) {
+                // the nodes reachable from the sources in the residual graph form the minimum cut
+                // closest to the sources, the nodes which do not reach the sinks the one closest
+                // to the sinks. Both have the same size, so the more balanced one is used.
+                for (int sinkSide = 0; sinkSide < 2; sinkSide++) {
+                    if (sinkSide == 1)
+                        markReachingSinks(sortKeys, terminals, part.length);
+                    boolean[] side = new boolean[part.length];
+                    int sourceCount = 0;
+                    for (int i = 0; i < part.length; i++) {
+                        side[i] = (visitStamps[part[i]] == visitStamp) == (sinkSide == 0);
+                        if (side[i])
+                            sourceCount++;
+                    }
+                    int balance = Math.min(sourceCount, part.length - sourceCount);
+                    if (cut < bestCut || balance > bestBalance) {
+                        bestSide = side;
+                        bestCut = cut;
+                        bestBalance = balance;
+                    }
+                }
+            }
+
+            for (int node : part) {
+                for (int arc = adjFirst[node]; arc < adjFirst[node + 1]; arc++) {
+                    flow[arc] = 0;
+                }
+            }
+        }
+        return bestSide;
+    }
+
+    /**
+     * Calculates the max flow from the sources to the sinks with one augmenting path per breadth
+     * first search. The search stops if the flow gets larger than the limit.
+     *
+     * @return the flow or a value larger than the limit
+     */
+    private int calcMaxFlow(long[] sortKeys, int terminals, int terminalStamp, int limit) {
+        int flowValue = 0;
+        while (flowValue <= limit) {
+            visitStamp++;
+            int head = 0, tail = 0;
+            for (int i = 0; i < terminals; i++) {
+                int source = (int) sortKeys[i];
+                visitStamps[source] = visitStamp;
+                parentNodes[source] = -1;
+                queue[tail++] = source;
+            }
+
+            int sink = -1;
+            while (head < tail && sink < 0) {
+                int node = queue[head++];
+                for (int arc = adjFirst[node]; arc < adjFirst[node + 1]; arc++) {
+                    int adj = adjNodes[arc];
+                    if (partStamps[adj] != partStamp || visitStamps[adj] == visitStamp || flow[arc] >= 1)
+                        continue;
+
+                    visitStamps[adj] = visitStamp;
+                    parentNodes[adj] = node;
+                    if (sinkStamps[adj] == terminalStamp) {
+                        sink = adj;
+                        break;
+                    }
+                    queue[tail++] = adj;
+                }
+            }
+            if (sink < 0)
+                return flowValue;
+
+            for (int node = sink; parentNodes[node] >= 0; node = parentNodes[node]) {
+                int arc = findArc(parentNodes[node], node);
+                flow[arc]++;
+                flow[twin[arc]]--;
+            }
+            flowValue++;
+        }
+        return flowValue;
+    }
+
+    /**
+     * Marks the nodes which reach a sink in the residual graph with a new visit stamp.
+     */
+    private void markReachingSinks(long[] sortKeys, int terminals, int partSize) {
+        visitStamp++;
+        int head = 0, tail = 0;
+        for (int i = 0; i < terminals; i++) {
+            int sink = (int) sortKeys[partSize - 1 - i];
+            visitStamps[sink] = visitStamp;
+            queue[tail++] = sink;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int arc = adjFirst[node]; arc < adjFirst[node + 1]; arc++) {
+                int adj = adjNodes[arc];
+                // the arc from the adjacent node to this node needs residual capacity
+                if (partStamps[adj] != partStamp || visitStamps[adj] == visitStamp || flow[twin[arc]] >= 1)
+                    continue;
+
+                visitStamps[adj] = visitStamp;
+                queue[tail++] = adj;
+            }
+        }
+    }
+
+    /**
+     * @return an arc from the base to the adjacent node with residual capacity
+     */
+    private int findArc(int base, int adj) {
+        for (int arc = adjFirst[base]; arc < adjFirst[base + 1]; arc++) {
+            if (adjNodes[arc] == adj && flow[arc] < 1)
+                return arc;
+        }
+        throw new IllegalStateException("No residual arc from " + base + " to " + adj);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.partition;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+
+/**
+ * This class stores the cell id of every node for several levels of a nested partition. Level 0
+ * has the smallest cells and every cell of a level is completely contained in one cell of the next
+ * level. The cell ids of a level start at 0.
+ *
+ * @see InertialFlowPartitioner
+ */
+public class PartitionStorage implements Storable<PartitionStorage> {
+    // the header has 20 ints: the nodes, the levels and the number of cells per level
+    static final int MAX_LEVELS = 16;
+    private final DataAccess da;
+    private int nodes;
+    private int levels;
+
+    public PartitionStorage(Directory dir) {
+        DAType type = dir.getDefaultType();
+        da = dir.find("partition", type.isMMap() ? DAType.MMAP : (type.isStoring() ? DAType.RAM_STORE : DAType.RAM));
+    }
+
+    /**
+     * Initializes the storage for the specified number of nodes and levels. All cell ids are 0.
+     */
+    public PartitionStorage init(int nodes, int levels) {
+        if (levels < 1 || levels > MAX_LEVELS)
+            throw new IllegalArgumentException("The number of levels has to be in [1, " + MAX_LEVELS + "] but was " + levels);
+
+        this.nodes = nodes;
+        this.levels = levels;
+        da.ensureCapacity((long) nodes * levels * 4);
+        for (long pointer = 0; pointer < (long) nodes * levels * 4; pointer += 4) {
+            da.setInt(pointer, 0);
+        }
+        da.setHeader(0, nodes);
+        da.setHeader(4, levels);
+        for (int level = 0; level < levels; level++) {
+            da.setHeader(8 + 4 * level, 0);
+        }
+        return this;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public int getCell(int node, int level) {
+        return da.getInt(((long) node * levels + level) * 4);
+    }
+
+    public void setCell(int node, int level, int cell) {
+        da.setInt(((long) node * levels + level) * 4, cell);
+    }
+
+    /**
+     * @return the number of cells of the specified level
+     */
+    public int getCells(int level) {
+        return da.getHeader(8 + 4 * level);
+    }
+
+    public void setCells(int level, int cells) {
+        da.setHeader(8 + 4 * level, cells);
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+
+        nodes = da.getHeader(0);
+        levels = da.getHeader(4);
+        return true;
+    }
+
+    @Override
+    public PartitionStorage create(long byteCount) {
+        da.create(2000);
+        da.ensureCapacity(byteCount);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        da.flush();
+    }
+
+    @Override
+    public void close() {
+        da.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
@@ -51,6 +51,7 @@ public class PrepareRoutingSubnetworks {
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
     private int subnetworks = -1;
+    private boolean removeNodes = true;
 
     public PrepareRoutingSubnetworks(GraphHopperStorage ghStorage, List<FlagEncoder> encoders) {
         this.ghStorage = ghStorage;
@@ -67,6 +68,15 @@ public class PrepareRoutingSubnetworks {
         return this;
     }
 
+    /**
+     * If false the edges of the subnetworks are only made inaccessible and the node IDs do not
+     * change. Default is true.
+     */
+    public PrepareRoutingSubnetworks setRemoveNodes(boolean removeNodes) {
+        this.removeNodes = removeNodes;
+        return this;
+    }
+
     public void doWork() {
         if (minNetworkSize <= 0 && minOneWayNetworkSize <= 0)
             return;
@@ -85,6 +95,9 @@ public class PrepareRoutingSubnetworks {
             logger.info(components.size() + " subnetworks found for " + encoder + ", " + Helper.getMemInfo());
         }
 
+        if (!removeNodes)
+            return;
+
         markNodesRemovedIfUnreachable();
 
         logger.info("optimize to remove subnetworks (" + subnetworks + "), "
@@ -34,6 +34,10 @@ import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of calculating a route with multiple via points.
@@ -47,6 +51,7 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
     private final LocationIndex locationIndex;
     // result from route
     protected List<Path> pathList;
+    private ForkJoinPool legPool;
 
     public ViaRoutingTemplate(GHRequest ghRequest, GHResponse ghRsp, LocationIndex locationIndex) {
         this.locationIndex = locationIndex;
@@ -81,68 +86,161 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         return queryResults;
     }
 
+    /**
+     * Calculates the legs between consecutive points concurrently in the specified pool. Legs
+     * with a heading or pass through constraint modify the shared QueryGraph, so they are still
+     * calculated one after the other, after all other legs are done. Does not work if the edge
+     * explorer cache of the QueryGraph is enabled, as a cached explorer cannot be shared.
+     *
+     * @param legPool the pool or null to calculate all legs in the calling thread
+     */
+    public ViaRoutingTemplate setLegPool(ForkJoinPool legPool) {
+        this.legPool = legPool;
+        return this;
+    }
+
     @Override
-    public List<Path> calcPaths(QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts) {
-        long visitedNodesSum = 0L;
+    public List<Path> calcPaths(final QueryGraph queryGraph, final RoutingAlgorithmFactory algoFactory, final AlgorithmOptions algoOpts) {
         boolean viaTurnPenalty = ghRequest.getHints().getBool(Routing.PASS_THROUGH, false);
         int pointCounts = ghRequest.getPoints().size();
-        pathList = new ArrayList<>(pointCounts - 1);
-        QueryResult fromQResult = queryResults.get(0);
-        StopWatch sw;
+        final Leg[] legs = new Leg[pointCounts - 1];
+        // a leg is constrained if it has to unfavor virtual edges of the query graph before routing
+        boolean[] constrained = new boolean[legs.length];
+        int unconstrainedLegs = 0;
         for (int placeIndex = 1; placeIndex < pointCounts; placeIndex++) {
-            if (placeIndex == 1) {
-                // enforce start direction
-                queryGraph.enforceHeading(fromQResult.getClosestNode(), ghRequest.getFavoredHeading(0), false);
-            } else if (viaTurnPenalty) {
-                // enforce straight start after via stop
-                Path prevRoute = pathList.get(placeIndex - 2);
-                if (prevRoute.getEdgeCount() > 0) {
-                    EdgeIteratorState incomingVirtualEdge = prevRoute.getFinalEdge();
-                    queryGraph.unfavorVirtualEdgePair(fromQResult.getClosestNode(), incomingVirtualEdge.getEdge());
+            constrained[placeIndex - 1] = placeIndex == 1 && ghRequest.hasFavoredHeading(0)
+                    || placeIndex > 1 && viaTurnPenalty || ghRequest.hasFavoredHeading(placeIndex);
+            if (!constrained[placeIndex - 1])
+                unconstrainedLegs++;
+        }
+
+        if (legPool != null && unconstrainedLegs > 1) {
+            // the unconstrained legs are calculated before any virtual edge is unfavored
+            List<Callable<Leg>> tasks = new ArrayList<>(unconstrainedLegs);
+            for (int legIndex = 0; legIndex < legs.length; legIndex++) {
+                if (constrained[legIndex])
+                    continue;
+
+                final int tmpLegIndex = legIndex;
+                tasks.add(new Callable<Leg>() {
+                    @Override
+                    public Leg call() {
+                        try {
+                            return calcLeg(queryGraph, algoFactory, algoOpts, tmpLegIndex);
+                        } catch (RuntimeException ex) {
+                            // thrown when this leg is reached to get the same error as without pool
+                            return new Leg(ex);
+                        }
+                    }
+                });
+            }
+
+            int taskIndex = 0;
+            for (Future<Leg> future : invokeAll(tasks)) {
+                while (constrained[taskIndex]) {
+                    taskIndex++;
                 }
+                legs[taskIndex++] = getLeg(future);
             }
+        }
 
-            QueryResult toQResult = queryResults.get(placeIndex);
+        pathList = new ArrayList<>(legs.length);
+        long visitedNodesSum = 0L;
+        for (int placeIndex = 1; placeIndex < pointCounts; placeIndex++) {
+            Leg leg = legs[placeIndex - 1];
+            if (leg == null) {
+                QueryResult fromQResult = queryResults.get(placeIndex - 1);
+                if (placeIndex == 1) {
+                    // enforce start direction
+                    queryGraph.enforceHeading(fromQResult.getClosestNode(), ghRequest.getFavoredHeading(0), false);
+                } else if (viaTurnPenalty) {
+                    // enforce straight start after via stop
+                    Path prevRoute = legs[placeIndex - 2].paths.get(0);
+                    if (prevRoute.getEdgeCount() > 0) {
+                        EdgeIteratorState incomingVirtualEdge = prevRoute.getFinalEdge();
+                        queryGraph.unfavorVirtualEdgePair(fromQResult.getClosestNode(), incomingVirtualEdge.getEdge());
+                    }
+                }
 
-            // enforce end direction
-            queryGraph.enforceHeading(toQResult.getClosestNode(), ghRequest.getFavoredHeading(placeIndex), true);
+                // enforce end direction
+                queryGraph.enforceHeading(queryResults.get(placeIndex).getClosestNode(), ghRequest.getFavoredHeading(placeIndex), true);
 
-            sw = new StopWatch().start();
-            RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
-            String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
+                try {
+                    leg = calcLeg(queryGraph, algoFactory, algoOpts, placeIndex - 1);
+                } finally {
+                    // reset all direction enforcements in queryGraph to avoid influencing next path
+                    queryGraph.clearUnfavoredStatus();
+                }
+                legs[placeIndex - 1] = leg;
+            } else if (leg.exception != null) {
+                throw leg.exception;
+            }
 
-            sw = new StopWatch().start();
-            List<Path> tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
-            debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
-            if (tmpPathList.isEmpty())
-                throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
+            pathList.addAll(leg.paths);
+            altResponse.addDebugInfo(leg.debug);
+            visitedNodesSum += leg.visitedNodes;
+        }
 
-            int idx = 0;
-            for (Path path : tmpPathList) {
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + idx + ". Please report as bug and include:" + ghRequest);
+        ghResponse.getHints().put("visited_nodes.sum", visitedNodesSum);
+        ghResponse.getHints().put("visited_nodes.average", (float) visitedNodesSum / (pointCounts - 1));
 
-                pathList.add(path);
-                debug += ", " + path.getDebugInfo();
-                idx++;
-            }
+        return pathList;
+    }
+
+    /**
+     * Calculates the paths from the point at legIndex to the next point. This method must not
+     * modify any state shared between the legs as it is called concurrently if a pool is set.
+     */
+    private Leg calcLeg(QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, AlgorithmOptions algoOpts, int legIndex) {
+        QueryResult fromQResult = queryResults.get(legIndex);
+        QueryResult toQResult = queryResults.get(legIndex + 1);
 
-            altResponse.addDebugInfo(debug);
+        StopWatch sw = new StopWatch().start();
+        RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
+        String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
 
-            // reset all direction enforcements in queryGraph to avoid influencing next path
-            queryGraph.clearUnfavoredStatus();
+        sw = new StopWatch().start();
+        List<Path> tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
+        debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
+        if (tmpPathList.isEmpty())
+            throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
 
-            if (algo.getVisitedNodes() >= algoOpts.getMaxVisitedNodes())
-                throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes());
+        int idx = 0;
+        for (Path path : tmpPathList) {
+            if (path.getTime() < 0)
+                throw new RuntimeException("Time was negative " + path.getTime() + " for index " + idx + ". Please report as bug and include:" + ghRequest);
 
-            visitedNodesSum += algo.getVisitedNodes();
-            fromQResult = toQResult;
+            debug += ", " + path.getDebugInfo();
+            idx++;
         }
 
-        ghResponse.getHints().put("visited_nodes.sum", visitedNodesSum);
-        ghResponse.getHints().put("visited_nodes.average", (float) visitedNodesSum / (pointCounts - 1));
+        if (algo.getVisitedNodes() >= algoOpts.getMaxVisitedNodes())
+            throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes());
 
-        return pathList;
+        return new Leg(tmpPathList, debug, algo.getVisitedNodes());
+    }
+
+    private List<Future<Leg>> invokeAll(List<Callable<Leg>> tasks) {
+        try {
+            return legPool.invokeAll(tasks);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static Leg getLeg(Future<Leg> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
     }
 
     @Override
@@ -160,4 +258,25 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
     public int getMaxRetries() {
         return 1;
     }
+
+    private static class Leg {
+        final List<Path> paths;
+        final String debug;
+        final int visitedNodes;
+        final RuntimeException exception;
+
+        Leg(List<Path> paths, String debug, int visitedNodes) {
+            this.paths = paths;
+            this.debug = debug;
+            this.visitedNodes = visitedNodes;
+            this.exception = null;
+        }
+
+        Leg(RuntimeException exception) {
+            this.paths = null;
+            this.debug = null;
+            this.visitedNodes = 0;
+            this.exception = exception;
+        }
+    }
 }
@@ -53,6 +53,19 @@ public class DefaultEdgeFilter implements EdgeFilter {
         return fwd;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DefaultEdgeFilter))
+            return false;
+        DefaultEdgeFilter other = (DefaultEdgeFilter) obj;
+        return encoder == other.encoder && bwd == other.bwd && fwd == other.fwd;
+    }
+
+    @Override
+    public int hashCode() {
+        return (encoder.toString().hashCode() * 31 + (bwd ? 2 : 0)) * 31 + (fwd ? 1 : 0);
+    }
+
     @Override
     public String toString() {
         return encoder.toString() + ", bwd:" + bwd + ", fwd:" + fwd;
@@ -42,7 +42,7 @@ public class BeelineWeightApproximator implements WeightApproximator {
     public void setTo(int toNode) {
         toLat = nodeAccess.getLatitude(toNode);
         toLon = nodeAccess.getLongitude(toNode);
-        toEle = nodeAccess.getElevation(toNode);
+        toEle = nodeAccess.is3D() ? nodeAccess.getElevation(toNode) : 0;
     }
 
     public WeightApproximator setEpsilon(double epsilon) {
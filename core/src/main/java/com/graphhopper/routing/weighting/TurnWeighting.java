@@ -113,6 +113,13 @@ public class TurnWeighting implements Weighting {
         return turnCostEncoder.getTurnCost(turnFlags);
     }
 
+    /**
+     * @return the weighting without turn costs that is wrapped by this instance
+     */
+    public Weighting getSuperWeighting() {
+        return superWeighting;
+    }
+
     @Override
     public FlagEncoder getFlagEncoder() {
         return superWeighting.getFlagEncoder();
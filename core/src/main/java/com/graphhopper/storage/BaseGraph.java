@@ -85,6 +85,10 @@ class BaseGraph implements Graph {
     private int edgeEntryIndex, nodeEntryIndex;
     private long maxGeoRef;
     private boolean frozen = false;
+    // store the pillar nodes as delta encoded variable-length integers
+    private boolean compressedGeometry = false;
+    // the read-only adjacency lists, null as long as the graph can be modified
+    CompactAdjacency adjacency;
 
     public BaseGraph(Directory dir, final EncodingManager encodingManager, boolean withElevation,
                      InternalGraphEventListener listener, GraphExtension extendedStorage) {
@@ -327,6 +331,15 @@ class BaseGraph implements Graph {
         return edge(a, b).setDistance(distance).setFlags(encodingManager.flagsDefault(true, bothDirection));
     }
 
+    void setCompressedGeometry(boolean compressedGeometry) {
+        checkInit();
+        this.compressedGeometry = compressedGeometry;
+    }
+
+    boolean isCompressedGeometry() {
+        return compressedGeometry;
+    }
+
     void setSegmentSize(int bytes) {
         checkInit();
         nodes.setSegmentSize(bytes);
@@ -353,6 +366,24 @@ class BaseGraph implements Graph {
             throw new IllegalStateException("Cannot add edge or node after baseGraph.freeze was called");
     }
 
+    /**
+     * Copies the adjacency lists into a compact read-only layout which is used for all following
+     * traversals. Afterwards no edges can be added or removed.
+     */
+    void compactAdjacency() {
+        checkAdjacencyNotCompacted();
+        adjacency = new CompactAdjacency(dir, "adjacency").build(nodeCount, createEdgeExplorer());
+    }
+
+    boolean isAdjacencyCompacted() {
+        return adjacency != null;
+    }
+
+    final void checkAdjacencyNotCompacted() {
+        if (adjacency != null)
+            throw new IllegalStateException("Cannot change the adjacency of the graph after it was compacted");
+    }
+
     void create(long initSize) {
         nodes.create(initSize);
         edges.create(initSize);
@@ -373,6 +404,7 @@ class BaseGraph implements Graph {
                 + "nodes:" + nf(getNodes()) + "(" + nodes.getCapacity() / Helper.MB + "MB), "
                 + "name:(" + nameIndex.getCapacity() / Helper.MB + "MB), "
                 + "geo:" + nf(maxGeoRef) + "(" + wayGeometry.getCapacity() / Helper.MB + "MB), "
+                + (adjacency == null ? "" : "adjacency:(" + adjacency.getCapacity() / Helper.MB + "MB), ")
                 + "bounds:" + bounds;
     }
 
@@ -389,6 +421,8 @@ class BaseGraph implements Graph {
     }
 
     void close() {
+        if (adjacency != null)
+            adjacency.close();
         wayGeometry.close();
         nameIndex.close();
         edges.close();
@@ -398,7 +432,8 @@ class BaseGraph implements Graph {
 
     long getCapacity() {
         return edges.getCapacity() + nodes.getCapacity() + nameIndex.getCapacity()
-                + wayGeometry.getCapacity() + extStorage.getCapacity();
+                + wayGeometry.getCapacity() + extStorage.getCapacity()
+                + (adjacency == null ? 0 : adjacency.getCapacity());
     }
 
     long getMaxGeoRef() {
@@ -458,6 +493,7 @@ class BaseGraph implements Graph {
     public EdgeIteratorState edge(int nodeA, int nodeB) {
         if (isFrozen())
             throw new IllegalStateException("Cannot create edge if graph is already frozen");
+        checkAdjacencyNotCompacted();
 
         ensureNodeIndex(Math.max(nodeA, nodeB));
         int edgeId = edgeAccess.internalEdgeAdd(nextEdgeId(), nodeA, nodeB);
@@ -539,6 +575,10 @@ class BaseGraph implements Graph {
             throw new IllegalStateException("nodeEntryBytes cannot be different for cloned graph. "
                     + "Cloned: " + clonedG.nodeEntryBytes + " vs " + nodeEntryBytes);
 
+        if (clonedG.compressedGeometry != compressedGeometry)
+            throw new IllegalStateException("geometry compression cannot be different for cloned graph. "
+                    + "Cloned: " + clonedG.compressedGeometry + " vs " + compressedGeometry);
+
         if (clonedG.nodeAccess.getDimension() != nodeAccess.getDimension())
             throw new IllegalStateException("dimension cannot be different for cloned graph. "
                     + "Cloned: " + clonedG.nodeAccess.getDimension() + " vs " + nodeAccess.getDimension());
@@ -583,6 +623,7 @@ class BaseGraph implements Graph {
      * edge.
      */
     void inPlaceNodeRemove(int removeNodeCount) {
+        checkAdjacencyNotCompacted();
         // Prepare edge-update of nodes which are connected to deleted nodes
         int toMoveNodes = getNodes();
         int itemsToMove = 0;
@@ -764,6 +805,10 @@ class BaseGraph implements Graph {
                         + "D for graph which is " + nodeAccess.getDimension() + "D");
 
             long existingGeoRef = Helper.toUnsignedLong(edges.getInt(edgePointer + E_GEO));
+            if (compressedGeometry) {
+                setCompressedWayGeometry(pillarNodes, edgePointer, reverse, existingGeoRef);
+                return;
+            }
 
             int len = pillarNodes.getSize();
             int dim = nodeAccess.getDimension();
@@ -793,6 +838,51 @@ class BaseGraph implements Graph {
         edges.setInt(edgePointer + E_GEO, Helper.toSignedInt(geoRef));
     }
 
+    /**
+     * The compressed format starts with an integer of the reserved bytes followed by the variable-length
+     * count and the zig-zag encoded deltas of every coordinate to the previous pillar node.
+     */
+    private void setCompressedWayGeometry(PointList pillarNodes, long edgePointer, boolean reverse, long existingGeoRef) {
+        byte[] bytes = createCompressedWayGeometryBytes(pillarNodes, reverse);
+        long geoRef = existingGeoRef;
+        if (geoRef <= 0 || bytes.length > wayGeometry.getInt(geoRef * 4L)) {
+            // reserve whole integers to keep the geoRef unit
+            int reservedInts = (bytes.length + 3) / 4;
+            geoRef = nextGeoRef(reservedInts);
+            ensureGeometry(geoRef * 4L, reservedInts * 4 + 4);
+            wayGeometry.setInt(geoRef * 4L, reservedInts * 4);
+        }
+
+        wayGeometry.setBytes(geoRef * 4L + 4, bytes, bytes.length);
+        edges.setInt(edgePointer + E_GEO, Helper.toSignedInt(geoRef));
+    }
+
+    private byte[] createCompressedWayGeometryBytes(PointList pillarNodes, boolean reverse) {
+        int len = pillarNodes.getSize();
+        boolean is3D = nodeAccess.is3D();
+        VLongStorage storage = new VLongStorage(len * (is3D ? 6 : 4) + 2);
+        storage.writeVLong(len);
+        if (reverse)
+            pillarNodes.reverse();
+
+        long prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < len; i++) {
+            long lat = Helper.degreeToInt(pillarNodes.getLatitude(i));
+            long lon = Helper.degreeToInt(pillarNodes.getLongitude(i));
+            storage.writeZLong(lat - prevLat);
+            storage.writeZLong(lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D) {
+                long ele = Helper.eleToInt(pillarNodes.getElevation(i));
+                storage.writeZLong(ele - prevEle);
+                prevEle = ele;
+            }
+        }
+        storage.trimToSize();
+        return storage.getBytes();
+    }
+
     private byte[] createWayGeometryBytes(PointList pillarNodes, boolean reverse) {
         int len = pillarNodes.getSize();
         int dim = nodeAccess.getDimension();
@@ -823,13 +913,21 @@ class BaseGraph implements Graph {
         long geoRef = Helper.toUnsignedLong(edges.getInt(edgePointer + E_GEO));
         int count = 0;
         byte[] bytes = null;
+        VLongStorage compressed = null;
         if (geoRef > 0) {
             geoRef *= 4L;
-            count = wayGeometry.getInt(geoRef);
+            if (compressedGeometry) {
+                bytes = new byte[wayGeometry.getInt(geoRef)];
+                wayGeometry.getBytes(geoRef + 4L, bytes, bytes.length);
+                compressed = new VLongStorage(bytes);
+                count = (int) compressed.readVLong();
+            } else {
+                count = wayGeometry.getInt(geoRef);
 
-            geoRef += 4L;
-            bytes = new byte[count * nodeAccess.getDimension() * 4];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
+                geoRef += 4L;
+                bytes = new byte[count * nodeAccess.getDimension() * 4];
+                wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            }
         } else if (mode == 0)
             return PointList.EMPTY;
 
@@ -840,17 +938,21 @@ class BaseGraph implements Graph {
         } else if ((mode & 1) != 0)
             pillarNodes.add(nodeAccess, baseNode);
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+        if (compressed != null) {
+            addCompressedPillarNodes(pillarNodes, compressed, count);
+        } else {
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
                 index += 4;
-            } else {
-                pillarNodes.add(lat, lon);
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D()) {
+                    pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+                    index += 4;
+                } else {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -865,6 +967,20 @@ class BaseGraph implements Graph {
         return pillarNodes;
     }
 
+    private void addCompressedPillarNodes(PointList pillarNodes, VLongStorage compressed, int count) {
+        long lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < count; i++) {
+            lat += compressed.readZLong();
+            lon += compressed.readZLong();
+            if (nodeAccess.is3D()) {
+                ele += compressed.readZLong();
+                pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon), Helper.intToEle((int) ele));
+            } else {
+                pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon));
+            }
+        }
+    }
+
     private void setName(long edgePointer, String name) {
         int nameIndexRef = (int) nameIndex.put(name);
         if (nameIndexRef < 0)
@@ -896,6 +1012,9 @@ class BaseGraph implements Graph {
     protected static class EdgeIterable extends CommonEdgeIterator implements EdgeExplorer, EdgeIterator {
         final EdgeFilter filter;
         int nextEdgeId;
+        // if not null the edges are iterated from the compact adjacency in the range [adjIndex, adjEnd)
+        private CompactAdjacency adjacency;
+        private int adjIndex, adjEnd;
 
         public EdgeIterable(BaseGraph baseGraph, EdgeAccess edgeAccess, EdgeFilter filter) {
             super(-1, edgeAccess, baseGraph);
@@ -936,15 +1055,22 @@ class BaseGraph implements Graph {
             return false;
         }
 
-        final void _setBaseNode(int baseNode) {
+        final void _setBaseNode(int baseNode, EdgeAccess refAccess, CompactAdjacency adjacency) {
+            this.adjacency = adjacency;
+            if (adjacency == null) {
+                setEdgeId(refAccess.getEdgeRef(baseNode));
+            } else {
+                adjIndex = adjacency.getStart(baseNode);
+                adjEnd = adjacency.getEnd(baseNode);
+                setEdgeId(adjIndex < adjEnd ? adjacency.getEdge(adjIndex) : EdgeIterator.NO_EDGE);
+            }
             this.baseNode = baseNode;
         }
 
         @Override
         public EdgeIterator setBaseNode(int baseNode) {
             // always use base graph edge access
-            setEdgeId(baseGraph.edgeAccess.getEdgeRef(baseNode));
-            _setBaseNode(baseNode);
+            _setBaseNode(baseNode, baseGraph.edgeAccess, baseGraph.adjacency);
             return this;
         }
 
@@ -964,8 +1090,11 @@ class BaseGraph implements Graph {
                 reverse = baseNode > adjNode;
                 freshFlags = false;
 
-                // position to next edge                
-                nextEdgeId = edgeAccess.getEdgeRef(baseNode, adjNode, edgePointer);
+                // position to next edge
+                if (adjacency == null)
+                    nextEdgeId = edgeAccess.getEdgeRef(baseNode, adjNode, edgePointer);
+                else
+                    nextEdgeId = ++adjIndex < adjEnd ? adjacency.getEdge(adjIndex) : EdgeIterator.NO_EDGE;
                 assert nextEdgeId != edgeId : ("endless loop detected for base node: " + baseNode + ", adj node: " + adjNode
                         + ", edge pointer: " + edgePointer + ", edge: " + edgeId);
 
@@ -43,6 +43,12 @@ public interface CHGraph extends Graph {
 
     boolean isShortcut(int edgeId);
 
+    /**
+     * @return true if the shortcuts of this graph store their first and last original edge, which
+     * is necessary for turn costs, i.e. the graph was created for a TurnWeighting
+     */
+    boolean isEdgeBased();
+
     /**
      * This method creates a shortcut between a to b which is nearly identical to creating an edge
      * except that it can be excluded or included for certain traversals or algorithms.
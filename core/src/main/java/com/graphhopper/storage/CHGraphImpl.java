@@ -22,6 +22,7 @@ import com.graphhopper.routing.util.AllCHEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph.AllEdgeIterator;
 import com.graphhopper.storage.BaseGraph.CommonEdgeIterator;
@@ -49,6 +50,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
     private final BaseGraph baseGraph;
     private final EdgeAccess chEdgeAccess;
     private final Weighting weighting;
+    private final boolean edgeBased;
     int N_CH_REF;
     int shortcutEntryBytes;
     // the nodesCH storage is limited via baseGraph.nodeCount too
@@ -56,13 +58,18 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
     private int N_LEVEL;
     // shortcut memory layout is synced with edges indices until E_FLAGS, then:
     private int S_SKIP_EDGE1, S_SKIP_EDGE2;
+    // only for edge-based graphs: the original edges at the start and the end of a shortcut
+    private int S_ORIG_FIRST, S_ORIG_LAST;
     private int shortcutCount = 0;
+    // the read-only adjacency lists including the shortcuts, null as long as the graph can be modified
+    private CompactAdjacency adjacency;
 
     CHGraphImpl(Weighting w, Directory dir, final BaseGraph baseGraph) {
         if (w == null)
             throw new IllegalStateException("Weighting for CHGraph cannot be null");
 
         this.weighting = w;
+        this.edgeBased = w instanceof TurnWeighting;
         this.baseGraph = baseGraph;
         final String name = AbstractWeighting.weightingToFileName(w);
         this.nodesCH = dir.find("nodes_ch_" + name);
@@ -126,6 +133,11 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
         return weighting;
     }
 
+    @Override
+    public boolean isEdgeBased() {
+        return edgeBased;
+    }
+
     @Override
     public boolean isShortcut(int edgeId) {
         assert baseGraph.isFrozen() : "level graph not yet frozen";
@@ -155,6 +167,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
 
         checkNodeId(a);
         checkNodeId(b);
+        checkAdjacencyNotCompacted();
 
         int scId = chEdgeAccess.internalEdgeAdd(nextShortcutId(), a, b);
         CHEdgeIteratorImpl iter = new CHEdgeIteratorImpl(baseGraph, chEdgeAccess, EdgeFilter.ALL_EDGES);
@@ -182,6 +195,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
     @Override
     public CHEdgeIteratorState edge(int a, int b) {
         // increase edge array not for shortcuts
+        baseGraph.checkAdjacencyNotCompacted();
         baseGraph.ensureNodeIndex(Math.max(a, b));
         int edgeId = baseGraph.edgeAccess.internalEdgeAdd(baseGraph.nextEdgeId(), a, b);
         CHEdgeIteratorImpl iter = new CHEdgeIteratorImpl(baseGraph, baseGraph.edgeAccess, EdgeFilter.ALL_EDGES);
@@ -226,6 +240,11 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
         return baseGraph.getBounds();
     }
 
+    final void checkEdgeBased(String methodName) {
+        if (!edgeBased)
+            throw new IllegalStateException("Method " + methodName + " is only supported for an edge-based CHGraph, " + toString());
+    }
+
     void _freeze() {
         long maxCapacity = ((long) getNodes()) * nodeCHEntryBytes;
         nodesCH.ensureCapacity(maxCapacity);
@@ -243,8 +262,23 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
         }
     }
 
+    /**
+     * @see BaseGraph#compactAdjacency()
+     */
+    void compactAdjacency(Directory dir) {
+        checkAdjacencyNotCompacted();
+        adjacency = new CompactAdjacency(dir, "adjacency_ch_" + AbstractWeighting.weightingToFileName(weighting))
+                .build(getNodes(), createEdgeExplorer());
+    }
+
+    final void checkAdjacencyNotCompacted() {
+        if (adjacency != null)
+            throw new IllegalStateException("Cannot change the adjacency of " + this + " after it was compacted");
+    }
+
     String toDetailsString() {
-        return toString() + ", shortcuts:" + nf(shortcutCount) + ", nodesCH:(" + nodesCH.getCapacity() / Helper.MB + "MB)";
+        return toString() + ", shortcuts:" + nf(shortcutCount) + ", nodesCH:(" + nodesCH.getCapacity() / Helper.MB + "MB)"
+                + (adjacency == null ? "" : ", adjacency:(" + adjacency.getCapacity() / Helper.MB + "MB)");
     }
 
     /**
@@ -255,6 +289,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
      * @param edgeState the edge from lower to higher
      */
     public void disconnect(CHEdgeExplorer explorer, EdgeIteratorState edgeState) {
+        checkAdjacencyNotCompacted();
         // search edge with opposite direction but we need to know the previousEdge for the internalEdgeDisconnect so we cannot simply do:
         // EdgeIteratorState tmpIter = getEdgeProps(iter.getEdge(), iter.getBaseNode());
         CHEdgeIterator tmpIter = explorer.setBaseNode(edgeState.getAdjNode());
@@ -344,6 +379,11 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
         S_SKIP_EDGE1 = ea.E_FLAGS + 4;
         S_SKIP_EDGE2 = S_SKIP_EDGE1 + 4;
         shortcutEntryBytes = S_SKIP_EDGE2 + 4;
+        if (edgeBased) {
+            S_ORIG_FIRST = shortcutEntryBytes;
+            S_ORIG_LAST = S_ORIG_FIRST + 4;
+            shortcutEntryBytes = S_ORIG_LAST + 4;
+        }
 
         // node based data:
         N_LEVEL = 0;
@@ -380,6 +420,8 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
 
     @Override
     public void close() {
+        if (adjacency != null)
+            adjacency.close();
         nodesCH.close();
         shortcuts.close();
     }
@@ -391,7 +433,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
 
     @Override
     public long getCapacity() {
-        return nodesCH.getCapacity() + shortcuts.getCapacity();
+        return nodesCH.getCapacity() + shortcuts.getCapacity() + (adjacency == null ? 0 : adjacency.getCapacity());
     }
 
     @Override
@@ -415,8 +457,7 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
             assert baseGraph.isFrozen() : "Traversal CHGraph is only possible if BaseGraph is frozen";
 
             // always use ch edge access
-            setEdgeId(chEdgeAccess.getEdgeRef(baseNode));
-            _setBaseNode(baseNode);
+            _setBaseNode(baseNode, chEdgeAccess, adjacency);
             return this;
         }
 
@@ -449,6 +490,34 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
             return edgeId >= baseGraph.edgeCount;
         }
 
+        @Override
+        public final int getOrigEdgeFirst() {
+            if (!isShortcut())
+                return edgeId;
+
+            checkEdgeBased("getOrigEdgeFirst");
+            return shortcuts.getInt(edgePointer + (reverse ? S_ORIG_LAST : S_ORIG_FIRST));
+        }
+
+        @Override
+        public final int getOrigEdgeLast() {
+            if (!isShortcut())
+                return edgeId;
+
+            checkEdgeBased("getOrigEdgeLast");
+            return shortcuts.getInt(edgePointer + (reverse ? S_ORIG_FIRST : S_ORIG_LAST));
+        }
+
+        @Override
+        public final CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge) {
+            checkShortcut(true, "setFirstAndLastOrigEdges");
+            checkEdgeBased("setFirstAndLastOrigEdges");
+            // the storage direction can be different to the direction of this iterator
+            shortcuts.setInt(edgePointer + S_ORIG_FIRST, reverse ? lastOrigEdge : firstOrigEdge);
+            shortcuts.setInt(edgePointer + S_ORIG_LAST, reverse ? firstOrigEdge : lastOrigEdge);
+            return this;
+        }
+
         @Override
         public boolean isBackward(FlagEncoder encoder) {
             assert encoder == weighting.getFlagEncoder() : encoder + " vs. " + weighting.getFlagEncoder();
@@ -585,6 +654,35 @@ public class CHGraphImpl implements CHGraph, Storable<CHGraph> {
             return super.getMaxId() + shortcutCount;
         }
 
+        @Override
+        public final int getOrigEdgeFirst() {
+            if (!isShortcut())
+                return getEdge();
+
+            checkEdgeBased("getOrigEdgeFirst");
+            return shortcuts.getInt(edgePointer + S_ORIG_FIRST);
+        }
+
+        @Override
+        public final int getOrigEdgeLast() {
+            if (!isShortcut())
+                return getEdge();
+
+            checkEdgeBased("getOrigEdgeLast");
+            return shortcuts.getInt(edgePointer + S_ORIG_LAST);
+        }
+
+        @Override
+        public final CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge) {
+            if (!isShortcut())
+                throw new IllegalStateException("Method setFirstAndLastOrigEdges only for shortcuts " + getEdge());
+
+            checkEdgeBased("setFirstAndLastOrigEdges");
+            shortcuts.setInt(edgePointer + S_ORIG_FIRST, firstOrigEdge);
+            shortcuts.setInt(edgePointer + S_ORIG_LAST, lastOrigEdge);
+            return this;
+        }
+
         @Override
         public final void setSkippedEdges(int edge1, int edge2) {
             baseGraph.edges.setInt(edgePointer + S_SKIP_EDGE1, edge1);
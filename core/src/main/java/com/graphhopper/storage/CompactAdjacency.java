@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * A read-only copy of the adjacency lists in compressed sparse row layout: the edge IDs of a node
+ * are stored in the range [getStart(node), getStart(node + 1)) of one contiguous array. Iterating
+ * this array avoids following the next edge links stored in the edge entries, which jump randomly
+ * across the edges DataAccess. The data is kept in memory only and has to be built again after
+ * loading the graph.
+ *
+ * @see GraphHopperStorage#compactAdjacency()
+ */
+final class CompactAdjacency {
+    private final DataAccess offsets;
+    private final DataAccess edgeRefs;
+    private int nodes;
+    private int entries;
+
+    CompactAdjacency(Directory dir, String name) {
+        this.offsets = dir.find(name + "_offsets", DAType.RAM_INT);
+        this.edgeRefs = dir.find(name + "_edges", DAType.RAM_INT);
+    }
+
+    /**
+     * Copies the adjacency lists of all nodes in the order of the specified explorer, which has to
+     * accept all edges.
+     */
+    CompactAdjacency build(int nodes, EdgeExplorer explorer) {
+        this.nodes = nodes;
+        offsets.create(((long) nodes + 1) * 4);
+        edgeRefs.create(((long) nodes + 1) * 8);
+        long entries = 0;
+        for (int node = 0; node < nodes; node++) {
+            offsets.setInt((long) node * 4, (int) entries);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edgeRefs.ensureCapacity((entries + 1) * 4);
+                edgeRefs.setInt(entries * 4, iter.getEdge());
+                entries++;
+                if (entries >= Integer.MAX_VALUE)
+                    throw new IllegalStateException("Too many edge references for a compact adjacency " + entries);
+            }
+        }
+        offsets.setInt((long) nodes * 4, (int) entries);
+        this.entries = (int) entries;
+        return this;
+    }
+
+    /**
+     * @return the index of the first edge reference of the specified node
+     */
+    int getStart(int node) {
+        return offsets.getInt((long) node * 4);
+    }
+
+    /**
+     * @return the index after the last edge reference of the specified node
+     */
+    int getEnd(int node) {
+        return offsets.getInt((long) node * 4 + 4);
+    }
+
+    int getEdge(int index) {
+        return edgeRefs.getInt((long) index * 4);
+    }
+
+    int getNodes() {
+        return nodes;
+    }
+
+    int getEntries() {
+        return entries;
+    }
+
+    long getCapacity() {
+        return offsets.getCapacity() + edgeRefs.getCapacity();
+    }
+
+    void close() {
+        offsets.close();
+        edgeRefs.close();
+    }
+}
@@ -151,6 +151,21 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
         }
     }
 
+    /**
+     * Stores the pillar nodes of every edge as delta encoded variable-length integers instead of
+     * fixed 4 bytes per coordinate. This reduces the size of the geometry for typical ways to roughly
+     * the half but requires decoding when fetching the geometry. Has to be called before create, for
+     * loadExisting the setting is read from the properties.
+     */
+    public GraphHopperStorage setCompressedGeometry(boolean compressedGeometry) {
+        baseGraph.setCompressedGeometry(compressedGeometry);
+        return this;
+    }
+
+    public boolean isCompressedGeometry() {
+        return baseGraph.isCompressedGeometry();
+    }
+
     /**
      * After configuring this storage you need to create it explicitly.
      */
@@ -169,6 +184,7 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
 
         properties.put("graph.byte_order", dir.getByteOrder());
         properties.put("graph.dimension", baseGraph.nodeAccess.getDimension());
+        properties.put("graph.geometry.compressed", baseGraph.isCompressedGeometry());
         properties.putCurrentVersions();
 
         baseGraph.create(initSize);
@@ -209,6 +225,7 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
     public void optimize() {
         if (isFrozen())
             throw new IllegalStateException("do not optimize after graph was frozen");
+        baseGraph.checkAdjacencyNotCompacted();
 
         int delNodes = baseGraph.getRemovedNodes().getCardinality();
         if (delNodes <= 0)
@@ -243,6 +260,7 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
             if (!bytesForFlags.equalsIgnoreCase("" + encodingManager.getBytesForFlags()))
                 throw new IllegalStateException("Configured graph.bytes_for_flags (" + encodingManager.getBytesForFlags() + ") is not equal to loaded " + bytesForFlags);
 
+            baseGraph.setCompressedGeometry(Boolean.parseBoolean(properties.get("graph.geometry.compressed")));
             String dim = properties.get("graph.dimension");
             baseGraph.loadExisting(dim);
 
@@ -306,10 +324,36 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
             baseGraph.freeze();
     }
 
-    boolean isFrozen() {
+    public boolean isFrozen() {
         return baseGraph.isFrozen();
     }
 
+    /**
+     * Copies the adjacency lists of the base graph and of all CH graphs into a compressed sparse row
+     * layout, i.e. the edges of a node are stored next to each other in one array. All following
+     * traversals iterate this array sequentially instead of following the links through the edges,
+     * which reduces the cache misses per explored edge. Call this for read-only serving after the
+     * import and the preparations are done. The edge properties like the flags can still be changed
+     * but adding or removing edges, nodes or shortcuts is no longer possible. The compact layout
+     * needs 4 bytes per node and 8 bytes per edge (plus the same per CH graph), is kept in memory
+     * only and has to be created again after loading the graph.
+     */
+    public synchronized void compactAdjacency() {
+        if (isAdjacencyCompacted())
+            throw new IllegalStateException("adjacency is already compacted");
+        if (!chGraphs.isEmpty() && !isFrozen())
+            throw new IllegalStateException("Cannot compact the adjacency of the CH graphs before the graph is frozen");
+
+        baseGraph.compactAdjacency();
+        for (CHGraphImpl cg : chGraphs) {
+            cg.compactAdjacency(dir);
+        }
+    }
+
+    public boolean isAdjacencyCompacted() {
+        return baseGraph.isAdjacencyCompacted();
+    }
+
     @Override
     public String toDetailsString() {
         String str = baseGraph.toDetailsString();
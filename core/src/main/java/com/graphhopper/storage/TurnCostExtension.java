@@ -17,6 +17,9 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.util.EdgeIterator;
 
 /**
@@ -43,6 +46,11 @@ public class TurnCostExtension implements GraphExtension {
     private int turnCostsEntryIndex = -4;
     private int turnCostsEntryBytes;
     private int turnCostsCount;
+    // if true the entries of a node are stored contiguously and sorted by from and to edge
+    private boolean compacted;
+    // in memory only: the nodes with at least one entry, null if unknown
+    private GHBitSet nodesWithEntries;
+    private Graph graph;
     private NodeAccess nodeAccess;
 
     public TurnCostExtension() {
@@ -59,6 +67,7 @@ public class TurnCostExtension implements GraphExtension {
         if (turnCostsCount > 0)
             throw new AssertionError("The turn cost storage must be initialized only once.");
 
+        this.graph = graph;
         this.nodeAccess = graph.getNodeAccess();
         this.turnCosts = dir.find("turn_costs");
     }
@@ -83,6 +92,7 @@ public class TurnCostExtension implements GraphExtension {
     public void flush() {
         turnCosts.setHeader(0, turnCostsEntryBytes);
         turnCosts.setHeader(1 * 4, turnCostsCount);
+        turnCosts.setHeader(2 * 4, compacted ? 1 : 0);
         turnCosts.flush();
     }
 
@@ -103,6 +113,7 @@ public class TurnCostExtension implements GraphExtension {
 
         turnCostsEntryBytes = turnCosts.getHeader(0);
         turnCostsCount = turnCosts.getHeader(4);
+        compacted = turnCosts.getHeader(2 * 4) == 1;
         return true;
     }
 
@@ -115,6 +126,10 @@ public class TurnCostExtension implements GraphExtension {
         if (turnFlags == EMPTY_FLAGS)
             return;
 
+        // appending breaks the order, call compact again afterwards
+        compacted = false;
+        nodesWithEntries = null;
+
         // append
         int newEntryIndex = turnCostsCount;
         turnCostsCount++;
@@ -156,9 +171,43 @@ public class TurnCostExtension implements GraphExtension {
         if (nodeVia < 0)
             throw new IllegalArgumentException("via node cannot be negative");
 
+        // most nodes have no entry, avoid reading the node field for them
+        if (nodesWithEntries != null && !nodesWithEntries.contains(nodeVia))
+            return EMPTY_FLAGS;
+
+        if (compacted)
+            return findCostFlags(edgeFrom, nodeVia, edgeTo);
         return nextCostFlags(edgeFrom, nodeVia, edgeTo);
     }
 
+    /**
+     * Scans the contiguous and sorted entries of the specified node and stops at the first entry
+     * which is behind the searched one.
+     */
+    private long findCostFlags(int edgeFrom, int nodeVia, int edgeTo) {
+        int turnCostIndex = nodeAccess.getAdditionalNodeField(nodeVia);
+        if (turnCostIndex == NO_TURN_ENTRY)
+            return EMPTY_FLAGS;
+
+        long turnCostPtr = (long) turnCostIndex * turnCostsEntryBytes;
+        while (true) {
+            int from = turnCosts.getInt(turnCostPtr + TC_FROM);
+            if (from > edgeFrom)
+                return EMPTY_FLAGS;
+            if (from == edgeFrom) {
+                int to = turnCosts.getInt(turnCostPtr + TC_TO);
+                if (to == edgeTo)
+                    return turnCosts.getInt(turnCostPtr + TC_FLAGS);
+                if (to > edgeTo)
+                    return EMPTY_FLAGS;
+            }
+
+            if (turnCosts.getInt(turnCostPtr + TC_NEXT) == NO_TURN_ENTRY)
+                return EMPTY_FLAGS;
+            turnCostPtr += turnCostsEntryBytes;
+        }
+    }
+
     private long nextCostFlags(int edgeFrom, int nodeVia, int edgeTo) {
         int turnCostIndex = nodeAccess.getAdditionalNodeField(nodeVia);
         int i = 0;
@@ -183,6 +232,98 @@ public class TurnCostExtension implements GraphExtension {
         return EMPTY_FLAGS;
     }
 
+    /**
+     * Adds all entries of this storage to the specified storage of a graph with different node and
+     * edge IDs, e.g. a sorted copy of the graph. Entries of nodes or edges which are mapped to a
+     * negative ID are skipped.
+     */
+    public void copyTo(TurnCostExtension target, IntIndexedContainer oldToNewNodes, IntIndexedContainer oldToNewEdges) {
+        int nodes = oldToNewNodes.size();
+        for (int node = 0; node < nodes; node++) {
+            int newNode = oldToNewNodes.get(node);
+            if (newNode < 0)
+                continue;
+
+            int turnCostIndex = nodeAccess.getAdditionalNodeField(node);
+            while (turnCostIndex != NO_TURN_ENTRY) {
+                long turnCostPtr = (long) turnCostIndex * turnCostsEntryBytes;
+                int newFromEdge = oldToNewEdges.get(turnCosts.getInt(turnCostPtr + TC_FROM));
+                int newToEdge = oldToNewEdges.get(turnCosts.getInt(turnCostPtr + TC_TO));
+                if (newFromEdge >= 0 && newToEdge >= 0)
+                    target.addTurnInfo(newFromEdge, newNode, newToEdge, turnCosts.getInt(turnCostPtr + TC_FLAGS));
+
+                turnCostIndex = turnCosts.getInt(turnCostPtr + TC_NEXT);
+            }
+        }
+    }
+
+    /**
+     * Rearranges the entries so that the entries of every node are stored next to each other and
+     * sorted by from and to edge. Then a lookup reads consecutive entries and can stop early instead
+     * of following the links through the whole storage. The entries stay linked, so adding a new
+     * entry afterwards is possible but falls back to the slower lookup until this method is called
+     * again. Additionally an in-memory bit set of the nodes with entries is created which avoids any
+     * storage access for the majority of nodes. Call this after the import and after loading.
+     */
+    public void compact() {
+        int nodes = graph.getNodes();
+        if (!compacted) {
+            int[] vias = new int[turnCostsCount];
+            int[] froms = new int[turnCostsCount];
+            int[] tos = new int[turnCostsCount];
+            int[] flags = new int[turnCostsCount];
+            int count = 0;
+            for (int node = 0; node < nodes; node++) {
+                int firstEntry = count;
+                int turnCostIndex = nodeAccess.getAdditionalNodeField(node);
+                while (turnCostIndex != NO_TURN_ENTRY) {
+                    long turnCostPtr = (long) turnCostIndex * turnCostsEntryBytes;
+                    int from = turnCosts.getInt(turnCostPtr + TC_FROM);
+                    int to = turnCosts.getInt(turnCostPtr + TC_TO);
+                    int flag = turnCosts.getInt(turnCostPtr + TC_FLAGS);
+                    // insertion sort keeps the first added entry first for duplicates like the linked lookup
+                    int i = count;
+                    for (; i > firstEntry && (froms[i - 1] > from || froms[i - 1] == from && tos[i - 1] > to); i--) {
+                        froms[i] = froms[i - 1];
+                        tos[i] = tos[i - 1];
+                        flags[i] = flags[i - 1];
+                    }
+                    vias[count] = node;
+                    froms[i] = from;
+                    tos[i] = to;
+                    flags[i] = flag;
+                    count++;
+                    turnCostIndex = turnCosts.getInt(turnCostPtr + TC_NEXT);
+                }
+            }
+
+            for (int index = 0; index < count; index++) {
+                if (index == 0 || vias[index - 1] != vias[index])
+                    nodeAccess.setAdditionalNodeField(vias[index], index);
+
+                long turnCostPtr = (long) index * turnCostsEntryBytes;
+                turnCosts.setInt(turnCostPtr + TC_FROM, froms[index]);
+                turnCosts.setInt(turnCostPtr + TC_TO, tos[index]);
+                turnCosts.setInt(turnCostPtr + TC_FLAGS, flags[index]);
+                boolean last = index + 1 == count || vias[index + 1] != vias[index];
+                turnCosts.setInt(turnCostPtr + TC_NEXT, last ? NO_TURN_ENTRY : index + 1);
+            }
+            turnCostsCount = count;
+            compacted = true;
+        }
+
+        GHBitSet bitSet = new GHBitSetImpl(nodes);
+        for (int node = 0; node < nodes; node++) {
+            if (nodeAccess.getAdditionalNodeField(node) != NO_TURN_ENTRY)
+                bitSet.add(node);
+        }
+        nodesWithEntries = bitSet;
+    }
+
+    public boolean isCompacted() {
+        return compacted;
+    }
+
     private void ensureTurnCostIndex(int nodeIndex) {
         turnCosts.ensureCapacity(((long) nodeIndex + 4) * turnCostsEntryBytes);
     }
@@ -218,6 +359,7 @@ public class TurnCostExtension implements GraphExtension {
 
         turnCosts.copyTo(clonedTC.turnCosts);
         clonedTC.turnCostsCount = turnCostsCount;
+        clonedTC.compacted = compacted;
 
         return clonedStorage;
     }
@@ -146,6 +146,22 @@ public class VLongStorage {
         throw new RuntimeException("Invalid vLong detected (negative values disallowed)");
     }
 
+    /**
+     * Writes a long in a variable-length format after a zig-zag encoding, so that small negative
+     * values take few bytes too. Useful to store deltas. The absolute value has to fit into 62 bits.
+     */
+    public final void writeZLong(long i) {
+        writeVLong((i << 1) ^ (i >> 63));
+    }
+
+    /**
+     * Reads a long written via writeZLong.
+     */
+    public long readZLong() {
+        long i = readVLong();
+        return (i >>> 1) ^ -(i & 1);
+    }
+
     public void trimToSize() {
         if (bytes.length > pointer) {
             byte[] tmp = new byte[pointer];
@@ -17,8 +17,10 @@
  */
 package com.graphhopper.storage.change;
 
+import com.carrotsearch.hppc.IntLongMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntLongHashMap;
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.EdgeFilter;
@@ -49,6 +51,8 @@ public class ChangeGraphHelper {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final Graph graph;
     private final GraphEdgeIdFinder graphBrowser;
+    // edge ID -> flags before the first change
+    private final GHIntLongHashMap changedEdges = new GHIntLongHashMap();
     private boolean enableLogging = false;
 
     public ChangeGraphHelper(Graph graph, LocationIndex locationIndex) {
@@ -60,6 +64,14 @@ public class ChangeGraphHelper {
         enableLogging = log;
     }
 
+    /**
+     * @return the IDs of the edges which were changed by this helper mapped to their flags before
+     * the first change. Useful to update data derived from the edge weights like the landmarks.
+     */
+    public IntLongMap getChangedEdges() {
+        return changedEdges;
+    }
+
     /**
      * This method applies changes to the graph, specified by the json features.
      *
@@ -107,7 +119,7 @@ public class ChangeGraphHelper {
                 updates++;
                 if (enableLogging)
                     logger.info(encoder.toString() + " - access change via feature " + jsonFeature.getId());
-                edge.setFlags(encoder.setAccess(edge.getFlags(), value, value));
+                setFlags(edge, encoder.setAccess(edge.getFlags(), value, value));
 
             } else if (props.containsKey("speed")) {
                 // TODO use different speed for the different directions (see e.g. Bike2WeightFlagEncoder)
@@ -117,10 +129,17 @@ public class ChangeGraphHelper {
                     updates++;
                     if (enableLogging)
                         logger.info(encoder.toString() + " - speed change via feature " + jsonFeature.getId() + ". Old: " + oldSpeed + ", new:" + value);
-                    edge.setFlags(encoder.setSpeed(edge.getFlags(), value));
+                    setFlags(edge, encoder.setSpeed(edge.getFlags(), value));
                 }
             }
         }
         return updates;
     }
+
+    private void setFlags(EdgeIteratorState edge, long flags) {
+        if (edge.getFlags() != flags && !changedEdges.containsKey(edge.getEdge()))
+            changedEdges.put(edge.getEdge(), edge.getFlags());
+
+        edge.setFlags(flags);
+    }
 }
@@ -0,0 +1,516 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntContainer;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache in front of another LocationIndex. Repeated lookups of the same coordinate, e.g.
+ * popular start or destination points, are answered without searching the index again. The key is
+ * the coordinate rounded to the configured number of decimal places together with the EdgeFilter,
+ * which is compared via equals. A cached result is adapted to the exact query point: the snapped
+ * point and the query distance are calculated again on the cached edge segment.
+ * <p>
+ * Two eviction policies are supported. LRU keeps the most recently used entries. TINY_LFU is a
+ * W-TinyLFU: new entries go into a small LRU window and only move into the main area if they were
+ * requested more often than the entry they would evict. This keeps frequently requested points
+ * even if many points are requested only once.
+ * <p>
+ * The cache does not know about changes of the graph, call invalidate or clear after changing it.
+ */
+public class CachingLocationIndex implements LocationIndex {
+    public enum Eviction {
+        LRU, TINY_LFU
+    }
+
+    private final Graph graph;
+    private final LocationIndex index;
+    private final Cache cache;
+    private final DistanceCalc distCalc = Helper.DIST_EARTH;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private double factor = 1e6;
+
+    public CachingLocationIndex(Graph graph, LocationIndex index, int capacity, Eviction eviction) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Cache capacity has to be positive but was " + capacity);
+        this.graph = graph;
+        this.index = index;
+        this.cache = eviction == Eviction.LRU ? new LRUCache(capacity) : new TinyLFUCache(capacity);
+    }
+
+    /**
+     * Lookups of coordinates which are equal after rounding to the specified number of decimal
+     * places share the same cache entry. The default is 6 decimal places which is roughly 0.1m.
+     */
+    public CachingLocationIndex setPrecision(int decimalPlaces) {
+        if (decimalPlaces < 0 || decimalPlaces > 9)
+            throw new IllegalArgumentException("Decimal places have to be in [0, 9] but was " + decimalPlaces);
+        factor = Math.pow(10, decimalPlaces);
+        clear();
+        return this;
+    }
+
+    public LocationIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public QueryResult findClosest(double lat, double lon, EdgeFilter edgeFilter) {
+        CacheKey key = new CacheKey(Math.round(lat * factor), Math.round(lon * factor), edgeFilter);
+        QueryResult cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copy(cached, lat, lon);
+        }
+
+        misses.incrementAndGet();
+        QueryResult res = index.findClosest(lat, lon, edgeFilter);
+        synchronized (cache) {
+            cache.put(key, res);
+        }
+        // the caller could modify the result, e.g. QueryGraph.lookup sets a virtual closest node
+        return copy(res, lat, lon);
+    }
+
+    private QueryResult copy(QueryResult cached, double lat, double lon) {
+        QueryResult res = new QueryResult(lat, lon);
+        if (!cached.isValid())
+            return res;
+
+        res.setClosestNode(cached.getClosestNode());
+        res.setClosestEdge(cached.getClosestEdge());
+        res.setWayIndex(cached.getWayIndex());
+        res.setSnappedPosition(cached.getSnappedPosition());
+        res.calcSnappedPoint(distCalc);
+        GHPoint3D snapped = res.getSnappedPoint();
+        res.setQueryDistance(distCalc.calcDist(lat, lon, snapped.lat, snapped.lon));
+        return res;
+    }
+
+    /**
+     * Removes all entries which could be affected by changes of the specified edges: the entries
+     * snapped to one of them and the entries for which one of them is within the distance to the
+     * snapped point, as it could be the closest edge now.
+     */
+    public void invalidate(IntContainer edges) {
+        if (edges.isEmpty())
+            return;
+
+        List<BBox> edgeBounds = new ArrayList<>(edges.size());
+        for (IntCursor cursor : edges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(cursor.value, Integer.MIN_VALUE);
+            PointList pl = edge.fetchWayGeometry(3);
+            BBox bounds = BBox.createInverse(false);
+            for (int i = 0; i < pl.size(); i++) {
+                bounds.update(pl.getLatitude(i), pl.getLongitude(i));
+            }
+            edgeBounds.add(bounds);
+        }
+
+        synchronized (cache) {
+            Iterator<Map.Entry<CacheKey, QueryResult>> iter = cache.entries();
+            while (iter.hasNext()) {
+                QueryResult qr = iter.next().getValue();
+                if (!qr.isValid() || edges.contains(qr.getClosestEdge().getEdge())) {
+                    iter.remove();
+                    continue;
+                }
+
+                BBox queryBounds = distCalc.createBBox(qr.getQueryPoint().lat, qr.getQueryPoint().lon, qr.getQueryDistance());
+                for (BBox bounds : edgeBounds) {
+                    if (queryBounds.intersect(bounds)) {
+                        iter.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public LocationIndex setResolution(int resolution) {
+        index.setResolution(resolution);
+        return this;
+    }
+
+    @Override
+    public LocationIndex prepareIndex() {
+        index.prepareIndex();
+        clear();
+        return this;
+    }
+
+    @Override
+    public LocationIndex setApproximation(boolean approxDist) {
+        index.setApproximation(approxDist);
+        return this;
+    }
+
+    @Override
+    public void setSegmentSize(int bytes) {
+        index.setSegmentSize(bytes);
+    }
+
+    @Override
+    public boolean loadExisting() {
+        clear();
+        return index.loadExisting();
+    }
+
+    @Override
+    public LocationIndex create(long byteCount) {
+        index.create(byteCount);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        index.flush();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        index.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return index.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return index.getCapacity();
+    }
+
+    @Override
+    public String toString() {
+        return "cache(" + getSize() + ", hits:" + getHits() + ", misses:" + getMisses() + ") " + index;
+    }
+
+    private static class CacheKey {
+        final long lat;
+        final long lon;
+        final EdgeFilter filter;
+        // the frequency sketch needs the same hash in every JVM, so no identity hash of the filter
+        final int filterHash;
+
+        CacheKey(long lat, long lon, EdgeFilter filter) {
+            this.lat = lat;
+            this.lon = lon;
+            this.filter = filter;
+            filterHash = filter instanceof DefaultEdgeFilter ? filter.hashCode() : filter.getClass().getName().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey))
+                return false;
+            CacheKey other = (CacheKey) obj;
+            return lat == other.lat && lon == other.lon && filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = lat * 31 + lon;
+            return (int) (h ^ (h >>> 32)) * 31 + filterHash;
+        }
+    }
+
+    /**
+     * The methods are not thread safe, all access has to be synchronized on the cache.
+     */
+    private interface Cache {
+        QueryResult get(CacheKey key);
+
+        void put(CacheKey key, QueryResult value);
+
+        Iterator<Map.Entry<CacheKey, QueryResult>> entries();
+
+        int size();
+
+        void clear();
+    }
+
+    private static class LRUCache implements Cache {
+        private final LinkedHashMap<CacheKey, QueryResult> map;
+
+        LRUCache(final int capacity) {
+            map = new LinkedHashMap<CacheKey, QueryResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, QueryResult> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        @Override
+        public QueryResult get(CacheKey key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(CacheKey key, QueryResult value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public Iterator<Map.Entry<CacheKey, QueryResult>> entries() {
+            return map.entrySet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * W-TinyLFU with an LRU window of 1% of the capacity and a segmented LRU as main area. The main
+     * area is split into a probation segment for entries which were admitted from the window and a
+     * protected segment of 80% for entries which were requested again in the main area. The
+     * frequencies are approximated by a count-min sketch which is halved periodically, so that old
+     * popularity fades out.
+     */
+    private static class TinyLFUCache implements Cache {
+        private final LinkedHashMap<CacheKey, QueryResult> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<CacheKey, QueryResult> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<CacheKey, QueryResult> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+        private final FrequencySketch sketch;
+
+        TinyLFUCache(int capacity) {
+            windowCapacity = Math.max(1, capacity / 100);
+            mainCapacity = Math.max(0, capacity - windowCapacity);
+            protectedCapacity = mainCapacity * 8 / 10;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        public QueryResult get(CacheKey key) {
+            sketch.increment(key.hashCode());
+            QueryResult value = window.get(key);
+            if (value != null)
+                return value;
+
+            value = protectedArea.get(key);
+            if (value != null)
+                return value;
+
+            value = probation.remove(key);
+            if (value != null) {
+                protectedArea.put(key, value);
+                if (protectedArea.size() > protectedCapacity) {
+                    Map.Entry<CacheKey, QueryResult> demoted = eldest(protectedArea);
+                    protectedArea.remove(demoted.getKey());
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public void put(CacheKey key, QueryResult value) {
+            if (window.containsKey(key) || probation.containsKey(key) || protectedArea.containsKey(key))
+                return;
+
+            window.put(key, value);
+            if (window.size() <= windowCapacity)
+                return;
+
+            Map.Entry<CacheKey, QueryResult> candidate = eldest(window);
+            window.remove(candidate.getKey());
+            if (probation.size() + protectedArea.size() < mainCapacity) {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+
+            LinkedHashMap<CacheKey, QueryResult> victimArea = probation.isEmpty() ? protectedArea : probation;
+            if (victimArea.isEmpty())
+                return;
+            Map.Entry<CacheKey, QueryResult> victim = eldest(victimArea);
+            if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+                victimArea.remove(victim.getKey());
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+        }
+
+        private static Map.Entry<CacheKey, QueryResult> eldest(LinkedHashMap<CacheKey, QueryResult> map) {
+            return map.entrySet().iterator().next();
+        }
+
+        @Override
+        public Iterator<Map.Entry<CacheKey, QueryResult>> entries() {
+            final List<Iterator<Map.Entry<CacheKey, QueryResult>>> iterators = new ArrayList<>(3);
+            iterators.add(window.entrySet().iterator());
+            iterators.add(probation.entrySet().iterator());
+            iterators.add(protectedArea.entrySet().iterator());
+            return new Iterator<Map.Entry<CacheKey, QueryResult>>() {
+                int current = 0;
+                Iterator<Map.Entry<CacheKey, QueryResult>> last;
+
+                @Override
+                public boolean hasNext() {
+                    while (current < iterators.size()) {
+                        if (iterators.get(current).hasNext())
+                            return true;
+                        current++;
+                    }
+                    return false;
+                }
+
+                @Override
+                public Map.Entry<CacheKey, QueryResult> next() {
+                    hasNext();
+                    last = iterators.get(Math.min(current, iterators.size() - 1));
+                    return last.next();
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null)
+                        throw new IllegalStateException("Call next before remove");
+                    last.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return window.size() + probation.size() + protectedArea.size();
+        }
+
+        @Override
+        public void clear() {
+            window.clear();
+            probation.clear();
+            protectedArea.clear();
+            sketch.clear();
+        }
+    }
+
+    /**
+     * A count-min sketch with four rows of 8 bit counters. After 10 times the capacity increments
+     * all counters are halved.
+     */
+    private static class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb3f6d4b5, 0x4c27a8e1, 0x7e3c1a55};
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            // 8 to 16 counters per entry in every row keep the estimates of rare keys close to their
+            // real frequency even for one-hit-wonder heavy workloads
+            int width = Integer.highestOneBit(Math.max(16, capacity - 1)) << 4;
+            rows = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(1, capacity);
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] != Byte.MAX_VALUE)
+                    rows[i][index]++;
+            }
+            if (++additions >= sampleSize)
+                reset();
+        }
+
+        int frequency(int hash) {
+            int min = Byte.MAX_VALUE;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        void clear() {
+            for (byte[] row : rows) {
+                Arrays.fill(row, (byte) 0);
+            }
+            additions = 0;
+        }
+    }
+}
@@ -18,12 +18,16 @@
 package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.predicates.IntPredicate;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHLongObjectHashMap;
 import com.graphhopper.coll.GHTBitSet;
 import com.graphhopper.geohash.SpatialKeyAlgo;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.*;
@@ -41,6 +45,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * This implementation implements an n-tree to get the closest node or edge from GPS coordinates.
@@ -55,6 +63,8 @@ import java.util.List;
 public class LocationIndexTree implements LocationIndex {
     // do not start with 0 as a positive value means leaf and a negative means "entry with subentries"
     static final int START_POINTER = 1;
+    // number of points of a batch lookup which are processed in one task and share the read tiles
+    private static final int BATCH_CHUNK_SIZE = 128;
     protected final Graph graph;
     final DataAccess dataAccess;
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -72,7 +82,12 @@ public class LocationIndexTree implements LocationIndex {
     private double deltaLat;
     private double deltaLon;
     private int initSizeLeafEntries = 4;
+    private int prepareThreads = 1;
     private boolean initialized = false;
+    // the bounds of the graph when the index was prepared, the graph can grow via addEdges
+    private BBox indexBounds;
+    // the first free int index after the stored tree
+    private int lastPointer;
     private static final Comparator<QueryResult> QR_COMPARATOR = new Comparator<QueryResult>() {
         @Override
         public int compare(QueryResult o1, QueryResult o2) {
@@ -128,14 +143,28 @@ public class LocationIndexTree implements LocationIndex {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to rasterize the edges and to write the tiles in prepareIndex.
+     */
+    public LocationIndexTree setPrepareThreads(int prepareThreads) {
+        if (prepareThreads < 1)
+            throw new IllegalArgumentException("At least one thread is necessary to prepare the location index but was " + prepareThreads);
+
+        this.prepareThreads = prepareThreads;
+        return this;
+    }
+
     void prepareAlgo() {
+        prepareAlgo(graph.getBounds());
+    }
+
+    private void prepareAlgo(BBox bounds) {
         // 0.1 meter should count as 'equal'
         equalNormedDelta = distCalc.calcNormalizedDist(0.1);
 
         // now calculate the necessary maxDepth d for our current bounds
         // if we assume a minimum resolution like 0.5km for a leaf-tile                
         // n^(depth/2) = toMeter(dLon) / minResolution
-        BBox bounds = graph.getBounds();
         if (graph.getNodes() == 0)
             throw new IllegalStateException("Cannot create location index of empty graph!");
 
@@ -176,6 +205,7 @@ public class LocationIndexTree implements LocationIndex {
         if (shiftSum > 64)
             throw new IllegalStateException("sum of all shifts does not fit into a long variable");
 
+        indexBounds = bounds.clone();
         keyAlgo = new SpatialKeyAlgo(shiftSum).bounds(bounds);
         parts = Math.round(Math.sqrt(parts));
         deltaLat = (bounds.maxLat - bounds.minLat) / parts;
@@ -221,8 +251,13 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     InMemConstructionIndex getPrepareInMemIndex() {
+        return getPrepareInMemIndex(true);
+    }
+
+    private InMemConstructionIndex getPrepareInMemIndex(boolean allEdges) {
         InMemConstructionIndex memIndex = new InMemConstructionIndex(entries[0]);
-        memIndex.prepare();
+        if (allEdges)
+            memIndex.prepare();
         return memIndex;
     }
 
@@ -265,7 +300,13 @@ public class LocationIndexTree implements LocationIndex {
                     + dataAccess.getHeader(1 * 4) + " vs. " + calcChecksum());
 
         setMinResolutionInMeter(dataAccess.getHeader(2 * 4));
-        prepareAlgo();
+        lastPointer = dataAccess.getHeader(3 * 4);
+        if (lastPointer > 0)
+            // use the stored bounds as the graph could have grown via addEdges
+            prepareAlgo(new BBox(Helper.intToDegree(dataAccess.getHeader(6 * 4)), Helper.intToDegree(dataAccess.getHeader(7 * 4)),
+                    Helper.intToDegree(dataAccess.getHeader(4 * 4)), Helper.intToDegree(dataAccess.getHeader(5 * 4))));
+        else
+            prepareAlgo();
         initialized = true;
         return true;
     }
@@ -275,6 +316,13 @@ public class LocationIndexTree implements LocationIndex {
         dataAccess.setHeader(0, MAGIC_INT);
         dataAccess.setHeader(1 * 4, calcChecksum());
         dataAccess.setHeader(2 * 4, minResolutionInMeter);
+        if (lastPointer > 0) {
+            dataAccess.setHeader(3 * 4, lastPointer);
+            dataAccess.setHeader(4 * 4, Helper.degreeToInt(indexBounds.minLat));
+            dataAccess.setHeader(5 * 4, Helper.degreeToInt(indexBounds.maxLat));
+            dataAccess.setHeader(6 * 4, Helper.degreeToInt(indexBounds.minLon));
+            dataAccess.setHeader(7 * 4, Helper.degreeToInt(indexBounds.maxLon));
+        }
 
         // saving space not necessary: dataAccess.trimTo((lastPointer + 1) * 4);
         dataAccess.flush();
@@ -287,31 +335,125 @@ public class LocationIndexTree implements LocationIndex {
 
         StopWatch sw = new StopWatch().start();
         prepareAlgo();
-        // in-memory preparation
-        InMemConstructionIndex inMem = getPrepareInMemIndex();
+        int size, leafs;
+        if (isTiledPreparationPossible()) {
+            dataAccess.create(64 * 1024);
+            TiledIndexBuilder builder = new TiledIndexBuilder();
+            try {
+                lastPointer = builder.build();
+                flush();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Problem while storing location index. " + Helper.getMemInfo(), ex);
+            }
+            size = builder.size;
+            leafs = builder.leafs;
+        } else {
+            // in-memory preparation
+            InMemConstructionIndex inMem = getPrepareInMemIndex();
 
-        // compact & store to dataAccess
-        dataAccess.create(64 * 1024);
-        try {
-            inMem.store(inMem.root, START_POINTER);
-            flush();
-        } catch (Exception ex) {
-            throw new IllegalStateException("Problem while storing location index. " + Helper.getMemInfo(), ex);
+            // compact & store to dataAccess
+            dataAccess.create(64 * 1024);
+            try {
+                lastPointer = inMem.store(inMem.root, START_POINTER);
+                flush();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Problem while storing location index. " + Helper.getMemInfo(), ex);
+            }
+            size = inMem.size;
+            leafs = inMem.leafs;
         }
-        float entriesPerLeaf = (float) inMem.size / inMem.leafs;
+        float entriesPerLeaf = (float) size / leafs;
         initialized = true;
         logger.info("location index created in " + sw.stop().getSeconds()
-                + "s, size:" + Helper.nf(inMem.size)
-                + ", leafs:" + Helper.nf(inMem.leafs)
+                + "s, size:" + Helper.nf(size)
+                + ", leafs:" + Helper.nf(leafs)
                 + ", precision:" + minResolutionInMeter
                 + ", depth:" + entries.length
                 + ", checksum:" + calcChecksum()
                 + ", entries:" + Arrays.toString(entries)
-                + ", entriesPerLeaf:" + entriesPerLeaf);
+                + ", entriesPerLeaf:" + entriesPerLeaf
+                + (prepareThreads > 1 ? ", threads:" + prepareThreads : ""));
+
+        return this;
+    }
+
+    private boolean isTiledPreparationPossible() {
+        // the bits of the spatial key below the top-level tiles and the node have to fit into a long
+        return keyAlgo.getBits() - shifts[0] + TiledIndexBuilder.NODE_BITS <= 63;
+    }
 
+    /**
+     * Adds the specified edges of the graph to the prepared index without a full rebuild, e.g.
+     * after the graph was updated. Only the leafs of the tiles these edges cross are rewritten and
+     * appended to the end of the index, the other tiles stay untouched. The bounds of the index are
+     * not changed, i.e. edges outside of them are stored in the border tiles.
+     */
+    public LocationIndexTree addEdges(IntIndexedContainer edges) {
+        if (!initialized)
+            throw new IllegalStateException("Call prepareIndex or loadExisting before adding edges");
+        if (lastPointer <= 0)
+            throw new IllegalStateException("Cannot add edges to an index created by an older version, prepare it again");
+
+        InMemConstructionIndex inMem = getPrepareInMemIndex(false);
+        for (int i = 0; i < edges.size(); i++) {
+            inMem.addEdge(graph.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE));
+        }
+        mergeTree(inMem.root, START_POINTER, 0);
         return this;
     }
 
+    /**
+     * Merges the in-memory tree entry into the stored tree entry at the specified int index.
+     */
+    private void mergeTree(InMemTreeEntry treeEntry, int intIndex, int depth) {
+        for (int subIndex = 0; subIndex < treeEntry.subEntries.length; subIndex++) {
+            InMemEntry subEntry = treeEntry.subEntries[subIndex];
+            if (subEntry == null)
+                continue;
+
+            long refPointer = (long) (intIndex + subIndex) * 4;
+            int value = dataAccess.getInt(refPointer);
+            if (subEntry.isLeaf()) {
+                GHIntHashSet set = new GHIntHashSet();
+                if (value > 0)
+                    fillIDs(0, value, set, depth + 1);
+                for (IntCursor cursor : ((InMemLeafEntry) subEntry).getResults()) {
+                    set.add(cursor.value);
+                }
+                dataAccess.setInt(refPointer, appendLeaf(set));
+            } else {
+                if (value <= 0) {
+                    value = lastPointer;
+                    lastPointer += entries[depth + 1];
+                    dataAccess.ensureCapacity((long) lastPointer * 4);
+                    for (int i = value; i < lastPointer; i++) {
+                        dataAccess.setInt((long) i * 4, 0);
+                    }
+                    dataAccess.setInt(refPointer, value);
+                }
+                mergeTree((InMemTreeEntry) subEntry, value, depth + 1);
+            }
+        }
+    }
+
+    private int appendLeaf(GHIntHashSet set) {
+        int[] ids = set.toArray();
+        Arrays.sort(ids);
+        int leafPointer = lastPointer;
+        dataAccess.ensureCapacity((long) (leafPointer + ids.length + 1) * 4);
+        if (ids.length == 1) {
+            dataAccess.setInt((long) leafPointer * 4, -ids[0] - 1);
+            lastPointer++;
+        } else {
+            for (int i = 0; i < ids.length; i++) {
+                dataAccess.setInt((long) (leafPointer + 1 + i) * 4, ids[i]);
+            }
+            lastPointer = leafPointer + 1 + ids.length;
+            dataAccess.setInt((long) leafPointer * 4, lastPointer);
+        }
+        return leafPointer;
+    }
+
     int calcChecksum() {
         // do not include the edges as we could get problem with CHGraph due to shortcuts
         // ^ graph.getAllEdges().count();
@@ -456,24 +598,32 @@ public class LocationIndexTree implements LocationIndex {
      */
     public final boolean findNetworkEntries(double queryLat, double queryLon,
                                             GHIntHashSet foundEntries, int iteration) {
+        return findNetworkEntries(queryLat, queryLon, foundEntries, iteration, null);
+    }
+
+    /**
+     * @param tiles if not null the entries of every read tile are stored in and reused from this map
+     */
+    private boolean findNetworkEntries(double queryLat, double queryLon,
+                                       GHIntHashSet foundEntries, int iteration, GHLongObjectHashMap<int[]> tiles) {
         // find entries in border of searchbox
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
             double subqueryLat = queryLat + yreg * deltaLat;
             double subqueryLonA = queryLon - iteration * deltaLon;
             double subqueryLonB = queryLon + iteration * deltaLon;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA, tiles);
 
             // minor optimization for iteration == 0
             if (iteration > 0)
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB);
+                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB, tiles);
         }
 
         for (int xreg = -iteration + 1; xreg <= iteration - 1; xreg++) {
             double subqueryLon = queryLon + xreg * deltaLon;
             double subqueryLatA = queryLat - iteration * deltaLat;
             double subqueryLatB = queryLat + iteration * deltaLat;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon);
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon, tiles);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon, tiles);
         }
 
         if (iteration % 2 != 0) {
@@ -515,16 +665,119 @@ public class LocationIndexTree implements LocationIndex {
         fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
     }
 
+    private void findNetworkEntriesSingleRegion(GHIntHashSet storedNetworkEntryIds, double queryLat, double queryLon,
+                                                GHLongObjectHashMap<int[]> tiles) {
+        if (tiles == null) {
+            findNetworkEntriesSingleRegion(storedNetworkEntryIds, queryLat, queryLon);
+            return;
+        }
+
+        long keyPart = createReverseKey(queryLat, queryLon);
+        int[] tileEntries = tiles.get(keyPart);
+        if (tileEntries == null) {
+            GHIntHashSet set = new GHIntHashSet();
+            fillIDs(keyPart, START_POINTER, set, 0);
+            tileEntries = set.toArray();
+            tiles.put(keyPart, tileEntries);
+        }
+        storedNetworkEntryIds.addAll(tileEntries);
+    }
+
     @Override
     public QueryResult findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
 
-        GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+        return findClosest(queryLat, queryLon, edgeFilter, null, new GHIntHashSet(), new GHIntHashSet());
+    }
+
+    /**
+     * This method returns the closest QueryResult for every specified point with the same semantics
+     * as findClosest. The points are processed in the order of their spatial key, so that
+     * consecutive lookups mostly read the same tiles and the entries of a tile are read only once
+     * per chunk of points. If a pool is specified the chunks are processed in parallel, then the
+     * edgeFilter needs to be thread safe.
+     *
+     * @param pool the pool to process the chunks or null to process them in the calling thread
+     * @return the results in the order of the specified points
+     */
+    public QueryResult[] findClosest(final List<GHPoint> points, final EdgeFilter edgeFilter, ForkJoinPool pool) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        final long[] keys = new long[points.size()];
+        final Integer[] order = new Integer[points.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyAlgo.encode(points.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(keys[o1], keys[o2]);
+            }
+        });
+
+        final QueryResult[] results = new QueryResult[points.size()];
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int start = 0; start < order.length; start += BATCH_CHUNK_SIZE) {
+            final int from = start;
+            final int to = Math.min(order.length, start + BATCH_CHUNK_SIZE);
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    GHLongObjectHashMap<int[]> tiles = new GHLongObjectHashMap<>();
+                    // the sets are cleared for every point and search iteration
+                    GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+                    GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
+                    for (int i = from; i < to; i++) {
+                        GHPoint point = points.get(order[i]);
+                        results[order[i]] = findClosest(point.lat, point.lon, edgeFilter, tiles,
+                                allCollectedEntryIds, storedNetworkEntryIds);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        invokeAll(pool, tasks);
+        return results;
+    }
+
+    /**
+     * Runs the tasks in the specified pool or in the calling thread if the pool is null.
+     */
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Object>> tasks) {
+        try {
+            if (pool == null) {
+                for (Callable<Object> task : tasks) {
+                    task.call();
+                }
+            } else {
+                for (Future<Object> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private QueryResult findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter,
+                                    GHLongObjectHashMap<int[]> tiles, GHIntHashSet allCollectedEntryIds,
+                                    GHIntHashSet storedNetworkEntryIds) {
+        allCollectedEntryIds.clear();
         final QueryResult closestMatch = new QueryResult(queryLat, queryLon);
         for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
-            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration);
+            storedNetworkEntryIds.clear();
+            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration, tiles);
             storedNetworkEntryIds.removeAll(allCollectedEntryIds);
             allCollectedEntryIds.addAll(storedNetworkEntryIds);
 
@@ -789,24 +1042,7 @@ public class LocationIndexTree implements LocationIndex {
             final EdgeIterator allIter = graph.getAllEdges();
             try {
                 while (allIter.next()) {
-                    int nodeA = allIter.getBaseNode();
-                    int nodeB = allIter.getAdjNode();
-                    double lat1 = nodeAccess.getLatitude(nodeA);
-                    double lon1 = nodeAccess.getLongitude(nodeA);
-                    double lat2;
-                    double lon2;
-                    PointList points = allIter.fetchWayGeometry(0);
-                    int len = points.getSize();
-                    for (int i = 0; i < len; i++) {
-                        lat2 = points.getLatitude(i);
-                        lon2 = points.getLongitude(i);
-                        addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
-                        lat1 = lat2;
-                        lon1 = lon2;
-                    }
-                    lat2 = nodeAccess.getLatitude(nodeB);
-                    lon2 = nodeAccess.getLongitude(nodeB);
-                    addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
+                    addEdge(allIter);
                 }
             } catch (Exception ex) {
                 logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
@@ -814,6 +1050,27 @@ public class LocationIndexTree implements LocationIndex {
             }
         }
 
+        void addEdge(EdgeIteratorState edge) {
+            int nodeA = edge.getBaseNode();
+            int nodeB = edge.getAdjNode();
+            double lat1 = nodeAccess.getLatitude(nodeA);
+            double lon1 = nodeAccess.getLongitude(nodeA);
+            double lat2;
+            double lon2;
+            PointList points = edge.fetchWayGeometry(0);
+            int len = points.getSize();
+            for (int i = 0; i < len; i++) {
+                lat2 = points.getLatitude(i);
+                lon2 = points.getLongitude(i);
+                addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
+                lat1 = lat2;
+                lon1 = lon2;
+            }
+            lat2 = nodeAccess.getLatitude(nodeB);
+            lon2 = nodeAccess.getLongitude(nodeB);
+            addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
+        }
+
         void addNode(final int nodeA, final int nodeB,
                      final double lat1, final double lon1,
                      final double lat2, final double lon2) {
@@ -829,7 +1086,7 @@ public class LocationIndexTree implements LocationIndex {
 
             if (!distCalc.isCrossBoundary(lon1, lon2)) {
                 BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter,
-                        graph.getBounds().minLat, graph.getBounds().minLon,
+                        indexBounds.minLat, indexBounds.minLon,
                         deltaLat, deltaLon);
             }
         }
@@ -948,6 +1205,239 @@ public class LocationIndexTree implements LocationIndex {
         }
     }
 
+    /**
+     * Creates the same layout as InMemConstructionIndex.store without an object per tree entry. The
+     * rasterized points are packed into a long of the position of their leaf in the tree and the
+     * node, and collected per top-level tile. Every tile is then sorted and written into its own
+     * region of the dataAccess. The rasterization is split by edges and the writing by tiles, both
+     * run with prepareThreads.
+     */
+    class TiledIndexBuilder {
+        // the lowest bits of a packed entry hold the node
+        private static final int NODE_BITS = 31;
+        private final int tileCount = entries[0];
+        // the number of bits of the leaf position below the specified depth
+        private final int[] lowerBits = new int[entries.length];
+        int size;
+        int leafs;
+
+        TiledIndexBuilder() {
+            for (int depth = entries.length - 2; depth >= 0; depth--) {
+                lowerBits[depth] = lowerBits[depth + 1] + shifts[depth + 1];
+            }
+        }
+
+        int build() {
+            ForkJoinPool pool = prepareThreads > 1 ? new ForkJoinPool(prepareThreads) : null;
+            try {
+                final LongArrayList[][] collected = new LongArrayList[prepareThreads][];
+                List<Callable<Object>> tasks = new ArrayList<>(prepareThreads);
+                for (int t = 0; t < prepareThreads; t++) {
+                    final int offset = t;
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            collected[offset] = collect(offset);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                final long[][] tiles = new long[tileCount][];
+                tasks.clear();
+                for (int tile = 0; tile < tileCount; tile++) {
+                    final int currentTile = tile;
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            tiles[currentTile] = sortTile(collected, currentTile);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool, tasks);
+
+                // the size of the tiles determines where they start
+                int intIndex = START_POINTER + tileCount;
+                final int[] tileStarts = new int[tileCount];
+                for (int tile = 0; tile < tileCount; tile++) {
+                    if (tiles[tile].length == 0)
+                        continue;
+                    tileStarts[tile] = intIndex;
+                    intIndex = store(tiles[tile], 0, tiles[tile].length, 1, intIndex, false);
+                }
+                dataAccess.ensureCapacity((long) (intIndex + 1) * 4);
+
+                tasks.clear();
+                for (int tile = 0; tile < tileCount; tile++) {
+                    if (tiles[tile].length == 0)
+                        continue;
+                    dataAccess.setInt((long) (START_POINTER + tile) * 4, tileStarts[tile]);
+                    final int currentTile = tile;
+                    tasks.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            store(tiles[currentTile], 0, tiles[currentTile].length, 1, tileStarts[currentTile], true);
+                            tiles[currentTile] = null;
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool, tasks);
+                return intIndex;
+            } finally {
+                if (pool != null)
+                    pool.shutdownNow();
+            }
+        }
+
+        /**
+         * Rasterizes every edge with edge % prepareThreads == offset.
+         */
+        private LongArrayList[] collect(int offset) {
+            TileEmitter emitter = new TileEmitter();
+            AllEdgesIterator allIter = graph.getAllEdges();
+            while (allIter.next()) {
+                if (allIter.getEdge() % prepareThreads != offset)
+                    continue;
+
+                emitter.node = allIter.getBaseNode();
+                double lat1 = nodeAccess.getLatitude(emitter.node);
+                double lon1 = nodeAccess.getLongitude(emitter.node);
+                PointList points = allIter.fetchWayGeometry(0);
+                for (int i = 0; i < points.getSize(); i++) {
+                    double lat2 = points.getLatitude(i);
+                    double lon2 = points.getLongitude(i);
+                    emitter.addSegment(lat1, lon1, lat2, lon2);
+                    lat1 = lat2;
+                    lon1 = lon2;
+                }
+                int adjNode = allIter.getAdjNode();
+                emitter.addSegment(lat1, lon1, nodeAccess.getLatitude(adjNode), nodeAccess.getLongitude(adjNode));
+            }
+            return emitter.tiles;
+        }
+
+        /**
+         * Merges the collected entries of the tile and removes duplicates.
+         */
+        private long[] sortTile(LongArrayList[][] collected, int tile) {
+            int length = 0;
+            for (LongArrayList[] lists : collected) {
+                if (lists[tile] != null)
+                    length += lists[tile].size();
+            }
+            long[] merged = new long[length];
+            int index = 0;
+            for (LongArrayList[] lists : collected) {
+                if (lists[tile] != null) {
+                    System.arraycopy(lists[tile].buffer, 0, merged, index, lists[tile].size());
+                    index += lists[tile].size();
+                    lists[tile] = null;
+                }
+            }
+            Arrays.sort(merged);
+            int unique = 0;
+            for (int i = 0; i < merged.length; i++) {
+                if (i == 0 || merged[i] != merged[i - 1])
+                    merged[unique++] = merged[i];
+            }
+            return unique == merged.length ? merged : Arrays.copyOf(merged, unique);
+        }
+
+        /**
+         * Stores the sorted entries [from, to) which share the position above the specified depth
+         * at the specified int index. With write=false only the size is calculated.
+         *
+         * @return the int index after the stored entries
+         */
+        private int store(long[] sorted, int from, int to, int depth, int intIndex, boolean write) {
+            if (depth == entries.length) {
+                int len = to - from;
+                if (!write) {
+                    size += len;
+                    leafs++;
+                }
+                if (len == 1) {
+                    // less disc space for single entries
+                    if (write)
+                        dataAccess.setInt((long) intIndex * 4, -getNode(sorted[from]) - 1);
+                    return intIndex + 1;
+                }
+
+                int maxIndex = intIndex + 1 + len;
+                if (write) {
+                    for (int i = 0; i < len; i++) {
+                        dataAccess.setInt((long) (intIndex + 1 + i) * 4, getNode(sorted[from + i]));
+                    }
+                    dataAccess.setInt((long) intIndex * 4, maxIndex);
+                }
+                return maxIndex;
+            }
+
+            int refIndex = intIndex;
+            intIndex += entries[depth];
+            for (int i = from; i < to; ) {
+                int subIndex = getSubIndex(sorted[i], depth);
+                int j = i + 1;
+                while (j < to && getSubIndex(sorted[j], depth) == subIndex) {
+                    j++;
+                }
+                if (write)
+                    dataAccess.setInt((long) (refIndex + subIndex) * 4, intIndex);
+                intIndex = store(sorted, i, j, depth + 1, intIndex, write);
+                i = j;
+            }
+            return intIndex;
+        }
+
+        private int getSubIndex(long packed, int depth) {
+            return (int) ((packed >>> (NODE_BITS + lowerBits[depth])) & bitmasks[depth]);
+        }
+
+        private int getNode(long packed) {
+            return (int) (packed & ((1L << NODE_BITS) - 1));
+        }
+
+        private class TileEmitter implements PointEmitter {
+            final LongArrayList[] tiles = new LongArrayList[tileCount];
+            int node;
+            int lastTile = -1;
+            long lastPacked = -1;
+
+            void addSegment(double lat1, double lon1, double lat2, double lon2) {
+                if (!distCalc.isCrossBoundary(lon1, lon2)) {
+                    BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, this,
+                            indexBounds.minLat, indexBounds.minLon,
+                            deltaLat, deltaLon);
+                }
+            }
+
+            @Override
+            public void set(double lat, double lon) {
+                long keyPart = createReverseKey(keyAlgo.encode(lat, lon));
+                int tile = (int) (bitmasks[0] & keyPart);
+                keyPart >>>= shifts[0];
+                // the position of the leaf below the tile, the index of a lower depth gets the lower bits
+                long position = 0;
+                for (int depth = 1; depth < entries.length; depth++) {
+                    position = (position << shifts[depth]) | (bitmasks[depth] & keyPart);
+                    keyPart >>>= shifts[depth];
+                }
+                long packed = (position << NODE_BITS) | node;
+                // consecutive points of an edge are often in the same tile
+                if (packed == lastPacked && tile == lastTile)
+                    return;
+                lastTile = tile;
+                lastPacked = packed;
+                if (tiles[tile] == null)
+                    tiles[tile] = new LongArrayList();
+                tiles[tile].add(packed);
+            }
+        }
+    }
+
     /**
      * Make it possible to collect nearby location also for other purposes.
      */
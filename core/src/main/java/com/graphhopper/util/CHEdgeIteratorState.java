@@ -59,4 +59,24 @@ public interface CHEdgeIteratorState extends EdgeIteratorState {
      * Sets the weight calculated from Weighting.calcWeight, only applicable if isShortcut is true.
      */
     CHEdgeIteratorState setWeight(double weight);
+
+    /**
+     * Returns the first original edge of this edge in the direction from base to adjacent node. For
+     * a normal edge this is the edge itself. Shortcuts store it only in an edge-based CHGraph as it
+     * is necessary to calculate the turn costs at the start of the shortcut.
+     */
+    int getOrigEdgeFirst();
+
+    /**
+     * Returns the last original edge of this edge in the direction from base to adjacent node.
+     *
+     * @see #getOrigEdgeFirst()
+     */
+    int getOrigEdgeLast();
+
+    /**
+     * Sets the original edges at the start and the end of this shortcut in the direction from base
+     * to adjacent node. Only applicable for shortcuts of an edge-based CHGraph.
+     */
+    CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge);
 }
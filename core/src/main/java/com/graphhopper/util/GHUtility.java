@@ -23,11 +23,13 @@ import com.carrotsearch.hppc.LongIndexedContainer;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.coll.GHIntArrayList;
+import com.graphhopper.geohash.HilbertKeyAlgo;
 import com.graphhopper.routing.util.AllCHEdgesIterator;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.storage.*;
+import com.graphhopper.util.shapes.BBox;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -209,6 +211,68 @@ public class GHUtility {
         return createSortedGraph(g, sortedGraph, list);
     }
 
+    /**
+     * Sorts the nodes along a Hilbert curve through their coordinates and the edges by their
+     * smaller node ID. In contrast to sortDFS nearby nodes get nearby IDs regardless of the road
+     * network, so that the nodes and edges of one area end up in few pages of the storage. The
+     * geometry, names and additional fields of the edges and the turn costs are copied too. The
+     * sorted graph needs a separate extension instance, see newStorage.
+     */
+    public static Graph sortHilbert(Graph g, Graph sortedGraph) {
+        int nodes = g.getNodes();
+        BBox bounds = g.getBounds();
+        // 15 bits per axis are enough for the order, nodes of one cell keep their previous order
+        HilbertKeyAlgo keyAlgo = new HilbertKeyAlgo(30);
+        if (bounds.isValid())
+            keyAlgo.bounds(bounds);
+
+        NodeAccess na = g.getNodeAccess();
+        long[] keys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            keys[node] = keyAlgo.encode(na.getLatitude(node), na.getLongitude(node)) << 32 | node;
+        }
+        Arrays.sort(keys);
+
+        GHIntArrayList oldToNewNodes = new GHIntArrayList(nodes);
+        oldToNewNodes.fill(nodes, -1);
+        NodeAccess sna = sortedGraph.getNodeAccess();
+        for (int newNode = 0; newNode < nodes; newNode++) {
+            int old = (int) keys[newNode];
+            oldToNewNodes.set(old, newNode);
+            if (sna.is3D())
+                sna.setNode(newNode, na.getLatitude(old), na.getLongitude(old), na.getElevation(old));
+            else
+                sna.setNode(newNode, na.getLatitude(old), na.getLongitude(old));
+        }
+
+        AllEdgesIterator allEdges = g.getAllEdges();
+        GHIntArrayList oldToNewEdges = new GHIntArrayList(allEdges.getMaxId());
+        oldToNewEdges.fill(allEdges.getMaxId(), -1);
+        EdgeExplorer explorer = g.createEdgeExplorer();
+        for (int newNode = 0; newNode < nodes; newNode++) {
+            EdgeIterator iter = explorer.setBaseNode((int) keys[newNode]);
+            while (iter.next()) {
+                // add every edge only once at the node with the smaller new ID
+                if (oldToNewNodes.get(iter.getAdjNode()) < newNode)
+                    continue;
+
+                // use the stored direction of the edge as copyPropertiesTo uses the stored flags
+                EdgeIteratorState edge = g.getEdgeIteratorState(iter.getEdge(), Integer.MIN_VALUE);
+                EdgeIteratorState newEdge = sortedGraph.edge(oldToNewNodes.get(edge.getBaseNode()), oldToNewNodes.get(edge.getAdjNode()));
+                edge.copyPropertiesTo(newEdge);
+                oldToNewEdges.set(edge.getEdge(), newEdge.getEdge());
+            }
+        }
+
+        if (g.getExtension() instanceof TurnCostExtension) {
+            if (!(sortedGraph.getExtension() instanceof TurnCostExtension) || sortedGraph.getExtension() == g.getExtension())
+                throw new IllegalArgumentException("The sorted graph needs its own TurnCostExtension");
+
+            ((TurnCostExtension) g.getExtension()).copyTo((TurnCostExtension) sortedGraph.getExtension(), oldToNewNodes, oldToNewEdges);
+        }
+        return sortedGraph;
+    }
+
     static Graph createSortedGraph(Graph fromGraph, Graph toSortedGraph, final IntIndexedContainer oldToNewNodeList) {
         AllEdgesIterator eIter = fromGraph.getAllEdges();
         while (eIter.next()) {
@@ -279,9 +343,13 @@ public class GHUtility {
     public static GraphHopperStorage newStorage(GraphHopperStorage store) {
         Directory outdir = guessDirectory(store);
         boolean is3D = store.getNodeAccess().is3D();
+        // the extension is bound to the storage it was initialized with
+        GraphExtension ext = store.getExtension() instanceof TurnCostExtension
+                ? new TurnCostExtension() : store.getExtension();
 
         return new GraphHopperStorage(store.getCHWeightings(), outdir, store.getEncodingManager(),
-                is3D, store.getExtension()).
+                is3D, ext).
+                setCompressedGeometry(store.isCompressedGeometry()).
                 create(store.getNodes());
     }
 
@@ -494,5 +562,20 @@ public class GHUtility {
         public int getMergeStatus(long flags) {
             throw new UnsupportedOperationException("Not supported. Edge is empty.");
         }
+
+        @Override
+        public int getOrigEdgeFirst() {
+            throw new UnsupportedOperationException("Not supported. Edge is empty.");
+        }
+
+        @Override
+        public int getOrigEdgeLast() {
+            throw new UnsupportedOperationException("Not supported. Edge is empty.");
+        }
+
+        @Override
+        public CHEdgeIteratorState setFirstAndLastOrigEdges(int firstOrigEdge, int lastOrigEdge) {
+            throw new UnsupportedOperationException("Not supported. Edge is empty.");
+        }
     }
 }
@@ -40,6 +40,10 @@ public class Parameters {
          * one to many Dijkstra (not yet for edge based #394, not yet for CH)
          */
         public static final String DIJKSTRA_ONE_TO_MANY = "dijkstra_one_to_many";
+        /**
+         * one to all shortest path tree with a limit, e.g. for isochrones (not for edge based, not for CH)
+         */
+        public static final String SPT = "spt";
         /**
          * Unidirectional A* (not for CH)
          */
@@ -94,6 +98,22 @@ public class Parameters {
         public static final String EDGE_BASED = "edge_based";
         public static final String MAX_VISITED_NODES = "max_visited_nodes";
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
+        /**
+         * Configures at start if the bidirectional Dijkstra reuses a pooled search state per thread
+         */
+        public static final String INIT_STATE_POOL = ROUTING_INIT_PREFIX + "state_pool";
+        /**
+         * Configures at start the number of cached route responses, 0 disables the cache
+         */
+        public static final String INIT_CACHE_SIZE = ROUTING_INIT_PREFIX + "cache.size";
+        /**
+         * Configures at start the time in seconds after which a cached route response expires
+         */
+        public static final String INIT_CACHE_TTL = ROUTING_INIT_PREFIX + "cache.ttl";
+        /**
+         * Configures at start the number of threads to calculate the legs of a route with via points
+         */
+        public static final String INIT_LEG_THREADS = ROUTING_INIT_PREFIX + "leg_threads";
         /**
          * if true the response will contain turn instructions
          */
@@ -126,6 +146,34 @@ public class Parameters {
         public static final String BLOCK_AREA = "block_area";
     }
 
+    /**
+     * Properties for the many-to-many calculation
+     */
+    public static final class Matrix {
+        /**
+         * Configures at start the maximum number of origins plus destinations per request.
+         */
+        public static final String INIT_MAX_LOCATIONS = ROUTING_INIT_PREFIX + "matrix.max_locations";
+    }
+
+    /**
+     * Properties for the isochrone calculation
+     */
+    public static final class Isochrone {
+        /**
+         * Configures at start the maximum number of buckets per request.
+         */
+        public static final String INIT_MAX_BUCKETS = ROUTING_INIT_PREFIX + "isochrone.max_buckets";
+        /**
+         * Configures at start the maximum number of start points per request.
+         */
+        public static final String INIT_MAX_POINTS = ROUTING_INIT_PREFIX + "isochrone.max_points";
+        /**
+         * Configures at start the resolution of the isochrone polygons in meter.
+         */
+        public static final String INIT_RESOLUTION = ROUTING_INIT_PREFIX + "isochrone.resolution";
+    }
+
     /**
      * Properties for routing with contraction hierarchies speedup
      */
@@ -144,6 +192,11 @@ public class Parameters {
          * routing errors.
          */
         public static final String FORCE_HEADING = "ch.force_heading";
+        /**
+         * The property name in HintsMap to disable the stall-on-demand of the CH query, e.g. to compare the count
+         * of visited nodes. Enabled by default.
+         */
+        public static final String STALL_ON_DEMAND = "ch.stall_on_demand";
     }
 
     /**
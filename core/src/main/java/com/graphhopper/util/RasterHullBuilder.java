@@ -0,0 +1,191 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Creates polygons around a set of points by marking the cells of a raster which contain at least
+ * one point and tracing the outer boundary of the marked cells. The result is a list of closed
+ * rings, one per connected area, holes are ignored. Points can be added after calling build, e.g.
+ * for nested isochrones.
+ * <p>
+ * This class is not thread safe but can be reused via clear.
+ */
+public class RasterHullBuilder {
+    // the raster is coarsened if it would be bigger
+    private static final int MAX_CELLS = 4_000_000;
+    private static final double METERS_PER_DEGREE = DistanceCalcEarth.C / 360;
+    // directions of the boundary edges, the marked cells are always on the left side
+    private static final int EAST = 0, NORTH = 1, WEST = 2, SOUTH = 3;
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+    private final double resolution;
+    private double[] lats = new double[64];
+    private double[] lons = new double[64];
+    private int size;
+
+    /**
+     * @param resolution the approximate size of a raster cell in meters
+     */
+    public RasterHullBuilder(double resolution) {
+        if (resolution <= 0)
+            throw new IllegalArgumentException("Resolution has to be positive but was " + resolution);
+        this.resolution = resolution;
+    }
+
+    public RasterHullBuilder clear() {
+        size = 0;
+        return this;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public RasterHullBuilder addPoint(double lat, double lon) {
+        if (size == lats.length) {
+            lats = Arrays.copyOf(lats, size * 2);
+            lons = Arrays.copyOf(lons, size * 2);
+        }
+        lats[size] = lat;
+        lons[size] = lon;
+        size++;
+        return this;
+    }
+
+    /**
+     * Adds points along the specified line so that every cell crossed by it is marked.
+     */
+    public RasterHullBuilder addLine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = (lat2 - lat1) * METERS_PER_DEGREE;
+        double dLon = (lon2 - lon1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat1));
+        int steps = (int) (2 * Math.sqrt(dLat * dLat + dLon * dLon) / resolution);
+        addPoint(lat1, lon1);
+        for (int i = 1; i <= steps; i++) {
+            double factor = (double) i / (steps + 1);
+            addPoint(lat1 + (lat2 - lat1) * factor, lon1 + (lon2 - lon1) * factor);
+        }
+        return addPoint(lat2, lon2);
+    }
+
+    /**
+     * @return the closed outer rings of all areas containing the points added so far
+     */
+    public List<PointList> build() {
+        List<PointList> rings = new ArrayList<>();
+        if (size == 0)
+            return rings;
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+
+        double cellLat = resolution / METERS_PER_DEGREE;
+        double cellLon = cellLat / Math.max(0.01, Math.cos(Math.toRadians((minLat + maxLat) / 2)));
+        int width, height;
+        while (true) {
+            // one empty cell on every side avoids boundary checks
+            width = (int) ((maxLon - minLon) / cellLon) + 4;
+            height = (int) ((maxLat - minLat) / cellLat) + 4;
+            if ((long) width * height <= MAX_CELLS)
+                break;
+            cellLat *= 2;
+            cellLon *= 2;
+        }
+        // align the raster to multiples of the cell size, so that it does not depend on the points
+        minLat = Math.floor(minLat / cellLat) * cellLat;
+        minLon = Math.floor(minLon / cellLon) * cellLon;
+
+        BitSet cells = new BitSet(width * height);
+        for (int i = 0; i < size; i++) {
+            int x = (int) ((lons[i] - minLon) / cellLon) + 1;
+            int y = (int) ((lats[i] - minLat) / cellLat) + 1;
+            cells.set(y * width + x);
+        }
+
+        // every vertex of the raster stores the directions of the outgoing boundary edges as bits
+        int vertexWidth = width + 1;
+        byte[] vertices = new byte[vertexWidth * (height + 1)];
+        for (int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+            int x = cell % width, y = cell / width;
+            if (!cells.get(cell - width))
+                vertices[y * vertexWidth + x] |= 1 << EAST;
+            if (!cells.get(cell + 1))
+                vertices[y * vertexWidth + x + 1] |= 1 << NORTH;
+            if (!cells.get(cell + width))
+                vertices[(y + 1) * vertexWidth + x + 1] |= 1 << WEST;
+            if (!cells.get(cell - 1))
+                vertices[(y + 1) * vertexWidth + x] |= 1 << SOUTH;
+        }
+
+        for (int start = 0; start < vertices.length; start++) {
+            // every ring has a corner with only one outgoing edge, starting there guarantees that the
+            // ring ends when it comes back
+            if (Integer.bitCount(vertices[start]) != 1)
+                continue;
+
+            PointList ring = new PointList(16, false);
+            int vertex = start;
+            int dir = Integer.numberOfTrailingZeros(vertices[start]);
+            int prevDir = -1;
+            long area = 0;
+            while (true) {
+                vertices[vertex] &= ~(1 << dir);
+                int x = vertex % vertexWidth, y = vertex / vertexWidth;
+                if (dir != prevDir)
+                    ring.add(minLat + (y - 1) * cellLat, minLon + (x - 1) * cellLon);
+
+                // shoelace formula, counter clockwise rings have a positive area
+                area += (long) x * (y + DY[dir]) - (long) (x + DX[dir]) * y;
+                vertex += DX[dir] + DY[dir] * vertexWidth;
+                prevDir = dir;
+                dir = nextDirection(vertices[vertex], dir);
+                if (dir < 0)
+                    break;
+            }
+
+            // the left turn is preferred which separates cells that touch only diagonally, so
+            // that the outer rings are counter clockwise and holes are clockwise
+            if (area > 0) {
+                ring.add(ring.getLatitude(0), ring.getLongitude(0));
+                rings.add(ring);
+            }
+        }
+        return rings;
+    }
+
+    private static int nextDirection(byte bits, int dir) {
+        int left = (dir + 1) & 3;
+        if ((bits & (1 << left)) != 0)
+            return left;
+        if ((bits & (1 << dir)) != 0)
+            return dir;
+        int right = (dir + 3) & 3;
+        if ((bits & (1 << right)) != 0)
+            return right;
+        return -1;
+    }
+}
@@ -189,4 +189,31 @@ public class GraphHopperAPITest {
 
         assertEquals(2, checkPointCounter.get());
     }
+
+    @Test
+    public void testRouteCacheIsStaleAfterGraphChange() {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        initGraph(graph);
+        graph.edge(1, 2, 10, true);
+
+        GraphHopper graphHopper = new GraphHopper().setStoreOnFlush(false).setEncodingManager(encodingManager).
+                setCHEnabled(false).setRouteCache(10, 0).loadGraph(graph);
+        GHResponse rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertEquals(1800, rsp.getBest().getTime());
+        rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertEquals(1800, rsp.getBest().getTime());
+        assertEquals(1, graphHopper.getRouteCache().getHits());
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("speed", 5);
+        graphHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox",
+                new BBox(10.399, 10.4, 42.0, 42.001), null, properties)));
+        assertEquals(1, graphHopper.getGraphVersion());
+
+        rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertEquals(8400, rsp.getBest().getTime());
+        assertEquals(1, graphHopper.getRouteCache().getHits());
+        assertEquals(2, graphHopper.getRouteCache().getMisses());
+        graphHopper.close();
+    }
 }
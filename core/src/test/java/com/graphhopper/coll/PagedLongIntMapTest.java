@@ -0,0 +1,142 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PagedLongIntMapTest {
+    @Test
+    public void testPutAndGet() {
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory());
+        assertEquals(-1, map.get(12));
+        assertEquals(-1, map.put(12, 3));
+        assertEquals(-1, map.put(10, 2));
+        assertEquals(-1, map.put(1_000_000, 5));
+        assertEquals(3, map.getSize());
+
+        assertEquals(2, map.get(10));
+        assertEquals(3, map.get(12));
+        assertEquals(5, map.get(1_000_000));
+        assertEquals(-1, map.get(11));
+        assertEquals(-1, map.get(1_000_001));
+        assertEquals(-1, map.get(50_000_000));
+
+        assertEquals(3, map.put(12, -7));
+        assertEquals(-7, map.get(12));
+        assertEquals(3, map.getSize());
+    }
+
+    @Test
+    public void testFullPage() {
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory());
+        // fill two pages backwards to move the values on every insert
+        for (int key = 511; key >= 0; key--) {
+            map.put(key, key * 3);
+        }
+        assertEquals(512, map.getSize());
+        for (int key = 0; key < 512; key++) {
+            assertEquals(key * 3, map.get(key));
+        }
+        assertEquals(-1, map.get(512));
+    }
+
+    @Test
+    public void testFlushAndLoad() {
+        String location = "./target/tmp/paged-map";
+        Helper.removeDir(new File(location));
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory(location, true).create(), "map", -1).create();
+        for (int key = 0; key < 1000; key += 3) {
+            map.put(key, key + 1);
+        }
+        map.flush();
+        map.close();
+
+        map = new PagedLongIntMap(new RAMDirectory(location, true), "map", -1);
+        assertTrue(map.loadExisting());
+        assertEquals(334, map.getSize());
+        assertEquals(4, map.get(3));
+        assertEquals(-1, map.get(4));
+        // new blocks are appended after the loaded ones
+        map.put(1_000_000, 7);
+        map.put(4, 5);
+        assertEquals(7, map.get(1_000_000));
+        assertEquals(5, map.get(4));
+        assertEquals(1000, map.get(999));
+        map.close();
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testNegativeAndLargeKeys() {
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory());
+        map.put(-Long.MAX_VALUE, 1);
+        map.put(-5, 2);
+        map.put(Long.MAX_VALUE - 1, 3);
+        map.put(5, 4);
+        assertEquals(4, map.getSize());
+        assertEquals(1, map.get(-Long.MAX_VALUE));
+        assertEquals(2, map.get(-5));
+        assertEquals(3, map.get(Long.MAX_VALUE - 1));
+        assertEquals(4, map.get(5));
+        assertEquals(-1, map.get(-6));
+    }
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(0);
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory());
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // mostly dense keys like OSM node IDs but in random order
+            long key = rand.nextInt(300_000);
+            int value = rand.nextInt();
+            Integer old = expected.put(key, value);
+            assertEquals(old == null ? -1 : old, map.put(key, value));
+        }
+        assertEquals(expected.size(), map.getSize());
+        for (long key = 0; key < 300_000; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? -1 : value, map.get(key));
+        }
+    }
+
+    @Test
+    public void testMemoryUsage() {
+        Random rand = new Random(0);
+        PagedLongIntMap map = new PagedLongIntMap(new RAMDirectory());
+        GHLongIntBTree btree = new GHLongIntBTree(200);
+        // roughly every fifth OSM node is part of a way
+        for (long key = 0; key < 20_000_000L; key++) {
+            if (rand.nextInt(5) == 0) {
+                map.put(key, 1);
+                btree.put(key, 1);
+            }
+        }
+        assertEquals(btree.getSize(), map.getSize());
+        assertTrue(map.getMemoryUsage() + " vs. " + btree.getMemoryUsage(), map.getMemoryUsage() < btree.getMemoryUsage());
+    }
+}
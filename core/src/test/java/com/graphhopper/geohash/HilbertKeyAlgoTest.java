@@ -0,0 +1,69 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.geohash;
+
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HilbertKeyAlgoTest {
+    @Test
+    public void testEncode() {
+        // 4x4 cells with a side of 1
+        HilbertKeyAlgo algo = new HilbertKeyAlgo(4).setBounds(0, 4, 0, 4);
+        // lower left, upper left, upper right, lower right quadrant
+        assertEquals(0, algo.encode(0.5, 0.5));
+        assertEquals(1, algo.encode(0.5, 1.5));
+        assertEquals(2, algo.encode(1.5, 1.5));
+        assertEquals(3, algo.encode(1.5, 0.5));
+        assertEquals(4, algo.encode(2.5, 0.5));
+        assertEquals(8, algo.encode(2.5, 2.5));
+        assertEquals(15, algo.encode(0.5, 3.5));
+    }
+
+    @Test
+    public void testConsecutiveCellsAreNeighbors() {
+        HilbertKeyAlgo algo = new HilbertKeyAlgo(10).setBounds(0, 32, 0, 32);
+        GHPoint prev = new GHPoint();
+        GHPoint curr = new GHPoint();
+        algo.decode(0, prev);
+        for (long key = 1; key < 32 * 32; key++) {
+            algo.decode(key, curr);
+            double diff = Math.abs(curr.lat - prev.lat) + Math.abs(curr.lon - prev.lon);
+            assertEquals("key " + key, 1, diff, 1e-10);
+            prev.lat = curr.lat;
+            prev.lon = curr.lon;
+        }
+    }
+
+    @Test
+    public void testBijection() {
+        HilbertKeyAlgo algo = new HilbertKeyAlgo(32).setBounds(-180, 180, -90, 90);
+        GHPoint point = new GHPoint();
+        for (long key : new long[]{0, 1, 7, 1234567, 0xFFFFFFFFL, 0x12345678L}) {
+            algo.decode(key, point);
+            assertEquals(key, algo.encode(point));
+        }
+
+        long key = algo.encode(49.123, 11.567);
+        algo.decode(key, point);
+        assertEquals(49.123, point.lat, 1e-2);
+        assertEquals(11.567, point.lon, 1e-2);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.Helper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DijkstraBidirectionPooledTest extends AbstractRoutingAlgorithmTester {
+    // shared by all tests to make sure that outdated entries of previous searches are ignored
+    private static final BidirSearchStatePool POOL = new BidirSearchStatePool();
+
+    @Override
+    public RoutingAlgorithmFactory createFactory(GraphHopperStorage prepareGraph, AlgorithmOptions prepareOpts) {
+        return new RoutingAlgorithmFactory() {
+            @Override
+            public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+                return new RoutingAlgorithmFactorySimple().createAlgo(g,
+                        AlgorithmOptions.start(opts).statePool(POOL).build());
+            }
+        };
+    }
+
+    @Test
+    public void testPooledAlgorithmIsUsed() {
+        GraphHopperStorage graph = createTestStorage();
+        RoutingAlgorithm algo = createAlgo(graph);
+        assertEquals("dijkstrabi|pooled", algo.getName());
+    }
+
+    @Test
+    public void testStateIsReused() {
+        GraphHopperStorage graph = createTestStorage();
+        BidirSearchStatePool pool = new BidirSearchStatePool();
+        Path p = new DijkstraBidirectionPooled(graph, defaultOpts.getWeighting(), TraversalMode.NODE_BASED, pool, false).calcPath(0, 7);
+        assertEquals(Helper.createTList(0, 4, 5, 7), p.calcNodes());
+        // the pooled state is free again after the search finished
+        BidirSearchState state = pool.get(graph, defaultOpts.getWeighting(), false);
+        state.finish();
+        int capacity = state.getCapacity();
+        for (int i = 0; i < 10; i++) {
+            p = new DijkstraBidirectionPooled(graph, defaultOpts.getWeighting(), TraversalMode.NODE_BASED, pool, false).calcPath(0, 7 - i % 3);
+            assertTrue(p.isFound());
+            BidirSearchState tmp = pool.get(graph, defaultOpts.getWeighting(), false);
+            assertSame(state, tmp);
+            tmp.finish();
+        }
+        assertEquals(capacity, state.getCapacity());
+        assertTrue(pool.getMemoryUsage() > 0);
+
+        // a different key results in a different state
+        assertNotSame(state, pool.get(graph, defaultOpts.getWeighting(), true));
+    }
+
+    @Test
+    public void testUnusedAlgorithmDoesNotBlockState() {
+        GraphHopperStorage graph = createTestStorage();
+        BidirSearchStatePool pool = new BidirSearchStatePool();
+        // created but never executed
+        new DijkstraBidirectionPooled(graph, defaultOpts.getWeighting(), TraversalMode.NODE_BASED, pool, false);
+        BidirSearchState state = pool.get(graph, defaultOpts.getWeighting(), false);
+        state.finish();
+
+        new DijkstraBidirectionPooled(graph, defaultOpts.getWeighting(), TraversalMode.NODE_BASED, pool, false).calcPath(0, 7);
+        BidirSearchState tmp = pool.get(graph, defaultOpts.getWeighting(), false);
+        assertSame(state, tmp);
+
+        // a pooled state which is still in use is not handed out twice
+        assertNotSame(tmp, pool.get(graph, defaultOpts.getWeighting(), false));
+        tmp.finish();
+    }
+
+    @Test
+    public void testEdgeBasedNotSupported() {
+        try {
+            new DijkstraBidirectionPooled(createTestStorage(), defaultOpts.getWeighting(), TraversalMode.EDGE_BASED_2DIR,
+                    new BidirSearchStatePool(), false);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.Helper;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A graph with random speeds and one-ways for the tests which compare a speed-up technique with
+ * Dijkstra. The distances fit to the coordinates, so virtual edges of a QueryGraph do not change
+ * the weights. They are rounded to meters, which keeps the sums of shortcuts exact.
+ */
+public class RandomGraphFixture {
+    private final CarFlagEncoder encoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = new EncodingManager(encoder);
+    private final Weighting weighting = new FastestWeighting(encoder);
+    private final GraphHopperStorage ghStorage = new GraphHopperStorage(Collections.singletonList(weighting),
+            new RAMDirectory(), encodingManager, false, new GraphExtension.NoOpExtension()).create(1000);
+
+    public CarFlagEncoder getEncoder() {
+        return encoder;
+    }
+
+    public Weighting getWeighting() {
+        return weighting;
+    }
+
+    public GraphHopperStorage getGraph() {
+        return ghStorage;
+    }
+
+    public CHGraph getCHGraph() {
+        return ghStorage.getGraph(CHGraph.class, weighting);
+    }
+
+    /**
+     * Creates nodes at random coordinates. Every node is connected to an earlier node to avoid too
+     * many disconnected parts and to one more random node.
+     */
+    public void initRandomGraph(int nodes, long seed) {
+        Random rand = new Random(seed);
+        NodeAccess na = ghStorage.getNodeAccess();
+        for (int node = 0; node < nodes; node++) {
+            na.setNode(node, 50 + rand.nextDouble() / 10, 10 + rand.nextDouble() / 10);
+        }
+        for (int node = 1; node < nodes; node++) {
+            addEdge(rand, node, rand.nextInt(node));
+            addEdge(rand, node, rand.nextInt(nodes));
+        }
+    }
+
+    /**
+     * Creates a grid of size x size nodes with slightly moved coordinates where some edges are
+     * missing. A grid has small separators like a road network.
+     */
+    public void initRandomGrid(int size, long seed) {
+        Random rand = new Random(seed);
+        NodeAccess na = ghStorage.getNodeAccess();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                na.setNode(row * size + col, 50 + row * 0.001 + rand.nextDouble() * 0.0005, 10 + col * 0.001 + rand.nextDouble() * 0.0005);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (col + 1 < size && rand.nextInt(10) > 0)
+                    addEdge(rand, row * size + col, row * size + col + 1);
+                if (row + 1 < size && rand.nextInt(10) > 0)
+                    addEdge(rand, row * size + col, (row + 1) * size + col);
+            }
+        }
+    }
+
+    private void addEdge(Random rand, int from, int to) {
+        if (from == to)
+            return;
+
+        NodeAccess na = ghStorage.getNodeAccess();
+        double distance = Math.round(Helper.DIST_PLANE.calcDist(na.getLat(from), na.getLon(from), na.getLat(to), na.getLon(to)));
+        boolean oneWay = rand.nextInt(5) == 0;
+        long flags = encoder.setProperties(10 + rand.nextInt(12) * 10, true, !oneWay);
+        ghStorage.edge(from, to).setDistance(distance).setFlags(flags);
+    }
+
+    /**
+     * Freezes the graph and creates the node based CH preparation, which is not yet executed.
+     */
+    public PrepareContractionHierarchies createPreparation() {
+        ghStorage.freeze();
+        return new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT),
+                ghStorage, getCHGraph(), weighting, TraversalMode.NODE_BASED);
+    }
+
+    /**
+     * Compares the specified weight with the one of Dijkstra, an infinite weight means that there
+     * is no path.
+     *
+     * @return the path of Dijkstra to compare further values
+     */
+    public Path compareWithDijkstra(int from, int to, double weight) {
+        Path path = new Dijkstra(ghStorage, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+        String msg = from + "->" + to;
+        if (path.isFound())
+            assertEquals(msg, path.getWeight(), weight, 1e-1);
+        else
+            assertEquals(msg, Double.POSITIVE_INFINITY, weight, 0);
+        return path;
+    }
+
+    /**
+     * Compares weight, distance and time with Dijkstra. The distance and time are only compared if
+     * there is a path.
+     */
+    public void compareWithDijkstra(int from, int to, double weight, double distance, long time) {
+        Path path = compareWithDijkstra(from, to, weight);
+        if (!path.isFound())
+            return;
+
+        String msg = from + "->" + to;
+        assertEquals(msg, path.getDistance(), distance, 1e-1);
+        assertEquals(msg, path.getTime(), time, 10);
+    }
+}
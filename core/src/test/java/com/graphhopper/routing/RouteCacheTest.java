@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RouteCacheTest {
+
+    private GHResponse createResponse(double distance) {
+        GHResponse rsp = new GHResponse();
+        rsp.add(new PathWrapper().setDistance(distance));
+        return rsp;
+    }
+
+    @Test
+    public void testKey() {
+        RouteCache cache = new RouteCache(10, 0);
+        GHRequest req1 = new GHRequest(52.1, 13.1, 52.2, 13.2).setVehicle("car");
+        req1.getHints().put("instructions", false).put("calc_points", true);
+        GHRequest req2 = new GHRequest(52.1000000001, 13.1, 52.2, 13.2).setVehicle("car");
+        req2.getHints().put("calc_points", true).put("instructions", false);
+        assertEquals(cache.createKey(req1), cache.createKey(req2));
+
+        assertNotEquals(cache.createKey(req1), cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2).setVehicle("bike")));
+        assertNotEquals(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2)),
+                cache.createKey(new GHRequest(52.2, 13.2, 52.1, 13.1)));
+        assertNotEquals(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2)),
+                cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2, 90, Double.NaN)));
+        assertNotEquals(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2)),
+                cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2).setAlgorithm("astarbi")));
+
+        cache.setPrecision(3);
+        assertEquals(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2)),
+                cache.createKey(new GHRequest(52.1001, 13.1001, 52.2, 13.2)));
+    }
+
+    @Test
+    public void testGraphVersion() {
+        RouteCache cache = new RouteCache(10, 0);
+        String req = cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2));
+        assertNull(cache.get(req, 0));
+        cache.put(req, createResponse(100), 0);
+
+        GHResponse rsp = cache.get(req, 0);
+        assertEquals(100, rsp.getBest().getDistance(), 1e-6);
+        // modifying the returned response does not change the cached one
+        rsp.addError(new IllegalArgumentException("gpx"));
+        assertFalse(cache.get(req, 0).hasErrors());
+
+        assertNull(cache.get(req, 1));
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        RouteCache cache = new RouteCache(10, 0);
+        String req = cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2));
+        cache.put(req, new GHResponse().addError(new IllegalArgumentException("no route")), 0);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        RouteCache cache = new RouteCache(2, 0);
+        for (int i = 0; i < 3; i++) {
+            cache.put(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2 + i)), createResponse(i), 0);
+        }
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2)), 0));
+        assertNotNull(cache.get(cache.createKey(new GHRequest(52.1, 13.1, 52.2, 15.2)), 0));
+
+        cache = new RouteCache(2, 10);
+        String req = cache.createKey(new GHRequest(52.1, 13.1, 52.2, 13.2));
+        cache.put(req, createResponse(100), 0);
+        Thread.sleep(30);
+        assertNull(cache.get(req, 0));
+        assertEquals(1, cache.getEvictions());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.Helper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShortestPathTreeTest extends AbstractRoutingAlgorithmTester {
+    @Override
+    public RoutingAlgorithmFactory createFactory(GraphHopperStorage prepareGraph, AlgorithmOptions prepareOpts) {
+        return new RoutingAlgorithmFactory() {
+            @Override
+            public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+                return new ShortestPathTree(g, opts.getWeighting(), TraversalMode.NODE_BASED);
+            }
+        };
+    }
+
+    private ShortestPathTree createSPT(Graph graph) {
+        return new ShortestPathTree(graph, new ShortestWeighting(carEncoder), TraversalMode.NODE_BASED);
+    }
+
+    @Test
+    public void testDistanceLimit() {
+        GraphHopperStorage graph = createGHStorage(false);
+        DijkstraOneToManyTest.initGraphWeightLimit(graph);
+        ShortestPathTree spt = createSPT(graph).setDistanceLimit(2);
+        spt.search(0);
+        assertArrayEquals(new int[]{0, 1, 2, 5, 6, 7}, sorted(spt.getReachedNodes()));
+        assertEquals(2, spt.getDistance(6), 1e-6);
+        assertEquals(7, spt.getParent(6));
+        assertFalse(spt.isReached(3));
+        assertFalse(spt.isReached(4));
+
+        // reuse the arrays for a different start
+        spt.search(4);
+        assertArrayEquals(new int[]{2, 3, 4, 5, 6, 7}, sorted(spt.getReachedNodes()));
+        assertFalse(spt.isReached(0));
+        assertEquals(0, spt.getDistance(4), 1e-6);
+        assertEquals(-1, spt.getParent(4));
+    }
+
+    @Test
+    public void testTimeLimitAndBuckets() {
+        GraphHopperStorage graph = createGHStorage(false);
+        // 0-1-2-3-4 with 1km per edge
+        for (int i = 0; i < 4; i++) {
+            graph.edge(i, i + 1, 1000, true);
+        }
+        ShortestPathTree spt = new ShortestPathTree(graph, defaultOpts.getWeighting(), TraversalMode.NODE_BASED);
+        long timePerEdge = spt.calcPath(0, 1).getTime();
+        assertTrue(timePerEdge > 0);
+
+        spt.setTimeLimit(3 * timePerEdge);
+        spt.search(0);
+        assertEquals(4, spt.getReachedNodes().size());
+        assertEquals(3 * timePerEdge, spt.getTime(3));
+        assertFalse(spt.isReached(4));
+
+        List<IntArrayList> buckets = spt.createBuckets(3);
+        assertEquals(Helper.createTList(0, 1), buckets.get(0));
+        assertEquals(Helper.createTList(2), buckets.get(1));
+        assertEquals(Helper.createTList(3), buckets.get(2));
+    }
+
+    @Test
+    public void testSharedState() {
+        GraphHopperStorage graph = createGHStorage(false);
+        DijkstraOneToManyTest.initGraphWeightLimit(graph);
+        ShortestPathTreeState state = new ShortestPathTreeState(2);
+        ShortestPathTree spt = new ShortestPathTree(graph, new ShortestWeighting(carEncoder), TraversalMode.NODE_BASED, state);
+        spt.setDistanceLimit(2).search(0);
+        assertTrue(state.getCapacity() >= graph.getNodes());
+        assertTrue(spt.isReached(6));
+
+        // a later tree, e.g. of the next request, reuses the arrays without seeing the old entries
+        ShortestPathTree other = new ShortestPathTree(graph, new ShortestWeighting(carEncoder), TraversalMode.NODE_BASED, state);
+        other.setDistanceLimit(2).search(4);
+        assertArrayEquals(new int[]{2, 3, 4, 5, 6, 7}, sorted(other.getReachedNodes()));
+        assertFalse(other.isReached(0));
+        assertEquals(Double.MAX_VALUE, other.getWeight(0), 0);
+        assertEquals(-1, other.getParent(0));
+        assertEquals(4, other.calcPath(4, 6).calcNodes().get(0));
+    }
+
+    @Test
+    public void testEdgeBasedNotSupported() {
+        try {
+            new ShortestPathTree(createGHStorage(false), defaultOpts.getWeighting(), TraversalMode.EDGE_BASED_2DIR);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    private static int[] sorted(IntArrayList list) {
+        int[] arr = list.toArray();
+        Arrays.sort(arr);
+        return arr;
+    }
+}
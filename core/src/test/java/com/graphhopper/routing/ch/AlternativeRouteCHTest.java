@@ -0,0 +1,223 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.AlternativeRoute.AlternativeInfo;
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.LevelEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.Helper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.routing.AbstractRoutingAlgorithmTester.updateDistancesFor;
+import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
+import static org.junit.Assert.*;
+
+public class AlternativeRouteCHTest {
+    private final CarFlagEncoder encoder = new CarFlagEncoder();
+    private final EncodingManager encodingManager = new EncodingManager(encoder);
+    private final Weighting weighting = new FastestWeighting(encoder);
+    private GraphHopperStorage ghStorage;
+
+    @Before
+    public void setUp() {
+        ghStorage = new GraphHopperStorage(Collections.singletonList(weighting), new RAMDirectory(), encodingManager,
+                false, new GraphExtension.NoOpExtension()).create(1000);
+    }
+
+    private PrepareContractionHierarchies prepare() {
+        ghStorage.freeze();
+        PrepareContractionHierarchies pch = new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT),
+                ghStorage, ghStorage.getGraph(CHGraph.class, weighting), weighting, TraversalMode.NODE_BASED);
+        pch.doWork();
+        return pch;
+    }
+
+    private AlternativeRouteCH createAlgo() {
+        CHGraph chGraph = ghStorage.getGraph(CHGraph.class, weighting);
+        return new AlternativeRouteCH(chGraph, new PreparationWeighting(weighting), TraversalMode.NODE_BASED, new LevelEdgeFilter(chGraph));
+    }
+
+    // the same graph as in AlternativeRouteTest
+    private void initTestGraph() {
+        /* 9
+         _/\
+         1  2-3-4-10
+         \   /   \
+         5--6-7---8
+
+         */
+        ghStorage.edge(1, 9, 1, true);
+        ghStorage.edge(9, 2, 1, true);
+        ghStorage.edge(2, 3, 1, true);
+        ghStorage.edge(3, 4, 1, true);
+        ghStorage.edge(4, 10, 1, true);
+        ghStorage.edge(5, 6, 1, true);
+        ghStorage.edge(6, 7, 1, true);
+        ghStorage.edge(7, 8, 1, true);
+        ghStorage.edge(1, 5, 2, true);
+        ghStorage.edge(6, 3, 1, true);
+        ghStorage.edge(4, 8, 1, true);
+
+        updateDistancesFor(ghStorage, 5, 0.00, 0.05);
+        updateDistancesFor(ghStorage, 6, 0.00, 0.10);
+        updateDistancesFor(ghStorage, 7, 0.00, 0.15);
+        updateDistancesFor(ghStorage, 8, 0.00, 0.25);
+
+        updateDistancesFor(ghStorage, 1, 0.05, 0.00);
+        updateDistancesFor(ghStorage, 9, 0.10, 0.05);
+        updateDistancesFor(ghStorage, 2, 0.05, 0.10);
+        updateDistancesFor(ghStorage, 3, 0.05, 0.15);
+        updateDistancesFor(ghStorage, 4, 0.05, 0.25);
+        updateDistancesFor(ghStorage, 10, 0.05, 0.30);
+    }
+
+    @Test
+    public void testCalcAlternatives() {
+        initTestGraph();
+        prepare();
+        AlternativeRouteCH algo = createAlgo();
+        algo.setMaxShareFactor(0.5);
+        algo.setMaxWeightFactor(2);
+        List<AlternativeInfo> infos = algo.calcAlternatives(5, 4);
+        assertEquals(2, infos.size());
+        assertEquals(Helper.createTList(5, 6, 3, 4), infos.get(0).getPath().calcNodes());
+        assertEquals(1472.5, infos.get(0).getPath().getWeight(), .1);
+        assertEquals(Helper.createTList(5, 6, 7, 8, 4), infos.get(1).getPath().calcNodes());
+        assertEquals(1667.9, infos.get(1).getPath().getWeight(), .1);
+        assertTrue(algo.getVisitedNodes() > 0);
+    }
+
+    // two roads of similar weight between 0 and 3
+    private void initRingGraph() {
+        ghStorage.edge(0, 1, 1, true);
+        ghStorage.edge(1, 2, 1, true);
+        ghStorage.edge(2, 3, 1, true);
+        ghStorage.edge(3, 4, 1, true);
+        ghStorage.edge(4, 5, 1, true);
+        ghStorage.edge(5, 0, 1, true);
+
+        updateDistancesFor(ghStorage, 0, 0.00, 0.00);
+        updateDistancesFor(ghStorage, 1, 0.01, 0.01);
+        updateDistancesFor(ghStorage, 2, 0.01, 0.02);
+        updateDistancesFor(ghStorage, 3, 0.00, 0.03);
+        updateDistancesFor(ghStorage, 4, -0.011, 0.02);
+        updateDistancesFor(ghStorage, 5, -0.011, 0.01);
+    }
+
+    @Test
+    public void testRing() {
+        initRingGraph();
+        prepare();
+        List<AlternativeInfo> infos = createAlgo().calcAlternatives(0, 3);
+        assertEquals(2, infos.size());
+        assertEquals(Helper.createTList(0, 1, 2, 3), infos.get(0).getPath().calcNodes());
+        assertEquals(Helper.createTList(0, 5, 4, 3), infos.get(1).getPath().calcNodes());
+        assertEquals(0, infos.get(1).getShareWeight(), 1e-6);
+    }
+
+    @Test
+    public void testCreateAlgo() {
+        initRingGraph();
+        PrepareContractionHierarchies pch = prepare();
+        AlgorithmOptions opts = AlgorithmOptions.start().algorithm(ALT_ROUTE).weighting(weighting).build();
+        RoutingAlgorithm algo = pch.createAlgo(ghStorage.getGraph(CHGraph.class, weighting), opts);
+        assertTrue(algo instanceof AlternativeRouteCH);
+        assertEquals(2, algo.calcPaths(0, 3).size());
+
+        opts.getHints().put("alternative_route.max_weight_factor", 1);
+        assertEquals(1, pch.createAlgo(ghStorage.getGraph(CHGraph.class, weighting), opts).calcPaths(0, 3).size());
+    }
+
+    @Test
+    public void testDisconnected() {
+        initTestGraph();
+        ghStorage.edge(11, 12, 1, true);
+        updateDistancesFor(ghStorage, 11, 0.20, 0.20);
+        updateDistancesFor(ghStorage, 12, 0.20, 0.25);
+        prepare();
+        List<Path> paths = createAlgo().calcPaths(5, 12);
+        assertEquals(1, paths.size());
+        assertFalse(paths.get(0).isFound());
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        Random rand = new Random(42);
+        int nodes = 300;
+        NodeAccess na = ghStorage.getNodeAccess();
+        for (int node = 0; node < nodes; node++) {
+            na.setNode(node, 50 + rand.nextDouble() / 10, 10 + rand.nextDouble() / 10);
+        }
+        for (int node = 1; node < nodes; node++) {
+            for (int i = 0; i < 2; i++) {
+                int other = i == 0 ? rand.nextInt(node) : rand.nextInt(nodes);
+                if (other == node)
+                    continue;
+                long flags = encoder.setProperties(10 + rand.nextInt(12) * 10, true, true);
+                ghStorage.edge(node, other).setDistance(50 + rand.nextInt(1000)).setFlags(flags);
+            }
+        }
+        prepare();
+
+        int alternatives = 0;
+        for (int i = 0; i < 50; i++) {
+            int from = rand.nextInt(nodes);
+            int to = rand.nextInt(nodes);
+            AlternativeRouteCH algo = createAlgo();
+            algo.setMaxPaths(3);
+            List<AlternativeInfo> infos = algo.calcAlternatives(from, to);
+            Path expected = new DijkstraBidirectionRef(ghStorage, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path best = infos.get(0).getPath();
+            assertEquals(expected.getWeight(), best.getWeight(), 1e-1);
+            for (int j = 1; j < infos.size(); j++) {
+                Path alt = infos.get(j).getPath();
+                assertTrue(alt.getWeight() >= best.getWeight() - 1e-6);
+                assertTrue(alt.getWeight() <= 1.4 * best.getWeight() + 1e-6);
+                assertTrue(infos.get(j).getShareWeight() < 0.6 * best.getWeight());
+                assertEquals(from, alt.calcNodes().get(0));
+                assertEquals(to, alt.calcNodes().get(alt.calcNodes().size() - 1));
+                assertNoLoop(alt.calcNodes());
+                alternatives++;
+            }
+        }
+        assertTrue(alternatives > 0);
+    }
+
+    private static void assertNoLoop(IntIndexedContainer nodes) {
+        IntHashSet set = new IntHashSet();
+        for (int i = 0; i < nodes.size(); i++) {
+            assertTrue("loop at " + nodes.get(i), set.add(nodes.get(i)));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RandomGraphFixture;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static org.junit.Assert.*;
+
+public class CustomizableContractionHierarchyTest {
+    private final RandomGraphFixture fixture = new RandomGraphFixture();
+    private final CarFlagEncoder encoder = fixture.getEncoder();
+    private final Weighting weighting = fixture.getWeighting();
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+    private final GraphHopperStorage ghStorage = fixture.getGraph();
+
+    private PrepareContractionHierarchies prepare(int threads) {
+        PrepareContractionHierarchies pch = fixture.createPreparation().
+                setCustomizableCH(CustomizableContractionHierarchy.create(ghStorage)).
+                setContractionThreads(threads);
+        pch.doWork();
+        return pch;
+    }
+
+    private void compareWithDijkstra(PrepareContractionHierarchies pch, int queries, long seed) {
+        CHGraph chGraph = fixture.getCHGraph();
+        Random rand = new Random(seed);
+        for (int i = 0; i < queries; i++) {
+            int from = rand.nextInt(ghStorage.getNodes());
+            int to = rand.nextInt(ghStorage.getNodes());
+            Path path = pch.createAlgo(chGraph, new AlgorithmOptions(DIJKSTRA_BI, weighting, tMode)).calcPath(from, to);
+            fixture.compareWithDijkstra(from, to, path.isFound() ? path.getWeight() : Double.POSITIVE_INFINITY,
+                    path.getDistance(), path.getTime());
+        }
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        fixture.initRandomGraph(300, 42);
+        PrepareContractionHierarchies pch = prepare(1);
+        CustomizableContractionHierarchy cch = pch.getCustomizableCH();
+        assertTrue(cch.getArcs() >= 300 - 1);
+        assertTrue(cch.getLevels() > 1);
+        compareWithDijkstra(pch, 500, 1);
+    }
+
+    @Test
+    public void testParallelCustomization() {
+        fixture.initRandomGrid(50, 123);
+        PrepareContractionHierarchies pch = prepare(4);
+        assertTrue(pch.getCustomizableCH().getArcs() < 20 * ghStorage.getNodes());
+        compareWithDijkstra(pch, 300, 2);
+    }
+
+    @Test
+    public void testCustomizeAgain() {
+        fixture.initRandomGraph(300, 7);
+        PrepareContractionHierarchies pch = prepare(2);
+        int edges = ghStorage.getGraph(CHGraph.class, weighting).getAllEdges().getMaxId();
+
+        // slow down some roads and close others in one direction
+        Random rand = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            EdgeIteratorState edge = ghStorage.getEdgeIteratorState(rand.nextInt(ghStorage.getAllEdges().getMaxId()), Integer.MIN_VALUE);
+            edge.setFlags(encoder.setProperties(5 + rand.nextInt(3) * 10, true, rand.nextBoolean()));
+        }
+        pch.prepareCustomization().apply();
+        assertEquals(edges, ghStorage.getGraph(CHGraph.class, weighting).getAllEdges().getMaxId());
+        compareWithDijkstra(pch, 500, 4);
+    }
+
+    @Test
+    public void testFromLevels() {
+        fixture.initRandomGraph(100, 5);
+        PrepareContractionHierarchies pch = prepare(1);
+        CustomizableContractionHierarchy cch = CustomizableContractionHierarchy.fromLevels(ghStorage.getGraph(CHGraph.class, weighting));
+        assertEquals(pch.getCustomizableCH().getArcs(), cch.getArcs());
+        for (int node = 0; node < ghStorage.getNodes(); node++) {
+            assertEquals(pch.getCustomizableCH().getRank(node), cch.getRank(node));
+        }
+    }
+
+    @Test
+    public void testNestedDissectionIsPermutation() {
+        fixture.initRandomGraph(500, 9);
+        int[] ranks = new NestedDissection(ghStorage).setLeafSize(4).calcRanks();
+        boolean[] used = new boolean[ranks.length];
+        for (int rank : ranks) {
+            assertFalse(used[rank]);
+            used[rank] = true;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOrder() {
+        ghStorage.edge(0, 1, 100, true);
+        ghStorage.edge(1, 2, 100, true);
+        new CustomizableContractionHierarchy(ghStorage, new int[]{0, 1, 1});
+    }
+
+    @Test
+    public void testDisconnected() {
+        ghStorage.edge(0, 1, 100, true);
+        ghStorage.edge(1, 2, 100, false);
+        ghStorage.edge(3, 4, 100, true);
+        PrepareContractionHierarchies pch = prepare(1);
+        CHGraph chGraph = ghStorage.getGraph(CHGraph.class, weighting);
+        assertEquals(200, pch.createAlgo(chGraph, new AlgorithmOptions(DIJKSTRA_BI, weighting, tMode)).calcPath(0, 2).getDistance(), 1e-1);
+        assertFalse(pch.createAlgo(chGraph, new AlgorithmOptions(DIJKSTRA_BI, weighting, tMode)).calcPath(2, 1).isFound());
+        assertFalse(pch.createAlgo(chGraph, new AlgorithmOptions(DIJKSTRA_BI, weighting, tMode)).calcPath(0, 3).isFound());
+    }
+}
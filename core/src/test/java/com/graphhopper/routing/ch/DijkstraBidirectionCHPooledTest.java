@@ -0,0 +1,54 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.BidirSearchStatePool;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the CH tests with the pooled search state.
+ */
+public class DijkstraBidirectionCHPooledTest extends DijkstraBidirectionCHTest {
+    private static final BidirSearchStatePool POOL = new BidirSearchStatePool();
+
+    @Override
+    public RoutingAlgorithmFactory createFactory(GraphHopperStorage ghStorage, AlgorithmOptions opts) {
+        final RoutingAlgorithmFactory ch = super.createFactory(ghStorage, opts);
+        return new RoutingAlgorithmFactory() {
+            @Override
+            public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+                return ch.createAlgo(g, AlgorithmOptions.start(opts).statePool(POOL).build());
+            }
+        };
+    }
+
+    @Test
+    public void testPooledAlgorithmIsUsed() {
+        GraphHopperStorage ghStorage = createGHStorage(false);
+        initDirectedAndDiffSpeed(ghStorage, carEncoder);
+        RoutingAlgorithm algo = createAlgo(ghStorage);
+        assertEquals("dijkstrabi|ch|pooled", algo.getName());
+    }
+}
@@ -33,6 +33,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests if a graph optimized by contraction hierarchies returns the same results as a none
@@ -64,6 +65,33 @@ public class DijkstraBidirectionCHTest extends AbstractRoutingAlgorithmTester {
         return ch;
     }
 
+    @Test
+    public void testStallOnDemand() {
+        GraphHopperStorage matrixGraph = createMatrixGraph();
+        RoutingAlgorithmFactory factory = createFactory(matrixGraph, defaultOpts);
+        Graph chGraph = getGraph(matrixGraph, defaultOpts.getWeighting());
+        AlgorithmOptions noStallOpts = AlgorithmOptions.start(defaultOpts).build();
+        noStallOpts.getHints().put(Parameters.CH.STALL_ON_DEMAND, false);
+
+        int visitedNodes = 0, visitedNodesNoStall = 0;
+        for (int from = 0; from < chGraph.getNodes(); from += 3) {
+            for (int to = 0; to < chGraph.getNodes(); to += 7) {
+                RoutingAlgorithm algo = factory.createAlgo(chGraph, defaultOpts);
+                Path path = algo.calcPath(from, to);
+                RoutingAlgorithm algoNoStall = factory.createAlgo(chGraph, noStallOpts);
+                Path pathNoStall = algoNoStall.calcPath(from, to);
+
+                assertEquals(pathNoStall.isFound(), path.isFound());
+                assertEquals(from + "->" + to, pathNoStall.getWeight(), path.getWeight(), 1e-6);
+                assertEquals(from + "->" + to, pathNoStall.getDistance(), path.getDistance(), 1e-6);
+                assertTrue(algo.getVisitedNodes() <= algoNoStall.getVisitedNodes());
+                visitedNodes += algo.getVisitedNodes();
+                visitedNodesNoStall += algoNoStall.getVisitedNodes();
+            }
+        }
+        assertTrue(visitedNodes + " vs. " + visitedNodesNoStall, visitedNodes < visitedNodesNoStall);
+    }
+
     @Test
     public void testPathRecursiveUnpacking() {
         // use an encoder where it is possible to store 2 weights per edge        
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.*;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.routing.AbstractRoutingAlgorithmTester.updateDistancesFor;
+import static com.graphhopper.util.GHUtility.getEdge;
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the edge-based contraction hierarchy with an edge-based Dijkstra on the original graph.
+ */
+public class DijkstraBidirectionEdgeCHTest {
+    private final TraversalMode tMode = TraversalMode.EDGE_BASED_2DIR;
+    private CarFlagEncoder encoder;
+    private TurnCostExtension turnCostExt;
+    private TurnWeighting weighting;
+    private GraphHopperStorage ghStorage;
+    private CHGraph chGraph;
+
+    @Before
+    public void setUp() {
+        encoder = new CarFlagEncoder(5, 5, 127);
+        EncodingManager em = new EncodingManager(encoder);
+        turnCostExt = new TurnCostExtension();
+        weighting = new TurnWeighting(new FastestWeighting(encoder), turnCostExt);
+        ghStorage = new GraphHopperStorage(Arrays.asList(weighting), new RAMDirectory(),
+                em, false, turnCostExt).create(1000);
+        chGraph = ghStorage.getGraph(CHGraph.class, weighting);
+    }
+
+    private PrepareContractionHierarchies prepare() {
+        return prepare(1);
+    }
+
+    private PrepareContractionHierarchies prepare(int threads) {
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT),
+                ghStorage, chGraph, weighting, tMode).setContractionThreads(threads);
+        prepare.doWork();
+        return prepare;
+    }
+
+    private void addRestriction(int from, int via, int to) {
+        turnCostExt.addTurnInfo(getEdge(ghStorage, from, via).getEdge(), via,
+                getEdge(ghStorage, via, to).getEdge(), encoder.getTurnFlags(true, 0));
+    }
+
+    private Path calcPath(PrepareContractionHierarchies prepare, int from, int to) {
+        return prepare.createAlgo(chGraph, new AlgorithmOptions(DIJKSTRA_BI, weighting, tMode)).calcPath(from, to);
+    }
+
+    private void compareWithDijkstra(PrepareContractionHierarchies prepare, int from, int to) {
+        Path expected = new Dijkstra(ghStorage, weighting, tMode).calcPath(from, to);
+        Path path = calcPath(prepare, from, to);
+        String msg = from + "->" + to + ", expected " + expected.calcNodes() + " but was " + path.calcNodes();
+        assertEquals(msg, expected.isFound(), path.isFound());
+        if (!expected.isFound())
+            return;
+
+        // the weight of a shortcut is stored with a limited precision
+        assertEquals(msg, expected.getWeight(), path.getWeight(), 1e-2);
+        assertEquals(msg, expected.getDistance(), path.getDistance(), 1e-5);
+        assertEquals(msg, expected.getTime(), path.getTime(), 10);
+    }
+
+    // 0---1
+    // |   /
+    // 2--3--4
+    // |  |  |
+    // 5--6--7
+    @Test
+    public void testTurnRestrictions() {
+        EdgeBasedRoutingAlgorithmTest.initGraph(ghStorage);
+        // only forward from 2-3 to 3-4
+        addRestriction(2, 3, 6);
+        addRestriction(2, 3, 1);
+        // only right from 5-2 to 2-3
+        addRestriction(5, 2, 0);
+        addRestriction(7, 6, 5);
+        addRestriction(5, 6, 3);
+        addRestriction(4, 3, 1);
+        addRestriction(4, 3, 2);
+        addRestriction(6, 7, 6);
+        addRestriction(3, 6, 3);
+        PrepareContractionHierarchies prepare = prepare();
+
+        Path path = calcPath(prepare, 5, 1);
+        assertEquals(Helper.createTList(5, 2, 3, 4, 7, 6, 3, 1), path.calcNodes());
+        path = calcPath(prepare, 5, 7);
+        assertEquals(Helper.createTList(5, 6, 7), path.calcNodes());
+        path = calcPath(prepare, 7, 5);
+        assertEquals(Helper.createTList(7, 6, 3, 2, 5), path.calcNodes());
+
+        for (int from = 0; from < 8; from++) {
+            for (int to = 0; to < 8; to++) {
+                compareWithDijkstra(prepare, from, to);
+            }
+        }
+    }
+
+    // 0-1-2
+    //   O
+    @Test
+    public void testGoAroundTheBlock() {
+        ghStorage.edge(0, 1, 10, true);
+        ghStorage.edge(1, 2, 10, true);
+        ghStorage.edge(1, 1, 20, true);
+        addRestriction(0, 1, 2);
+        addRestriction(2, 1, 0);
+        PrepareContractionHierarchies prepare = prepare();
+
+        Path path = calcPath(prepare, 0, 2);
+        assertEquals(Helper.createTList(0, 1, 1, 2), path.calcNodes());
+        assertEquals(40, path.getDistance(), 1e-5);
+        path = calcPath(prepare, 2, 0);
+        assertEquals(Helper.createTList(2, 1, 1, 0), path.calcNodes());
+        for (int from = 0; from < 3; from++) {
+            for (int to = 0; to < 3; to++) {
+                compareWithDijkstra(prepare, from, to);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomGraph() {
+        Random rand = new Random(123);
+        int nodes = initRandomGrid(rand, 12);
+        PrepareContractionHierarchies prepare = prepare();
+        assertTrue(prepare.getShortcuts() > 0);
+
+        for (int i = 0; i < 200; i++) {
+            compareWithDijkstra(prepare, rand.nextInt(nodes), rand.nextInt(nodes));
+        }
+    }
+
+    /**
+     * Creates a grid with random edges, random turn costs and restrictions. A random graph is too
+     * dense for a contraction hierarchy.
+     */
+    private int initRandomGrid(Random rand, int size) {
+        int nodes = size * size;
+        NodeAccess na = ghStorage.getNodeAccess();
+        for (int node = 0; node < nodes; node++) {
+            na.setNode(node, 50 + (node / size) * 0.001 + rand.nextDouble() * 0.0005, 10 + (node % size) * 0.001 + rand.nextDouble() * 0.0005);
+        }
+        for (int node = 0; node < nodes; node++) {
+            int[] neighbors = {node % size + 1 < size ? node + 1 : -1, node + size < nodes ? node + size : -1,
+                    node % size + 1 < size && node + size < nodes && rand.nextInt(4) == 0 ? node + size + 1 : -1};
+            for (int to : neighbors) {
+                if (to < 0 || rand.nextInt(10) == 0)
+                    continue;
+
+                double beeline = Helper.DIST_EARTH.calcDist(na.getLat(node), na.getLon(node), na.getLat(to), na.getLon(to));
+                boolean bothDir = rand.nextInt(5) != 0;
+                if (rand.nextBoolean())
+                    ghStorage.edge(node, to, beeline * (1 + rand.nextDouble()), bothDir);
+                else
+                    ghStorage.edge(to, node, beeline * (1 + rand.nextDouble()), bothDir);
+            }
+            if (rand.nextInt(20) == 0)
+                ghStorage.edge(node, node, 100, true);
+        }
+        // random turn costs and restrictions
+        EdgeExplorer explorer = ghStorage.createEdgeExplorer();
+        for (int node = 0; node < nodes; node++) {
+            List<Integer> edges = new ArrayList<>();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+            }
+            for (int inEdge : edges) {
+                for (int outEdge : edges) {
+                    int value = rand.nextInt(10);
+                    if (inEdge == outEdge || value > 4)
+                        continue;
+
+                    if (value == 0)
+                        turnCostExt.addTurnInfo(inEdge, node, outEdge, encoder.getTurnFlags(true, 0));
+                    else
+                        turnCostExt.addTurnInfo(inEdge, node, outEdge, encoder.getTurnFlags(false, rand.nextInt(100)));
+                }
+            }
+        }
+        return nodes;
+    }
+
+    @Test
+    public void testRandomGraphParallelContraction() {
+        Random rand = new Random(456);
+        int nodes = initRandomGrid(rand, 12);
+        PrepareContractionHierarchies prepare = prepare(4);
+        for (int i = 0; i < 100; i++) {
+            compareWithDijkstra(prepare, rand.nextInt(nodes), rand.nextInt(nodes));
+        }
+    }
+
+    @Test
+    public void testQueryGraph() {
+        EdgeBasedRoutingAlgorithmTest.initGraph(ghStorage);
+        addRestriction(2, 3, 6);
+        addRestriction(5, 6, 3);
+        updateDistancesFor(ghStorage, 0, 0.002, 0);
+        updateDistancesFor(ghStorage, 1, 0.002, 0.002);
+        updateDistancesFor(ghStorage, 2, 0.001, 0);
+        updateDistancesFor(ghStorage, 3, 0.001, 0.001);
+        updateDistancesFor(ghStorage, 4, 0.001, 0.002);
+        updateDistancesFor(ghStorage, 5, 0, 0);
+        updateDistancesFor(ghStorage, 6, 0, 0.001);
+        updateDistancesFor(ghStorage, 7, 0, 0.002);
+        PrepareContractionHierarchies prepare = prepare();
+
+        // a point on the edge 2-3 and one on the edge 6-7
+        QueryResult fromRes = createQueryResult(getEdge(ghStorage, 2, 3), 0.001, 0.0005);
+        QueryResult toRes = createQueryResult(getEdge(ghStorage, 6, 7), 0, 0.0015);
+        QueryGraph queryGraph = new QueryGraph(chGraph);
+        queryGraph.lookup(fromRes, toRes);
+        TurnWeighting queryWeighting = new TurnWeighting(new FastestWeighting(encoder), (TurnCostExtension) queryGraph.getExtension());
+        Path path = prepare.createAlgo(queryGraph, new AlgorithmOptions(DIJKSTRA_BI, queryWeighting, tMode)).
+                calcPath(fromRes.getClosestNode(), toRes.getClosestNode());
+
+        QueryGraph baseQueryGraph = new QueryGraph(ghStorage);
+        baseQueryGraph.lookup(createQueryResult(getEdge(ghStorage, 2, 3), 0.001, 0.0005),
+                createQueryResult(getEdge(ghStorage, 6, 7), 0, 0.0015));
+        TurnWeighting baseWeighting = new TurnWeighting(new FastestWeighting(encoder), (TurnCostExtension) baseQueryGraph.getExtension());
+        Path expected = new Dijkstra(baseQueryGraph, baseWeighting, tMode).calcPath(fromRes.getClosestNode(), toRes.getClosestNode());
+        assertTrue(path.isFound());
+        assertEquals(expected.calcNodes().size(), path.calcNodes().size());
+        assertEquals(expected.getWeight(), path.getWeight(), 1e-5);
+        assertEquals(expected.getDistance(), path.getDistance(), 1e-5);
+    }
+
+    @Test
+    public void testUnsupportedAlgorithm() {
+        EdgeBasedRoutingAlgorithmTest.initGraph(ghStorage);
+        PrepareContractionHierarchies prepare = prepare();
+        try {
+            prepare.createAlgo(chGraph, new AlgorithmOptions(ASTAR_BI, weighting, tMode));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testEdgeBasedRequiresTurnWeighting() {
+        try {
+            new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT), ghStorage, chGraph,
+                    new FastestWeighting(encoder), tMode);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT), ghStorage, chGraph,
+                    weighting, TraversalMode.NODE_BASED);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    private QueryResult createQueryResult(EdgeIteratorState edge, double lat, double lon) {
+        QueryResult res = new QueryResult(lat, lon);
+        res.setClosestEdge(edge);
+        res.setWayIndex(0);
+        res.setSnappedPosition(QueryResult.Position.EDGE);
+        res.calcSnappedPoint(Helper.DIST_PLANE);
+        return res;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.RandomGraphFixture;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HubLabelsTest {
+    private final String location = "./target/hub-labels-test";
+    private final RandomGraphFixture fixture = new RandomGraphFixture();
+    private final Weighting weighting = fixture.getWeighting();
+    private final GraphHopperStorage ghStorage = fixture.getGraph();
+
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        new File(location).mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    private CHGraph prepare(double contractedNodes) {
+        PrepareContractionHierarchies pch = fixture.createPreparation();
+        pch.setContractedNodes(contractedNodes);
+        pch.doWork();
+        return fixture.getCHGraph();
+    }
+
+    private HubLabels createLabels(Directory dir) {
+        HubLabels hubLabels = new HubLabels(dir, prepare(100), weighting);
+        hubLabels.createLabels();
+        return hubLabels;
+    }
+
+    private void compareWithDijkstra(HubLabels hubLabels) {
+        for (int from = 0; from < ghStorage.getNodes(); from++) {
+            for (int to = 0; to < ghStorage.getNodes(); to++) {
+                double weight = hubLabels.calcWeight(from, to);
+                fixture.compareWithDijkstra(from, to, weight, hubLabels.calcDistance(from, to), hubLabels.calcTime(from, to));
+                if (Double.isInfinite(weight))
+                    assertEquals(from + "->" + to, Long.MAX_VALUE, hubLabels.calcTime(from, to));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        fixture.initRandomGraph(150, 42);
+        HubLabels hubLabels = createLabels(new RAMDirectory());
+        assertEquals(150, hubLabels.getNodes());
+        assertTrue(hubLabels.getEntries() >= 2 * 150);
+        // the pruning keeps the labels much smaller than the upward search spaces
+        assertTrue(hubLabels.getAverageLabelSize() < 150);
+        compareWithDijkstra(hubLabels);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        fixture.initRandomGraph(100, 7);
+        HubLabels hubLabels = createLabels(new RAMDirectory(location, true));
+        double weight = hubLabels.calcWeight(3, 77);
+        long entries = hubLabels.getEntries();
+        hubLabels.flush();
+        hubLabels.close();
+
+        hubLabels = new HubLabels(new RAMDirectory(location, true), ghStorage.getGraph(CHGraph.class, weighting), weighting);
+        assertTrue(hubLabels.loadExisting());
+        assertEquals(entries, hubLabels.getEntries());
+        assertEquals(weight, hubLabels.calcWeight(3, 77), 0);
+        assertTrue(hubLabels.getCapacity() > 0);
+        compareWithDijkstra(hubLabels);
+    }
+
+    @Test
+    public void testDisconnected() {
+        ghStorage.edge(0, 1, 100, true);
+        ghStorage.edge(1, 2, 100, false);
+        ghStorage.edge(3, 4, 100, true);
+        HubLabels hubLabels = createLabels(new RAMDirectory());
+        assertEquals(0, hubLabels.calcWeight(1, 1), 0);
+        assertEquals(200, hubLabels.calcDistance(0, 2), 1e-1);
+        assertEquals(Double.POSITIVE_INFINITY, hubLabels.calcWeight(2, 1), 0);
+        assertEquals(Double.POSITIVE_INFINITY, hubLabels.calcDistance(0, 3), 0);
+        assertEquals(Long.MAX_VALUE, hubLabels.calcTime(4, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUncontractedCore() {
+        fixture.initRandomGraph(100, 1);
+        new HubLabels(new RAMDirectory(), prepare(50), weighting).createLabels();
+    }
+
+    @Test
+    public void testMatrixWithVirtualNodes() {
+        fixture.initRandomGraph(100, 21);
+        HubLabels hubLabels = createLabels(new RAMDirectory());
+        QueryGraph chQueryGraph = new QueryGraph(ghStorage.getGraph(CHGraph.class, weighting));
+        List<QueryResult> qResults = createQueryResults();
+        chQueryGraph.lookup(qResults);
+        int[] nodes = new int[qResults.size() + 2];
+        for (int i = 0; i < qResults.size(); i++) {
+            nodes[i] = qResults.get(i).getClosestNode();
+        }
+        // real nodes are supported too
+        nodes[qResults.size()] = 5;
+        nodes[qResults.size() + 1] = 50;
+        DistanceMatrix matrix = new HubLabelMatrix(chQueryGraph, hubLabels).calcMatrix(nodes, nodes);
+
+        QueryGraph queryGraph = new QueryGraph(ghStorage);
+        // the lookup changes the query results, so the Dijkstra needs its own
+        queryGraph.lookup(createQueryResults());
+        for (int i = 0; i < nodes.length; i++) {
+            for (int j = 0; j < nodes.length; j++) {
+                Path path = new Dijkstra(queryGraph, weighting, TraversalMode.NODE_BASED).calcPath(nodes[i], nodes[j]);
+                String cell = i + "->" + j;
+                assertEquals(cell, path.isFound(), matrix.isConnected(i, j));
+                if (path.isFound()) {
+                    assertEquals(cell, path.getWeight(), matrix.getWeight(i, j), 1e-1);
+                    assertEquals(cell, path.getDistance(), matrix.getDistance(i, j), 100);
+                }
+            }
+        }
+    }
+
+    private List<QueryResult> createQueryResults() {
+        Random rand = new Random(3);
+        List<QueryResult> qResults = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            EdgeIteratorState edge = ghStorage.getEdgeIteratorState(rand.nextInt(ghStorage.getAllEdges().getMaxId()), Integer.MIN_VALUE);
+            qResults.add(createQueryResult(edge, rand.nextDouble()));
+        }
+        // two points on the same edge
+        qResults.add(createQueryResult(ghStorage.getEdgeIteratorState(0, Integer.MIN_VALUE), 0.2));
+        qResults.add(createQueryResult(ghStorage.getEdgeIteratorState(0, Integer.MIN_VALUE), 0.7));
+        return qResults;
+    }
+
+    private QueryResult createQueryResult(EdgeIteratorState edge, double factor) {
+        NodeAccess na = ghStorage.getNodeAccess();
+        double lat = na.getLat(edge.getBaseNode()) + factor * (na.getLat(edge.getAdjNode()) - na.getLat(edge.getBaseNode()));
+        double lon = na.getLon(edge.getBaseNode()) + factor * (na.getLon(edge.getAdjNode()) - na.getLon(edge.getBaseNode()));
+        QueryResult qr = new QueryResult(lat, lon);
+        qr.setClosestEdge(edge);
+        qr.setWayIndex(0);
+        qr.setSnappedPosition(QueryResult.Position.EDGE);
+        qr.calcSnappedPoint(new DistanceCalcEarth());
+        return qr;
+    }
+}
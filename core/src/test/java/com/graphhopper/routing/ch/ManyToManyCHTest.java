@@ -0,0 +1,126 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.routing.MatrixAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RandomGraphFixture;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.junit.Test;
+
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static org.junit.Assert.*;
+
+public class ManyToManyCHTest {
+    private final RandomGraphFixture fixture = new RandomGraphFixture();
+    private final Weighting weighting = fixture.getWeighting();
+    private final GraphHopperStorage ghStorage = fixture.getGraph();
+
+    private PrepareContractionHierarchies prepare() {
+        PrepareContractionHierarchies pch = fixture.createPreparation();
+        pch.doWork();
+        return pch;
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        fixture.initRandomGraph(200, 42);
+        PrepareContractionHierarchies pch = prepare();
+        CHGraph chGraph = ghStorage.getGraph(CHGraph.class, weighting);
+        AlgorithmOptions opts = AlgorithmOptions.start().algorithm(DIJKSTRA_BI).weighting(weighting).build();
+
+        int[] fromNodes = {0, 7, 13, 42, 99, 150, 199};
+        int[] toNodes = {3, 7, 24, 88, 120, 198};
+        MatrixAlgorithm algo = pch.createMatrixAlgo(chGraph, opts);
+        DistanceMatrix matrix = algo.calcMatrix(fromNodes, toNodes);
+        assertEquals(fromNodes.length, matrix.getFromCount());
+        assertEquals(toNodes.length, matrix.getToCount());
+        assertTrue(algo.getVisitedNodes() > 0);
+
+        int connected = 0;
+        for (int i = 0; i < fromNodes.length; i++) {
+            for (int j = 0; j < toNodes.length; j++) {
+                Path path = fixture.compareWithDijkstra(fromNodes[i], toNodes[j], matrix.getWeight(i, j));
+                if (!path.isFound())
+                    continue;
+
+                connected++;
+                String cell = fromNodes[i] + "->" + toNodes[j];
+                assertEquals(cell, path.getDistance(), matrix.getDistance(i, j), 1e-3);
+                assertEquals(cell, path.getTime(), matrix.getTime(i, j), 10);
+            }
+        }
+        assertTrue(connected > fromNodes.length * toNodes.length / 2);
+    }
+
+    @Test
+    public void testSameNodeAndUnreachable() {
+        ghStorage.edge(0, 1, 10, true);
+        ghStorage.edge(1, 2, 10, false);
+        ghStorage.edge(3, 4, 10, true);
+        PrepareContractionHierarchies pch = prepare();
+        AlgorithmOptions opts = AlgorithmOptions.start().algorithm(DIJKSTRA_BI).weighting(weighting).build();
+
+        DistanceMatrix matrix = pch.createMatrixAlgo(ghStorage.getGraph(CHGraph.class, weighting), opts).
+                calcMatrix(new int[]{0, 2}, new int[]{0, 2, 3});
+        assertTrue(matrix.isConnected(0, 0));
+        assertEquals(0, matrix.getDistance(0, 0), 1e-6);
+        assertEquals(0, matrix.getTime(0, 0));
+        assertEquals(20, matrix.getDistance(0, 1), 1e-6);
+        // one-way
+        assertFalse(matrix.isConnected(1, 0));
+        assertTrue(matrix.isConnected(1, 1));
+        // different subnetwork
+        assertFalse(matrix.isConnected(0, 2));
+        assertTrue(Double.isInfinite(matrix.getWeight(0, 2)));
+        assertEquals(Long.MAX_VALUE, matrix.getTime(0, 2));
+    }
+
+    @Test
+    public void testCanBeUsedOnlyOnce() {
+        ghStorage.edge(0, 1, 10, true);
+        PrepareContractionHierarchies pch = prepare();
+        MatrixAlgorithm algo = pch.createMatrixAlgo(ghStorage.getGraph(CHGraph.class, weighting),
+                AlgorithmOptions.start().algorithm(DIJKSTRA_BI).weighting(weighting).build());
+        algo.calcMatrix(new int[]{0}, new int[]{1});
+        try {
+            algo.calcMatrix(new int[]{0}, new int[]{1});
+            fail();
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test
+    public void testMaxVisitedNodesExceeded() {
+        fixture.initRandomGraph(200, 42);
+        PrepareContractionHierarchies pch = prepare();
+        MatrixAlgorithm algo = pch.createMatrixAlgo(ghStorage.getGraph(CHGraph.class, weighting),
+                AlgorithmOptions.start().algorithm(DIJKSTRA_BI).weighting(weighting).build());
+        algo.setMaxVisitedNodes(1);
+        try {
+            algo.calcMatrix(new int[]{0, 7}, new int[]{3, 24});
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("maximum nodes exceeded"));
+        }
+    }
+}
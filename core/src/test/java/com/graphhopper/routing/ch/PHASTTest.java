@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RandomGraphFixture;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PHASTTest {
+    private final RandomGraphFixture fixture = new RandomGraphFixture();
+    private final GraphHopperStorage ghStorage = fixture.getGraph();
+
+    private PrepareContractionHierarchies prepare(double contractedNodes) {
+        PrepareContractionHierarchies pch = fixture.createPreparation();
+        pch.setContractedNodes(contractedNodes);
+        pch.doWork();
+        return pch;
+    }
+
+    private void compareWithDijkstra(PHAST phast, int[] sources) {
+        float[][] weights = phast.calcWeights(sources);
+        int[][] times = phast.calcTimes(sources);
+        for (int i = 0; i < sources.length; i++) {
+            for (int node = 0; node < ghStorage.getNodes(); node++) {
+                Path path = fixture.compareWithDijkstra(sources[i], node, weights[i][node]);
+                String cell = sources[i] + "->" + node;
+                // paths with the same weight can have a slightly different time
+                if (path.isFound())
+                    assertEquals(cell, path.getTime(), times[i][node], 10);
+                else
+                    assertEquals(cell, -1, times[i][node]);
+            }
+        }
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        fixture.initRandomGraph(200, 42);
+        PHAST phast = prepare(100).createPHAST();
+        assertEquals(200, phast.getNodes());
+        assertTrue(phast.getEdges() > 0);
+        compareWithDijkstra(phast, new int[]{0, 17, 99, 150, 199});
+    }
+
+    @Test
+    public void testUncontractedCore() {
+        fixture.initRandomGraph(200, 7);
+        compareWithDijkstra(prepare(50).createPHAST(), new int[]{3, 42, 120});
+    }
+
+    @Test
+    public void testBatchesEqualSingleSources() {
+        fixture.initRandomGraph(300, 21);
+        PHAST phast = prepare(100).createPHAST().setBatchSize(3);
+        int[] sources = {5, 7, 99, 100, 180, 250, 299};
+        float[][] batched = phast.calcWeights(sources);
+        for (int i = 0; i < sources.length; i++) {
+            assertArrayEquals(phast.calcWeights(sources[i]), batched[i], 0);
+        }
+
+        float[][] weights = new float[sources.length][phast.getNodes()];
+        int[][] times = new int[sources.length][phast.getNodes()];
+        phast.calc(sources, weights, times);
+        for (int i = 0; i < sources.length; i++) {
+            assertArrayEquals(batched[i], weights[i], 0);
+            assertEquals(0, weights[i][sources[i]], 0);
+            assertEquals(0, times[i][sources[i]]);
+        }
+    }
+
+    @Test
+    public void testDisconnected() {
+        ghStorage.edge(0, 1, 100, true);
+        ghStorage.edge(1, 2, 100, false);
+        ghStorage.edge(3, 4, 100, true);
+        PHAST phast = prepare(100).createPHAST();
+        float[] weights = phast.calcWeights(1);
+        assertTrue(weights[0] > 0 && weights[0] < Float.POSITIVE_INFINITY);
+        assertEquals(0, weights[1], 0);
+        assertTrue(weights[2] > 0 && weights[2] < Float.POSITIVE_INFINITY);
+        assertEquals(Float.POSITIVE_INFINITY, weights[3], 0);
+        assertEquals(Float.POSITIVE_INFINITY, weights[4], 0);
+
+        // the one way edge cannot be used backwards
+        assertEquals(Float.POSITIVE_INFINITY, phast.calcWeights(2)[1], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSource() {
+        fixture.initRandomGraph(10, 1);
+        prepare(100).createPHAST().calcWeights(10);
+    }
+}
@@ -18,6 +18,8 @@
 package com.graphhopper.routing.ch;
 
 import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies.Shortcut;
 import com.graphhopper.routing.util.BikeFlagEncoder;
@@ -36,7 +38,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
+import static com.graphhopper.util.Parameters.Algorithms.ASTAR_BI;
 import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
 import static org.junit.Assert.*;
 
@@ -646,6 +650,78 @@ public class PrepareContractionHierarchiesTest {
         assertEquals(w.toString(), expNodes, p.calcNodes());
     }
 
+    void initRandomGraph(Graph g, int nodes, long seed) {
+        Random rand = new Random(seed);
+        NodeAccess na = g.getNodeAccess();
+        for (int node = 0; node < nodes; node++) {
+            na.setNode(node, 50 + rand.nextDouble() / 10, 10 + rand.nextDouble() / 10);
+        }
+        for (int node = 1; node < nodes; node++) {
+            for (int to : new int[]{rand.nextInt(node), rand.nextInt(nodes)}) {
+                if (to == node)
+                    continue;
+
+                // keep the distance above the beeline to make the A* heuristic valid
+                double beeline = Helper.DIST_EARTH.calcDist(na.getLat(node), na.getLon(node), na.getLat(to), na.getLon(to));
+                g.edge(node, to, beeline * (1 + rand.nextDouble()), rand.nextInt(5) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelContraction() {
+        GraphHopperStorage g = createGHStorage();
+        initRandomGraph(g, 500, 123);
+        CHGraph lg = g.getGraph(CHGraph.class);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(dir, g, lg, weighting, tMode).
+                setContractionThreads(4);
+        prepare.doWork();
+        assertTrue(prepare.getShortcuts() > 0);
+        assertTrue(prepare.getDijkstraCount() > 0);
+
+        Random rand = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            int from = rand.nextInt(g.getNodes());
+            int to = rand.nextInt(g.getNodes());
+            Path expected = new Dijkstra(g, weighting, tMode).calcPath(from, to);
+            for (String algo : Arrays.asList(DIJKSTRA_BI, ASTAR_BI)) {
+                Path p = prepare.createAlgo(lg, new AlgorithmOptions(algo, weighting, tMode)).calcPath(from, to);
+                String msg = algo + " " + from + "->" + to;
+                assertEquals(msg, expected.isFound(), p.isFound());
+                assertEquals(msg, expected.getDistance(), p.getDistance(), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testPollIndependentNodes() {
+        GraphHopperStorage g = createGHStorage();
+        initRandomGraph(g, 100, 456);
+        CHGraph lg = g.getGraph(CHGraph.class);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(dir, g, lg, weighting, tMode);
+        prepare.initFromGraph().prepareNodes();
+
+        int[] nodes = prepare.pollIndependentNodes(50, new GHBitSetImpl(g.getNodes()));
+        assertTrue(nodes.length > 1);
+        GHBitSet neighborhood = new GHBitSetImpl(g.getNodes());
+        EdgeExplorer explorer = lg.createEdgeExplorer();
+        for (int node : nodes) {
+            assertFalse("node " + node + " shares its neighborhood", neighborhood.contains(node));
+            neighborhood.add(node);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                assertFalse("node " + node + " shares its neighborhood", neighborhood.contains(iter.getAdjNode()));
+                neighborhood.add(iter.getAdjNode());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidContractionThreads() {
+        GraphHopperStorage g = createGHStorage();
+        new PrepareContractionHierarchies(dir, g, g.getGraph(CHGraph.class), weighting, tMode).setContractionThreads(0);
+    }
+
     @Test
     public void testShortcutMergeBug() {
         // We refer to this real world situation http://www.openstreetmap.org/#map=19/52.71205/-1.77326
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.lm;
 
+import com.graphhopper.coll.GHIntLongHashMap;
 import com.graphhopper.routing.AbstractRoutingAlgorithmTester;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
@@ -27,6 +28,7 @@ import com.graphhopper.routing.util.spatialrules.SpatialRuleLookup;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.After;
@@ -228,4 +230,40 @@ public class LandmarkStorageTest {
         storage.createLandmarks();
         assertEquals(3, storage.getSubnetworksWithLandmarks());
     }
+
+    @Test
+    public void testPrepareUpdate() {
+        AbstractRoutingAlgorithmTester.initBiGraph(ghStorage);
+        LandmarkStorage storage = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 2);
+        storage.setMinimumNodes(2);
+        storage.createLandmarks();
+
+        // unchanged flags do not require an update
+        GHIntLongHashMap changedEdges = new GHIntLongHashMap();
+        EdgeIteratorState edge = GHUtility.getEdge(ghStorage, 3, 8);
+        changedEdges.put(edge.getEdge(), edge.getFlags());
+        assertEquals(0, storage.prepareUpdate(changedEdges, 2).getUpdatedLandmarks());
+
+        edge.setFlags(encoder.setSpeed(edge.getFlags(), 5));
+        edge = GHUtility.getEdge(ghStorage, 0, 1);
+        changedEdges.put(edge.getEdge(), edge.getFlags());
+        edge.setFlags(encoder.setSpeed(edge.getFlags(), 100));
+
+        LandmarkStorage.WeightUpdate update = storage.prepareUpdate(changedEdges, 2);
+        assertTrue(update.getUpdatedLandmarks() > 0);
+        update.apply();
+
+        // the landmark selection does not depend on the speed, so a new preparation must lead to identical weights
+        LandmarkStorage expected = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 2);
+        expected.setMinimumNodes(2);
+        expected.createLandmarks();
+        assertEquals(expected.getFactor(), storage.getFactor(), 1e-10);
+        assertEquals(Arrays.toString(expected.getLandmarks(1)), Arrays.toString(storage.getLandmarks(1)));
+        for (int node = 0; node < ghStorage.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < 2; lmIdx++) {
+                assertEquals("from weight of " + node, expected.getFromWeight(lmIdx, node), storage.getFromWeight(lmIdx, node));
+                assertEquals("to weight of " + node, expected.getToWeight(lmIdx, node), storage.getToWeight(lmIdx, node));
+            }
+        }
+    }
 }
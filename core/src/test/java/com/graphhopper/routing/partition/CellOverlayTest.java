@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.partition;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.RandomGraphFixture;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CellOverlayTest {
+    private final RandomGraphFixture fixture = new RandomGraphFixture();
+    private final CarFlagEncoder encoder = fixture.getEncoder();
+    private final Weighting weighting = fixture.getWeighting();
+    private final GraphHopperStorage graph = fixture.getGraph();
+
+    private CellOverlay createOverlay(int threads, int... cellSizes) {
+        PartitionStorage partition = new PartitionStorage(new RAMDirectory()).create(1000);
+        new InertialFlowPartitioner(graph).setCellSizes(cellSizes).partition(partition);
+        CellOverlay overlay = new CellOverlay(graph, partition, weighting);
+        overlay.customize(threads);
+        return overlay;
+    }
+
+    private void compareWithDijkstra(CellOverlay overlay, int queries, long seed) {
+        Random rand = new Random(seed);
+        for (int i = 0; i < queries; i++) {
+            int from = rand.nextInt(graph.getNodes());
+            int to = rand.nextInt(graph.getNodes());
+            fixture.compareWithDijkstra(from, to, overlay.calcWeight(from, to));
+        }
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        fixture.initRandomGrid(30, 42);
+        CellOverlay overlay = createOverlay(1, 16, 64, 256);
+        assertTrue(overlay.getBoundaryNodes(0) > overlay.getBoundaryNodes(1));
+        assertTrue(overlay.getBoundaryNodes(1) > overlay.getBoundaryNodes(2));
+        assertTrue(overlay.getCliqueEntries() > 0);
+        compareWithDijkstra(overlay, 500, 1);
+    }
+
+    @Test
+    public void testParallelCustomization() {
+        fixture.initRandomGrid(40, 7);
+        compareWithDijkstra(createOverlay(4, 16, 128), 300, 2);
+    }
+
+    @Test
+    public void testCustomizeAgain() {
+        fixture.initRandomGrid(30, 3);
+        CellOverlay overlay = createOverlay(2, 32, 256);
+
+        // slow down some roads and close others in one direction
+        Random rand = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(rand.nextInt(graph.getAllEdges().getMaxId()), Integer.MIN_VALUE);
+            edge.setFlags(encoder.setProperties(5 + rand.nextInt(3) * 10, true, rand.nextBoolean()));
+        }
+        overlay.customize(2);
+        compareWithDijkstra(overlay, 500, 4);
+    }
+
+    @Test
+    public void testCliqueWeight() {
+        // 0-1-2-3 in a line, 2-3 is a one-way
+        NodeAccess na = graph.getNodeAccess();
+        for (int node = 0; node < 4; node++) {
+            na.setNode(node, 50, 10 + node * 0.001);
+        }
+        graph.edge(0, 1).setDistance(100).setFlags(encoder.setProperties(36, true, true));
+        graph.edge(1, 2).setDistance(100).setFlags(encoder.setProperties(36, true, true));
+        graph.edge(2, 3).setDistance(100).setFlags(encoder.setProperties(36, true, false));
+        PartitionStorage partition = new PartitionStorage(new RAMDirectory()).create(1000);
+        // with two sources and two sinks the cells are {0, 1} and {2, 3}, so 1 and 2 are the boundary nodes
+        new InertialFlowPartitioner(graph).setCellSizes(2).setSourceSinkFraction(0.5).partition(partition);
+        CellOverlay overlay = new CellOverlay(graph, partition, weighting);
+        overlay.customize(1);
+        assertEquals(2, overlay.getBoundaryNodes(0));
+        assertEquals(0, overlay.getCliqueWeight(0, 1, 1), 1e-6);
+        assertEquals(new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(1, 3).getWeight(), overlay.calcWeight(1, 3), 1e-1);
+        assertEquals(Double.POSITIVE_INFINITY, overlay.calcWeight(3, 0), 0);
+    }
+}
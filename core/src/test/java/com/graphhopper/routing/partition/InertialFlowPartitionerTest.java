@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.partition;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class InertialFlowPartitionerTest {
+    private final String location = "./target/partition-test";
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        new File(location).mkdirs();
+        graph = new GraphBuilder(new EncodingManager("car")).create();
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    static void initGrid(GraphHopperStorage graph, int size) {
+        NodeAccess na = graph.getNodeAccess();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                na.setNode(row * size + col, 50 + row * 0.001, 10 + col * 0.001);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (col + 1 < size)
+                    graph.edge(row * size + col, row * size + col + 1, 100, true);
+                if (row + 1 < size)
+                    graph.edge(row * size + col, (row + 1) * size + col, 100, true);
+            }
+        }
+    }
+
+    @Test
+    public void testGrid() {
+        initGrid(graph, 40);
+        PartitionStorage partition = new PartitionStorage(new RAMDirectory()).create(1000);
+        new InertialFlowPartitioner(graph).setCellSizes(64, 512).partition(partition);
+        assertEquals(2, partition.getLevels());
+        assertEquals(1600, partition.getNodes());
+
+        for (int level = 0; level < 2; level++) {
+            int[] sizes = new int[partition.getCells(level)];
+            for (int node = 0; node < graph.getNodes(); node++) {
+                sizes[partition.getCell(node, level)]++;
+            }
+            for (int size : sizes) {
+                assertTrue(size > 0);
+                assertTrue(size <= (level == 0 ? 64 : 512));
+            }
+        }
+        assertTrue(partition.getCells(0) > partition.getCells(1));
+
+        // the cells are nested
+        int[] parents = new int[partition.getCells(0)];
+        java.util.Arrays.fill(parents, -1);
+        for (int node = 0; node < graph.getNodes(); node++) {
+            int cell = partition.getCell(node, 0);
+            if (parents[cell] < 0)
+                parents[cell] = partition.getCell(node, 1);
+            assertEquals(parents[cell], partition.getCell(node, 1));
+        }
+
+        // the straight cuts of a grid are found, so only few edges cross the cells
+        int cutEdges = 0;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (partition.getCell(iter.getBaseNode(), 0) != partition.getCell(iter.getAdjNode(), 0))
+                cutEdges++;
+        }
+        assertTrue("cut edges: " + cutEdges, cutEdges < 3 * 40 * 8);
+    }
+
+    @Test
+    public void testBisectionIsMinimal() {
+        // two squares connected by one edge
+        NodeAccess na = graph.getNodeAccess();
+        for (int node = 0; node < 8; node++) {
+            na.setNode(node, 50 + node * 0.001, 10 + (node % 2) * 0.001);
+        }
+        for (int offset = 0; offset < 8; offset += 4) {
+            graph.edge(offset, offset + 1, 100, true);
+            graph.edge(offset + 1, offset + 2, 100, true);
+            graph.edge(offset + 2, offset + 3, 100, true);
+            graph.edge(offset + 3, offset, 100, true);
+            graph.edge(offset, offset + 2, 100, true);
+        }
+        graph.edge(3, 4, 100, true);
+
+        PartitionStorage partition = new PartitionStorage(new RAMDirectory()).create(1000);
+        new InertialFlowPartitioner(graph).setCellSizes(4).partition(partition);
+        assertEquals(2, partition.getCells(0));
+        for (int node = 0; node < 4; node++) {
+            assertEquals(partition.getCell(0, 0), partition.getCell(node, 0));
+            assertEquals(partition.getCell(4, 0), partition.getCell(node + 4, 0));
+        }
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        initGrid(graph, 10);
+        PartitionStorage partition = new PartitionStorage(new RAMDirectory(location, true)).create(1000);
+        new InertialFlowPartitioner(graph).setCellSizes(8, 32).partition(partition);
+        int cells = partition.getCells(0);
+        partition.flush();
+        partition.close();
+
+        PartitionStorage loaded = new PartitionStorage(new RAMDirectory(location, true));
+        assertTrue(loaded.loadExisting());
+        assertEquals(100, loaded.getNodes());
+        assertEquals(2, loaded.getLevels());
+        assertEquals(cells, loaded.getCells(0));
+        assertTrue(loaded.getCell(99, 0) < cells);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCellSizes() {
+        new InertialFlowPartitioner(graph).setCellSizes(64, 32);
+    }
+}
@@ -112,6 +112,42 @@ public class GraphHopperStorageCHTest extends GraphHopperStorageTest {
         assertEquals(2, tmpIter.getSkippedEdge2());
     }
 
+    @Override
+    @Test
+    public void testCompactAdjacency() {
+        graph = createGHStorage();
+        CHGraph g = getGraph(graph);
+        initExampleGraph(graph);
+        graph.freeze();
+        g.shortcut(0, 4).setDistance(40).setFlags(carEncoder.setAccess(0, true, true));
+        g.shortcut(3, 5).setDistance(30).setFlags(carEncoder.setAccess(0, true, false));
+
+        EdgeExplorer baseExplorer = graph.createEdgeExplorer();
+        EdgeExplorer chExplorer = g.createEdgeExplorer();
+        List<List<Integer>> expectedBase = new ArrayList<>();
+        List<List<Integer>> expectedCH = new ArrayList<>();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            expectedBase.add(getEdges(baseExplorer.setBaseNode(node)));
+            expectedCH.add(getEdges(chExplorer.setBaseNode(node)));
+        }
+
+        graph.compactAdjacency();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            assertEquals("node " + node, expectedBase.get(node), getEdges(baseExplorer.setBaseNode(node)));
+            assertEquals("node " + node, expectedCH.get(node), getEdges(chExplorer.setBaseNode(node)));
+        }
+
+        CHEdgeIterator iter = g.createEdgeExplorer().setBaseNode(4);
+        assertTrue(iter.next());
+        assertTrue(iter.isShortcut());
+        assertEquals(0, iter.getAdjNode());
+        try {
+            g.shortcut(1, 4);
+            fail("adding a shortcut must fail after the adjacency is compacted");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
     @Test
     public void testDisconnectEdge() {
         graph = createGHStorage();
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all storage tests with delta encoded pillar nodes.
+ */
+public class GraphHopperStorageCompressedGeometryTest extends GraphHopperStorageTest {
+    @Override
+    protected GraphHopperStorage newGHStorage(Directory dir, boolean enabled3D) {
+        return super.newGHStorage(dir, enabled3D).setCompressedGeometry(true);
+    }
+
+    @Override
+    @Test
+    public void testDontGrowOnUpdate() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+
+        EdgeIteratorState iter = graph.edge(0, 1, 100, true);
+        BaseGraph baseGraph = (BaseGraph) graph.getBaseGraph();
+        assertEquals(4, baseGraph.getMaxGeoRef());
+        iter.setWayGeometry(Helper.createPointList3D(1, 2, 3, 1.001, 2.001, 5, 1.002, 2.002, 7, 1.003, 2.003, 9));
+        long maxGeoRef = baseGraph.getMaxGeoRef();
+        // the uncompressed geometry would need 1 + 12 integers
+        assertTrue("geoRef " + maxGeoRef, maxGeoRef < 4 + (1 + 12));
+        iter.setWayGeometry(Helper.createPointList3D(1, 2, 3, 1.001, 2.001, 5));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(1, 2, 3, 1.001, 2.001, 5), iter.fetchWayGeometry(0));
+        iter.setWayGeometry(Helper.createPointList3D(-1, -2, -3, 1, 2, 3));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(-1, -2, -3, 1, 2, 3), iter.fetchWayGeometry(0));
+    }
+
+    @Test
+    public void testOverwriteGeometry() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50, 10, 100);
+        na.setNode(1, 50.1, 10.1, 200);
+        EdgeIteratorState edge = graph.edge(0, 1, 100, true);
+        EdgeIteratorState other = graph.edge(1, 0, 100, true);
+        other.setWayGeometry(Helper.createPointList3D(50.01, 10.01, 150, 50.02, 10.02, 160));
+
+        edge.setWayGeometry(Helper.createPointList3D(50.05, 10.05, 110, -50.05, -10.05, -10, 50.06, 10.06, 120));
+        assertEquals(Helper.createPointList3D(50.05, 10.05, 110, -50.05, -10.05, -10, 50.06, 10.06, 120), edge.fetchWayGeometry(0));
+
+        // shorter geometry is stored in place, longer geometry gets a new entry
+        edge.setWayGeometry(Helper.createPointList3D(50.07, 10.07, 130));
+        assertEquals(Helper.createPointList3D(50.07, 10.07, 130), edge.fetchWayGeometry(0));
+        PointList longer = new PointList(20, true);
+        for (int i = 0; i < 20; i++) {
+            longer.add(50 + i * 0.001, 10 - i * 0.001, i);
+        }
+        edge.setWayGeometry(longer);
+        assertEquals(longer, edge.fetchWayGeometry(0));
+        assertEquals(Helper.createPointList3D(50.01, 10.01, 150, 50.02, 10.02, 160), other.fetchWayGeometry(0));
+
+        // reverse direction
+        EdgeIteratorState reverse = graph.getEdgeIteratorState(edge.getEdge(), 0);
+        PointList expected = longer.clone(true);
+        expected.add(na, 0);
+        assertEquals(expected, reverse.fetchWayGeometry(2));
+        PointList pl = Helper.createPointList3D(50.08, 10.08, 1, 50.09, 10.09, 2);
+        reverse.setWayGeometry(pl);
+        assertEquals(Helper.createPointList3D(50.09, 10.09, 2, 50.08, 10.08, 1), edge.fetchWayGeometry(0));
+    }
+
+    @Test
+    public void testLoadCompressionFromProperties() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50, 10);
+        na.setNode(1, 50.1, 10.1);
+        graph.edge(0, 1, 100, true).setWayGeometry(Helper.createPointList(50.05, 10.05, 50.06, 10.06));
+        graph.flush();
+        graph.close();
+
+        // the configuration of the loading storage does not matter
+        graph = super.newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isCompressedGeometry());
+        assertEquals(Helper.createPointList(50.05, 10.05, 50.06, 10.06), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(0));
+    }
+}
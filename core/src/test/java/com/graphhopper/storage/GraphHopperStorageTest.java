@@ -22,6 +22,8 @@ import com.graphhopper.util.shapes.BBox;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -176,6 +178,47 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester {
         storage.close();
     }
 
+    @Test
+    public void testCompactAdjacency() {
+        graph = createGHStorage();
+        initExampleGraph(graph);
+        graph.edge(3, 5, 10, false);
+        graph.edge(5, 5, 10, true);
+
+        EdgeExplorer explorer = graph.createEdgeExplorer(carOutFilter);
+        List<List<Integer>> expected = new ArrayList<>();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            expected.add(getEdges(explorer.setBaseNode(node)));
+        }
+
+        graph.compactAdjacency();
+        assertTrue(graph.isAdjacencyCompacted());
+        for (int node = 0; node < graph.getNodes(); node++) {
+            assertEquals("node " + node, expected.get(node), getEdges(explorer.setBaseNode(node)));
+        }
+        // a new explorer behaves the same
+        assertEquals(expected.get(0), getEdges(graph.createEdgeExplorer(carOutFilter).setBaseNode(0)));
+
+        // edge properties can be changed but the adjacency cannot
+        EdgeIterator iter = explorer.setBaseNode(3);
+        assertTrue(iter.next());
+        iter.setDistance(11);
+        try {
+            graph.edge(0, 3, 10, true);
+            fail("adding an edge must fail after the adjacency is compacted");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    static List<Integer> getEdges(EdgeIterator iter) {
+        List<Integer> list = new ArrayList<>();
+        while (iter.next()) {
+            list.add(iter.getEdge());
+            list.add(iter.getAdjNode());
+        }
+        return list;
+    }
+
     @Test
     public void testEnsureSize() {
         Directory dir = new RAMDirectory();
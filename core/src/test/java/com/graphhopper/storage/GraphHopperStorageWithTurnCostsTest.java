@@ -24,8 +24,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.Random;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Karl Hübner
@@ -126,4 +125,54 @@ public class GraphHopperStorageWithTurnCostsTest extends GraphHopperStorageTest
         // A new segment should be added, which will support 128 / 16 = 8 more entries.
         assertEquals(112, turnCostStorage.getCapacity() / 16);
     }
+
+    @Test
+    public void testCompact() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        initExampleGraph(graph);
+        // entries of different nodes are interleaved and not sorted
+        turnCostStorage.addTurnInfo(5, 2, 1, 11);
+        turnCostStorage.addTurnInfo(1, 3, 5, 12);
+        turnCostStorage.addTurnInfo(3, 2, 4, 13);
+        turnCostStorage.addTurnInfo(3, 2, 1, 14);
+        turnCostStorage.addTurnInfo(0, 3, 2, 15);
+        turnCostStorage.addTurnInfo(3, 2, 1, 16);
+        turnCostStorage.addTurnInfo(2, 5, 4, 17);
+
+        turnCostStorage.compact();
+        assertTrue(turnCostStorage.isCompacted());
+        assertTurnCosts();
+
+        // adding an entry is still possible
+        turnCostStorage.addTurnInfo(4, 2, 0, 18);
+        assertFalse(turnCostStorage.isCompacted());
+        assertEquals(18, turnCostStorage.getTurnCostFlags(4, 2, 0));
+        assertEquals(13, turnCostStorage.getTurnCostFlags(3, 2, 4));
+        turnCostStorage.compact();
+        assertEquals(18, turnCostStorage.getTurnCostFlags(4, 2, 0));
+        assertTurnCosts();
+
+        graph.flush();
+        graph.close();
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertTrue(turnCostStorage.isCompacted());
+        assertTurnCosts();
+        turnCostStorage.compact();
+        assertTurnCosts();
+    }
+
+    private void assertTurnCosts() {
+        assertEquals(11, turnCostStorage.getTurnCostFlags(5, 2, 1));
+        assertEquals(12, turnCostStorage.getTurnCostFlags(1, 3, 5));
+        assertEquals(13, turnCostStorage.getTurnCostFlags(3, 2, 4));
+        // duplicates return the first added entry
+        assertEquals(14, turnCostStorage.getTurnCostFlags(3, 2, 1));
+        assertEquals(15, turnCostStorage.getTurnCostFlags(0, 3, 2));
+        assertEquals(17, turnCostStorage.getTurnCostFlags(2, 5, 4));
+        assertEquals(0, turnCostStorage.getTurnCostFlags(3, 2, 2));
+        assertEquals(0, turnCostStorage.getTurnCostFlags(1, 2, 1));
+        assertEquals(0, turnCostStorage.getTurnCostFlags(5, 3, 1));
+        assertEquals(0, turnCostStorage.getTurnCostFlags(2, 4, 1));
+    }
 }
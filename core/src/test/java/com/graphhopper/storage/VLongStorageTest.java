@@ -60,4 +60,26 @@ public class VLongStorageTest {
         assertEquals(7L, store.readVLong());
         assertEquals(777666555L, store.readVLong());
     }
+
+    @Test
+    public void testWriteZLong() {
+        VLongStorage store = new VLongStorage();
+        store.writeZLong(0);
+        store.writeZLong(-1);
+        store.writeZLong(63);
+        store.writeZLong(-64);
+        assertEquals(4, store.getPosition());
+        store.writeZLong(-777666555);
+        store.writeZLong(Long.MAX_VALUE / 4);
+        store.writeZLong(Long.MIN_VALUE / 4);
+
+        store.seek(0);
+        assertEquals(0L, store.readZLong());
+        assertEquals(-1L, store.readZLong());
+        assertEquals(63L, store.readZLong());
+        assertEquals(-64L, store.readZLong());
+        assertEquals(-777666555L, store.readZLong());
+        assertEquals(Long.MAX_VALUE / 4, store.readZLong());
+        assertEquals(Long.MIN_VALUE / 4, store.readZLong());
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.CachingLocationIndex.Eviction;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachingLocationIndexTest extends AbstractLocationIndexTester {
+    private final EncodingManager encodingManager = new EncodingManager("car");
+
+    @Override
+    public LocationIndex createIndex(Graph g, int resolution) {
+        return createIndex(g, 1000, Eviction.LRU);
+    }
+
+    CachingLocationIndex createIndex(Graph g, int capacity, Eviction eviction) {
+        LocationIndexTree tree = new LocationIndexTree(g, new RAMDirectory(location));
+        tree.setResolution(500000);
+        tree.prepareIndex();
+        return new CachingLocationIndex(g, tree, capacity, eviction);
+    }
+
+    @Override
+    public boolean hasEdgeSupport() {
+        return true;
+    }
+
+    private Graph createSimpleGraph() {
+        Graph g = createGHStorage(encodingManager);
+        initSimpleGraph(g);
+        return g;
+    }
+
+    @Test
+    public void testHitsReturnCopies() {
+        CachingLocationIndex index = createIndex(createSimpleGraph(), 100, Eviction.LRU);
+        idx = index;
+        QueryResult expected = index.getIndex().findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+
+        QueryResult first = index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+        assertEquals(0, index.getHits());
+        assertEquals(1, index.getMisses());
+        // e.g. QueryGraph.lookup replaces the closest node with a virtual node
+        first.setClosestNode(100);
+
+        QueryResult second = index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+        assertEquals(1, index.getHits());
+        assertNotSame(first, second);
+        assertEquals(expected.getClosestNode(), second.getClosestNode());
+        assertEquals(expected.getClosestEdge().getEdge(), second.getClosestEdge().getEdge());
+        assertEquals(expected.getSnappedPoint(), second.getSnappedPoint());
+        assertEquals(expected.getQueryDistance(), second.getQueryDistance(), 1e-3);
+    }
+
+    @Test
+    public void testRoundedCoordinatesKeepQueryPoint() {
+        CachingLocationIndex index = createIndex(createSimpleGraph(), 100, Eviction.LRU).setPrecision(3);
+        idx = index;
+        index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+        QueryResult res = index.findClosest(1.2002, 1.9003, EdgeFilter.ALL_EDGES);
+        assertEquals(1, index.getHits());
+        assertEquals(1.2002, res.getQueryPoint().lat, 1e-9);
+        assertEquals(1.9003, res.getQueryPoint().lon, 1e-9);
+
+        QueryResult expected = index.getIndex().findClosest(1.2002, 1.9003, EdgeFilter.ALL_EDGES);
+        assertEquals(expected.getSnappedPoint().lat, res.getSnappedPoint().lat, 1e-6);
+        assertEquals(expected.getSnappedPoint().lon, res.getSnappedPoint().lon, 1e-6);
+        assertEquals(expected.getQueryDistance(), res.getQueryDistance(), 1e-3);
+    }
+
+    @Test
+    public void testFilterIsPartOfKey() {
+        CachingLocationIndex index = createIndex(createSimpleGraph(), 100, Eviction.LRU);
+        idx = index;
+        index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+        index.findClosest(1.2, 1.9, new DefaultEdgeFilter(encodingManager.getEncoder("car")));
+        assertEquals(2, index.getMisses());
+        // equal filters share the entry
+        index.findClosest(1.2, 1.9, new DefaultEdgeFilter(encodingManager.getEncoder("car")));
+        assertEquals(1, index.getHits());
+        index.findClosest(1.2, 1.9, new DefaultEdgeFilter(encodingManager.getEncoder("car"), false, true));
+        assertEquals(3, index.getMisses());
+    }
+
+    @Test
+    public void testInvalidate() {
+        CachingLocationIndex index = createIndex(createSimpleGraph(), 100, Eviction.LRU);
+        idx = index;
+        QueryResult close = index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+        index.findClosest(-1, -1.9, EdgeFilter.ALL_EDGES);
+        assertEquals(2, index.getSize());
+
+        // the edge 3-5 is far away from both entries
+        index.invalidate(IntArrayList.from(5));
+        assertEquals(2, index.getSize());
+
+        index.invalidate(IntArrayList.from(close.getClosestEdge().getEdge()));
+        assertEquals(1, index.getSize());
+
+        index.findClosest(-1, -1.9, EdgeFilter.ALL_EDGES);
+        assertEquals(1, index.getHits());
+        index.clear();
+        assertEquals(0, index.getSize());
+    }
+
+    @Test
+    public void testTinyLFUKeepsFrequentPoints() {
+        Graph graph = createSimpleGraph();
+        for (Eviction eviction : Eviction.values()) {
+            CachingLocationIndex index = createIndex(graph, 100, eviction);
+            for (int i = 0; i < 5; i++) {
+                index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+            }
+            // many points requested only once
+            for (int i = 0; i < 1000; i++) {
+                index.findClosest(-1 + i * 0.005, -2 + i * 0.005, EdgeFilter.ALL_EDGES);
+            }
+            assertTrue(index.getSize() <= 100);
+
+            long hits = index.getHits();
+            index.findClosest(1.2, 1.9, EdgeFilter.ALL_EDGES);
+            assertEquals(eviction.toString(), eviction == Eviction.TINY_LFU ? hits + 1 : hits, index.getHits());
+            index.close();
+        }
+    }
+}
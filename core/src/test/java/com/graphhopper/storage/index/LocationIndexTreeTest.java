@@ -17,6 +17,7 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.coll.GHIntHashSet;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.Directory;
@@ -31,6 +32,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -208,6 +211,48 @@ public class LocationIndexTreeTest extends AbstractLocationIndexTester {
         assertEquals(1, res.getClosestNode());
     }
 
+    @Test
+    public void testAddEdges() {
+        Graph graph = createTestGraph(encodingManager);
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory(location, true).create());
+        index.setResolution(10000);
+        index.prepareIndex();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(5, 0.3, 0.9);
+        na.setNode(6, -0.9, 0.2);
+        IntArrayList edges = new IntArrayList();
+        edges.add(graph.edge(3, 5, 1, true).getEdge());
+        edges.add(graph.edge(6, 2, 1, true).setWayGeometry(Helper.createPointList(-0.95, 0.1)).getEdge());
+        edges.add(graph.edge(6, 4, 1, true).getEdge());
+        index.addEdges(edges);
+        assertEquals(5, findID(index, 0.28, 0.88));
+        assertEquals(6, findID(index, -0.88, 0.2));
+
+        // same results as a new index for the same bounds
+        LocationIndexTree newIndex = new LocationIndexTree(graph, new RAMDirectory());
+        newIndex.setResolution(10000);
+        newIndex.prepareIndex();
+        for (double lat = -1; lat <= 1; lat += 0.05) {
+            for (double lon = -1; lon <= 1.6; lon += 0.05) {
+                assertEquals(lat + "," + lon, findID(newIndex, lat, lon), findID(index, lat, lon));
+            }
+        }
+
+        // the stored index keeps its bounds and nodes outside are stored in the border tiles
+        index.flush();
+        index.close();
+        index = new LocationIndexTree(graph, new RAMDirectory(location, true).create());
+        index.setResolution(10000);
+        assertTrue(index.loadExisting());
+        assertEquals(6, findID(index, -0.88, 0.2));
+        edges.clear();
+        na.setNode(7, 1.5, 2);
+        edges.add(graph.edge(7, 4, 1, true).getEdge());
+        index.addEdges(edges);
+        assertEquals(7, findID(index, 1.4, 1.9));
+        assertEquals(5, findID(index, 0.28, 0.88));
+    }
+
     @Test
     public void testReverseSpatialKey() {
         LocationIndexTree index = createIndex(createTestGraph(encodingManager), 200);
@@ -302,6 +347,87 @@ public class LocationIndexTreeTest extends AbstractLocationIndexTester {
         }).getClosestNode());
     }
 
+    @Test
+    public void testTiledPreparationCreatesSameIndex() {
+        Graph graph = createGHStorage(new RAMDirectory(), encodingManager, false);
+        NodeAccess na = graph.getNodeAccess();
+        Random rand = new Random(12);
+        for (int node = 0; node < 2000; node++) {
+            na.setNode(node, 49 + rand.nextDouble() * 0.5, 11 + rand.nextDouble() * 0.5);
+        }
+        for (int i = 0; i < 4000; i++) {
+            int from = rand.nextInt(2000);
+            int to = rand.nextInt(2000);
+            EdgeIteratorState edge = graph.edge(from, to, 100, true);
+            if (i % 3 == 0)
+                edge.setWayGeometry(Helper.createPointList((na.getLat(from) + na.getLat(to)) / 2 + 0.01,
+                        (na.getLon(from) + na.getLon(to)) / 2 - 0.01));
+        }
+
+        // the object tree like older versions created it
+        LocationIndexTree expected = createIndexNoPrepare(graph, 500);
+        expected.prepareAlgo();
+        LocationIndexTree.InMemConstructionIndex inMem = expected.getPrepareInMemIndex();
+        expected.dataAccess.create(64 * 1024);
+        int lastPointer = inMem.store(inMem.root, LocationIndexTree.START_POINTER);
+        assertTrue(expected.getEntries().size() > 2);
+        for (int threads : new int[]{1, 3}) {
+            LocationIndexTree index = createIndexNoPrepare(graph, 500).setPrepareThreads(threads);
+            index.prepareIndex();
+            assertEquals(lastPointer, index.dataAccess.getHeader(3 * 4));
+            for (int i = 0; i < lastPointer; i++) {
+                assertEquals("threads " + threads + ", int " + i, expected.dataAccess.getInt(i * 4L), index.dataAccess.getInt(i * 4L));
+            }
+            index.close();
+        }
+        expected.close();
+    }
+
+    @Test
+    public void testFindClosestBatch() {
+        Graph graph = createSampleGraph(encodingManager);
+        LocationIndexTree index = createIndex(graph, 50000);
+        final int filteredNode = 4;
+        EdgeFilter filter = new EdgeFilter() {
+            @Override
+            public boolean accept(EdgeIteratorState iter) {
+                return iter.getBaseNode() != filteredNode && iter.getAdjNode() != filteredNode;
+            }
+        };
+
+        Random rand = new Random(12);
+        List<GHPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new GHPoint(rand.nextDouble() * 5, rand.nextDouble() * 5));
+        }
+        // outside of the bounds
+        points.add(new GHPoint(-1, 6));
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (EdgeFilter edgeFilter : Arrays.asList(EdgeFilter.ALL_EDGES, filter)) {
+                QueryResult[] sequential = index.findClosest(points, edgeFilter, null);
+                QueryResult[] parallel = index.findClosest(points, edgeFilter, pool);
+                assertEquals(points.size(), sequential.length);
+                for (int i = 0; i < points.size(); i++) {
+                    GHPoint point = points.get(i);
+                    QueryResult expected = index.findClosest(point.lat, point.lon, edgeFilter);
+                    for (QueryResult qr : Arrays.asList(sequential[i], parallel[i])) {
+                        assertEquals(point, qr.getQueryPoint());
+                        assertEquals(expected.isValid(), qr.isValid());
+                        assertEquals(expected.getClosestNode(), qr.getClosestNode());
+                        assertEquals(expected.getClosestEdge().getEdge(), qr.getClosestEdge().getEdge());
+                        assertEquals(expected.getSnappedPosition(), qr.getSnappedPosition());
+                        assertEquals(expected.getQueryDistance(), qr.getQueryDistance(), 1e-6);
+                        assertTrue(qr.getClosestNode() != filteredNode || edgeFilter == EdgeFilter.ALL_EDGES);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     // see testgraph2.jpg
     Graph createTestGraph2() {
         Graph graph = createGHStorage(new RAMDirectory(), encodingManager, false);
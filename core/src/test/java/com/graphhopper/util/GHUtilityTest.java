@@ -19,6 +19,7 @@ package com.graphhopper.util;
 
 import com.carrotsearch.hppc.LongArrayList;
 import com.graphhopper.coll.GHIntLongHashMap;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
@@ -105,6 +106,74 @@ public class GHUtilityTest {
         GHUtility.sortDFS(g, createGraph());
     }
 
+    @Test
+    public void testSortHilbert() {
+        Graph g = initUnsorted(createGraph());
+        g.edge(6, 5, 11, true).setName("test").setWayGeometry(Helper.createPointList(3.5, 1.8));
+        Graph newG = GHUtility.sortHilbert(g, createGraph());
+        assertEquals(g.getNodes(), newG.getNodes());
+        assertEquals(g.getAllEdges().getMaxId(), newG.getAllEdges().getMaxId());
+
+        // nodes along the curve starting at the lower left corner
+        NodeAccess na = newG.getNodeAccess();
+        assertEquals(0, na.getLatitude(0), 1e-4);
+        assertEquals(1, na.getLongitude(0), 1e-4);
+        assertEquals(2.3, na.getLatitude(1), 1e-4);
+
+        // the edges are sorted by their smaller node
+        int prevNode = -1;
+        AllEdgesIterator iter = newG.getAllEdges();
+        while (iter.next()) {
+            int node = Math.min(iter.getBaseNode(), iter.getAdjNode());
+            assertTrue(node >= prevNode);
+            prevNode = node;
+        }
+
+        int n7 = findNode(newG, 5, 1.5), n3 = findNode(newG, 3, 0.5);
+        EdgeIteratorState edge = GHUtility.getEdge(newG, n7, n3);
+        assertEquals(2.1, edge.getDistance(), 1e-4);
+        assertTrue(edge.isForward(carEncoder));
+        assertFalse(edge.isBackward(carEncoder));
+        edge = GHUtility.getEdge(newG, n3, n7);
+        assertFalse(edge.isForward(carEncoder));
+        assertTrue(edge.isBackward(carEncoder));
+
+        edge = GHUtility.getEdge(newG, findNode(newG, 2.3, 2.2), findNode(newG, 4.2, 1.6));
+        assertEquals("test", edge.getName());
+        assertEquals(Helper.createPointList(2.3, 2.2, 3.5, 1.8, 4.2, 1.6), edge.fetchWayGeometry(3));
+    }
+
+    @Test
+    public void testSortHilbertWithTurnCosts() {
+        EncodingManager em = new EncodingManager(new CarFlagEncoder(5, 5, 3));
+        GraphHopperStorage g = new GraphBuilder(em).create();
+        initUnsorted(g);
+        TurnCostExtension tcExt = (TurnCostExtension) g.getExtension();
+        int edge72 = GHUtility.getEdge(g, 7, 3).getEdge();
+        int edge75 = GHUtility.getEdge(g, 7, 5).getEdge();
+        tcExt.addTurnInfo(edge72, 7, edge75, 3);
+
+        GraphHopperStorage newG = GHUtility.newStorage(g);
+        GHUtility.sortHilbert(g, newG);
+        int n7 = findNode(newG, 5, 1.5);
+        int newEdge73 = GHUtility.getEdge(newG, n7, findNode(newG, 3, 0.5)).getEdge();
+        int newEdge75 = GHUtility.getEdge(newG, n7, findNode(newG, 4.2, 1.6)).getEdge();
+        TurnCostExtension newTcExt = (TurnCostExtension) newG.getExtension();
+        assertEquals(3, newTcExt.getTurnCostFlags(newEdge73, n7, newEdge75));
+        assertEquals(0, newTcExt.getTurnCostFlags(newEdge75, n7, newEdge73));
+        // the original turn costs are unchanged
+        assertEquals(3, tcExt.getTurnCostFlags(edge72, 7, edge75));
+    }
+
+    private static int findNode(Graph g, double lat, double lon) {
+        NodeAccess na = g.getNodeAccess();
+        for (int node = 0; node < g.getNodes(); node++) {
+            if (Math.abs(na.getLatitude(node) - lat) < 1e-6 && Math.abs(na.getLongitude(node) - lon) < 1e-6)
+                return node;
+        }
+        throw new IllegalArgumentException("node not found " + lat + "," + lon);
+    }
+
     @Test
     public void testCopyWithSelfRef() {
         Graph g = initUnsorted(createGraph());
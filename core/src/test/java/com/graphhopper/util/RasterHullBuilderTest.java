@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RasterHullBuilderTest {
+    // roughly 100m per cell
+    private static final double CELL = 100 / (DistanceCalcEarth.C / 360);
+
+    @Test
+    public void testSingleCell() {
+        List<PointList> rings = new RasterHullBuilder(100).addPoint(0.00001, 0.00001).build();
+        assertEquals(1, rings.size());
+        PointList ring = rings.get(0);
+        // closed square
+        assertEquals(5, ring.getSize());
+        assertEquals(ring.getLatitude(0), ring.getLatitude(4), 1e-9);
+        assertEquals(ring.getLongitude(0), ring.getLongitude(4), 1e-9);
+        assertEquals(CELL, maxLat(ring) - minLat(ring), 1e-9);
+        assertTrue(contains(ring, 0.00001, 0.00001));
+    }
+
+    @Test
+    public void testLShapeAndSeparateAreas() {
+        RasterHullBuilder builder = new RasterHullBuilder(100);
+        // an L of three cells
+        builder.addPoint(0.5 * CELL, 0.5 * CELL).addPoint(1.5 * CELL, 0.5 * CELL).addPoint(0.5 * CELL, 1.5 * CELL);
+        List<PointList> rings = builder.build();
+        assertEquals(1, rings.size());
+        // 6 corners plus the closing point
+        assertEquals(7, rings.get(0).getSize());
+
+        // a cell touching only diagonally is a separate area
+        builder.addPoint(2.5 * CELL, 1.5 * CELL);
+        rings = builder.build();
+        assertEquals(2, rings.size());
+
+        builder.clear();
+        assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void testHoleIsIgnored() {
+        RasterHullBuilder builder = new RasterHullBuilder(100);
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                if (x != 1 || y != 1)
+                    builder.addPoint((y + 0.5) * CELL, (x + 0.5) * CELL);
+            }
+        }
+        List<PointList> rings = builder.build();
+        assertEquals(1, rings.size());
+        assertEquals(5, rings.get(0).getSize());
+        assertEquals(3 * CELL, maxLat(rings.get(0)) - minLat(rings.get(0)), 1e-9);
+    }
+
+    @Test
+    public void testLine() {
+        RasterHullBuilder builder = new RasterHullBuilder(100);
+        builder.addLine(0.5 * CELL, 0.5 * CELL, 0.5 * CELL, 10.5 * CELL);
+        List<PointList> rings = builder.build();
+        // all cells along the line are marked
+        assertEquals(1, rings.size());
+        assertEquals(5, rings.get(0).getSize());
+    }
+
+    private static double minLat(PointList pl) {
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < pl.getSize(); i++) {
+            min = Math.min(min, pl.getLatitude(i));
+        }
+        return min;
+    }
+
+    private static double maxLat(PointList pl) {
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < pl.getSize(); i++) {
+            max = Math.max(max, pl.getLatitude(i));
+        }
+        return max;
+    }
+
+    private static boolean contains(PointList ring, double lat, double lon) {
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < ring.getSize(); i++) {
+            minLon = Math.min(minLon, ring.getLongitude(i));
+            maxLon = Math.max(maxLon, ring.getLongitude(i));
+        }
+        return lat >= minLat(ring) && lat <= maxLat(ring) && lon >= minLon && lon <= maxLon;
+    }
+}
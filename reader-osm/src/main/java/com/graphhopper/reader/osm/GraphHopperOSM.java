@@ -20,6 +20,12 @@ package com.graphhopper.reader.osm;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.shapes.BBox;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * This class is the simplified entry to all functionality if you import from OpenStreetMap data.
@@ -29,7 +35,17 @@ import com.graphhopper.storage.GraphHopperStorage;
 public class GraphHopperOSM extends GraphHopper {
     @Override
     protected DataReader createReader(GraphHopperStorage ghStorage) {
-        return initDataReader(new OSMReader(ghStorage));
+        return initDataReader(new OSMReader(ghStorage).setWayThreads(getWayThreads()).
+                setNodeMapType(getNodeMapType()).setIncremental(isIncremental()));
+    }
+
+    @Override
+    protected BBox applyChanges(GraphHopperStorage ghStorage, LocationIndex locationIndex, File changeFile) throws IOException {
+        if (!(locationIndex instanceof LocationIndexTree))
+            throw new IllegalStateException("Applying changes requires a LocationIndexTree but was " + locationIndex.getClass());
+
+        OSMReader reader = (OSMReader) initDataReaderOptions(new OSMReader(ghStorage));
+        return new OSMChangeReader(reader, ghStorage, (LocationIndexTree) locationIndex).applyChanges(changeFile);
     }
 
     public String getOSMFile() {
@@ -0,0 +1,367 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.LongLongCursor;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHLongHashSet;
+import com.graphhopper.coll.GHLongLongHashMap;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Applies an OSM change file (.osc or .osc.gz) to a graph which was imported with
+ * OSMReader.setIncremental. The edges of modified and deleted ways are disabled and the created
+ * and modified ways are added as new edges. Moved nodes are updated in place and an existing edge
+ * is split if a new way is connected to one of its pillar nodes. All other edges and nodes keep
+ * their IDs. The LocationIndexTree is only updated for the changed edges.
+ * <p>
+ * Relations are ignored and nodes which were not used by any way before are only known if they
+ * are part of the change file. As edges have to be created the graph must not be frozen, i.e. it
+ * must not be prepared for CH or LM.
+ */
+public class OSMChangeReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMChangeReader.class);
+    // the pillar nodes removed via Douglas-Peucker are within this distance to the edge geometry
+    private static final double MAX_SPLIT_DISTANCE = 2;
+    private final OSMReader reader;
+    private final GraphHopperStorage ghStorage;
+    private final NodeAccess nodeAccess;
+    private final LocationIndexTree index;
+    private final DistanceCalc distCalc = Helper.DIST_EARTH;
+    private final double maxSplitNormedDistance = distCalc.calcNormalizedDist(MAX_SPLIT_DISTANCE);
+    // the created and modified elements in the order of the change file
+    private final List<ReaderNode> nodes = new ArrayList<>();
+    private final List<ReaderWay> ways = new ArrayList<>();
+    // the modified and deleted ways, their old edges are disabled
+    private final GHLongHashSet changedWayIds = new GHLongHashSet();
+    private final IntArrayList changedEdges = new IntArrayList();
+    private final BBox changedBounds = BBox.createInverse(false);
+
+    public OSMChangeReader(OSMReader reader, GraphHopperStorage ghStorage, LocationIndexTree index) {
+        this.reader = reader;
+        this.ghStorage = ghStorage;
+        this.nodeAccess = ghStorage.getNodeAccess();
+        this.index = index;
+    }
+
+    /**
+     * Applies the specified change file. The caller is responsible to flush the graph and the
+     * location index afterwards.
+     *
+     * @return the bounds of the changed area, which is invalid if nothing was changed
+     */
+    public BBox applyChanges(File changeFile) throws IOException {
+        if (ghStorage.isFrozen())
+            throw new IllegalStateException("Cannot apply changes to a graph which is prepared for CH or LM");
+
+        try {
+            readChangeFile(changeFile);
+        } catch (XMLStreamException ex) {
+            throw new IOException("Cannot parse change file " + changeFile, ex);
+        }
+
+        StopWatch sw = new StopWatch().start();
+        reader.loadIncremental();
+        int edgesBefore = ghStorage.getAllEdges().getMaxId();
+        disableChangedWays();
+        moveNodes();
+        prepareWayNodes();
+        for (ReaderWay way : ways) {
+            reader.processWay(way);
+        }
+
+        int edgesAfter = ghStorage.getAllEdges().getMaxId();
+        for (int edge = edgesBefore; edge < edgesAfter; edge++) {
+            changedEdges.add(edge);
+            updateBounds(ghStorage.getEdgeIteratorState(edge, Integer.MIN_VALUE).fetchWayGeometry(3));
+        }
+        reader.finishedReading();
+        index.addEdges(changedEdges);
+        LOGGER.info("applied " + changeFile + " with " + nodes.size() + " nodes, " + ways.size() + " ways and "
+                + changedWayIds.size() + " modified or deleted ways in " + sw.stop().getSeconds() + "s, "
+                + (edgesAfter - edgesBefore) + " new edges, " + changedEdges.size() + " changed edges, bounds " + changedBounds);
+        return changedBounds;
+    }
+
+    private void readChangeFile(File changeFile) throws IOException, XMLStreamException {
+        try (InputStream is = openChangeFile(changeFile)) {
+            XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+            try {
+                int event = parser.nextTag();
+                if (!"osmChange".equals(parser.getLocalName()))
+                    throw new IllegalArgumentException("File is not a valid OSM change file " + changeFile);
+
+                String action = null;
+                while (event != XMLStreamConstants.END_DOCUMENT) {
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = parser.getLocalName();
+                        if ("create".equals(name) || "modify".equals(name) || "delete".equals(name)) {
+                            action = name;
+                        } else if ("node".equals(name) || "way".equals(name)) {
+                            if (action == null)
+                                throw new IllegalArgumentException(name + " has to be in create, modify or delete");
+
+                            long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                            boolean node = "node".equals(name);
+                            if (!node && !"create".equals(action))
+                                changedWayIds.add(id);
+
+                            // deleted nodes are not necessary as the ways using them change too
+                            if (!"delete".equals(action)) {
+                                if (node)
+                                    nodes.add(OSMXMLHelper.createNode(id, parser));
+                                else
+                                    ways.add(OSMXMLHelper.createWay(id, parser));
+                            }
+                        }
+                    }
+                    event = parser.next();
+                }
+            } finally {
+                parser.close();
+            }
+        }
+    }
+
+    private InputStream openChangeFile(File changeFile) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(changeFile), 50000);
+        if (changeFile.getName().endsWith(".gz"))
+            return new GZIPInputStream(is, 50000);
+
+        return is;
+    }
+
+    /**
+     * Disables the existing edges of modified and deleted ways. The modified ways are added again
+     * later.
+     */
+    private void disableChangedWays() {
+        if (changedWayIds.isEmpty())
+            return;
+
+        AllEdgesIterator iter = ghStorage.getAllEdges();
+        while (iter.next()) {
+            if (iter.getFlags() != 0 && changedWayIds.contains(reader.getOsmWayIdOfEdge(iter.getEdge()))) {
+                updateBounds(iter.fetchWayGeometry(3));
+                iter.setFlags(0);
+            }
+        }
+    }
+
+    /**
+     * Updates the coordinates of the existing tower and pillar nodes and of the edges using them.
+     */
+    private void moveNodes() {
+        EdgeExplorer explorer = ghStorage.createEdgeExplorer();
+        for (ReaderNode node : nodes) {
+            int id = reader.getNodeMap().get(node.getId());
+            double lat = node.getLat(), lon = node.getLon();
+            double ele = nodeAccess.is3D() ? reader.getElevation(node) : Double.NaN;
+            if (id < OSMReader.TOWER_NODE) {
+                int tower = -id - 3;
+                if (nodeAccess.getLatitude(tower) == lat && nodeAccess.getLongitude(tower) == lon)
+                    continue;
+
+                changedBounds.update(nodeAccess.getLatitude(tower), nodeAccess.getLongitude(tower));
+                changedBounds.update(lat, lon);
+                if (nodeAccess.is3D())
+                    nodeAccess.setNode(tower, lat, lon, ele);
+                else
+                    nodeAccess.setNode(tower, lat, lon);
+
+                EdgeIterator iter = explorer.setBaseNode(tower);
+                while (iter.next()) {
+                    if (iter.getFlags() != 0) {
+                        iter.setDistance(calcDistance(iter.fetchWayGeometry(3)));
+                        changedEdges.add(iter.getEdge());
+                    }
+                }
+            } else if (id > -OSMReader.TOWER_NODE) {
+                int pillar = id - 3;
+                double oldLat = reader.pillarInfo.getLatitude(pillar), oldLon = reader.pillarInfo.getLongitude(pillar);
+                if (oldLat == lat && oldLon == lon)
+                    continue;
+
+                changedBounds.update(oldLat, oldLon);
+                changedBounds.update(lat, lon);
+                reader.pillarInfo.setNode(pillar, lat, lon, ele);
+                EdgePosition position = findEdgePosition(oldLat, oldLon);
+                if (position != null && position.exact) {
+                    EdgeIteratorState edge = ghStorage.getEdgeIteratorState(position.edge, Integer.MIN_VALUE);
+                    PointList points = edge.fetchWayGeometry(3);
+                    points.set(position.index, lat, lon, ele);
+                    edge.setWayGeometry(points.copy(1, points.getSize() - 1));
+                    edge.setDistance(calcDistance(points));
+                    changedEdges.add(edge.getEdge());
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the nodes of the created and modified ways like OSMReader.preProcess. Pillar nodes of
+     * existing edges which are used by these ways become tower nodes and the edge is split.
+     */
+    private void prepareWayNodes() {
+        GHLongLongHashMap nodeCounts = new GHLongLongHashMap();
+        for (ReaderWay way : ways) {
+            if (!reader.filterWay(way))
+                continue;
+
+            for (int i = 0; i < way.getNodes().size(); i++) {
+                nodeCounts.addTo(way.getNodes().get(i), 1);
+            }
+        }
+
+        for (LongLongCursor cursor : nodeCounts) {
+            long osmId = cursor.key;
+            int id = reader.getNodeMap().get(osmId);
+            if (id >= OSMReader.TOWER_NODE && id <= OSMReader.PILLAR_NODE) {
+                // unknown node or without location so far
+                reader.getNodeMap().put(osmId, cursor.value > 1 ? OSMReader.TOWER_NODE : OSMReader.PILLAR_NODE);
+            } else if (id > -OSMReader.TOWER_NODE) {
+                int pillar = id - 3;
+                double lat = reader.pillarInfo.getLatitude(pillar);
+                double lon = reader.pillarInfo.getLongitude(pillar);
+                double ele = reader.pillarInfo.getElevation(pillar);
+                EdgePosition position = findEdgePosition(lat, lon);
+                if (position != null || cursor.value > 1) {
+                    reader.pillarInfo.setNode(pillar, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+                    int tower = -reader.addTowerNode(osmId, lat, lon, ele) - 3;
+                    if (position != null)
+                        splitEdge(position, tower);
+                }
+            }
+        }
+
+        for (ReaderNode node : nodes) {
+            if (reader.getNodeMap().get(node.getId()) != OSMReader.EMPTY_NODE)
+                reader.processNode(node);
+        }
+    }
+
+    /**
+     * Replaces the edge with two edges connected at the specified tower node.
+     */
+    private void splitEdge(EdgePosition position, int tower) {
+        EdgeIteratorState edge = ghStorage.getEdgeIteratorState(position.edge, Integer.MIN_VALUE);
+        long osmWayId = reader.getOsmWayIdOfEdge(edge.getEdge());
+        PointList points = edge.fetchWayGeometry(3);
+        PointList towerPoint = new PointList(1, nodeAccess.is3D());
+        towerPoint.add(nodeAccess, tower);
+        PointList first = points.copy(0, position.index);
+        first.add(towerPoint);
+        PointList second = towerPoint.clone(false);
+        second.add(points.copy(position.exact ? position.index + 1 : position.index, points.getSize()));
+
+        int[] baseNodes = {edge.getBaseNode(), tower};
+        int[] adjNodes = {tower, edge.getAdjNode()};
+        PointList[] geometries = {first, second};
+        for (int i = 0; i < 2; i++) {
+            EdgeIteratorState newEdge = edge.copyPropertiesTo(ghStorage.edge(baseNodes[i], adjNodes[i]));
+            PointList geometry = geometries[i];
+            newEdge.setWayGeometry(geometry.copy(1, geometry.getSize() - 1));
+            newEdge.setDistance(calcDistance(geometry));
+            reader.storeOsmWayID(newEdge.getEdge(), osmWayId);
+        }
+        updateBounds(points);
+        edge.setFlags(0);
+    }
+
+    /**
+     * Finds the enabled edge with a pillar node at the specified location or, if there is no such
+     * edge, the closest one within MAX_SPLIT_DISTANCE.
+     */
+    private EdgePosition findEdgePosition(double lat, double lon) {
+        GHIntHashSet nodes = new GHIntHashSet();
+        index.findNetworkEntries(lat, lon, nodes, 0);
+        index.findNetworkEntries(lat, lon, nodes, 1);
+        EdgeExplorer explorer = ghStorage.createEdgeExplorer();
+        EdgePosition best = null;
+        double bestDistance = maxSplitNormedDistance;
+        for (IntCursor node : nodes) {
+            EdgeIterator iter = explorer.setBaseNode(node.value);
+            while (iter.next()) {
+                if (iter.getFlags() == 0)
+                    continue;
+
+                PointList points = ghStorage.getEdgeIteratorState(iter.getEdge(), Integer.MIN_VALUE).fetchWayGeometry(3);
+                for (int i = 1; i < points.getSize(); i++) {
+                    if (i < points.getSize() - 1 && points.getLatitude(i) == lat && points.getLongitude(i) == lon)
+                        return new EdgePosition(iter.getEdge(), i, true);
+
+                    double prevLat = points.getLatitude(i - 1), prevLon = points.getLongitude(i - 1);
+                    if (!distCalc.validEdgeDistance(lat, lon, prevLat, prevLon, points.getLatitude(i), points.getLongitude(i)))
+                        continue;
+
+                    double distance = distCalc.calcNormalizedEdgeDistance(lat, lon, prevLat, prevLon,
+                            points.getLatitude(i), points.getLongitude(i));
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = new EdgePosition(iter.getEdge(), i, false);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private double calcDistance(PointList points) {
+        // like in OSMReader.addEdge
+        return Math.max(points.calcDistance(distCalc), 0.0001);
+    }
+
+    private void updateBounds(PointList points) {
+        for (int i = 0; i < points.getSize(); i++) {
+            changedBounds.update(points.getLatitude(i), points.getLongitude(i));
+        }
+    }
+
+    private static class EdgePosition {
+        final int edge;
+        // the index of the point in the full geometry, if not exact the point is inserted before it
+        final int index;
+        final boolean exact;
+
+        EdgePosition(int edge, int index, boolean exact) {
+            this.edge = edge;
+            this.index = index;
+            this.exact = exact;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.graphhopper.coll.GHLongHashSet;
 import com.graphhopper.coll.GHLongIntBTree;
 import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.coll.LongIntMap;
+import com.graphhopper.coll.PagedLongIntMap;
 import com.graphhopper.reader.*;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.reader.osm.OSMTurnRelation.TurnCostTableEntry;
@@ -78,6 +79,10 @@ public class OSMReader implements DataReader {
     // tower node is <= -3
     protected static final int TOWER_NODE = -2;
     private static final Logger LOGGER = LoggerFactory.getLogger(OSMReader.class);
+    // the names of the data kept for incremental updates
+    private static final String NODE_MAP_NAME = "osm_node_map";
+    private static final String PILLAR_INFO_NAME = "osm_pillar_info";
+    private static final String WAY_IDS_NAME = "osm_way_ids";
     private final GraphStorage ghStorage;
     private final Graph graph;
     private final NodeAccess nodeAccess;
@@ -94,6 +99,9 @@ public class OSMReader implements DataReader {
     private long skippedLocations;
     private final EncodingManager encodingManager;
     private int workerThreads = 2;
+    private int wayThreads = 1;
+    // only non-null while ways are read with more than one way thread
+    private OSMWayPipeline wayPipeline;
     // Using the correct Map<Long, Integer> is hard. We need a memory efficient and fast solution for big data sets!
     //
     // very slow: new SparseLongLongArray
@@ -103,6 +111,7 @@ public class OSMReader implements DataReader {
     //        nodeOsmIdToIndexMap = new BigLongIntMap(expectedNodes, EMPTY);
     // smaller memory overhead for bigger data sets because of avoiding a "rehash"
     // remember how many times a node was used to identify tower nodes
+    // off heap and without object overhead for dense IDs like in the planet: new PagedLongIntMap, see setNodeMapType
     private LongIntMap osmNodeIdToInternalNodeMap;
     private GHLongLongHashMap osmNodeIdToNodeFlagsMap;
     private GHLongLongHashMap osmWayIdToRouteWeightMap;
@@ -118,6 +127,9 @@ public class OSMReader implements DataReader {
     private File osmFile;
     private Date osmDataDate;
     private boolean dontCreateStorage = false;
+    // only non-null if the data for incremental updates is kept, see setIncremental
+    private Directory incrementalDir;
+    private DataAccess edgeToOsmWayIds;
 
     public OSMReader(GraphHopperStorage ghStorage) {
         this.ghStorage = ghStorage;
@@ -258,9 +270,15 @@ public class OSMReader implements DataReader {
         long counter = 1;
         try (OSMInput in = openOsmInputFile(osmFile)) {
             LongIntMap nodeFilter = getNodeMap();
+            if (wayThreads > 1)
+                wayPipeline = new OSMWayPipeline(this, wayThreads);
 
             ReaderElement item;
             while ((item = in.getNext()) != null) {
+                // all edges need to be created before nodes or relations are processed
+                if (wayPipeline != null && !item.isType(ReaderElement.WAY))
+                    wayPipeline.flush();
+
                 switch (item.getType()) {
                     case ReaderElement.NODE:
                         if (nodeFilter.get(item.getId()) != -1) {
@@ -292,12 +310,20 @@ public class OSMReader implements DataReader {
                 }
             }
 
+            if (wayPipeline != null)
+                wayPipeline.flush();
+
             if (in.getUnprocessedElements() > 0)
                 throw new IllegalStateException("Still unprocessed elements in reader queue " + in.getUnprocessedElements());
 
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex) {
             throw new RuntimeException("Couldn't process file " + osmFile + ", error: " + ex.getMessage(), ex);
+        } finally {
+            if (wayPipeline != null) {
+                wayPipeline.close();
+                wayPipeline = null;
+            }
         }
 
         finishedReading();
@@ -310,7 +336,9 @@ public class OSMReader implements DataReader {
     }
 
     /**
-     * Process properties, encode flags and create edges for the way.
+     * Process properties, encode flags and create edges for the way. If more than one way thread
+     * is configured the flags are encoded in the background and the edges are created later, but
+     * still in the order of the file.
      */
     void processWay(ReaderWay way) {
         if (way.getNodes().size() < 2)
@@ -320,8 +348,6 @@ public class OSMReader implements DataReader {
         if (!way.hasTags())
             return;
 
-        long wayOsmId = way.getId();
-
         long includeWay = encodingManager.acceptWay(way);
         if (includeWay == 0)
             return;
@@ -344,6 +370,29 @@ public class OSMReader implements DataReader {
             }
         }
 
+        if (wayPipeline != null) {
+            wayPipeline.add(way, includeWay, relationFlags);
+            return;
+        }
+
+        long wayFlags = encodeWayTags(way, includeWay, relationFlags);
+        if (wayFlags == 0)
+            return;
+
+        for (EdgeIteratorState edge : addWayEdges(way, wayFlags)) {
+            applyWayTags(way, edge);
+        }
+    }
+
+    void applyWayTags(ReaderWay way, EdgeIteratorState edge) {
+        encodingManager.applyWayTags(way, edge);
+    }
+
+    /**
+     * Calculates the flags of the way from its tags. This method only reads the encoders and the
+     * specified way, so it can be called from several threads at the same time.
+     */
+    long encodeWayTags(ReaderWay way, long includeWay, long relationFlags) {
         if (way.getTag("duration") != null) {
             try {
                 long dur = OSMTagParser.parseDuration(way.getTag("duration"));
@@ -354,10 +403,16 @@ public class OSMReader implements DataReader {
             }
         }
 
-        long wayFlags = encodingManager.handleWayTags(way, includeWay, relationFlags);
-        if (wayFlags == 0)
-            return;
+        return encodingManager.handleWayTags(way, includeWay, relationFlags);
+    }
 
+    /**
+     * Creates the edges of the way including barrier edges. This needs to be called in the order
+     * of the ways in the file to get the same node and edge ids for every import.
+     */
+    List<EdgeIteratorState> addWayEdges(ReaderWay way, long wayFlags) {
+        long wayOsmId = way.getId();
+        LongArrayList osmNodeIds = way.getNodes();
         List<EdgeIteratorState> createdEdges = new ArrayList<EdgeIteratorState>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -411,10 +466,7 @@ public class OSMReader implements DataReader {
             // no barriers - simply add the whole way
             createdEdges.addAll(addOSMWay(way.getNodes(), wayFlags, wayOsmId));
         }
-
-        for (EdgeIteratorState edge : createdEdges) {
-            encodingManager.applyWayTags(way, edge);
-        }
+        return createdEdges;
     }
 
     public void processRelation(ReaderRelation relation) throws XMLStreamException {
@@ -517,7 +569,7 @@ public class OSMReader implements DataReader {
             return Double.NaN;
     }
 
-    private void processNode(ReaderNode node) {
+    void processNode(ReaderNode node) {
         if (isInBounds(node)) {
             addNode(node);
 
@@ -732,15 +784,22 @@ public class OSMReader implements DataReader {
         EdgeIteratorState iter = graph.edge(fromIndex, toIndex).setDistance(towerNodeDistance).setFlags(flags);
 
         if (nodes > 2) {
-            if (doSimplify)
-                simplifyAlgo.simplify(pillarNodes);
-
-            iter.setWayGeometry(pillarNodes);
+            if (wayPipeline != null) {
+                wayPipeline.addGeometry(iter, pillarNodes);
+            } else {
+                simplify(pillarNodes);
+                iter.setWayGeometry(pillarNodes);
+            }
         }
         storeOsmWayID(iter.getEdge(), wayOsmId);
         return iter;
     }
 
+    void simplify(PointList pillarNodes) {
+        if (doSimplify)
+            simplifyAlgo.simplify(pillarNodes);
+    }
+
     /**
      * Stores only osmWayIds which are required for relations
      */
@@ -748,6 +807,25 @@ public class OSMReader implements DataReader {
         if (getOsmWayIdSet().contains(osmWayId)) {
             getEdgeIdToOsmWayIdMap().put(edgeId, osmWayId);
         }
+
+        if (edgeToOsmWayIds != null) {
+            long pointer = (long) edgeId * 8;
+            edgeToOsmWayIds.ensureCapacity(pointer + 8);
+            edgeToOsmWayIds.setInt(pointer, BitUtil.LITTLE.getIntLow(osmWayId));
+            edgeToOsmWayIds.setInt(pointer + 4, BitUtil.LITTLE.getIntHigh(osmWayId));
+        }
+    }
+
+    /**
+     * @return the OSM way ID of the specified edge. Only available if incremental updates are
+     * enabled.
+     */
+    long getOsmWayIdOfEdge(int edgeId) {
+        long pointer = (long) edgeId * 8;
+        if (pointer + 8 > edgeToOsmWayIds.getCapacity())
+            return -1;
+
+        return BitUtil.LITTLE.combineIntsToLong(edgeToOsmWayIds.getInt(pointer), edgeToOsmWayIds.getInt(pointer + 4));
     }
 
     /**
@@ -776,8 +854,24 @@ public class OSMReader implements DataReader {
 
     protected void finishedReading() {
         printInfo("way");
-        pillarInfo.clear();
         eleProvider.release();
+        if (incrementalDir != null) {
+            // keep the data to apply changes later
+            edgeToOsmWayIds.setHeader(0, nextPillarId);
+            edgeToOsmWayIds.flush();
+            edgeToOsmWayIds.close();
+            pillarInfo.flush();
+            pillarInfo.close();
+            PagedLongIntMap nodeMap = (PagedLongIntMap) osmNodeIdToInternalNodeMap;
+            nodeMap.flush();
+            nodeMap.close();
+            incrementalDir = null;
+            edgeToOsmWayIds = null;
+        } else {
+            pillarInfo.clear();
+            if (osmNodeIdToInternalNodeMap instanceof PagedLongIntMap)
+                ((PagedLongIntMap) osmNodeIdToInternalNodeMap).remove();
+        }
         osmNodeIdToInternalNodeMap = null;
         osmNodeIdToNodeFlagsMap = null;
         osmWayIdToRouteWeightMap = null;
@@ -888,6 +982,80 @@ public class OSMReader implements DataReader {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to calculate the flags and to simplify the geometry of the
+     * ways. The edges are still created in one thread, so the resulting graph is identical to the
+     * one created with a single way thread.
+     */
+    public OSMReader setWayThreads(int wayThreads) {
+        if (wayThreads < 1)
+            throw new IllegalArgumentException("Way threads must be at least 1 but was " + wayThreads);
+
+        this.wayThreads = wayThreads;
+        return this;
+    }
+
+    /**
+     * Selects the map from OSM node IDs to the internal node IDs, which is the biggest data
+     * structure while importing. The default "btree" keeps the map on the heap. "paged" stores the
+     * map in temporary memory mapped files in the graph folder and needs less memory for big and
+     * dense areas like the planet.
+     */
+    public OSMReader setNodeMapType(String nodeMapType) {
+        if ("btree".equals(nodeMapType)) {
+            osmNodeIdToInternalNodeMap = new GHLongIntBTree(200);
+        } else if ("paged".equals(nodeMapType)) {
+            osmNodeIdToInternalNodeMap = new PagedLongIntMap(createMMapDirectory());
+        } else {
+            throw new IllegalArgumentException("Unknown node map type " + nodeMapType + ", use btree or paged");
+        }
+        return this;
+    }
+
+    /**
+     * Keeps the node map, the pillar nodes and the OSM way of every edge in the graph folder after
+     * the import. This is necessary to apply OSM change files later via OSMChangeReader and
+     * implies the "paged" node map. The graph must not be sorted or otherwise renumbered after the
+     * import as the internal node IDs are stored.
+     */
+    public OSMReader setIncremental(boolean incremental) {
+        if (!incremental)
+            return this;
+
+        if (!ghStorage.getDirectory().getDefaultType().isStoring())
+            throw new IllegalArgumentException("Incremental updates require a graph which is stored on disc");
+
+        incrementalDir = createMMapDirectory();
+        osmNodeIdToInternalNodeMap = new PagedLongIntMap(incrementalDir, NODE_MAP_NAME, EMPTY_NODE).create();
+        pillarInfo.clear();
+        pillarInfo = new PillarInfo(nodeAccess.is3D(), incrementalDir, PILLAR_INFO_NAME).create();
+        edgeToOsmWayIds = incrementalDir.find(WAY_IDS_NAME).create(1000);
+        return this;
+    }
+
+    /**
+     * Loads the data kept via setIncremental to process the elements of an OSM change file. Call
+     * finishedReading afterwards to store the updated data again.
+     */
+    void loadIncremental() {
+        incrementalDir = createMMapDirectory();
+        PagedLongIntMap nodeMap = new PagedLongIntMap(incrementalDir, NODE_MAP_NAME, EMPTY_NODE);
+        pillarInfo.clear();
+        pillarInfo = new PillarInfo(nodeAccess.is3D(), incrementalDir, PILLAR_INFO_NAME);
+        edgeToOsmWayIds = incrementalDir.find(WAY_IDS_NAME);
+        if (!nodeMap.loadExisting() || !pillarInfo.loadExisting() || !edgeToOsmWayIds.loadExisting())
+            throw new IllegalStateException("Cannot apply changes as the graph in " + incrementalDir.getLocation()
+                    + " was not imported with incremental updates");
+
+        osmNodeIdToInternalNodeMap = nodeMap;
+        nextPillarId = edgeToOsmWayIds.getHeader(0);
+        nextTowerId = graph.getNodes();
+    }
+
+    private Directory createMMapDirectory() {
+        return new GHDirectory(ghStorage.getDirectory().getLocation(), DAType.MMAP).create();
+    }
+
     @Override
     public OSMReader setElevationProvider(ElevationProvider eleProvider) {
         if (eleProvider == null)
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Processes the ways of the second pass in three stages. The flags of the ways are calculated
+ * from the tags in parallel, then the edges are created in the calling thread in the order of the
+ * file, which keeps the node and edge ids deterministic. Finally the pillar nodes are simplified in
+ * parallel and the geometry is stored, again in the order of the edges.
+ * <p>
+ * At most a fixed window of ways is in progress per stage, so the memory usage is bounded.
+ */
+class OSMWayPipeline {
+    private final OSMReader reader;
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<PendingWay> encodingQueue = new ArrayDeque<>();
+    private final Deque<PendingWay> geometryQueue = new ArrayDeque<>();
+    // the way for which the edges are currently created
+    private PendingWay current;
+
+    OSMWayPipeline(OSMReader reader, int threads) {
+        this.reader = reader;
+        this.window = threads * 256;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "way-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void add(final ReaderWay way, final long includeWay, final long relationFlags) {
+        PendingWay pendingWay = new PendingWay(way);
+        pendingWay.flags = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return reader.encodeWayTags(way, includeWay, relationFlags);
+            }
+        });
+        encodingQueue.add(pendingWay);
+        while (encodingQueue.size() > window) {
+            createEdges(encodingQueue.poll());
+        }
+    }
+
+    /**
+     * Called from OSMReader.addEdge instead of simplifying and storing the geometry directly.
+     */
+    void addGeometry(EdgeIteratorState edge, final PointList pillarNodes) {
+        if (current == null)
+            throw new IllegalStateException("Geometry can only be added while creating the edges of a way");
+
+        current.geometryEdges.add(edge);
+        current.geometries.add(executor.submit(new Callable<PointList>() {
+            @Override
+            public PointList call() {
+                reader.simplify(pillarNodes);
+                return pillarNodes;
+            }
+        }));
+    }
+
+    /**
+     * Creates all edges of the added ways and stores their geometry.
+     */
+    void flush() {
+        while (!encodingQueue.isEmpty()) {
+            createEdges(encodingQueue.poll());
+        }
+        while (!geometryQueue.isEmpty()) {
+            finish(geometryQueue.poll());
+        }
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void createEdges(PendingWay pendingWay) {
+        long wayFlags = get(pendingWay.flags);
+        if (wayFlags == 0)
+            return;
+
+        current = pendingWay;
+        try {
+            pendingWay.edges = reader.addWayEdges(pendingWay.way, wayFlags);
+        } finally {
+            current = null;
+        }
+        geometryQueue.add(pendingWay);
+        while (geometryQueue.size() > window) {
+            finish(geometryQueue.poll());
+        }
+    }
+
+    private void finish(PendingWay pendingWay) {
+        for (int i = 0; i < pendingWay.geometryEdges.size(); i++) {
+            pendingWay.geometryEdges.get(i).setWayGeometry(get(pendingWay.geometries.get(i)));
+        }
+        // encoders might need the geometry e.g. to calculate the incline
+        for (EdgeIteratorState edge : pendingWay.edges) {
+            reader.applyWayTags(pendingWay.way, edge);
+        }
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for way processing", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+
+            throw new IllegalStateException("Problem while processing way", ex.getCause());
+        }
+    }
+
+    private static class PendingWay {
+        final ReaderWay way;
+        final List<EdgeIteratorState> geometryEdges = new ArrayList<>(2);
+        final List<Future<PointList>> geometries = new ArrayList<>(2);
+        Future<Long> flags;
+        List<EdgeIteratorState> edges;
+
+        PendingWay(ReaderWay way) {
+            this.way = way;
+        }
+    }
+}
@@ -17,20 +17,30 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.routing.ch.HubLabels;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.TurnCostExtension;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
+import com.graphhopper.util.exceptions.PointOutOfBoundsException;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.*;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -500,6 +510,49 @@ public class GraphHopperIT {
         assertEquals(91, rsp.getBest().getDistance(), 5.);
     }
 
+    @Test
+    public void testMonacoParallelLegs() {
+        List<GHRequest> requests = new ArrayList<>();
+        requests.add(new GHRequest().
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                addPoint(new GHPoint(43.74958, 7.436566)).
+                addPoint(new GHPoint(43.741069, 7.426854)).
+                addPoint(new GHPoint(43.740371, 7.426946)).
+                addPoint(new GHPoint(43.727687, 7.418737)));
+        // the heading at the third point and pass through constrain some legs
+        requests.add(new GHRequest().
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                addPoint(new GHPoint(43.74958, 7.436566)).
+                addPoint(new GHPoint(43.741069, 7.426854), 180).
+                addPoint(new GHPoint(43.740371, 7.426946)).
+                addPoint(new GHPoint(43.727687, 7.418737)));
+        GHRequest passThrough = new GHRequest().
+                addPoint(new GHPoint(43.741069, 7.426854)).
+                addPoint(new GHPoint(43.740371, 7.426946)).
+                addPoint(new GHPoint(43.740794, 7.427294)).
+                addPoint(new GHPoint(43.727687, 7.418737));
+        passThrough.getHints().put(Routing.PASS_THROUGH, true);
+        requests.add(passThrough);
+
+        for (GHRequest req : requests) {
+            req.setVehicle(vehicle).setWeighting("fastest");
+            GHResponse expected = hopper.route(req);
+            assertFalse(expected.getErrors().toString(), expected.hasErrors());
+            try {
+                hopper.setLegThreads(3);
+                GHResponse rsp = hopper.route(req);
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                assertEquals(expected.getBest().getDistance(), rsp.getBest().getDistance(), 1e-6);
+                assertEquals(expected.getBest().getTime(), rsp.getBest().getTime());
+                assertEquals(expected.getBest().getPoints(), rsp.getBest().getPoints());
+                assertEquals(expected.getBest().getInstructions().size(), rsp.getBest().getInstructions().size());
+                assertEquals(expected.getHints().getLong("visited_nodes.sum", 0), rsp.getHints().getLong("visited_nodes.sum", -1));
+            } finally {
+                hopper.setLegThreads(1);
+            }
+        }
+    }
+
     @Test
     public void testSRTMWithInstructions() throws Exception {
         GraphHopper tmpHopper = new GraphHopperOSM().
@@ -745,6 +798,203 @@ public class GraphHopperIT {
         assertTrue("heading not allowed for CH enabled graph", rsp.hasErrors());
     }
 
+    @Test
+    public void testMonacoMatrix() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car")).
+                importOrLoad();
+        tmpHopper.getCHFactoryDecorator().setDisablingAllowed(true);
+
+        List<GHPoint> points = Arrays.asList(new GHPoint(43.73005, 7.415707), new GHPoint(43.741522, 7.42826),
+                new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566));
+        GHMatrixRequest req = new GHMatrixRequest();
+        for (GHPoint point : points) {
+            req.addPoint(point);
+        }
+        GHMatrixResponse chRsp = tmpHopper.calcMatrix(req);
+        assertFalse(chRsp.getErrors().toString(), chRsp.hasErrors());
+        assertTrue(chRsp.getDebugInfo(), chRsp.getDebugInfo().contains("many_to_many_ch"));
+
+        req.getHints().put(CH.DISABLE, true);
+        GHMatrixResponse flexRsp = tmpHopper.calcMatrix(req);
+        assertFalse(flexRsp.getErrors().toString(), flexRsp.hasErrors());
+
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < points.size(); j++) {
+                String cell = i + "->" + j;
+                DistanceMatrix chMatrix = chRsp.getMatrix();
+                if (i == j) {
+                    assertEquals(cell, 0, chMatrix.getDistance(i, j), 1e-6);
+                    continue;
+                }
+
+                PathWrapper path = tmpHopper.route(new GHRequest(points.get(i), points.get(j)).setVehicle("car")).getBest();
+                assertEquals(cell, path.getDistance(), chMatrix.getDistance(i, j), 1);
+                assertEquals(cell, path.getTime(), chMatrix.getTime(i, j), 1000);
+                assertEquals(cell, path.getDistance(), flexRsp.getMatrix().getDistance(i, j), 1);
+                assertEquals(cell, path.getTime(), flexRsp.getMatrix().getTime(i, j), 1000);
+            }
+        }
+
+        GHMatrixResponse errorRsp = tmpHopper.calcMatrix(new GHMatrixRequest().
+                addFromPoint(new GHPoint(43.73005, 7.415707)).addToPoint(new GHPoint(50, 10)));
+        assertTrue(errorRsp.hasErrors());
+        assertTrue(errorRsp.getErrors().get(0) instanceof PointOutOfBoundsException);
+        tmpHopper.close();
+    }
+
+    @Test
+    public void testMonacoMatrixHubLabels() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car"));
+        tmpHopper.getCHFactoryDecorator().setHubLabelWeightings(Arrays.asList("fastest"));
+        tmpHopper.importOrLoad();
+        assertEquals(1, tmpHopper.getCHFactoryDecorator().getHubLabels().size());
+
+        List<GHPoint> points = Arrays.asList(new GHPoint(43.73005, 7.415707), new GHPoint(43.741522, 7.42826),
+                new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566));
+        GHMatrixRequest req = new GHMatrixRequest();
+        for (GHPoint point : points) {
+            req.addPoint(point);
+        }
+        GHMatrixResponse rsp = tmpHopper.calcMatrix(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().contains("hub_labels"));
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < points.size(); j++) {
+                String cell = i + "->" + j;
+                if (i == j) {
+                    assertEquals(cell, 0, rsp.getMatrix().getDistance(i, j), 1e-6);
+                    continue;
+                }
+
+                PathWrapper path = tmpHopper.route(new GHRequest(points.get(i), points.get(j)).setVehicle("car")).getBest();
+                assertEquals(cell, path.getDistance(), rsp.getMatrix().getDistance(i, j), 1);
+                assertEquals(cell, path.getTime(), rsp.getMatrix().getTime(i, j), 1000);
+            }
+        }
+        tmpHopper.close();
+
+        // the labels are loaded and not created again
+        tmpHopper = new GraphHopperOSM().
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car"));
+        tmpHopper.getCHFactoryDecorator().setHubLabelWeightings(Arrays.asList("fastest"));
+        assertTrue(tmpHopper.load(tmpGraphFile));
+        HubLabels hubLabels = tmpHopper.getCHFactoryDecorator().getHubLabels().get(0);
+        assertTrue(hubLabels.getCapacity() > 0);
+        assertEquals(rsp.getMatrix().getDistance(0, 1), tmpHopper.calcMatrix(req).getMatrix().getDistance(0, 1), 1e-6);
+        tmpHopper.close();
+    }
+
+    @Test
+    public void testMonacoAlternativeRoutesCH() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car")).
+                importOrLoad();
+        tmpHopper.getCHFactoryDecorator().setDisablingAllowed(true);
+
+        GHRequest req = new GHRequest(43.729057, 7.41251, 43.740298, 7.423561).
+                setAlgorithm(ALT_ROUTE).setVehicle("car");
+        req.getHints().put("alternative_route.max_paths", "3");
+        GHResponse chRsp = tmpHopper.route(req);
+        assertFalse(chRsp.getErrors().toString(), chRsp.hasErrors());
+        assertTrue(chRsp.getAll().size() > 1);
+
+        req.getHints().put(CH.DISABLE, true);
+        GHResponse flexRsp = tmpHopper.route(req);
+        assertFalse(flexRsp.getErrors().toString(), flexRsp.hasErrors());
+
+        // the best path is identical, the alternatives fulfill the same stretch criterion
+        PathWrapper best = chRsp.getBest();
+        assertEquals(flexRsp.getBest().getDistance(), best.getDistance(), 1);
+        assertEquals(flexRsp.getBest().getTime(), best.getTime(), 1000);
+        for (PathWrapper alt : chRsp.getAll()) {
+            assertTrue(alt.getRouteWeight() >= best.getRouteWeight() - 1e-6);
+            assertTrue(alt.getRouteWeight() <= 1.4 * best.getRouteWeight());
+        }
+        tmpHopper.close();
+    }
+
+    @Test
+    public void testMonacoChangeGraphWithCustomizableCH() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car"));
+        tmpHopper.getCHFactoryDecorator().setCustomizable(true).setDisablingAllowed(true);
+        tmpHopper.importOrLoad();
+        assertNotNull(tmpHopper.getCHFactoryDecorator().getPreparations().get(0).getCustomizableCH());
+
+        GHRequest req = new GHRequest(43.729057, 7.41251, 43.740298, 7.423561).setVehicle("car");
+        GHResponse rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        long oldTime = rsp.getBest().getTime();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("speed", 5);
+        tmpHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox",
+                new BBox(7.415, 7.421, 43.732, 43.737), null, properties)));
+
+        rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertTrue(rsp.getBest().getTime() > oldTime);
+        req.getHints().put(CH.DISABLE, true);
+        GHResponse flexRsp = tmpHopper.route(req);
+        assertEquals(flexRsp.getBest().getTime(), rsp.getBest().getTime(), 1000);
+        assertEquals(flexRsp.getBest().getDistance(), rsp.getBest().getDistance(), 1);
+        tmpHopper.close();
+
+        // the order is restored from the stored levels
+        tmpHopper = new GraphHopperOSM().
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car"));
+        tmpHopper.getCHFactoryDecorator().setCustomizable(true);
+        assertTrue(tmpHopper.load(tmpGraphFile));
+        assertNotNull(tmpHopper.getCHFactoryDecorator().getPreparations().get(0).getCustomizableCH());
+        assertEquals(oldTime, tmpHopper.route(new GHRequest(43.729057, 7.41251, 43.740298, 7.423561).setVehicle("car")).getBest().getTime());
+        tmpHopper.close();
+    }
+
+    @Test
+    public void testMonacoChangeGraphWithLandmarksAndRouteCache() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setCHEnabled(false).
+                setRouteCache(10, 0).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car"));
+        tmpHopper.getLMFactoryDecorator().setEnabled(true).setWeightingsAsStrings(Arrays.asList("fastest"));
+        tmpHopper.importOrLoad();
+
+        GHRequest req = new GHRequest(43.729057, 7.41251, 43.740298, 7.423561).setVehicle("car");
+        long oldTime = tmpHopper.route(req).getBest().getTime();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("speed", 5);
+        tmpHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox",
+                new BBox(7.415, 7.421, 43.732, 43.737), null, properties)));
+        // routes cached between the graph change and the landmark update are stale too
+        assertEquals(2, tmpHopper.getGraphVersion());
+
+        GHResponse rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertTrue(rsp.getBest().getTime() > oldTime);
+        assertEquals(0, tmpHopper.getRouteCache().getHits());
+        tmpHopper.close();
+    }
+
     @Test
     public void testIfCHIsUsed() throws Exception {
         // route directly after import
@@ -861,6 +1111,158 @@ public class GraphHopperIT {
         // combining hybrid & speed mode is currently not possible and should be avoided: #1082
     }
 
+    @Test
+    public void testMonacoStatePool() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car")).
+                importOrLoad();
+        tmpHopper.getCHFactoryDecorator().setDisablingAllowed(true);
+
+        List<GHPoint> points = Arrays.asList(new GHPoint(43.73005, 7.415707), new GHPoint(43.741522, 7.42826),
+                new GHPoint(43.727687, 7.418737), new GHPoint(43.74958, 7.436566));
+        List<PathWrapper> expected = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            expected.add(tmpHopper.route(new GHRequest(points.get(i), points.get((i + 1) % points.size()))).getBest());
+        }
+
+        tmpHopper.setStatePoolEnabled(true);
+        for (boolean disableCH : new boolean[]{false, true}) {
+            // repeat the queries to reuse the pooled state
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < points.size(); i++) {
+                    GHRequest req = new GHRequest(points.get(i), points.get((i + 1) % points.size())).
+                            setAlgorithm(DIJKSTRA_BI);
+                    req.getHints().put(CH.DISABLE, disableCH);
+                    GHResponse rsp = tmpHopper.route(req);
+                    assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                    assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().contains("pooled"));
+                    assertEquals(expected.get(i).getDistance(), rsp.getBest().getDistance(), 1);
+                    assertEquals(expected.get(i).getTime(), rsp.getBest().getTime(), 1000);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMonacoWayThreads() {
+        GraphHopper expected = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(false).
+                setCHEnabled(false).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car,foot")).
+                importOrLoad();
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(false).
+                setCHEnabled(false).
+                setWayThreads(3).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car,foot")).
+                importOrLoad();
+
+        GraphHopperStorage expectedGraph = expected.getGraphHopperStorage();
+        GraphHopperStorage graph = tmpHopper.getGraphHopperStorage();
+        assertEquals(expectedGraph.getNodes(), graph.getNodes());
+        assertEquals(expectedGraph.getAllEdges().getMaxId(), graph.getAllEdges().getMaxId());
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState edge = expectedGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode());
+            assertEquals(edge.getBaseNode(), iter.getBaseNode());
+            assertEquals(edge.getFlags(), iter.getFlags());
+            assertEquals(edge.fetchWayGeometry(3).toString(), iter.fetchWayGeometry(3).toString());
+        }
+
+        GHRequest req = new GHRequest(43.73005, 7.415707, 43.741522, 7.42826).setVehicle("foot");
+        assertEquals(expected.route(req).getBest().getDistance(), tmpHopper.route(req).getBest().getDistance(), 1e-3);
+    }
+
+    @Test
+    public void testMonacoPagedNodeMap() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setCHEnabled(false).
+                setNodeMapType("paged").
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager(importVehicles)).
+                importOrLoad();
+        assertEquals(hopper.getGraphHopperStorage().getNodes(), tmpHopper.getGraphHopperStorage().getNodes());
+        assertEquals(hopper.getGraphHopperStorage().getAllEdges().getMaxId(), tmpHopper.getGraphHopperStorage().getAllEdges().getMaxId());
+
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle(vehicle);
+        GHResponse rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(hopper.route(req).getBest().getDistance(), rsp.getBest().getDistance(), 1e-3);
+        assertFalse(new File(tmpGraphFile, "tmp_node_map_blocks").exists());
+    }
+
+    @Test
+    public void testMonacoIsochrone() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/monaco.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car")).
+                importOrLoad();
+
+        GHPoint start = new GHPoint(43.73005, 7.415707);
+        GHPoint near = new GHPoint(43.727687, 7.418737);
+        GHPoint far = new GHPoint(43.74958, 7.436566);
+        long nearSeconds = tmpHopper.route(new GHRequest(start, near)).getBest().getTime() / 1000;
+        long farSeconds = tmpHopper.route(new GHRequest(start, far)).getBest().getTime() / 1000;
+        long limit = (nearSeconds + farSeconds) / 2;
+        assertTrue(nearSeconds + " < " + limit, nearSeconds + 30 < limit);
+
+        GHIsochroneResponse rsp = tmpHopper.calcIsochrone(new GHIsochroneRequest().addPoint(start).
+                setTimeLimit(limit).setBuckets(2));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(2, rsp.getBuckets().size());
+        GHIsochroneResponse.Bucket first = rsp.getBuckets().get(0);
+        GHIsochroneResponse.Bucket second = rsp.getBuckets().get(1);
+        assertEquals(limit / 2d, first.getLimit(), 1e-6);
+        assertTrue(first.getReachedNodes() > 0);
+        assertTrue(first.getReachedNodes() < second.getReachedNodes());
+        assertTrue(containsPoint(second.getPolygons(), near));
+        assertFalse(containsPoint(second.getPolygons(), far));
+
+        // the pooled tree of the request thread gives the same result for subsequent requests
+        tmpHopper.setStatePoolEnabled(true);
+        for (int i = 0; i < 2; i++) {
+            rsp = tmpHopper.calcIsochrone(new GHIsochroneRequest().addPoint(start).
+                    setTimeLimit(limit).setBuckets(2));
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertEquals(first.getReachedNodes(), rsp.getBuckets().get(0).getReachedNodes());
+            assertEquals(second.getReachedNodes(), rsp.getBuckets().get(1).getReachedNodes());
+        }
+
+        rsp = tmpHopper.calcIsochrone(new GHIsochroneRequest().addPoint(start));
+        assertTrue(rsp.hasErrors());
+
+        tmpHopper.setMaxIsochronePoints(1);
+        rsp = tmpHopper.calcIsochrone(new GHIsochroneRequest().addPoint(start).addPoint(near).setTimeLimit(limit));
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().toString(), rsp.getErrors().toString().contains("Too many points"));
+    }
+
+    private static boolean containsPoint(List<PointList> polygons, GHPoint point) {
+        for (PointList ring : polygons) {
+            boolean inside = false;
+            for (int i = 0, j = ring.getSize() - 1; i < ring.getSize(); j = i++) {
+                if ((ring.getLatitude(i) > point.lat) != (ring.getLatitude(j) > point.lat)
+                        && point.lon < (ring.getLongitude(j) - ring.getLongitude(i)) * (point.lat - ring.getLatitude(i))
+                        / (ring.getLatitude(j) - ring.getLatitude(i)) + ring.getLongitude(i))
+                    inside = !inside;
+            }
+            if (inside)
+                return true;
+        }
+        return false;
+    }
+
     @Test
     public void testTurnCostsOnOff() {
         GraphHopper tmpHopper = new GraphHopperOSM().
@@ -887,6 +1289,23 @@ public class GraphHopperIT {
         assertEquals(1044, rsp.getBest().getDistance(), 1);
     }
 
+    @Test
+    public void testCompactTurnCosts() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/moscow.osm.gz").
+                setStoreOnFlush(true).
+                setCHEnabled(false).
+                setCompactTurnCosts(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car|turn_costs=true"));
+        tmpHopper.importOrLoad();
+        assertTrue(((TurnCostExtension) tmpHopper.getGraphHopperStorage().getExtension()).isCompacted());
+
+        GHRequest req = new GHRequest(55.813357, 37.5958585, 55.811042, 37.594689);
+        GHResponse rsp = tmpHopper.route(req);
+        assertEquals(1044, rsp.getBest().getDistance(), 1);
+    }
+
     @Test
     public void testCHAndTurnCostsWithFlexmode() {
         GraphHopper tmpHopper = new GraphHopperOSM().
@@ -909,4 +1328,28 @@ public class GraphHopperIT {
         rsp = tmpHopper.route(req);
         assertEquals(1044, rsp.getBest().getDistance(), 1);
     }
+
+    @Test
+    public void testEdgeBasedCH() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(DIR + "/moscow.osm.gz").
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(new EncodingManager("car|turn_costs=true"));
+        tmpHopper.getCHFactoryDecorator().setEdgeBased(true);
+        tmpHopper.importOrLoad();
+        assertEquals(2, tmpHopper.getCHFactoryDecorator().getPreparations().size());
+
+        // with turn costs (default if turn cost enabled)
+        GHRequest req = new GHRequest(55.813357, 37.5958585, 55.811042, 37.594689);
+        GHResponse rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(1044, rsp.getBest().getDistance(), 1);
+
+        // without turn costs the node based preparation is used
+        req.getHints().put(Routing.EDGE_BASED, "false");
+        rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(400, rsp.getBest().getDistance(), 1);
+    }
 }
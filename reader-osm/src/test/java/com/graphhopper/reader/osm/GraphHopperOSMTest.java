@@ -33,11 +33,14 @@ import com.graphhopper.routing.weighting.AbstractWeighting;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.CachingLocationIndex;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.Instruction;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.Parameters.Routing;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.After;
 import org.junit.Before;
@@ -117,6 +120,74 @@ public class GraphHopperOSMTest {
         }
     }
 
+    @Test
+    public void testLoadOSMCompactAdjacency() {
+        GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).setCompactAdjacency(true).
+                setEncodingManager(new EncodingManager("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        gh.importOrLoad();
+        assertTrue(gh.getGraphHopperStorage().isAdjacencyCompacted());
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        gh.close();
+
+        // the compact adjacency is not stored and created again on load
+        gh = new GraphHopperOSM().setStoreOnFlush(true).setCompactAdjacency(true).
+                setEncodingManager(new EncodingManager("car"));
+        assertTrue(gh.load(ghLoc));
+        assertTrue(gh.getGraphHopperStorage().isAdjacencyCompacted());
+        rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        gh.close();
+    }
+
+    @Test
+    public void testLoadOSMCompressedGeometry() {
+        GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).setCompressedGeometry(true).
+                setEncodingManager(new EncodingManager("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        gh.importOrLoad();
+        assertTrue(gh.getGraphHopperStorage().isCompressedGeometry());
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        gh.close();
+
+        // the encoding is read from the stored graph
+        gh = new GraphHopperOSM().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("car"));
+        assertTrue(gh.load(ghLoc));
+        assertTrue(gh.getGraphHopperStorage().isCompressedGeometry());
+        rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().getSize());
+        gh.close();
+    }
+
+    @Test
+    public void testIndexCache() {
+        GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).
+                setIndexCache(100, CachingLocationIndex.Eviction.TINY_LFU).
+                setEncodingManager(new EncodingManager("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        gh.importOrLoad();
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(2, gh.getIndexCache().getMisses());
+
+        GHResponse cachedRsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(cachedRsp.hasErrors());
+        assertEquals(2, gh.getIndexCache().getHits());
+        assertEquals(rsp.getBest().getDistance(), cachedRsp.getBest().getDistance(), 1e-6);
+        assertEquals(rsp.getBest().getPoints(), cachedRsp.getBest().getPoints());
+        gh.close();
+    }
+
     @Test
     public void testLoadOSMNoCH() {
         GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).setCHEnabled(false).
@@ -317,6 +388,21 @@ public class GraphHopperOSMTest {
         assertEquals("route method should not change instance field", old, instance.isEnableInstructions());
     }
 
+    @Test
+    public void testHilbertSortedGraph() {
+        instance = new GraphHopperOSM().setStoreOnFlush(false).
+                setSortGraph(true).setSortOrder("hilbert").
+                setEncodingManager(new EncodingManager("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        instance.getCHFactoryDecorator().setWeightingsAsStrings("fastest");
+        instance.importOrLoad();
+        PathWrapper rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4)).getBest();
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+        assertEquals(new GHPoint(52.0, 9.0), rsp.getPoints().toGHPoint(1));
+    }
+
     @Test
     public void testFootAndCar() {
         // now all ways are imported
@@ -918,6 +1004,52 @@ public class GraphHopperOSMTest {
         assertEquals(2, tmpGH.getCHFactoryDecorator().getWeightingsAsStrings().size());
     }
 
+    @Test
+    public void testApplyChanges() {
+        String testOsmIncremental = "./src/test/resources/com/graphhopper/reader/osm/test-osm-incremental.xml";
+        instance = new GraphHopperOSM().setStoreOnFlush(true).setCHEnabled(false).
+                setIncremental(true).setMinNetworkSize(0, 0).
+                setEncodingManager(new EncodingManager("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsmIncremental);
+        instance.importOrLoad();
+        GraphHopperStorage storage = instance.getGraphHopperStorage();
+        assertEquals(5, storage.getNodes());
+        assertEquals(3, storage.getAllEdges().getMaxId());
+        // the deleted way
+        QueryResult qr = instance.getLocationIndex().findClosest(50.002, 10.0015, EdgeFilter.ALL_EDGES);
+        assertEquals(0, qr.getQueryDistance(), 0.1);
+
+        BBox bounds = instance.applyChanges("./src/test/resources/com/graphhopper/reader/osm/test-osm-incremental.osc");
+        assertEquals(new BBox(10.0, 10.004, 50.0, 50.002), bounds);
+        // the edge of way 1 is split at the pillar node used by the created way
+        assertEquals(7, storage.getNodes());
+        assertEquals(7, storage.getAllEdges().getMaxId());
+        assertEquals("false", storage.getProperties().get(Parameters.CH.PREPARE + "done"));
+        assertEquals(bounds.toString(), storage.getProperties().get("datareader.changes.bbox"));
+
+        GHResponse rsp = instance.route(new GHRequest(50.0, 10.0, 50.001, 10.001).setVehicle("car"));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(182.7, rsp.getBest().getDistance(), 0.1);
+        // the moved node
+        rsp = instance.route(new GHRequest(50.0, 10.0, 50.002, 10.004).setVehicle("car"));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(449.7, rsp.getBest().getDistance(), 0.1);
+
+        qr = instance.getLocationIndex().findClosest(50.002, 10.0015, new DefaultEdgeFilter(storage.getEncodingManager().getEncoder("car")));
+        // the deleted way is not found anymore
+        assertTrue(qr.isValid());
+        assertTrue(qr.getQueryDistance() > 100);
+        instance.close();
+
+        // the changes are stored
+        instance = new GraphHopperOSM().setStoreOnFlush(true).setCHEnabled(false);
+        assertTrue(instance.load(ghLoc));
+        rsp = instance.route(new GHRequest(50.0, 10.0, 50.001, 10.001).setVehicle("car"));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(182.7, rsp.getBest().getDistance(), 0.1);
+    }
+
     class TestEncoder extends CarFlagEncoder {
         private final String name;
 
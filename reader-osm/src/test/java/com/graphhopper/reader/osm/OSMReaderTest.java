@@ -148,6 +148,44 @@ public class OSMReaderTest {
         assertEquals(9, na.getLongitude(findID(hopper.getLocationIndex(), 51.25, 9.43)), 1e-3);
     }
 
+    @Test
+    public void testWayThreadsCreateSameGraph() {
+        for (String file : Arrays.asList(file1, file2, file7, fileBarriers, fileRoadAttributes)) {
+            GraphHopperStorage expected = new GraphHopperFacade(file).importOrLoad().getGraphHopperStorage();
+            GraphHopperStorage graph = new GraphHopperFacade(file).setWayThreads(3).importOrLoad().getGraphHopperStorage();
+            assertSameGraph(file, expected, graph);
+        }
+    }
+
+    @Test
+    public void testPagedNodeMapCreatesSameGraph() {
+        for (String file : Arrays.asList(file1, file2, file7, fileNegIds, fileBarriers, fileTurnRestrictions)) {
+            GraphHopperStorage expected = new GraphHopperFacade(file).importOrLoad().getGraphHopperStorage();
+            GraphHopperStorage graph = new GraphHopperFacade(file).setNodeMapType("paged").importOrLoad().getGraphHopperStorage();
+            assertSameGraph(file, expected, graph);
+        }
+        // the temporary files are removed after the import
+        assertFalse(new File(dir, "tmp_node_map_pages").exists());
+    }
+
+    private void assertSameGraph(String file, GraphHopperStorage expected, GraphHopperStorage graph) {
+        assertEquals(file, expected.getNodes(), graph.getNodes());
+        assertEquals(file, expected.getAllEdges().getMaxId(), graph.getAllEdges().getMaxId());
+        for (int node = 0; node < graph.getNodes(); node++) {
+            assertEquals(expected.getNodeAccess().getLatitude(node), graph.getNodeAccess().getLatitude(node), 1e-6);
+            assertEquals(expected.getNodeAccess().getLongitude(node), graph.getNodeAccess().getLongitude(node), 1e-6);
+        }
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState edge = expected.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode());
+            assertEquals(file, edge.getBaseNode(), iter.getBaseNode());
+            assertEquals(file, edge.getFlags(), iter.getFlags());
+            assertEquals(file, edge.getName(), iter.getName());
+            assertEquals(file, edge.getDistance(), iter.getDistance(), 1e-6);
+            assertEquals(file, edge.fetchWayGeometry(0).toString(), iter.fetchWayGeometry(0).toString());
+        }
+    }
+
     protected int findID(LocationIndex index, double lat, double lon) {
         return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestNode();
     }
@@ -831,7 +869,8 @@ public class OSMReaderTest {
 
         @Override
         protected DataReader createReader(GraphHopperStorage tmpGraph) {
-            return initDataReader(new OSMReader(tmpGraph));
+            return initDataReader(new OSMReader(tmpGraph).setWayThreads(getWayThreads()).
+                    setNodeMapType(getNodeMapType()));
         }
 
         @Override
@@ -150,6 +150,7 @@ public class Measurement {
                 printMiscUnitPerfTests(lg, isCH, encoder, count * 100, allowedEdges);
                 printTimeOfRouteQuery(hopper, isCH, isLM, count, "routingCH", vehicleStr, true, -1);
                 printTimeOfRouteQuery(hopper, isCH, isLM, count, "routingCH_no_instr", vehicleStr, false, -1);
+                printTimeOfRouteQuery(hopper, isCH, isLM, count, "routingCH_no_sod", vehicleStr, false, -1, false);
             }
             logger.info("store into " + propLocation);
         } catch (Exception ex) {
@@ -328,6 +329,13 @@ public class Measurement {
     private void printTimeOfRouteQuery(final GraphHopper hopper, final boolean ch, final boolean lm,
                                        int count, String prefix, final String vehicle,
                                        final boolean withInstructions, final int activeLandmarks) {
+        printTimeOfRouteQuery(hopper, ch, lm, count, prefix, vehicle, withInstructions, activeLandmarks, true);
+    }
+
+    private void printTimeOfRouteQuery(final GraphHopper hopper, final boolean ch, final boolean lm,
+                                       int count, String prefix, final String vehicle,
+                                       final boolean withInstructions, final int activeLandmarks,
+                                       final boolean stallOnDemand) {
         final Graph g = hopper.getGraphHopperStorage();
         final AtomicLong maxDistance = new AtomicLong(0);
         final AtomicLong minDistance = new AtomicLong(Long.MAX_VALUE);
@@ -360,6 +368,7 @@ public class Measurement {
                 req.getHints().put(CH.DISABLE, !ch).
                         put(Landmark.DISABLE, !lm).
                         put(Landmark.ACTIVE_COUNT, activeLandmarks).
+                        put(CH.STALL_ON_DEMAND, stallOnDemand).
                         put("instructions", withInstructions);
                 // put(algo + ".approximation", "BeelineSimplification").
                 // put(algo + ".epsilon", 2);
@@ -82,6 +82,15 @@ public class GraphHopperServletModule extends ServletModule {
         serve("/nearest*").with(NearestServlet.class);
         bind(NearestServlet.class).in(Singleton.class);
 
+        // the matrix and the isochrones are calculated on the GraphHopper instance, which is not bound for public transit
+        if (!args.has("gtfs.file")) {
+            serve("/matrix*").with(MatrixServlet.class);
+            bind(MatrixServlet.class).in(Singleton.class);
+
+            serve("/isochrone*").with(IsochroneServlet.class);
+            bind(IsochroneServlet.class).in(Singleton.class);
+        }
+
         if (args.getBool("web.change_graph.enabled", false)) {
             serve("/change*").with(ChangeGraphServlet.class);
             bind(ChangeGraphServlet.class).in(Singleton.class);
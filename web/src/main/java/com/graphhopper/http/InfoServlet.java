@@ -19,6 +19,11 @@ package com.graphhopper.http;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.RouteCache;
+import com.graphhopper.routing.ch.HubLabels;
+import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.storage.index.CachingLocationIndex;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.StorableProperties;
 import com.graphhopper.util.CmdArgs;
@@ -47,6 +52,8 @@ public class InfoServlet extends GHBaseServlet {
     private boolean hasElevation;
     @Inject
     private CmdArgs args;
+    @Inject
+    private GraphHopper hopper;
 
     @Override
     public void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
@@ -88,6 +95,35 @@ public class InfoServlet extends GHBaseServlet {
         json.put("female", args.get("female"));
         json.put("height", args.get("height"));
         json.put("age", args.get("age"));
+
+        ObjectNode caches = json.putObject("caches");
+        RouteCache routeCache = hopper.getRouteCache();
+        if (routeCache != null) {
+            ObjectNode routeJson = caches.putObject("route");
+            routeJson.put("size", routeCache.getSize());
+            routeJson.put("hits", routeCache.getHits());
+            routeJson.put("misses", routeCache.getMisses());
+            routeJson.put("evictions", routeCache.getEvictions());
+            routeJson.put("graph_version", hopper.getGraphVersion());
+        }
+        CachingLocationIndex indexCache = hopper.getIndexCache();
+        if (indexCache != null) {
+            ObjectNode indexJson = caches.putObject("index");
+            indexJson.put("size", indexCache.getSize());
+            indexJson.put("hits", indexCache.getHits());
+            indexJson.put("misses", indexCache.getMisses());
+        }
+
+        List<HubLabels> hubLabelsList = hopper.getCHFactoryDecorator().getHubLabels();
+        if (!hubLabelsList.isEmpty()) {
+            ObjectNode hubLabelsJson = json.putObject("hub_labels");
+            for (HubLabels hubLabels : hubLabelsList) {
+                ObjectNode labelsJson = hubLabelsJson.putObject(AbstractWeighting.weightingToFileName(hubLabels.getWeighting()));
+                labelsJson.put("bytes", hubLabels.getCapacity());
+                labelsJson.put("entries", hubLabels.getEntries());
+                labelsJson.put("average_label_size", hubLabels.getAverageLabelSize());
+            }
+        }
         writeJson(req, res, json);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHIsochroneRequest;
+import com.graphhopper.GHIsochroneResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.GHException;
+import com.graphhopper.util.shapes.GHPoint;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Servlet to calculate the areas reachable from one or more points within time_limit seconds or
+ * distance_limit meters. The result contains one GeoJSON feature per point and bucket with a
+ * MultiPolygon geometry. See docs/web/api-doc.md
+ */
+public class IsochroneServlet extends GHBaseServlet {
+    @Inject
+    private GraphHopper graphHopper;
+
+    @Override
+    public void doGet(HttpServletRequest httpReq, HttpServletResponse httpRes) throws ServletException, IOException {
+        String vehicleStr = getParam(httpReq, "vehicle", "car");
+        String weighting = getParam(httpReq, "weighting", "fastest");
+
+        StopWatch sw = new StopWatch().start();
+        GHIsochroneResponse isoRsp = new GHIsochroneResponse();
+        try {
+            GHIsochroneRequest request = new GHIsochroneRequest();
+            for (String str : getParams(httpReq, "point")) {
+                GHPoint point = GHPoint.parse(str);
+                if (point == null)
+                    throw new IllegalArgumentException("Cannot parse point " + str);
+                request.addPoint(point);
+            }
+            request.setTimeLimit(getLongParam(httpReq, "time_limit", -1)).
+                    setDistanceLimit(getDoubleParam(httpReq, "distance_limit", -1)).
+                    setBuckets(getIntParam(httpReq, "buckets", 1));
+            initHints(request.getHints(), httpReq.getParameterMap());
+            request.setVehicle(vehicleStr).setWeighting(weighting);
+            isoRsp = graphHopper.calcIsochrone(request);
+        } catch (IllegalArgumentException ex) {
+            isoRsp.addError(ex);
+        }
+
+        float took = sw.stop().getSeconds();
+        String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
+        String logStr = httpReq.getQueryString() + " " + infoStr + ", took:" + took + ", " + weighting + ", " + vehicleStr;
+        httpRes.setHeader("X-GH-Took", "" + Math.round(took * 1000));
+
+        if (isoRsp.hasErrors()) {
+            logger.error(logStr + ", errors:" + isoRsp.getErrors());
+            writeJsonError(httpRes, SC_BAD_REQUEST, createErrorJson(isoRsp.getErrors()));
+            return;
+        }
+
+        logger.info(logStr + ", buckets: " + isoRsp.getBuckets().size() + ", debugInfo: " + isoRsp.getDebugInfo());
+
+        ObjectNode json = objectMapper.createObjectNode();
+        ArrayNode features = json.putArray("polygons");
+        for (GHIsochroneResponse.Bucket bucket : isoRsp.getBuckets()) {
+            ObjectNode feature = features.addObject();
+            feature.put("type", "Feature");
+            ObjectNode properties = feature.putObject("properties");
+            properties.put("point_index", bucket.getPointIndex());
+            properties.put("bucket", bucket.getBucket());
+            properties.put("limit", Helper.round(bucket.getLimit(), 3));
+            properties.put("reached_nodes", bucket.getReachedNodes());
+            ObjectNode geometry = feature.putObject("geometry");
+            geometry.put("type", "MultiPolygon");
+            ArrayNode polygons = geometry.putArray("coordinates");
+            for (PointList ring : bucket.getPolygons()) {
+                ArrayNode coordinates = polygons.addArray().addArray();
+                for (int i = 0; i < ring.getSize(); i++) {
+                    coordinates.addArray().add(Helper.round6(ring.getLongitude(i))).add(Helper.round6(ring.getLatitude(i)));
+                }
+            }
+        }
+        ObjectNode info = json.putObject("info");
+        info.put("took", Math.round(took * 1000));
+        writeJson(httpReq, httpRes, json);
+    }
+
+    private ObjectNode createErrorJson(List<Throwable> errors) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("message", getMessage(errors.get(0)));
+        ArrayNode hints = json.putArray("hints");
+        for (Throwable t : errors) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", getMessage(t));
+            hint.put("details", t.getClass().getName());
+            if (t instanceof GHException) {
+                for (Map.Entry<String, Object> entry : ((GHException) t).getDetails().entrySet()) {
+                    hint.putPOJO(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return json;
+    }
+
+    private String getMessage(Throwable t) {
+        return t.getMessage() == null ? t.getClass().getSimpleName() : t.getMessage();
+    }
+}
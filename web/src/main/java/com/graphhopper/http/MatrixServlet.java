@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.DistanceMatrix;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.GHException;
+import com.graphhopper.util.shapes.GHPoint;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Servlet to calculate the distances and times between many origins and destinations in one
+ * request. Use point for a symmetric matrix or from_point and to_point otherwise. The arrays
+ * included in the response are selected via out_array (weights, distances, times). Unconnected
+ * pairs are null. See docs/web/api-doc.md
+ */
+public class MatrixServlet extends GHBaseServlet {
+    private static final List<String> OUT_ARRAYS = Arrays.asList("weights", "distances", "times");
+
+    @Inject
+    private GraphHopper graphHopper;
+
+    @Override
+    public void doGet(HttpServletRequest httpReq, HttpServletResponse httpRes) throws ServletException, IOException {
+        String vehicleStr = getParam(httpReq, "vehicle", "car");
+        String weighting = getParam(httpReq, "weighting", "fastest");
+        List<String> outArrays = new ArrayList<>(Arrays.asList(getParams(httpReq, "out_array")));
+        if (outArrays.isEmpty())
+            outArrays.add("times");
+
+        StopWatch sw = new StopWatch().start();
+        GHMatrixResponse matrixRsp = new GHMatrixResponse();
+        try {
+            List<GHPoint> points = getPoints(httpReq, "point");
+            List<GHPoint> fromPoints = getPoints(httpReq, "from_point");
+            List<GHPoint> toPoints = getPoints(httpReq, "to_point");
+            for (String outArray : outArrays) {
+                if (!OUT_ARRAYS.contains(outArray))
+                    throw new IllegalArgumentException("out_array " + outArray + " not supported. Supported are: " + OUT_ARRAYS);
+            }
+            if (!points.isEmpty() && (!fromPoints.isEmpty() || !toPoints.isEmpty()))
+                throw new IllegalArgumentException("Either specify point or from_point and to_point");
+
+            GHMatrixRequest request = new GHMatrixRequest();
+            for (GHPoint point : points) {
+                request.addPoint(point);
+            }
+            for (GHPoint point : fromPoints) {
+                request.addFromPoint(point);
+            }
+            for (GHPoint point : toPoints) {
+                request.addToPoint(point);
+            }
+            initHints(request.getHints(), httpReq.getParameterMap());
+            request.setVehicle(vehicleStr).setWeighting(weighting);
+            matrixRsp = graphHopper.calcMatrix(request);
+        } catch (IllegalArgumentException ex) {
+            matrixRsp.addError(ex);
+        }
+
+        float took = sw.stop().getSeconds();
+        String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
+        String logStr = httpReq.getQueryString() + " " + infoStr + ", took:" + took + ", " + weighting + ", " + vehicleStr;
+        httpRes.setHeader("X-GH-Took", "" + Math.round(took * 1000));
+
+        if (matrixRsp.hasErrors()) {
+            logger.error(logStr + ", errors:" + matrixRsp.getErrors());
+            writeJsonError(httpRes, SC_BAD_REQUEST, createErrorJson(matrixRsp.getErrors()));
+            return;
+        }
+
+        DistanceMatrix matrix = matrixRsp.getMatrix();
+        logger.info(logStr + ", size: " + matrix.getFromCount() + "x" + matrix.getToCount()
+                + ", debugInfo: " + matrixRsp.getDebugInfo());
+
+        ObjectNode json = objectMapper.createObjectNode();
+        for (String outArray : outArrays) {
+            ArrayNode rows = json.putArray(outArray);
+            for (int fromIndex = 0; fromIndex < matrix.getFromCount(); fromIndex++) {
+                ArrayNode row = rows.addArray();
+                for (int toIndex = 0; toIndex < matrix.getToCount(); toIndex++) {
+                    if (!matrix.isConnected(fromIndex, toIndex))
+                        row.addNull();
+                    else if ("weights".equals(outArray))
+                        row.add(Helper.round6(matrix.getWeight(fromIndex, toIndex)));
+                    else if ("distances".equals(outArray))
+                        row.add(Helper.round(matrix.getDistance(fromIndex, toIndex), 3));
+                    else
+                        row.add(matrix.getTime(fromIndex, toIndex));
+                }
+            }
+        }
+        ObjectNode info = json.putObject("info");
+        info.put("took", Math.round(took * 1000));
+        writeJson(httpReq, httpRes, json);
+    }
+
+    private ObjectNode createErrorJson(List<Throwable> errors) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("message", getMessage(errors.get(0)));
+        ArrayNode hints = json.putArray("hints");
+        for (Throwable t : errors) {
+            ObjectNode hint = hints.addObject();
+            hint.put("message", getMessage(t));
+            hint.put("details", t.getClass().getName());
+            if (t instanceof GHException) {
+                for (Map.Entry<String, Object> entry : ((GHException) t).getDetails().entrySet()) {
+                    hint.putPOJO(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return json;
+    }
+
+    private String getMessage(Throwable t) {
+        return t.getMessage() == null ? t.getClass().getSimpleName() : t.getMessage();
+    }
+
+    private List<GHPoint> getPoints(HttpServletRequest req, String key) {
+        String[] pointsAsStr = getParams(req, key);
+        List<GHPoint> points = new ArrayList<>(pointsAsStr.length);
+        for (String str : pointsAsStr) {
+            GHPoint point = GHPoint.parse(str);
+            if (point == null)
+                throw new IllegalArgumentException("Cannot parse " + key + " " + str);
+            points.add(point);
+        }
+        return points;
+    }
+}
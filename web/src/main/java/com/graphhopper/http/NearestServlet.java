@@ -17,11 +17,14 @@
  */
 package com.graphhopper.http;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.shapes.GHPoint;
@@ -33,6 +36,11 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 
 /**
  * @author svantulden
@@ -44,37 +52,113 @@ public class NearestServlet extends GHBaseServlet {
     @Inject
     @Named("hasElevation")
     private boolean hasElevation;
+    @Inject
+    private CmdArgs args;
+    private int maxPoints;
+    private ForkJoinPool pool;
+
+    @Override
+    public void init() throws ServletException {
+        maxPoints = args.getInt("web.nearest.max_points", 1000);
+        int threads = args.getInt("web.nearest.threads", 1);
+        if (threads > 1)
+            pool = new ForkJoinPool(threads);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
 
     @Override
     public void doGet(HttpServletRequest httpReq, HttpServletResponse httpRes) throws ServletException, IOException {
         String pointStr = getParam(httpReq, "point", null);
         boolean enabledElevation = getBooleanParam(httpReq, "elevation", false);
 
-        ObjectNode result = objectMapper.createObjectNode();
+        ObjectNode result;
         if (pointStr != null && !pointStr.equalsIgnoreCase("")) {
             GHPoint place = GHPoint.parse(pointStr);
             QueryResult qr = index.findClosest(place.lat, place.lon, EdgeFilter.ALL_EDGES);
+            result = createResult(place, qr, enabledElevation);
+        } else {
+            result = objectMapper.createObjectNode();
+            result.put("error", "No lat/lon specified!");
+        }
 
-            if (!qr.isValid()) {
-                result.put("error", "Nearest point cannot be found!");
-            } else {
-                GHPoint3D snappedPoint = qr.getSnappedPoint();
-                result.put("type", "Point");
+        writeJson(httpReq, httpRes, result);
+    }
 
-                ArrayNode coord = result.putArray("coordinates");
-                coord.add(snappedPoint.lon);
-                coord.add(snappedPoint.lat);
+    /**
+     * Snaps all points of the JSON body {"points": [[lon, lat], ...]} at once and returns the results
+     * in the same order as array "results", each entry is the same as the response of a GET request.
+     */
+    @Override
+    protected void doPost(HttpServletRequest httpReq, HttpServletResponse httpRes) throws ServletException, IOException {
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(httpReq.getInputStream());
+        } catch (IOException ex) {
+            writeError(httpRes, SC_BAD_REQUEST, "Cannot parse JSON body: " + ex.getMessage());
+            return;
+        }
 
-                if (hasElevation && enabledElevation)
-                    coord.add(snappedPoint.ele);
+        JsonNode pointsJson = json == null ? null : json.get("points");
+        if (pointsJson == null || !pointsJson.isArray() || pointsJson.size() == 0) {
+            writeError(httpRes, SC_BAD_REQUEST, "No points specified!");
+            return;
+        }
+        if (pointsJson.size() > maxPoints) {
+            writeError(httpRes, SC_BAD_REQUEST, "Too many points: " + pointsJson.size() + ", maximum is " + maxPoints);
+            return;
+        }
 
-                // Distance from input to snapped point in meters
-                result.put("distance", calc.calcDist(place.lat, place.lon, snappedPoint.lat, snappedPoint.lon));
+        List<GHPoint> points = new ArrayList<>(pointsJson.size());
+        for (JsonNode pointJson : pointsJson) {
+            if (!pointJson.isArray() || pointJson.size() < 2 || !pointJson.get(0).isNumber() || !pointJson.get(1).isNumber()) {
+                writeError(httpRes, SC_BAD_REQUEST, "Point has to be an array [lon, lat] but was " + pointJson);
+                return;
             }
+            points.add(new GHPoint(pointJson.get(1).asDouble(), pointJson.get(0).asDouble()));
+        }
+
+        QueryResult[] queryResults;
+        if (index instanceof LocationIndexTree) {
+            queryResults = ((LocationIndexTree) index).findClosest(points, EdgeFilter.ALL_EDGES, pool);
         } else {
-            result.put("error", "No lat/lon specified!");
+            queryResults = new QueryResult[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                queryResults[i] = index.findClosest(points.get(i).lat, points.get(i).lon, EdgeFilter.ALL_EDGES);
+            }
         }
 
+        boolean enabledElevation = json.has("elevation") && json.get("elevation").asBoolean();
+        ObjectNode result = objectMapper.createObjectNode();
+        ArrayNode results = result.putArray("results");
+        for (int i = 0; i < points.size(); i++) {
+            results.add(createResult(points.get(i), queryResults[i], enabledElevation));
+        }
         writeJson(httpReq, httpRes, result);
     }
+
+    private ObjectNode createResult(GHPoint place, QueryResult qr, boolean enabledElevation) {
+        ObjectNode result = objectMapper.createObjectNode();
+        if (!qr.isValid()) {
+            result.put("error", "Nearest point cannot be found!");
+        } else {
+            GHPoint3D snappedPoint = qr.getSnappedPoint();
+            result.put("type", "Point");
+
+            ArrayNode coord = result.putArray("coordinates");
+            coord.add(snappedPoint.lon);
+            coord.add(snappedPoint.lat);
+
+            if (hasElevation && enabledElevation)
+                coord.add(snappedPoint.ele);
+
+            // Distance from input to snapped point in meters
+            result.put("distance", calc.calcDist(place.lat, place.lon, snappedPoint.lat, snappedPoint.lon));
+        }
+        return result;
+    }
 }
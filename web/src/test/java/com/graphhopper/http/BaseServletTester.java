@@ -123,6 +123,10 @@ public class BaseServletTester {
     }
 
     protected String queryString(String query, int code) throws Exception {
+        return queryString("/route", query, code);
+    }
+
+    protected String queryString(String path, String query, int code) throws Exception {
         String resQuery = "";
         for (String q : query.split("\\&")) {
             int index = q.indexOf("=");
@@ -133,7 +137,7 @@ public class BaseServletTester {
 
             resQuery += "&";
         }
-        String url = getTestRouteAPIUrl() + "?" + resQuery;
+        String url = getTestAPIUrl(path) + "?" + resQuery;
         Downloader downloader = new Downloader("web integration tester").setTimeout(2000);
         HttpURLConnection conn = downloader.createConnection(url);
         conn.connect();
@@ -145,6 +149,10 @@ public class BaseServletTester {
         return objectMapper.readTree(queryString(query, code));
     }
 
+    protected JsonNode matrixQuery(String query, int code) throws Exception {
+        return objectMapper.readTree(queryString("/matrix", query, code));
+    }
+
     protected JsonNode nearestQuery(String query) throws Exception {
         String resQuery = "";
         for (String q : query.split("\\&")) {
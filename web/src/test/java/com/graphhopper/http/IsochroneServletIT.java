@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class IsochroneServletIT extends BaseServletTester {
+    private static final String dir = "./target/andorra-gh/";
+
+    @AfterClass
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+        shutdownJetty(true);
+    }
+
+    @Before
+    public void setUp() {
+        CmdArgs args = new CmdArgs().
+                put("config", "../config-example.properties").
+                put("datareader.file", "../core/files/andorra.osm.pbf").
+                put("graph.location", dir);
+        setUpJetty(args);
+    }
+
+    private JsonNode isochroneQuery(String query, int code) throws Exception {
+        return new ObjectMapper().readTree(queryString("/isochrone", query, code));
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+        JsonNode json = isochroneQuery("point=42.531453,1.518946&time_limit=600&buckets=3", 200);
+        JsonNode features = json.get("polygons");
+        assertEquals(3, features.size());
+        int prevNodes = 0;
+        for (int i = 0; i < 3; i++) {
+            JsonNode feature = features.get(i);
+            assertEquals("Feature", feature.get("type").asText());
+            assertEquals(i, feature.get("properties").get("bucket").asInt());
+            assertEquals(200 * (i + 1), feature.get("properties").get("limit").asDouble(), 1e-3);
+            int nodes = feature.get("properties").get("reached_nodes").asInt();
+            assertTrue(nodes > prevNodes);
+            prevNodes = nodes;
+
+            JsonNode geometry = feature.get("geometry");
+            assertEquals("MultiPolygon", geometry.get("type").asText());
+            JsonNode ring = geometry.get("coordinates").get(0).get(0);
+            assertTrue(ring.size() >= 5);
+            // closed ring of lon,lat pairs
+            assertEquals(ring.get(0).get(0).asDouble(), ring.get(ring.size() - 1).get(0).asDouble(), 1e-9);
+            assertEquals(1.5, ring.get(0).get(0).asDouble(), 0.1);
+            assertEquals(42.5, ring.get(0).get(1).asDouble(), 0.1);
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        JsonNode json = isochroneQuery("point=42.531453,1.518946", 400);
+        assertTrue(json.get("message").asText(), json.get("message").asText().contains("time limit"));
+
+        json = isochroneQuery("point=42.531453,1.518946&time_limit=600&buckets=100", 400);
+        assertTrue(json.get("message").asText(), json.get("message").asText().contains("buckets"));
+
+        json = isochroneQuery("point=-10,1.518946&distance_limit=600", 400);
+        assertEquals("com.graphhopper.util.exceptions.PointOutOfBoundsException",
+                json.get("hints").get(0).get("details").asText());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper GmbH licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class MatrixServletIT extends BaseServletTester {
+    private static final String dir = "./target/andorra-gh/";
+
+    @AfterClass
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+        shutdownJetty(true);
+    }
+
+    @Before
+    public void setUp() {
+        CmdArgs args = new CmdArgs().
+                put("config", "../config-example.properties").
+                put("datareader.file", "../core/files/andorra.osm.pbf").
+                put("graph.location", dir);
+        setUpJetty(args);
+    }
+
+    @Test
+    public void testSymmetricMatrix() throws Exception {
+        JsonNode json = matrixQuery("point=42.554851,1.536198&point=42.510071,1.548128&point=42.531453,1.518946"
+                + "&out_array=distances&out_array=times", 200);
+        JsonNode distances = json.get("distances");
+        assertEquals(3, distances.size());
+        assertEquals(3, distances.get(0).size());
+        assertEquals(0, distances.get(1).get(1).asDouble(), 1e-3);
+        assertFalse(json.has("weights"));
+
+        // compare with a point-to-point request
+        JsonNode route = query("point=42.554851,1.536198&point=42.510071,1.548128", 200);
+        JsonNode path = route.get("paths").get(0);
+        assertEquals(path.get("distance").asDouble(), distances.get(0).get(1).asDouble(), 1);
+        assertEquals(path.get("time").asLong(), json.get("times").get(0).get(1).asLong(), 1000);
+    }
+
+    @Test
+    public void testFromTo() throws Exception {
+        JsonNode json = matrixQuery("from_point=42.554851,1.536198&to_point=42.510071,1.548128&to_point=42.531453,1.518946", 200);
+        JsonNode times = json.get("times");
+        assertEquals(1, times.size());
+        assertEquals(2, times.get(0).size());
+        assertTrue(times.get(0).get(0).asLong() > 0);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        JsonNode json = matrixQuery("from_point=42.554851,1.536198", 400);
+        assertTrue(json.get("message").asText(), json.get("message").asText().contains("At least one origin and one destination"));
+
+        json = matrixQuery("point=42.554851,1.536198&point=42.510071,1.548128&out_array=something", 400);
+        assertTrue(json.get("message").asText().contains("not supported"));
+
+        json = matrixQuery("point=42.554851,1.536198&point=-10,1.548128", 400);
+        assertEquals("com.graphhopper.util.exceptions.PointOutOfBoundsException",
+                json.get("hints").get(0).get("details").asText());
+    }
+}
@@ -18,6 +18,7 @@
 package com.graphhopper.http;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
@@ -27,6 +28,7 @@ import org.junit.Test;
 
 import java.io.File;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -61,4 +63,19 @@ public class NearestServletIT extends BaseServletTester {
         double lat = point.get(1).asDouble();
         assertTrue("nearest point wasn't correct: lat=" + lat + ", lon=" + lon, lat == 42.55483907636756 && lon == 1.5363742288086868);
     }
+
+    @Test
+    public void testBatchNearestQuery() throws Exception {
+        String str = post("/nearest", 200, "{\"points\": [[1.536198, 42.554851], [1.536198, 42.554851]]}");
+        JsonNode json = new ObjectMapper().readTree(str);
+        ArrayNode results = (ArrayNode) json.get("results");
+        assertEquals(2, results.size());
+        for (int i = 0; i < 2; i++) {
+            ArrayNode point = (ArrayNode) results.get(i).get("coordinates");
+            assertEquals(42.55483907636756, point.get(1).asDouble(), 1e-8);
+            assertEquals(1.5363742288086868, point.get(0).asDouble(), 1e-8);
+        }
+
+        post("/nearest", 400, "{\"points\": [[1.536198]]}");
+    }
 }